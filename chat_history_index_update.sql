@@ -0,0 +1,3 @@
+-- 聊天记录分页索引：按(session_id, id)倒序向前翻页，idx_session_id为其前缀，一并删除
+ALTER TABLE `chat_message` ADD INDEX `idx_session_id_id`(`session_id`, `id`) USING BTREE;
+ALTER TABLE `chat_message` DROP INDEX `idx_session_id`;
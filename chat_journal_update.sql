@@ -0,0 +1,8 @@
+-- 聊天消息本地日志检查点表：记录每个节点本地日志中已写入chat_message的最大序号，
+-- 与批量插入的消息在同一事务中更新，节点重启回放本地日志时跳过已入库的消息
+CREATE TABLE `chat_message_journal` (
+  `node_id` varchar(64) NOT NULL COMMENT '节点ID',
+  `last_seq` bigint(20) NOT NULL COMMENT '已入库的最大日志序号',
+  `update_time` datetime NOT NULL COMMENT '更新时间',
+  PRIMARY KEY (`node_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='聊天消息本地日志检查点表';
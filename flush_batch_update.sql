@@ -0,0 +1,8 @@
+-- 异步回写批次记录：回写库存、销量时在同一事务中登记批次ID，宕机后重放已提交的批次时跳过
+CREATE TABLE IF NOT EXISTS `flush_batch` (
+  `batch_id` varchar(64) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL COMMENT '批次ID',
+  `source` varchar(32) CHARACTER SET utf8 COLLATE utf8_bin NOT NULL COMMENT '回写来源',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '写入时间',
+  PRIMARY KEY (`batch_id`) USING BTREE,
+  INDEX `idx_create_time`(`create_time`) USING BTREE
+) ENGINE = InnoDB CHARACTER SET = utf8 COLLATE = utf8_bin ROW_FORMAT = Dynamic;
@@ -0,0 +1,24 @@
+-- 商品评分汇总表：随评价的添加和删除增量维护评分总和、评价数和1-5星分布，goods.rating 由此同步
+CREATE TABLE `goods_rating` (
+  `goods_id` int NOT NULL COMMENT '商品ID',
+  `rating_count` int NOT NULL DEFAULT 0 COMMENT '评价数',
+  `rating_sum` int NOT NULL DEFAULT 0 COMMENT '评分总和',
+  `star_1` int NOT NULL DEFAULT 0 COMMENT '1星评价数',
+  `star_2` int NOT NULL DEFAULT 0 COMMENT '2星评价数',
+  `star_3` int NOT NULL DEFAULT 0 COMMENT '3星评价数',
+  `star_4` int NOT NULL DEFAULT 0 COMMENT '4星评价数',
+  `star_5` int NOT NULL DEFAULT 0 COMMENT '5星评价数',
+  `update_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+  PRIMARY KEY (`goods_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='商品评分汇总表';
+
+-- 按已有评价初始化
+INSERT INTO `goods_rating` (`goods_id`, `rating_count`, `rating_sum`, `star_1`, `star_2`, `star_3`, `star_4`, `star_5`)
+SELECT `goods_id`, COUNT(*), SUM(`rating`), SUM(`rating` = 1), SUM(`rating` = 2), SUM(`rating` = 3), SUM(`rating` = 4), SUM(`rating` = 5)
+FROM `goods_review`
+GROUP BY `goods_id`;
+
+-- 有评价的商品按评价重新计算评分
+UPDATE `goods` g JOIN `goods_rating` r ON g.`id` = r.`goods_id`
+SET g.`rating` = ROUND(r.`rating_sum` / r.`rating_count`, 1)
+WHERE r.`rating_count` > 0;
@@ -0,0 +1,4 @@
+-- 游标分页索引：按(create_time, id)倒序翻页时无需扫描偏移量之前的数据
+ALTER TABLE `orders` ADD INDEX `idx_create_time_id`(`create_time`, `id`) USING BTREE;
+ALTER TABLE `orders` ADD INDEX `idx_status_create_time_id`(`status`, `create_time`, `id`) USING BTREE;
+ALTER TABLE `user` ADD INDEX `idx_create_time_id`(`create_time`, `id`) USING BTREE;
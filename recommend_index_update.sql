@@ -0,0 +1,2 @@
+-- 推荐商品索引：定时刷新推荐排行及请求数量超过内存排行时按评分、销量排序取前N条
+ALTER TABLE `goods` ADD INDEX `idx_status_rating_sales`(`status`, `rating`, `sales_volume`) USING BTREE;
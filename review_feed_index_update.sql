@@ -0,0 +1,7 @@
+-- 商品评价游标分页索引：按最新、点赞数、评分排序翻页时只扫描当前页的数据
+-- 新索引均以goods_id开头，原idx_goods_id不再需要
+ALTER TABLE `goods_review`
+  ADD INDEX `idx_goods_create_time_id`(`goods_id`, `create_time`, `id`) USING BTREE,
+  ADD INDEX `idx_goods_like_count_id`(`goods_id`, `like_count`, `id`) USING BTREE,
+  ADD INDEX `idx_goods_rating_id`(`goods_id`, `rating`, `id`) USING BTREE,
+  DROP INDEX `idx_goods_id`;
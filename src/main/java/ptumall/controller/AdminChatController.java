@@ -8,11 +8,21 @@ import org.springframework.web.bind.annotation.*;
 import ptumall.model.ChatMessage;
 import ptumall.model.ChatSession;
 import ptumall.model.ChatMessageDTO;
+import ptumall.service.ChatAssignmentService;
+import ptumall.service.ChatHeartbeatMonitor;
+import ptumall.service.ChatMessageDispatcher;
+import ptumall.service.ChatMessageWriter;
 import ptumall.service.ChatService;
+import ptumall.vo.ChatAssignStatsVO;
+import ptumall.vo.ChatDispatchStatsVO;
+import ptumall.vo.ChatHeartbeatStatsVO;
+import ptumall.vo.ChatPersistStatsVO;
+import ptumall.vo.CursorPageResult;
 import ptumall.vo.Result;
 import ptumall.vo.ResultCode;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 管理员聊天控制器
@@ -27,6 +37,12 @@ public class AdminChatController {
     @Autowired
     private ChatService chatService;
 
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+    
+    @Autowired
+    private ChatAssignmentService chatAssignmentService;
+
     /**
      * 获取管理员会话列表
      * 查询指定管理员负责的所有客户会话
@@ -59,6 +75,24 @@ public class AdminChatController {
         return Result.success(messages);
     }
 
+    /**
+     * 分页获取会话消息历史
+     * 第一次请求不传beforeId，返回最新的一页；向上翻页时传入上一页返回的nextCursor作为beforeId
+     * 
+     * @param sessionId 会话ID
+     * @param beforeId 只返回ID小于该值的消息
+     * @param limit 每页数量，默认20，最大100
+     * @return 按消息ID升序排列的一页消息
+     */
+    @ApiOperation(value = "分页获取会话消息历史", notes = "按消息ID向前翻页获取历史消息，第一页从内存缓存返回")
+    @GetMapping("/messages/history")
+    public Result<CursorPageResult<ChatMessage>> getMessageHistory(
+            @ApiParam(value = "会话ID", required = true) @RequestParam String sessionId,
+            @ApiParam(value = "上一页返回的nextCursor，不传表示最新一页") @RequestParam(required = false) Long beforeId,
+            @ApiParam(value = "每页数量，默认20，最大100") @RequestParam(required = false) Integer limit) {
+        return Result.success(chatService.getSessionMessages(sessionId, beforeId, limit));
+    }
+
     /**
      * 发送消息
      * 管理员在指定会话中发送一条消息
@@ -143,6 +177,20 @@ public class AdminChatController {
         return Result.success(count);
     }
     
+    /**
+     * 获取各会话未读消息数量
+     * 返回有未读消息的会话及其未读数，计数变化时也会通过WebSocket推送
+     * 
+     * @param adminId 管理员ID，必填参数
+     * @return 会话ID -> 未读消息数量
+     */
+    @ApiOperation(value = "获取各会话未读消息数量", notes = "获取指定管理员每个会话的未读消息数量")
+    @GetMapping("/unread/sessions")
+    public Result<Map<String, Integer>> getSessionUnreadCounts(
+            @ApiParam(value = "管理员ID", required = true) @RequestParam Long adminId) {
+        return Result.success(chatService.getSessionUnreadCounts(adminId, "admin"));
+    }
+    
     /**
      * 接入新会话
      * 管理员接入一个尚未分配客服的会话
@@ -207,4 +255,60 @@ public class AdminChatController {
             return Result.failure(ResultCode.INTERNAL_SERVER_ERROR, "删除会话失败：" + e.getMessage());
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 获取WebSocket消息发送统计
+     * 包括发送队列深度、发送耗时、丢弃和断开数量，用于观察慢客户端对推送的影响
+     * 
+     * @return 发送统计信息
+     */
+    @ApiOperation(value = "获取WebSocket消息发送统计", notes = "获取发送队列深度、发送耗时等指标")
+    @GetMapping("/dispatch/stats")
+    public Result<ChatDispatchStatsVO> getDispatchStats() {
+        ChatDispatchStatsVO stats = ChatMessageDispatcher.stats();
+        if (stats == null) {
+            return Result.failure(ResultCode.INTERNAL_SERVER_ERROR, "消息发送器未启动");
+        }
+        return Result.success(stats);
+    }
+    
+    /**
+     * 获取WebSocket连接心跳统计
+     * 包括当前连接数、ping/pong数量和因心跳超时关闭的连接数
+     * 
+     * @return 心跳统计信息
+     */
+    @ApiOperation(value = "获取WebSocket连接心跳统计", notes = "获取当前连接数和心跳超时关闭的连接数")
+    @GetMapping("/heartbeat/stats")
+    public Result<ChatHeartbeatStatsVO> getHeartbeatStats() {
+        ChatHeartbeatStatsVO stats = ChatHeartbeatMonitor.stats();
+        if (stats == null) {
+            return Result.failure(ResultCode.INTERNAL_SERVER_ERROR, "心跳检测未启动");
+        }
+        return Result.success(stats);
+    }
+    
+    /**
+     * 获取聊天消息持久化统计
+     * 包括待写库消息数、批量写入次数与耗时、写入速率等
+     * 
+     * @return 持久化统计信息
+     */
+    @ApiOperation(value = "获取聊天消息持久化统计", notes = "获取批量写入数据库的队列深度、批次大小和写入速率")
+    @GetMapping("/persist/stats")
+    public Result<ChatPersistStatsVO> getPersistStats() {
+        return Result.success(chatMessageWriter.getStats());
+    }
+    
+    /**
+     * 获取会话分配统计
+     * 包括在线管理员的会话数、待分配会话数和平均等待分配时间
+     * 
+     * @return 分配统计信息
+     */
+    @ApiOperation(value = "获取会话分配统计", notes = "获取在线管理员负载、待分配会话数和等待分配时间")
+    @GetMapping("/assign/stats")
+    public Result<ChatAssignStatsVO> getAssignStats() {
+        return Result.success(chatAssignmentService.getStats());
+    }
+}
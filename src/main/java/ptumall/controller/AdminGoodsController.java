@@ -7,15 +7,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import ptumall.exception.BusinessException;
 import ptumall.model.Goods;
 import ptumall.service.FileService;
+import ptumall.service.GoodsCacheService;
+import ptumall.service.GoodsImportService;
 import ptumall.service.GoodsService;
+import ptumall.service.HotStockService;
+import ptumall.service.SalesVolumeService;
 import ptumall.utils.AuthUtils;
+import ptumall.vo.GoodsCacheStatsVO;
+import ptumall.vo.GoodsImportTaskVO;
+import ptumall.vo.HotStockStatsVO;
 import ptumall.vo.PageResult;
 import ptumall.vo.Result;
 import ptumall.vo.ResultCode;
+import ptumall.vo.SalesVolumeStatsVO;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
 
 @Api(tags = "管理员-商品接口")
@@ -32,6 +45,18 @@ public class AdminGoodsController {
     @Autowired
     private FileService fileService;
     
+    @Autowired
+    private HotStockService hotStockService;
+    
+    @Autowired
+    private GoodsCacheService goodsCacheService;
+    
+    @Autowired
+    private SalesVolumeService salesVolumeService;
+    
+    @Autowired
+    private GoodsImportService goodsImportService;
+    
     @ApiOperation("获取商品列表")
     @GetMapping("")
     public Result<PageResult<Goods>> getGoodsList(
@@ -162,6 +187,122 @@ public class AdminGoodsController {
         }
     }
     
+    @ApiOperation("标记/取消热点商品（库存在Redis中预扣）")
+    @PutMapping("/{id}/hot")
+    public Result<Void> updateHot(
+            @ApiParam(value = "商品ID", required = true) @PathVariable Integer id,
+            @ApiParam(value = "是否热点商品", required = true) @RequestParam Boolean hot,
+            HttpServletRequest request) {
+        // 权限校验：只有管理员可以设置热点商品
+        if (!authUtils.isAdmin(request)) {
+            return Result.failure(ResultCode.UNAUTHORIZED, "没有权限");
+        }
+        
+        if (!hotStockService.isEnabled()) {
+            return Result.failure(ResultCode.FAILED, "未启用热点商品库存模式");
+        }
+        
+        boolean success = hot ? hotStockService.markHot(id) : hotStockService.unmarkHot(id);
+        if (success) {
+            return Result.success();
+        } else {
+            return Result.failure(ResultCode.NOT_FOUND, "商品不存在");
+        }
+    }
+    
+    @ApiOperation("获取热点商品库存回写指标")
+    @GetMapping("/hot/stats")
+    public Result<HotStockStatsVO> getHotStockStats(HttpServletRequest request) {
+        // 权限校验：只有管理员可以查看
+        if (!authUtils.isAdmin(request)) {
+            return Result.failure(ResultCode.UNAUTHORIZED, "没有权限");
+        }
+        
+        return Result.success(hotStockService.getStats());
+    }
+    
+    @ApiOperation("获取商品详情缓存统计")
+    @GetMapping("/cache/stats")
+    public Result<GoodsCacheStatsVO> getGoodsCacheStats(HttpServletRequest request) {
+        // 权限校验：只有管理员可以查看
+        if (!authUtils.isAdmin(request)) {
+            return Result.failure(ResultCode.UNAUTHORIZED, "没有权限");
+        }
+        
+        return Result.success(goodsCacheService.getStats());
+    }
+    
+    @ApiOperation("获取商品销量回写指标")
+    @GetMapping("/sales/stats")
+    public Result<SalesVolumeStatsVO> getSalesVolumeStats(HttpServletRequest request) {
+        // 权限校验：只有管理员可以查看
+        if (!authUtils.isAdmin(request)) {
+            return Result.failure(ResultCode.UNAUTHORIZED, "没有权限");
+        }
+        
+        return Result.success(salesVolumeService.getStats());
+    }
+    
+    @ApiOperation("批量导入商品（CSV或JSON Lines，后台导入）")
+    @PostMapping("/import")
+    public Result<GoodsImportTaskVO> importGoods(
+            @ApiParam(value = "商品文件", required = true) @RequestParam("file") MultipartFile file,
+            @ApiParam(value = "文件格式：csv、jsonl，不传时按文件扩展名判断") @RequestParam(required = false) String format,
+            HttpServletRequest request) throws IOException {
+        // 权限校验：只有管理员可以导入商品
+        if (!authUtils.isAdmin(request)) {
+            return Result.failure(ResultCode.UNAUTHORIZED, "没有权限");
+        }
+        
+        try {
+            return Result.success(goodsImportService.submitImport(file, format));
+        } catch (BusinessException e) {
+            return Result.validateFailed(e.getMessage());
+        }
+    }
+    
+    @ApiOperation("查询商品导入进度")
+    @GetMapping("/import/{taskId}")
+    public Result<GoodsImportTaskVO> getImportTask(
+            @ApiParam(value = "导入任务ID", required = true) @PathVariable String taskId,
+            HttpServletRequest request) {
+        // 权限校验：只有管理员可以查看
+        if (!authUtils.isAdmin(request)) {
+            return Result.failure(ResultCode.UNAUTHORIZED, "没有权限");
+        }
+        
+        GoodsImportTaskVO task = goodsImportService.getImportTask(taskId);
+        if (task == null) {
+            return Result.failure(ResultCode.NOT_FOUND, "导入任务不存在或已过期");
+        }
+        return Result.success(task);
+    }
+    
+    @ApiOperation("导出商品（CSV或JSON Lines，流式输出）")
+    @GetMapping("/export")
+    public void exportGoods(
+            @ApiParam(value = "文件格式：csv、jsonl") @RequestParam(defaultValue = "csv") String format,
+            @ApiParam(value = "分类ID，不传时导出全部商品") @RequestParam(required = false) Integer categoryId,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        // 权限校验：只有管理员可以导出商品
+        if (!authUtils.isAdmin(request)) {
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "没有权限");
+            return;
+        }
+        if (!GoodsImportService.FORMAT_CSV.equals(format) && !GoodsImportService.FORMAT_JSONL.equals(format)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "不支持的文件格式: " + format);
+            return;
+        }
+        
+        boolean csv = GoodsImportService.FORMAT_CSV.equals(format);
+        String fileName = "goods-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()) + "." + format;
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType(csv ? "text/csv;charset=UTF-8" : "application/x-ndjson;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
+        goodsImportService.exportGoods(format, categoryId, response.getOutputStream());
+    }
+    
     @ApiOperation("上传商品图片")
     @PostMapping("/upload/image")
     public Result<String> uploadImage(
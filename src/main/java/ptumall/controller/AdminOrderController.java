@@ -5,16 +5,19 @@ import io.swagger.annotations.ApiImplicitParam;
 import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.web.bind.annotation.*;
 import ptumall.config.JWTInterceptors;
 import ptumall.model.Orders;
 import ptumall.service.OrderService;
 import ptumall.utils.AuthUtils;
+import ptumall.vo.CursorPageResult;
 import ptumall.vo.OrderStatisticsVO;
 import ptumall.vo.PageResult;
 import ptumall.vo.Result;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.Date;
 
 /**
  * 管理员订单控制器
@@ -102,6 +105,41 @@ public class AdminOrderController {
         return Result.success(result);
     }
     
+    /**
+     * 游标分页获取所有订单列表
+     * 适用于订单量很大时的深度翻页，翻页开销不随页码增加
+     * 
+     * @param request HTTP请求对象
+     * @param cursor 上一页返回的游标(可选)，为空时查询第一页
+     * @param pageSize 每页数量，默认10，最大200
+     * @param status 订单状态(可选)
+     * @param countMode 总数统计方式(可选)：none-不统计(默认)，approx-估算，exact-精确统计
+     * @return 游标分页的订单列表数据
+     */
+    @ApiOperation("游标分页获取所有订单列表")
+    @ApiImplicitParams({
+        @ApiImplicitParam(name = "cursor", value = "上一页返回的游标(可选)", required = false, paramType = "query"),
+        @ApiImplicitParam(name = "pageSize", value = "每页数量", required = false, paramType = "query"),
+        @ApiImplicitParam(name = "status", value = "订单状态(可选): 0-待付款 1-已付款 2-已发货 3-已完成 4-已取消", required = false, paramType = "query"),
+        @ApiImplicitParam(name = "countMode", value = "总数统计方式(可选): none/approx/exact", required = false, paramType = "query")
+    })
+    @GetMapping("/cursor")
+    public Result<CursorPageResult<Orders>> getAllOrdersByCursor(
+        HttpServletRequest request,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "10") Integer pageSize,
+        @RequestParam(required = false) Byte status,
+        @RequestParam(defaultValue = "none") String countMode
+    ) {
+        // 权限校验：只有管理员可以查看所有订单
+        if (!authUtils.isAdmin(request)) {
+            return Result.unauthorized();
+        }
+        
+        CursorPageResult<Orders> result = orderService.getAllOrderListByCursor(status, cursor, pageSize, countMode);
+        return Result.success(result);
+    }
+    
     /**
      * 获取订单详情
      * 管理员可以查看任意订单的详细信息
@@ -168,20 +206,34 @@ public class AdminOrderController {
     
     /**
      * 获取订单统计数据
-     * 包括总订单数和总销售额
+     * 包括总订单数、总销售额和各状态订单数、金额；
+     * 指定开始和结束时间时另外返回该范围内按订单创建时间汇总的时间序列
      * 
      * @param request HTTP请求对象
+     * @param startTime 时间序列开始时间(可选)，格式yyyy-MM-dd HH:mm:ss
+     * @param endTime 时间序列结束时间(可选，不含)，格式yyyy-MM-dd HH:mm:ss
+     * @param granularity 时间序列粒度: hour-按小时 day-按天，默认day
      * @return 订单统计信息
      */
     @ApiOperation("获取订单统计数据")
+    @ApiImplicitParams({
+        @ApiImplicitParam(name = "startTime", value = "时间序列开始时间(可选)，格式yyyy-MM-dd HH:mm:ss", required = false, paramType = "query"),
+        @ApiImplicitParam(name = "endTime", value = "时间序列结束时间(可选，不含)，格式yyyy-MM-dd HH:mm:ss", required = false, paramType = "query"),
+        @ApiImplicitParam(name = "granularity", value = "时间序列粒度: hour-按小时 day-按天", required = false, paramType = "query")
+    })
     @GetMapping("/statistics")
-    public Result<OrderStatisticsVO> getOrderStatistics(HttpServletRequest request) {
+    public Result<OrderStatisticsVO> getOrderStatistics(
+        HttpServletRequest request,
+        @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") Date startTime,
+        @RequestParam(required = false) @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") Date endTime,
+        @RequestParam(defaultValue = "day") String granularity
+    ) {
         // 权限校验：只有管理员可以查看订单统计数据
         if (!authUtils.isAdmin(request)) {
             return Result.unauthorized();
         }
         
-        OrderStatisticsVO statistics = orderService.getOrderStatistics();
+        OrderStatisticsVO statistics = orderService.getOrderStatistics(startTime, endTime, granularity);
         return Result.success(statistics);
     }
 } 
\ No newline at end of file
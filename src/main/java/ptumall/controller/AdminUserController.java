@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.*;
 import ptumall.model.User;
 import ptumall.service.UserService;
 import ptumall.utils.AuthUtils;
+import ptumall.vo.CursorPageResult;
 import ptumall.vo.PageResult;
 import ptumall.vo.Result;
 import ptumall.vo.ResultCode;
@@ -64,6 +65,28 @@ public class AdminUserController {
         return Result.success(result);
     }
     
+    @ApiOperation("游标分页获取用户列表")
+    @ApiImplicitParams({
+        @ApiImplicitParam(name = "cursor", value = "上一页返回的游标(可选)", required = false, paramType = "query"),
+        @ApiImplicitParam(name = "pageSize", value = "每页数量", required = false, paramType = "query"),
+        @ApiImplicitParam(name = "countMode", value = "总数统计方式(可选): none/approx/exact", required = false, paramType = "query")
+    })
+    @GetMapping("/cursor")
+    public Result<CursorPageResult<User>> getAllUsersByCursor(
+        HttpServletRequest request,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "10") Integer pageSize,
+        @RequestParam(defaultValue = "none") String countMode
+    ) {
+        // 权限校验：只有管理员可以查看所有用户
+        if (!authUtils.isAdmin(request)) {
+            return Result.unauthorized();
+        }
+        
+        CursorPageResult<User> result = userService.getUserListByCursor(cursor, pageSize, countMode);
+        return Result.success(result);
+    }
+    
     @ApiOperation("获取用户总数")
     @GetMapping("/count")
     public Result<Integer> getUserCount(HttpServletRequest request) {
@@ -11,6 +11,7 @@ import ptumall.model.ChatSession;
 import ptumall.model.ChatMessageDTO;
 import ptumall.model.ChatSessionDTO;
 import ptumall.service.ChatService;
+import ptumall.vo.CursorPageResult;
 import ptumall.vo.Result;
 import ptumall.vo.ResultCode;
 import org.slf4j.Logger;
@@ -19,6 +20,7 @@ import org.slf4j.LoggerFactory;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 用户聊天控制器
@@ -114,6 +116,24 @@ public class ChatController {
         return Result.success(messages);
     }
 
+    /**
+     * 分页获取会话消息历史
+     * 第一次请求不传beforeId，返回最新的一页；向上翻页时传入上一页返回的nextCursor作为beforeId
+     * 
+     * @param sessionId 会话ID
+     * @param beforeId 只返回ID小于该值的消息
+     * @param limit 每页数量，默认20，最大100
+     * @return 按消息ID升序排列的一页消息
+     */
+    @ApiOperation(value = "分页获取会话消息历史", notes = "按消息ID向前翻页获取历史消息，第一页从内存缓存返回")
+    @GetMapping("/messages/history")
+    public Result<CursorPageResult<ChatMessage>> getMessageHistory(
+            @ApiParam(value = "会话ID", required = true) @RequestParam String sessionId,
+            @ApiParam(value = "上一页返回的nextCursor，不传表示最新一页") @RequestParam(required = false) Long beforeId,
+            @ApiParam(value = "每页数量，默认20，最大100") @RequestParam(required = false) Integer limit) {
+        return Result.success(chatService.getSessionMessages(sessionId, beforeId, limit));
+    }
+
     /**
      * 发送消息
      * 在指定会话中发送一条新消息
@@ -218,6 +238,20 @@ public class ChatController {
         return Result.success(count);
     }
     
+    /**
+     * 获取各会话未读消息数量
+     * 返回有未读消息的会话及其未读数，计数变化时也会通过WebSocket推送
+     * 
+     * @param userId 用户ID
+     * @return 会话ID -> 未读消息数量
+     */
+    @ApiOperation(value = "获取各会话未读消息数量", notes = "获取指定用户每个会话的未读消息数量")
+    @GetMapping("/unread/sessions")
+    public Result<Map<String, Integer>> getSessionUnreadCounts(
+            @ApiParam(value = "用户ID", required = true) @RequestParam Long userId) {
+        return Result.success(chatService.getSessionUnreadCounts(userId, "customer"));
+    }
+    
     /**
      * 删除会话
      * 删除指定的会话及其所有消息记录
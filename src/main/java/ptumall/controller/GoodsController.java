@@ -53,8 +53,9 @@ public class GoodsController {
     @ApiOperation("获取推荐商品")
     @GetMapping("/recommend")
     public Result<List<Goods>> getRecommendGoods(
-            @ApiParam(value = "限制数量", required = false) @RequestParam(required = false) Integer limit) {
-        List<Goods> recommendGoods = goodsService.getRecommendGoods(limit);
+            @ApiParam(value = "限制数量", required = false) @RequestParam(required = false) Integer limit,
+            @ApiParam(value = "分类ID（含子分类）", required = false) @RequestParam(required = false) Integer categoryId) {
+        List<Goods> recommendGoods = goodsService.getRecommendGoods(categoryId, limit);
         return Result.success(recommendGoods);
     }
 }
@@ -10,6 +10,8 @@ import ptumall.config.JWTInterceptors;
 import ptumall.model.GoodsReview;
 import ptumall.service.FileService;
 import ptumall.service.GoodsReviewService;
+import ptumall.vo.CursorPageResult;
+import ptumall.vo.GoodsRatingVO;
 import ptumall.vo.Result;
 
 import javax.servlet.http.HttpServletRequest;
@@ -71,6 +73,26 @@ public class GoodsReviewController {
         return goodsReviewService.getReviewsByGoodsId(goodsId);
     }
     
+    /**
+     * 分页获取商品评价列表
+     * 按最新、点赞最多或评分最高排序，使用游标翻页
+     * 
+     * @param goodsId 商品ID
+     * @param sort 排序方式
+     * @param cursor 上一页返回的游标
+     * @param pageSize 每页数量
+     * @return 游标分页的评价列表
+     */
+    @GetMapping("/goods/{goodsId}/feed")
+    @ApiOperation("分页获取商品评价列表")
+    public Result<CursorPageResult<GoodsReview>> getReviewFeed(
+            @ApiParam(value = "商品ID", required = true) @PathVariable Integer goodsId,
+            @ApiParam(value = "排序方式：newest-最新，likes-点赞最多，rating-评分最高") @RequestParam(defaultValue = "newest") String sort,
+            @ApiParam(value = "上一页返回的游标，第一页不传") @RequestParam(required = false) String cursor,
+            @ApiParam(value = "每页数量") @RequestParam(defaultValue = "10") Integer pageSize) {
+        return goodsReviewService.getReviewFeed(goodsId, sort, cursor, pageSize);
+    }
+    
     /**
      * 获取用户的评价列表
      * 查询当前用户的所有评价
@@ -218,6 +240,20 @@ public class GoodsReviewController {
         return goodsReviewService.getReviewCount(goodsId);
     }
     
+    /**
+     * 获取商品评分汇总
+     * 返回平均评分、评价数和1-5星的评价分布
+     * 
+     * @param goodsId 商品ID
+     * @return 评分汇总
+     */
+    @GetMapping("/goods/{goodsId}/rating/summary")
+    @ApiOperation("获取商品评分汇总")
+    public Result<GoodsRatingVO> getRatingSummary(
+            @ApiParam(value = "商品ID", required = true) @PathVariable Integer goodsId) {
+        return goodsReviewService.getRatingSummary(goodsId);
+    }
+    
     /**
      * 上传评价图片
      * 支持用户在上传评价时附带图片
@@ -2,6 +2,7 @@ package ptumall.dao;
 
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
@@ -9,6 +10,7 @@ import org.apache.ibatis.annotations.Delete;
 import ptumall.model.ChatMessage;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 聊天消息Mapper接口
@@ -21,8 +23,34 @@ public interface ChatMessageMapper {
      */
     @Insert("INSERT INTO chat_message(content, sender_id, sender_type, receiver_id, receiver_type, create_time, status, session_id) " +
             "VALUES(#{content}, #{senderId}, #{senderType}, #{receiverId}, #{receiverType}, #{createTime}, #{status}, #{sessionId})")
+    @Options(useGeneratedKeys = true, keyProperty = "id", keyColumn = "id")
     int insert(ChatMessage chatMessage);
 
+    /**
+     * 批量保存聊天消息（多行插入），生成的消息ID回填到对象中
+     */
+    @Insert({"<script>",
+            "INSERT INTO chat_message(content, sender_id, sender_type, receiver_id, receiver_type, create_time, status, session_id) VALUES ",
+            "<foreach collection='messages' item='m' separator=','>",
+            "(#{m.content}, #{m.senderId}, #{m.senderType}, #{m.receiverId}, #{m.receiverType}, #{m.createTime}, #{m.status}, #{m.sessionId})",
+            "</foreach>",
+            "</script>"})
+    @Options(useGeneratedKeys = true, keyProperty = "messages.id", keyColumn = "id")
+    int batchInsert(@Param("messages") List<ChatMessage> messages);
+
+    /**
+     * 查询节点本地日志已写入数据库的最大序号
+     */
+    @Select("SELECT last_seq FROM chat_message_journal WHERE node_id = #{nodeId}")
+    Long findJournalCheckpoint(@Param("nodeId") String nodeId);
+
+    /**
+     * 保存节点本地日志已写入数据库的最大序号，与消息在同一事务中提交
+     */
+    @Insert("INSERT INTO chat_message_journal(node_id, last_seq, update_time) VALUES(#{nodeId}, #{lastSeq}, NOW()) " +
+            "ON DUPLICATE KEY UPDATE last_seq = GREATEST(last_seq, VALUES(last_seq)), update_time = NOW()")
+    int saveJournalCheckpoint(@Param("nodeId") String nodeId, @Param("lastSeq") Long lastSeq);
+
     /**
      * 查询会话中的聊天记录
      */
@@ -31,6 +59,28 @@ public interface ChatMessageMapper {
             "FROM chat_message WHERE session_id = #{sessionId} ORDER BY create_time ASC")
     List<ChatMessage> findBySessionId(@Param("sessionId") String sessionId);
 
+    /**
+     * 按消息ID倒序查询会话中指定消息之前的聊天记录（使用(session_id, id)索引）
+     * @param beforeId 只返回ID小于该值的消息，为null时从最新一条开始
+     */
+    @Select({"<script>",
+            "SELECT id, content, sender_id as senderId, sender_type as senderType, receiver_id as receiverId, ",
+            "receiver_type as receiverType, create_time as createTime, status, session_id as sessionId ",
+            "FROM chat_message WHERE session_id = #{sessionId} ",
+            "<if test='beforeId != null'>AND id &lt; #{beforeId} </if>",
+            "ORDER BY id DESC LIMIT #{limit}",
+            "</script>"})
+    List<ChatMessage> findBySessionIdBefore(@Param("sessionId") String sessionId, @Param("beforeId") Long beforeId,
+                                            @Param("limit") int limit);
+
+    /**
+     * 根据ID查询消息
+     */
+    @Select("SELECT id, content, sender_id as senderId, sender_type as senderType, receiver_id as receiverId, " +
+            "receiver_type as receiverType, create_time as createTime, status, session_id as sessionId " +
+            "FROM chat_message WHERE id = #{id}")
+    ChatMessage findById(@Param("id") Long id);
+
     /**
      * 查询未读消息
      */
@@ -38,11 +88,19 @@ public interface ChatMessageMapper {
             "receiver_type as receiverType, create_time as createTime, status, session_id as sessionId " +
             "FROM chat_message WHERE receiver_id = #{receiverId} AND receiver_type = #{receiverType} AND status = 0")
     List<ChatMessage> findUnreadMessages(@Param("receiverId") Long receiverId, @Param("receiverType") String receiverType);
+
+    /**
+     * 按会话统计接收者的未读消息数
+     * @return 每行包含sessionId和unreadCount
+     */
+    @Select("SELECT session_id as sessionId, COUNT(*) as unreadCount FROM chat_message " +
+            "WHERE receiver_id = #{receiverId} AND receiver_type = #{receiverType} AND status = 0 GROUP BY session_id")
+    List<Map<String, Object>> countUnreadBySession(@Param("receiverId") Long receiverId, @Param("receiverType") String receiverType);
     
     /**
-     * 将消息标记为已读
+     * 将消息标记为已读，消息原本未读时返回1
      */
-    @Update("UPDATE chat_message SET status = 1 WHERE id = #{id}")
+    @Update("UPDATE chat_message SET status = 1 WHERE id = #{id} AND status = 0")
     int markAsRead(@Param("id") Long id);
     
     /**
@@ -51,6 +109,13 @@ public interface ChatMessageMapper {
     @Update("UPDATE chat_message SET status = 1 WHERE session_id = #{sessionId} AND receiver_id = #{receiverId} AND receiver_type = #{receiverType}")
     int markAllAsRead(@Param("sessionId") String sessionId, @Param("receiverId") Long receiverId, @Param("receiverType") String receiverType);
     
+    /**
+     * 会话分配管理员后，把此前发给默认管理员的消息转给该管理员
+     */
+    @Update("UPDATE chat_message SET receiver_id = #{adminId} WHERE session_id = #{sessionId} " +
+            "AND receiver_type = 'admin' AND receiver_id <> #{adminId}")
+    int transferToAdmin(@Param("sessionId") String sessionId, @Param("adminId") Long adminId);
+    
     /**
      * 删除会话中的所有消息
      */
@@ -8,7 +8,9 @@ import org.apache.ibatis.annotations.Update;
 import org.apache.ibatis.annotations.Delete;
 import ptumall.model.ChatSession;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 聊天会话Mapper接口
@@ -67,11 +69,45 @@ public interface ChatSessionMapper {
             "FROM chat_session WHERE admin_id IS NULL AND status = 0 ORDER BY create_time ASC")
     List<ChatSession> findPendingSessions();
     
+    /**
+     * 接入会话，仅当会话进行中且尚未分配管理员时成功
+     */
+    @Update("UPDATE chat_session SET admin_id = #{adminId}, last_update_time = NOW() " +
+            "WHERE id = #{id} AND admin_id IS NULL AND status = 0")
+    int claimAdmin(@Param("id") String id, @Param("adminId") Long adminId);
+
+    /**
+     * 释放会话的管理员，仅当会话进行中且仍由该管理员接入时成功
+     */
+    @Update("UPDATE chat_session SET admin_id = NULL, last_update_time = NOW() " +
+            "WHERE id = #{id} AND admin_id = #{adminId} AND status = 0")
+    int releaseAdmin(@Param("id") String id, @Param("adminId") Long adminId);
+    
+    /**
+     * 查询已分配管理员的进行中会话（只包含会话ID和管理员ID）
+     */
+    @Select("SELECT id, admin_id as adminId FROM chat_session WHERE admin_id IS NOT NULL AND status = 0")
+    List<ChatSession> findActiveAssigned();
+    
     /**
      * 更新会话最后更新时间
      */
     @Update("UPDATE chat_session SET last_update_time = NOW() WHERE id = #{id}")
     int updateLastTime(@Param("id") String id);
+
+    /**
+     * 批量更新会话最后更新时间
+     * @param lastTimes 会话ID -> 最后更新时间
+     */
+    @Update({"<script>",
+            "UPDATE chat_session SET last_update_time = CASE id ",
+            "<foreach collection='lastTimes' index='sessionId' item='lastTime'>",
+            "WHEN #{sessionId} THEN GREATEST(last_update_time, #{lastTime}) ",
+            "</foreach>",
+            "END WHERE id IN ",
+            "<foreach collection='lastTimes' index='sessionId' open='(' separator=',' close=')'>#{sessionId}</foreach>",
+            "</script>"})
+    int batchUpdateLastTime(@Param("lastTimes") Map<String, Date> lastTimes);
     
     /**
      * 删除会话
@@ -0,0 +1,33 @@
+package ptumall.dao;
+
+import org.apache.ibatis.annotations.Delete;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+
+/**
+ * 回写批次记录Mapper接口
+ * 异步回写在写库的同一事务中登记批次ID，重放已提交的批次时据此跳过，避免重复累加
+ */
+@Mapper
+public interface FlushBatchDao {
+
+    /**
+     * 登记回写批次，批次已存在时不做修改
+     * @param batchId 批次ID
+     * @param source 回写来源，如stock:hot
+     * @return 影响的行数，0表示该批次已经写入过
+     */
+    @Insert("INSERT IGNORE INTO flush_batch(batch_id, source, create_time) VALUES(#{batchId}, #{source}, NOW())")
+    int insertIfAbsent(@Param("batchId") String batchId, @Param("source") String source);
+
+    /**
+     * 删除早于指定时间的批次记录
+     * @param before 截止时间
+     * @return 删除的行数
+     */
+    @Delete("DELETE FROM flush_batch WHERE create_time < #{before}")
+    int deleteBefore(@Param("before") Date before);
+}
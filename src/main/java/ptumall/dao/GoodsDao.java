@@ -2,7 +2,10 @@ package ptumall.dao;
 
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ResultHandler;
 import ptumall.model.Goods;
+import ptumall.model.OrderItems;
 
 import java.math.BigDecimal;
 import java.util.List;
@@ -23,10 +26,52 @@ public interface GoodsDao {
      */
     Goods selectById(Integer id);
     
+    /**
+     * 只查询商品的库存和销量，用于覆盖详情缓存中的静态信息
+     * @param id 商品ID
+     * @return 只包含id、stock、salesVolume的商品对象，不存在返回null
+     */
+    Goods selectStockById(Integer id);
+    
+    /**
+     * 根据ID列表批量查询商品
+     * @param ids 商品ID列表
+     * @return 商品列表（不保证顺序）
+     */
+    List<Goods> selectByIds(@Param("ids") List<Integer> ids);
+    
+    /**
+     * 根据ID列表批量查询并锁定商品，按ID升序加锁，避免并发下单时死锁
+     * @param ids 商品ID列表
+     * @return 商品列表（按ID升序）
+     */
+    List<Goods> selectByIdsForUpdate(@Param("ids") List<Integer> ids);
+    
+    /**
+     * 流式遍历所有上架商品，用于重建搜索索引
+     * @param handler 逐行处理结果的回调
+     */
+    void scanActiveGoods(ResultHandler<Goods> handler);
+    
+    /**
+     * 从候选商品中筛选描述包含关键词的商品（不区分大小写），用于校验搜索索引的描述命中
+     * @param ids 候选商品ID
+     * @param keyword 关键词
+     * @return 描述包含关键词的商品ID
+     */
+    List<Integer> filterIdsByDescription(@Param("ids") List<Integer> ids, @Param("keyword") String keyword);
+    
+    /**
+     * 按ID顺序流式读取商品，用于导出；需在事务内遍历，遍历期间连接不能执行其他查询
+     * @param categoryId 分类ID，为空时导出全部商品
+     * @return 商品游标
+     */
+    Cursor<Goods> streamForExport(@Param("categoryId") Integer categoryId);
+    
     /**
      * 查询商品列表
      * @param categoryIds 分类ID列表，可为null
-     * @param keyword 关键词，可为null
+     * @param keyword 关键词，可为null，匹配名称或描述，不区分大小写
      * @param sortBy 排序字段，可为null，可选值：price, rating, sales, newest
      * @param sortDirection 排序方向，可为null，可选值：asc, desc
      * @return 商品列表
@@ -72,6 +117,14 @@ public interface GoodsDao {
      */
     List<Goods> findRecommend(@Param("limit") Integer limit);
     
+    /**
+     * 查询指定分类下的推荐商品（按评分、销量排序）
+     * @param categoryIds 分类ID列表
+     * @param limit 限制数量
+     * @return 推荐商品列表
+     */
+    List<Goods> findRecommendByCategory(@Param("categoryIds") List<Integer> categoryIds, @Param("limit") Integer limit);
+    
     /**
      * 更新商品库存
      * @param id 商品ID
@@ -80,6 +133,43 @@ public interface GoodsDao {
      */
     int updateStock(@Param("id") Integer id, @Param("stock") Integer stock);
     
+    /**
+     * 条件扣减商品库存，库存不足时不做修改
+     * @param id 商品ID
+     * @param quantity 扣减数量
+     * @return 影响的行数，0表示库存不足或商品不存在
+     */
+    int decrementStockIfAvailable(@Param("id") Integer id, @Param("quantity") Integer quantity);
+    
+    /**
+     * 批量条件扣减商品库存，只更新库存充足的商品
+     * @param items 扣减明细（goodsId、quantity），商品ID不可重复
+     * @return 影响的行数，小于明细数量表示存在库存不足的商品
+     */
+    int batchDecrementStockIfAvailable(@Param("items") List<OrderItems> items);
+    
+    /**
+     * 增加商品库存
+     * @param id 商品ID
+     * @param quantity 增加数量
+     * @return 影响的行数
+     */
+    int incrementStock(@Param("id") Integer id, @Param("quantity") Integer quantity);
+    
+    /**
+     * 批量增加商品库存
+     * @param items 增加明细（goodsId、quantity），商品ID不可重复
+     * @return 影响的行数
+     */
+    int batchIncrementStock(@Param("items") List<OrderItems> items);
+    
+    /**
+     * 批量应用库存变化，更新后小于0的库存记为0
+     * @param items 库存变化明细（goodsId、quantity，负数表示扣减），商品ID不可重复
+     * @return 影响的行数
+     */
+    int batchApplyStockDelta(@Param("items") List<OrderItems> items);
+    
     /**
      * 更新商品评分
      * @param id 商品ID
@@ -96,6 +186,13 @@ public interface GoodsDao {
      */
     int updateSalesVolume(@Param("id") Integer id, @Param("increment") Integer increment);
     
+    /**
+     * 批量更新商品销量，更新后小于0的销量记为0
+     * @param items 销量变化明细（goodsId、quantity），商品ID不可重复
+     * @return 影响的行数
+     */
+    int batchUpdateSalesVolume(@Param("items") List<OrderItems> items);
+    
     /**
      * 获取商品总数
      * @return 商品总数
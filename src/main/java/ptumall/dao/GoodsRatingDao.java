@@ -0,0 +1,39 @@
+package ptumall.dao;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import ptumall.model.GoodsRating;
+
+@Mapper
+public interface GoodsRatingDao {
+    
+    /**
+     * 查询商品评分汇总
+     * @param goodsId 商品ID
+     * @return 评分汇总，商品没有评价记录时返回null
+     */
+    GoodsRating findByGoodsId(Integer goodsId);
+    
+    /**
+     * 计入一条评价，汇总记录不存在时创建
+     * @param goodsId 商品ID
+     * @param rating 评分（1-5）
+     * @return 影响的行数
+     */
+    int addRating(@Param("goodsId") Integer goodsId, @Param("rating") Integer rating);
+    
+    /**
+     * 移除一条评价
+     * @param goodsId 商品ID
+     * @param rating 评分（1-5）
+     * @return 影响的行数
+     */
+    int removeRating(@Param("goodsId") Integer goodsId, @Param("rating") Integer rating);
+    
+    /**
+     * 按评分汇总同步商品评分，没有评价时评分为0
+     * @param goodsId 商品ID
+     * @return 影响的行数
+     */
+    int syncGoodsRating(Integer goodsId);
+}
@@ -4,6 +4,8 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import ptumall.model.GoodsReview;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 @Mapper
@@ -30,6 +32,23 @@ public interface GoodsReviewDao {
      */
     List<GoodsReview> findByGoodsId(Integer goodsId);
     
+    /**
+     * 游标分页查询商品评价，按排序值和ID倒序
+     * @param goodsId 商品ID
+     * @param sort 排序方式：newest、likes、rating
+     * @param afterKey 上一页最后一条记录的点赞数或评分，按最新排序时不使用
+     * @param afterTime 上一页最后一条记录的创建时间，仅按最新排序时使用
+     * @param afterId 上一页最后一条记录的ID，第一页为null
+     * @param limit 查询条数
+     * @return 评价列表
+     */
+    List<GoodsReview> findPageByGoodsId(@Param("goodsId") Integer goodsId,
+                                        @Param("sort") String sort,
+                                        @Param("afterKey") Long afterKey,
+                                        @Param("afterTime") Date afterTime,
+                                        @Param("afterId") Integer afterId,
+                                        @Param("limit") int limit);
+    
     /**
      * 根据用户ID查询评价列表
      * @param userId 用户ID
@@ -63,6 +82,27 @@ public interface GoodsReviewDao {
      */
     int updateLikeCount(@Param("id") Integer id, @Param("likeCount") Integer likeCount);
     
+    /**
+     * 批量更新评价点赞数
+     * @param reviews 评价列表（ID和点赞数）
+     * @return 影响的行数
+     */
+    int batchUpdateLikeCount(@Param("reviews") List<GoodsReview> reviews);
+    
+    /**
+     * 查询评价的点赞数
+     * @param id 评价ID
+     * @return 点赞数，评价不存在时返回null
+     */
+    Integer findLikeCountById(Integer id);
+    
+    /**
+     * 查询评价所属的商品ID
+     * @param ids 评价ID列表
+     * @return 去重后的商品ID列表
+     */
+    List<Integer> findGoodsIdsByIds(@Param("ids") Collection<Integer> ids);
+    
     /**
      * 删除评价
      * @param id 评价ID
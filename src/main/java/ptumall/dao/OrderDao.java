@@ -2,10 +2,12 @@ package ptumall.dao;
 
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 import ptumall.model.Orders;
 import ptumall.model.OrderItems;
 
 import java.math.BigDecimal;
+import java.util.Date;
 import java.util.List;
 
 @Mapper
@@ -67,6 +69,13 @@ public interface OrderDao {
      */
     List<OrderItems> selectOrderItemsByOrderId(Integer orderId);
     
+    /**
+     * 根据订单ID列表批量查询订单商品
+     * @param orderIds 订单ID列表
+     * @return 订单商品列表
+     */
+    List<OrderItems> selectOrderItemsByOrderIds(@Param("orderIds") List<Integer> orderIds);
+    
     /**
      * 更新订单状态
      * @param id 订单ID
@@ -75,6 +84,46 @@ public interface OrderDao {
      */
     int updateStatus(@Param("id") Integer id, @Param("status") Byte status);
     
+    /**
+     * 仅当订单处于指定状态时更新订单状态
+     * @param id 订单ID
+     * @param expectStatus 期望的当前状态
+     * @param status 新的订单状态
+     * @return 影响行数，0表示订单状态已被修改
+     */
+    int updateStatusIfMatch(@Param("id") Integer id, @Param("expectStatus") Byte expectStatus, @Param("status") Byte status);
+    
+    /**
+     * 锁定指定订单中仍待付款的订单
+     * @param ids 订单ID列表
+     * @return 待付款订单（只包含ID、状态、总金额和创建时间）
+     */
+    List<Orders> selectUnpaidForUpdate(@Param("ids") List<Integer> ids);
+    
+    /**
+     * 批量将待付款订单更新为已取消
+     * @param ids 订单ID列表
+     * @return 影响行数
+     */
+    int cancelUnpaid(@Param("ids") List<Integer> ids);
+    
+    /**
+     * 查询所有待付款订单（只包含ID和创建时间）
+     * @return 待付款订单列表
+     */
+    List<Orders> selectUnpaid();
+    
+    /**
+     * 按创建时间、ID升序分批查询创建时间早于指定时间的待付款订单
+     * @param before 创建时间上限（不含）
+     * @param afterCreateTime 上一批最后一条的创建时间，第一批为null
+     * @param afterId 上一批最后一条的ID，第一批为null
+     * @param limit 每批数量
+     * @return 待付款订单（只包含ID和创建时间）
+     */
+    List<Orders> selectOverdueUnpaid(@Param("before") Date before, @Param("afterCreateTime") Date afterCreateTime,
+                                     @Param("afterId") Integer afterId, @Param("limit") int limit);
+    
     /**
      * 支付订单
      * @param id 订单ID
@@ -103,6 +152,32 @@ public interface OrderDao {
      */
     List<Orders> selectAllByStatus(Byte status);
     
+    /**
+     * 游标分页查询所有订单，按创建时间、ID倒序
+     * @param status 订单状态，可为null
+     * @param afterCreateTime 上一页最后一条订单的创建时间，第一页为null
+     * @param afterId 上一页最后一条订单的ID，第一页为null
+     * @param limit 查询数量
+     * @return 订单列表
+     */
+    List<Orders> selectAllByCursor(@Param("status") Byte status,
+                                   @Param("afterCreateTime") Date afterCreateTime,
+                                   @Param("afterId") Integer afterId,
+                                   @Param("limit") Integer limit);
+    
+    /**
+     * 根据订单状态统计订单数量
+     * @param status 订单状态
+     * @return 订单数量
+     */
+    int countByStatus(Byte status);
+    
+    /**
+     * 估算订单总数（读取表统计信息）
+     * @return 估算的订单总数
+     */
+    Long estimateCount();
+    
     /**
      * 根据订单号模糊查询订单
      * @param orderNo 订单号关键词
@@ -159,6 +234,18 @@ public interface OrderDao {
      */
     BigDecimal sumTotalAmount();
     
+    /**
+     * 流式遍历所有订单（只包含ID、状态、总金额和创建时间），用于重建订单统计
+     * @param handler 逐行处理结果的回调
+     */
+    void scanForStatistics(ResultHandler<Orders> handler);
+    
+    /**
+     * 查询最小的订单ID，重建订单统计时用于在事务中建立一致性读快照
+     * @return 最小的订单ID，没有订单时返回null
+     */
+    Integer findFirstId();
+    
     /**
      * 更新订单
      * @param order 订单信息
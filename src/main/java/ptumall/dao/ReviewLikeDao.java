@@ -4,6 +4,8 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 import ptumall.model.ReviewLike;
 
+import java.util.List;
+
 @Mapper
 public interface ReviewLikeDao {
     
@@ -36,4 +38,25 @@ public interface ReviewLikeDao {
      * @return 点赞数
      */
     int countByReviewId(Integer reviewId);
-} 
\ No newline at end of file
+    
+    /**
+     * 查询用户点赞过的评价ID
+     * @param userId 用户ID
+     * @return 评价ID列表
+     */
+    List<Integer> findReviewIdsByUserId(Integer userId);
+    
+    /**
+     * 批量添加点赞记录，已存在的记录忽略
+     * @param likes 点赞记录
+     * @return 影响的行数
+     */
+    int batchInsertIgnore(@Param("likes") List<ReviewLike> likes);
+    
+    /**
+     * 批量删除点赞记录
+     * @param likes 点赞记录（用户ID和评价ID）
+     * @return 影响的行数
+     */
+    int batchDelete(@Param("likes") List<ReviewLike> likes);
+}
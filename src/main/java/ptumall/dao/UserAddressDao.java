@@ -1,6 +1,7 @@
 package ptumall.dao;
 
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import ptumall.model.UserAddress;
 import java.util.List;
 
@@ -20,6 +21,13 @@ public interface UserAddressDao {
      */
     UserAddress selectById(Integer id);
     
+    /**
+     * 根据ID列表批量查询收货地址
+     * @param ids 收货地址ID列表
+     * @return 收货地址列表
+     */
+    List<UserAddress> selectByIds(@Param("ids") List<Integer> ids);
+    
     /**
      * 查询用户的收货地址列表
      * @param userId 用户ID
@@ -1,8 +1,10 @@
 package ptumall.dao;
 
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 import ptumall.model.User;
 
+import java.util.Date;
 import java.util.List;
 
 @Mapper
@@ -49,6 +51,23 @@ public interface UserDao {
      */
     List<User> findAll();
     
+    /**
+     * 游标分页查询用户，按创建时间、ID倒序
+     * @param afterCreateTime 上一页最后一个用户的创建时间，第一页为null
+     * @param afterId 上一页最后一个用户的ID，第一页为null
+     * @param limit 查询数量
+     * @return 用户列表
+     */
+    List<User> findAllByCursor(@Param("afterCreateTime") Date afterCreateTime,
+                               @Param("afterId") Integer afterId,
+                               @Param("limit") Integer limit);
+    
+    /**
+     * 估算用户总数（读取表统计信息）
+     * @return 估算的用户总数
+     */
+    Long estimateCount();
+    
     /**
      * 根据用户名模糊搜索用户
      * @param username 用户名关键词
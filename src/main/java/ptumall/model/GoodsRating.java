@@ -0,0 +1,37 @@
+package ptumall.model;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+import java.util.Date;
+
+@Data
+@ApiModel("商品评分汇总实体类")
+public class GoodsRating {
+    @ApiModelProperty(value = "商品ID", example = "1")
+    private Integer goodsId;
+    
+    @ApiModelProperty(value = "评价数", example = "10")
+    private Integer ratingCount;
+    
+    @ApiModelProperty(value = "评分总和", example = "45")
+    private Integer ratingSum;
+    
+    @ApiModelProperty(value = "1星评价数", example = "0")
+    private Integer star1;
+    
+    @ApiModelProperty(value = "2星评价数", example = "0")
+    private Integer star2;
+    
+    @ApiModelProperty(value = "3星评价数", example = "1")
+    private Integer star3;
+    
+    @ApiModelProperty(value = "4星评价数", example = "3")
+    private Integer star4;
+    
+    @ApiModelProperty(value = "5星评价数", example = "6")
+    private Integer star5;
+    
+    @ApiModelProperty(value = "更新时间", hidden = true)
+    private Date updateTime;
+}
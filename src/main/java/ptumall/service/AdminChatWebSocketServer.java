@@ -1,7 +1,7 @@
 package ptumall.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import ptumall.model.ChatMessageDTO;
 
@@ -9,6 +9,7 @@ import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -20,16 +21,30 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 @Slf4j  // Lombok注解，自动创建日志对象log
 @Component  // Spring组件注解，将此类注册为Spring容器管理的Bean
-@ServerEndpoint("/admin/ws/chat/{userId}/admin")  // WebSocket端点路径，{userId}为管理员ID
+// WebSocket端点路径，{userId}为管理员ID；客户端可通过子协议选择JSON文本帧或CBOR二进制帧
+@ServerEndpoint(value = "/admin/ws/chat/{userId}/admin", subprotocols = {ChatFrame.PROTOCOL_JSON, ChatFrame.PROTOCOL_CBOR})
 public class AdminChatWebSocketServer {
 
     // 用于存储在线管理员连接，key为adminId_admin，value为WebSocket会话对象
     // 使用ConcurrentHashMap保证线程安全，支持多管理员并发连接
     private static final Map<String, Session> onlineAdmins = new ConcurrentHashMap<>();
     
-    // 用于处理JSON序列化和反序列化
-    // 在WebSocket通信中，消息以JSON字符串形式传输
-    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // 在线状态与跨节点路由服务
+    // WebSocket端点实例由容器为每个连接创建，无法直接注入，通过Spring管理的实例注入到静态字段
+    private static ChatPresenceService chatPresenceService;
+    
+    @Autowired
+    public void setChatPresenceService(ChatPresenceService chatPresenceService) {
+        AdminChatWebSocketServer.chatPresenceService = chatPresenceService;
+    }
+    
+    // 会话分配服务，管理员上线后开始接收新会话
+    private static ChatAssignmentService chatAssignmentService;
+    
+    @Autowired
+    public void setChatAssignmentService(ChatAssignmentService chatAssignmentService) {
+        AdminChatWebSocketServer.chatAssignmentService = chatAssignmentService;
+    }
     
     /**
      * 连接建立成功调用的方法
@@ -44,6 +59,12 @@ public class AdminChatWebSocketServer {
         String key = userId + "_admin";
         // 将会话存储到在线管理员映射表
         onlineAdmins.put(key, session);
+        // 登记管理员所在节点
+        chatPresenceService.online(userId, "admin");
+        // 登记为可分配会话的管理员，并分配等待中的会话
+        chatAssignmentService.onAdminOnline(userId);
+        // 开始心跳检测
+        ChatHeartbeatMonitor.register(session);
         log.info("管理员连接: {}，当前在线管理员数: {}", key, onlineAdmins.size());
     }
 
@@ -51,14 +72,21 @@ public class AdminChatWebSocketServer {
      * 连接关闭调用的方法
      * 当管理员客户端断开连接或会话超时时触发
      * 
+     * @param session WebSocket会话对象
      * @param userId 路径中的管理员ID参数
      */
     @OnClose
-    public void onClose(@PathParam("userId") Long userId) {
+    public void onClose(Session session, @PathParam("userId") Long userId) {
         // 构建管理员连接的唯一标识键
         String key = userId + "_admin";
-        // 从在线管理员映射表中移除会话
-        onlineAdmins.remove(key);
+        // 从在线管理员映射表中移除会话，同一管理员已重新连接时不移除新会话
+        if (onlineAdmins.remove(key, session)) {
+            chatPresenceService.offline(userId, "admin");
+            chatAssignmentService.onAdminOffline(userId);
+        }
+        // 释放该连接的发送队列，停止心跳检测
+        ChatMessageDispatcher.release(session);
+        ChatHeartbeatMonitor.unregister(session);
         log.info("管理员断开: {}，当前在线管理员数: {}", key, onlineAdmins.size());
     }
 
@@ -73,41 +101,79 @@ public class AdminChatWebSocketServer {
     @OnMessage
     public void onMessage(String message, Session session, @PathParam("userId") Long userId) {
         log.info("收到来自管理员{}的消息: {}", userId, message);
+        ChatHeartbeatMonitor.touch(session);
         
         try {
             // 将JSON字符串解析为ChatMessageDTO对象
-            ChatMessageDTO chatMessageDTO = objectMapper.readValue(message, ChatMessageDTO.class);
-            
-            // 补充发送者信息，确保消息中包含正确的管理员ID和类型
-            chatMessageDTO.setSenderId(userId);
-            chatMessageDTO.setSenderType("admin");  // 标记为管理员发送的消息
-            chatMessageDTO.setTimestamp(System.currentTimeMillis());  // 添加时间戳
-            
-            // 构建接收者(客户)的标识
-            String receiverKey = chatMessageDTO.getReceiverId() + "_" + chatMessageDTO.getReceiverType();
-            
-            // 获取接收者(客户)的WebSocket会话
-            // 注意这里调用的是ChatWebSocketServer中的方法，实现管理员向客户发送消息
-            Session customerSession = ChatWebSocketServer.getSession(
-                    chatMessageDTO.getReceiverId(), chatMessageDTO.getReceiverType());
-                    
-            // 如果接收者在线，则直接通过WebSocket发送消息
-            if (customerSession != null) {
-                // 将消息对象转换为JSON字符串并发送
-                sendMessage(customerSession, objectMapper.writeValueAsString(chatMessageDTO));
-                log.info("消息已转发给客户: {}", receiverKey);
-            } else {
-                // 接收者不在线，消息将只保存在数据库中
-                log.info("客户{}不在线，消息将被保存", receiverKey);
-                // 消息的持久化存储由调用WebSocket的业务服务处理
-                // 即使接收者不在线，消息也已经保存在数据库中，用户上线后可以查看
-            }
+            forward(ChatFrame.decode(message, ChatMessageDTO.class), userId);
         } catch (Exception e) {
             // 处理消息解析或发送过程中的异常
             log.error("消息处理出错", e);
         }
     }
 
+    /**
+     * 收到客户端二进制消息后调用的方法
+     * 协商使用chat.cbor子协议的客户端以CBOR编码发送消息
+     * 
+     * @param message 客户端发送的CBOR编码消息
+     * @param session WebSocket会话对象
+     * @param userId 路径中的管理员ID参数
+     */
+    @OnMessage
+    public void onBinaryMessage(ByteBuffer message, Session session, @PathParam("userId") Long userId) {
+        log.info("收到来自管理员{}的二进制消息: {}字节", userId, message.remaining());
+        ChatHeartbeatMonitor.touch(session);
+        
+        try {
+            forward(ChatFrame.decode(message, ChatMessageDTO.class), userId);
+        } catch (Exception e) {
+            log.error("消息处理出错", e);
+        }
+    }
+
+    /**
+     * 补充发送者信息后推送给接收者(客户)
+     * 
+     * @param chatMessageDTO 管理员发送的消息
+     * @param userId 发送消息的管理员ID
+     */
+    private void forward(ChatMessageDTO chatMessageDTO, Long userId) throws IOException {
+        // 补充发送者信息，确保消息中包含正确的管理员ID和类型
+        chatMessageDTO.setSenderId(userId);
+        chatMessageDTO.setSenderType("admin");  // 标记为管理员发送的消息
+        chatMessageDTO.setTimestamp(System.currentTimeMillis());  // 添加时间戳
+        
+        // 构建接收者(客户)的标识
+        String receiverKey = chatMessageDTO.getReceiverId() + "_" + chatMessageDTO.getReceiverType();
+        
+        // 推送给接收者(客户)，客户连接在其他节点时由该节点推送
+        boolean delivered = chatPresenceService.deliver(chatMessageDTO.getReceiverId(),
+                chatMessageDTO.getReceiverType(), ChatFrame.of(chatMessageDTO));
+                
+        // 如果接收者在线，则直接通过WebSocket发送消息
+        if (delivered) {
+            log.info("消息已转发给客户: {}", receiverKey);
+        } else {
+            // 接收者不在线，消息将只保存在数据库中
+            log.info("客户{}不在线，消息将被保存", receiverKey);
+            // 消息的持久化存储由调用WebSocket的业务服务处理
+            // 即使接收者不在线，消息也已经保存在数据库中，用户上线后可以查看
+        }
+    }
+
+    /**
+     * 收到客户端pong后调用的方法
+     * 客户端（包括浏览器）收到服务端的心跳ping后自动回应pong
+     * 
+     * @param pong pong消息
+     * @param session WebSocket会话对象
+     */
+    @OnMessage
+    public void onPong(PongMessage pong, Session session) {
+        ChatHeartbeatMonitor.pong(session);
+    }
+
     /**
      * 发生错误时调用的方法
      * 当WebSocket连接发生错误时触发
@@ -123,20 +189,15 @@ public class AdminChatWebSocketServer {
 
     /**
      * 发送消息的工具方法
-     * 通过WebSocket会话发送文本消息
+     * 按连接协商的编码发送文本帧或二进制帧
      * 此方法是静态的，可以被其他类调用
      * 
      * @param session 接收消息的WebSocket会话
-     * @param message 要发送的消息内容
+     * @param frame 要发送的消息帧
      */
-    public static void sendMessage(Session session, String message) {
-        try {
-            // 使用WebSocket的基本远程端点发送文本消息
-            session.getBasicRemote().sendText(message);
-        } catch (IOException e) {
-            // 处理消息发送失败的异常
-            log.error("发送消息出错", e);
-        }
+    public static void sendMessage(Session session, ChatFrame frame) {
+        // 放入该会话的发送队列，由发送线程池异步发送，不阻塞调用方
+        ChatMessageDispatcher.dispatch(session, frame);
     }
     
     /**
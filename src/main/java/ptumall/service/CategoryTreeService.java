@@ -0,0 +1,30 @@
+package ptumall.service;
+
+import java.util.List;
+
+public interface CategoryTreeService {
+    /**
+     * 获取分类及其所有子孙分类的ID（从内存分类树中直接读取）
+     * @param categoryId 分类ID，为0时返回0和全部分类
+     * @return 分类ID列表（包含自身），只读
+     */
+    List<Integer> getSubtreeIds(Integer categoryId);
+    
+    /**
+     * 分类是否存在（从内存分类树中直接判断）
+     * @param categoryId 分类ID
+     * @return 是否存在
+     */
+    boolean exists(Integer categoryId);
+    
+    /**
+     * 当前分类树的版本号，每次重建递增
+     * @return 版本号
+     */
+    long getVersion();
+    
+    /**
+     * 分类变更后重建本节点的分类树，并通知其他节点重建（在事务提交后执行）
+     */
+    void invalidate();
+}
@@ -0,0 +1,65 @@
+package ptumall.service;
+
+import ptumall.model.ChatSession;
+import ptumall.vo.ChatAssignStatsVO;
+
+import java.util.List;
+
+/**
+ * 在线交流会话分配服务
+ * 在内存中维护在线管理员及其进行中的会话数，新会话自动分配给负载最低的管理员；
+ * 集群模式下可分配给连接在任一节点的管理员
+ */
+public interface ChatAssignmentService {
+
+    /**
+     * 管理员上线，开始接收新会话
+     * @param adminId 管理员ID
+     */
+    void onAdminOnline(Long adminId);
+
+    /**
+     * 管理员下线，不再接收新会话；超过chat.assign.offline-grace仍未重新上线时，其进行中的会话重新分配
+     * @param adminId 管理员ID
+     */
+    void onAdminOffline(Long adminId);
+
+    /**
+     * 新会话已创建，事务提交后加入待分配队列并尝试分配
+     * @param session 会话对象
+     */
+    void onSessionCreated(ChatSession session);
+
+    /**
+     * 会话已结束或删除，释放所分配管理员的负载
+     * @param sessionId 会话ID
+     */
+    void onSessionClosed(String sessionId);
+
+    /**
+     * 获取会话的管理员，尚未分配时立即尝试分配
+     * @param session 会话对象
+     * @return 管理员ID；没有可用的管理员时返回默认管理员ID，会话保留在待分配队列中
+     */
+    Long resolveAdmin(ChatSession session);
+
+    /**
+     * 管理员手动接入会话
+     * @param sessionId 会话ID
+     * @param adminId 管理员ID
+     * @return 是否接入成功，会话不存在、已结束或已被其他管理员接入时返回false
+     */
+    boolean claim(String sessionId, Long adminId);
+
+    /**
+     * 获取待分配的会话，按创建时间升序
+     * @return 待分配会话列表
+     */
+    List<ChatSession> getPendingSessions();
+
+    /**
+     * 获取分配统计
+     * @return 统计信息
+     */
+    ChatAssignStatsVO getStats();
+}
@@ -0,0 +1,120 @@
+package ptumall.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+
+import javax.websocket.Session;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 在线交流WebSocket消息帧
+ * 消息只序列化一次，推送给多个连接或转发到其他节点时共享同一份编码结果。
+ * 客户端建立连接时通过子协议协商编码：chat.json（默认，JSON文本帧）或 chat.cbor（CBOR二进制帧，字段结构与JSON相同）
+ */
+public final class ChatFrame {
+
+    // JSON文本帧子协议
+    public static final String PROTOCOL_JSON = "chat.json";
+    // CBOR二进制帧子协议
+    public static final String PROTOCOL_CBOR = "chat.cbor";
+
+    // 所有聊天消息共用的序列化器，线程安全
+    private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+    private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+
+    // 消息对象，从JSON文本创建时为null
+    private final Object payload;
+    // 两种编码均在首次使用时生成，并发生成时结果相同，不需要加锁
+    private volatile String text;
+    private volatile byte[] binary;
+
+    private ChatFrame(Object payload, String text) {
+        this.payload = payload;
+        this.text = text;
+    }
+
+    /**
+     * 由消息对象创建消息帧
+     *
+     * @param payload 消息对象
+     * @return 消息帧
+     */
+    public static ChatFrame of(Object payload) {
+        return new ChatFrame(payload, null);
+    }
+
+    /**
+     * 由已序列化的JSON文本创建消息帧（如其他节点转发过来的消息）
+     *
+     * @param json JSON文本
+     * @return 消息帧
+     */
+    public static ChatFrame ofText(String json) {
+        return new ChatFrame(null, json);
+    }
+
+    /**
+     * 获取JSON文本编码
+     *
+     * @return JSON文本
+     */
+    public String getText() {
+        String result = text;
+        if (result == null) {
+            try {
+                result = JSON_MAPPER.writeValueAsString(payload);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            text = result;
+        }
+        return result;
+    }
+
+    /**
+     * 获取CBOR二进制编码，返回的缓冲区只读，每次调用都有独立的读写位置
+     *
+     * @return CBOR编码
+     */
+    public ByteBuffer getBinary() {
+        byte[] result = binary;
+        if (result == null) {
+            try {
+                result = payload != null ? CBOR_MAPPER.writeValueAsBytes(payload)
+                        : CBOR_MAPPER.writeValueAsBytes(JSON_MAPPER.readTree(text));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            binary = result;
+        }
+        return ByteBuffer.wrap(result).asReadOnlyBuffer();
+    }
+
+    /**
+     * 连接是否协商使用二进制编码
+     *
+     * @param session WebSocket会话
+     * @return 是否使用CBOR二进制帧
+     */
+    public static boolean isBinary(Session session) {
+        return PROTOCOL_CBOR.equals(session.getNegotiatedSubprotocol());
+    }
+
+    /**
+     * 解析客户端发送的JSON文本帧
+     */
+    public static <T> T decode(String text, Class<T> type) throws IOException {
+        return JSON_MAPPER.readValue(text, type);
+    }
+
+    /**
+     * 解析客户端发送的CBOR二进制帧
+     */
+    public static <T> T decode(ByteBuffer binary, Class<T> type) throws IOException {
+        byte[] bytes = new byte[binary.remaining()];
+        binary.get(bytes);
+        return CBOR_MAPPER.readValue(bytes, type);
+    }
+}
@@ -0,0 +1,315 @@
+package ptumall.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ptumall.vo.ChatHeartbeatStatsVO;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket连接心跳检测
+ * 连接在heartbeat-interval内没有收到任何数据（消息或pong）时服务端发送ping，
+ * 连续max-missed次ping没有回应则关闭连接，由端点的onClose清理在线用户表和发送队列。
+ * 待检测的连接按检测时间放入时间轮，每个刻度只处理到期的连接，活跃连接收到数据时移到新的刻度，不需要扫描全部连接
+ */
+@Slf4j
+@Component
+public class ChatHeartbeatMonitor {
+
+    // 心跳状态在会话属性中的键
+    private static final String ENTRY_KEY = ChatHeartbeatMonitor.class.getName() + ".entry";
+
+    // WebSocket端点由容器创建，无法注入Bean，通过静态实例访问
+    private static volatile ChatHeartbeatMonitor instance;
+
+    // 无数据多久后发送ping（毫秒）
+    @Value("${chat.websocket.heartbeat-interval:30000}")
+    private long heartbeatIntervalMillis;
+
+    // 连续多少次ping没有回应后关闭连接
+    @Value("${chat.websocket.max-missed-heartbeats:2}")
+    private int maxMissedHeartbeats;
+
+    // 时间轮刻度（毫秒）
+    @Value("${chat.websocket.reaper-tick:1000}")
+    private long tickMillis;
+
+    // 时间轮，每个槽位保存在该刻度到期的连接；槽位数覆盖一个心跳间隔，到期的连接不会跨圈
+    private Set<Entry>[] wheel;
+    private long startTime;
+    // 已处理到的刻度，只由检测线程访问
+    private long processedTick;
+
+    private ScheduledExecutorService reaper;
+    // 关闭连接可能因对端无响应而阻塞，单独放到关闭线程池
+    private ExecutorService closer;
+
+    private final AtomicInteger liveConnections = new AtomicInteger();
+    private final LongAdder pingsSent = new LongAdder();
+    private final LongAdder pongsReceived = new LongAdder();
+    private final LongAdder evictedConnections = new LongAdder();
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void init() {
+        int slots = (int) (heartbeatIntervalMillis / tickMillis) + 2;
+        wheel = new Set[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = ConcurrentHashMap.newKeySet();
+        }
+        startTime = System.currentTimeMillis();
+        reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ws-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadIndex = new AtomicInteger();
+        closer = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "ws-heartbeat-close-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        instance = this;
+        log.info("WebSocket心跳检测已启动：interval={}ms, maxMissed={}, tick={}ms",
+                heartbeatIntervalMillis, maxMissedHeartbeats, tickMillis);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        instance = null;
+        reaper.shutdownNow();
+        closer.shutdownNow();
+    }
+
+    /**
+     * 连接建立后开始检测
+     *
+     * @param session WebSocket会话
+     */
+    public static void register(Session session) {
+        ChatHeartbeatMonitor monitor = instance;
+        if (monitor != null) {
+            monitor.add(session);
+        }
+    }
+
+    /**
+     * 收到连接的消息或pong，推迟下次检测
+     *
+     * @param session WebSocket会话
+     */
+    public static void touch(Session session) {
+        ChatHeartbeatMonitor monitor = instance;
+        if (monitor != null) {
+            monitor.refresh(session);
+        }
+    }
+
+    /**
+     * 收到pong
+     *
+     * @param session WebSocket会话
+     */
+    public static void pong(Session session) {
+        ChatHeartbeatMonitor monitor = instance;
+        if (monitor != null) {
+            monitor.pongsReceived.increment();
+            monitor.refresh(session);
+        }
+    }
+
+    /**
+     * 连接关闭后停止检测
+     *
+     * @param session WebSocket会话
+     */
+    public static void unregister(Session session) {
+        ChatHeartbeatMonitor monitor = instance;
+        if (monitor != null) {
+            monitor.remove(session);
+        }
+    }
+
+    /**
+     * 获取心跳统计
+     *
+     * @return 统计信息，未启动时返回null
+     */
+    public static ChatHeartbeatStatsVO stats() {
+        ChatHeartbeatMonitor monitor = instance;
+        return monitor == null ? null : monitor.getStats();
+    }
+
+    private void add(Session session) {
+        Entry entry = new Entry(session);
+        if (session.getUserProperties().putIfAbsent(ENTRY_KEY, entry) != null) {
+            return;
+        }
+        liveConnections.incrementAndGet();
+        synchronized (entry) {
+            schedule(entry, System.currentTimeMillis() + heartbeatIntervalMillis);
+        }
+    }
+
+    private void refresh(Session session) {
+        Entry entry = (Entry) session.getUserProperties().get(ENTRY_KEY);
+        if (entry == null) {
+            return;
+        }
+        long dueTime = System.currentTimeMillis() + heartbeatIntervalMillis;
+        synchronized (entry) {
+            if (entry.slot < 0) {
+                return;
+            }
+            entry.missed = 0;
+            int slot = slotOf(dueTime);
+            if (slot == entry.slot) {
+                // 仍在同一刻度内，只更新到期时间
+                entry.dueTime = dueTime;
+            } else {
+                wheel[entry.slot].remove(entry);
+                schedule(entry, dueTime);
+            }
+        }
+    }
+
+    private void remove(Session session) {
+        Entry entry = (Entry) session.getUserProperties().remove(ENTRY_KEY);
+        if (entry == null) {
+            return;
+        }
+        liveConnections.decrementAndGet();
+        synchronized (entry) {
+            if (entry.slot >= 0) {
+                wheel[entry.slot].remove(entry);
+                entry.slot = -1;
+            }
+        }
+    }
+
+    /**
+     * 处理从上次处理到当前时间之间的所有刻度（检测线程被延迟时补上错过的刻度）
+     */
+    private void advance() {
+        try {
+            long now = System.currentTimeMillis();
+            long currentTick = (now - startTime) / tickMillis;
+            while (processedTick < currentTick) {
+                processedTick++;
+                expire(wheel[(int) (processedTick % wheel.length)], now);
+            }
+        } catch (Exception e) {
+            log.error("WebSocket心跳检测出错", e);
+        }
+    }
+
+    private void expire(Set<Entry> slot, long now) {
+        Iterator<Entry> iterator = slot.iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            synchronized (entry) {
+                if (entry.dueTime > now) {
+                    // 同一刻度内刚收到数据，到期时间已推迟
+                    continue;
+                }
+                iterator.remove();
+                entry.slot = -1;
+                Session session = entry.session;
+                if (!session.isOpen()) {
+                    continue;
+                }
+                if (entry.missed >= maxMissedHeartbeats) {
+                    evict(session);
+                    continue;
+                }
+                entry.missed++;
+                schedule(entry, now + heartbeatIntervalMillis);
+                ping(session);
+            }
+        }
+    }
+
+    private void schedule(Entry entry, long dueTime) {
+        entry.dueTime = dueTime;
+        entry.slot = slotOf(dueTime);
+        wheel[entry.slot].add(entry);
+    }
+
+    /**
+     * 到期时间向上取整到刻度，保证连接不会在到期前被处理
+     */
+    private int slotOf(long dueTime) {
+        long tick = (dueTime - startTime + tickMillis - 1) / tickMillis;
+        return (int) (tick % wheel.length);
+    }
+
+    private void ping(Session session) {
+        try {
+            session.getAsyncRemote().sendPing(ByteBuffer.allocate(0));
+            pingsSent.increment();
+        } catch (IOException | IllegalStateException e) {
+            log.debug("WebSocket会话{}发送ping失败: {}", session.getId(), e.getMessage());
+            evict(session);
+        }
+    }
+
+    private void evict(Session session) {
+        evictedConnections.increment();
+        log.info("WebSocket会话{}心跳超时，关闭连接", session.getId());
+        try {
+            closer.execute(() -> {
+                try {
+                    session.close(new CloseReason(CloseReason.CloseCodes.GOING_AWAY, "heartbeat timeout"));
+                } catch (IOException e) {
+                    log.debug("关闭WebSocket会话{}出错: {}", session.getId(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("心跳检测已停止，未关闭WebSocket会话{}", session.getId());
+        }
+    }
+
+    private ChatHeartbeatStatsVO getStats() {
+        ChatHeartbeatStatsVO stats = new ChatHeartbeatStatsVO();
+        stats.setLiveConnections(liveConnections.get());
+        stats.setHeartbeatIntervalMillis(heartbeatIntervalMillis);
+        stats.setMaxMissedHeartbeats(maxMissedHeartbeats);
+        stats.setPingsSent(pingsSent.sum());
+        stats.setPongsReceived(pongsReceived.sum());
+        stats.setEvictedConnections(evictedConnections.sum());
+        return stats;
+    }
+
+    /**
+     * 单个连接的心跳状态，所有修改在Entry对象上同步
+     */
+    private static final class Entry {
+        private final Session session;
+        // 所在槽位，不在时间轮中时为-1
+        private int slot = -1;
+        private long dueTime;
+        // 已发送但未收到回应的ping次数
+        private int missed;
+
+        private Entry(Session session) {
+            this.session = session;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ptumall.service;
+
+import ptumall.model.ChatMessage;
+import ptumall.vo.CursorPageResult;
+
+/**
+ * 聊天记录缓存
+ * 每个会话在内存中保留最近的若干条消息（环形缓冲），打开聊天窗口时第一屏消息直接从内存返回
+ */
+public interface ChatHistoryCache {
+
+    /**
+     * 获取会话最新的消息（按消息ID升序），会话未缓存时从数据库加载
+     * @param sessionId 会话ID
+     * @param limit 返回数量，不超过缓冲区大小时从内存返回
+     * @return 游标分页结果，nextCursor为本页最早一条消息的ID
+     */
+    CursorPageResult<ChatMessage> getLatest(String sessionId, int limit);
+
+    /**
+     * 缓冲区大小，limit超过该值时需要直接查询数据库
+     * @return 每个会话缓存的消息数
+     */
+    int getBufferSize();
+
+    /**
+     * 新建会话，缓存一个空的缓冲区
+     * @param sessionId 会话ID
+     */
+    void onSessionCreated(String sessionId);
+
+    /**
+     * 追加新消息（事务提交后生效）
+     * @param message 消息对象
+     */
+    void append(ChatMessage message);
+
+    /**
+     * 会话中发给指定接收者的消息已读
+     * @param sessionId 会话ID
+     * @param receiverId 接收者ID
+     * @param receiverType 接收者类型
+     */
+    void markRead(String sessionId, Long receiverId, String receiverType);
+
+    /**
+     * 单条消息已读
+     * @param sessionId 会话ID
+     * @param messageId 消息ID
+     */
+    void markRead(String sessionId, Long messageId);
+
+    /**
+     * 移除会话的缓存
+     * @param sessionId 会话ID
+     */
+    void remove(String sessionId);
+}
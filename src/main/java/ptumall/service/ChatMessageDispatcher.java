@@ -0,0 +1,343 @@
+package ptumall.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ptumall.vo.ChatDispatchStatsVO;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.CloseReason;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WebSocket消息异步发送器
+ * 每个WebSocket会话一个有界发送队列，由专用线程池通过异步远程端点逐条发送，
+ * 调用方只负责入队，不会因为某个客户端网络慢而被阻塞；
+ * 队列满时按配置丢弃新消息或断开该连接（消息已持久化，客户端可重新拉取历史）
+ */
+@Slf4j
+@Component
+public class ChatMessageDispatcher {
+
+    // 发送队列在会话属性中的键
+    private static final String QUEUE_KEY = ChatMessageDispatcher.class.getName() + ".queue";
+
+    // 队列满时的处理策略：丢弃新消息
+    public static final String POLICY_DROP = "drop";
+    // 队列满时的处理策略：断开连接
+    public static final String POLICY_DISCONNECT = "disconnect";
+
+    // WebSocket端点由容器创建，无法注入Bean，通过静态实例访问
+    private static volatile ChatMessageDispatcher instance;
+
+    // 每个会话发送队列的最大长度
+    @Value("${chat.websocket.queue-capacity:256}")
+    private int queueCapacity;
+
+    // 队列满时的处理策略，drop或disconnect
+    @Value("${chat.websocket.overflow-policy:drop}")
+    private String overflowPolicy;
+
+    // 发送线程数，默认为CPU核数
+    @Value("${chat.websocket.dispatcher-threads:0}")
+    private int dispatcherThreads;
+
+    // 单条消息发送超时时间（毫秒）
+    @Value("${chat.websocket.send-timeout:10000}")
+    private long sendTimeoutMillis;
+
+    private ExecutorService executor;
+
+    // 所有会话队列中等待发送的消息总数
+    private final AtomicLong queuedMessages = new AtomicLong();
+    private final AtomicInteger activeQueues = new AtomicInteger();
+    private final LongAdder sentMessages = new LongAdder();
+    private final LongAdder failedMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+    private final LongAdder disconnectedSessions = new LongAdder();
+    // 发送耗时（从入队到发送完成）
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        int threads = dispatcherThreads > 0 ? dispatcherThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread thread = new Thread(r, "ws-dispatcher-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        instance = this;
+        log.info("WebSocket消息发送器已启动：threads={}, queueCapacity={}, overflowPolicy={}",
+                threads, queueCapacity, overflowPolicy);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        instance = null;
+        executor.shutdown();
+    }
+
+    /**
+     * 将消息放入会话的发送队列，立即返回
+     * 按会话协商的编码发送文本帧或二进制帧，消息帧的编码结果在所有会话间共享；
+     * 发送器未启动时（如非Spring环境）退化为同步发送
+     *
+     * @param session WebSocket会话
+     * @param frame 消息帧
+     * @return 是否成功入队
+     */
+    public static boolean dispatch(Session session, ChatFrame frame) {
+        Object message = ChatFrame.isBinary(session) ? frame.getBinary() : frame.getText();
+        ChatMessageDispatcher dispatcher = instance;
+        if (dispatcher == null) {
+            try {
+                if (message instanceof ByteBuffer) {
+                    session.getBasicRemote().sendBinary((ByteBuffer) message);
+                } else {
+                    session.getBasicRemote().sendText((String) message);
+                }
+                return true;
+            } catch (IOException e) {
+                log.error("发送消息出错", e);
+                return false;
+            }
+        }
+        return dispatcher.enqueue(session, message);
+    }
+
+    /**
+     * 会话关闭时释放其发送队列
+     *
+     * @param session WebSocket会话
+     */
+    public static void release(Session session) {
+        ChatMessageDispatcher dispatcher = instance;
+        if (dispatcher != null) {
+            dispatcher.releaseQueue(session);
+        }
+    }
+
+    /**
+     * 获取发送统计
+     *
+     * @return 统计信息，发送器未启动时返回null
+     */
+    public static ChatDispatchStatsVO stats() {
+        ChatMessageDispatcher dispatcher = instance;
+        return dispatcher == null ? null : dispatcher.getStats();
+    }
+
+    private boolean enqueue(Session session, Object message) {
+        if (!session.isOpen()) {
+            return false;
+        }
+        OutboundQueue queue = getQueue(session);
+        if (!queue.offer(new Outbound(message))) {
+            droppedMessages.increment();
+            if (POLICY_DISCONNECT.equalsIgnoreCase(overflowPolicy)) {
+                disconnect(session, queue);
+            } else {
+                log.warn("WebSocket会话{}发送队列已满，丢弃消息", session.getId());
+            }
+            return false;
+        }
+        queuedMessages.incrementAndGet();
+        schedule(queue);
+        return true;
+    }
+
+    private OutboundQueue getQueue(Session session) {
+        Object queue = session.getUserProperties().get(QUEUE_KEY);
+        if (queue == null) {
+            synchronized (session) {
+                queue = session.getUserProperties().get(QUEUE_KEY);
+                if (queue == null) {
+                    queue = new OutboundQueue(session, queueCapacity);
+                    session.getUserProperties().put(QUEUE_KEY, queue);
+                    activeQueues.incrementAndGet();
+                }
+            }
+        }
+        return (OutboundQueue) queue;
+    }
+
+    private void releaseQueue(Session session) {
+        Object queue = session.getUserProperties().remove(QUEUE_KEY);
+        if (queue != null) {
+            activeQueues.decrementAndGet();
+            queuedMessages.addAndGet(-((OutboundQueue) queue).clear());
+        }
+    }
+
+    /**
+     * 队列没有正在进行的发送时，提交一次发送任务；
+     * 同一会话同时只有一条消息在发送，保证消息顺序且满足异步端点不允许并发发送的限制
+     */
+    private void schedule(OutboundQueue queue) {
+        if (!queue.isEmpty() && queue.sending.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> sendNext(queue));
+            } catch (RejectedExecutionException e) {
+                queue.sending.set(false);
+            }
+        }
+    }
+
+    private void sendNext(OutboundQueue queue) {
+        Outbound outbound = queue.poll();
+        if (outbound == null) {
+            queue.sending.set(false);
+            // 释放发送标记后可能有新消息入队
+            schedule(queue);
+            return;
+        }
+        queuedMessages.decrementAndGet();
+        Session session = queue.session;
+        if (!session.isOpen()) {
+            // 连接已断开，剩余消息在onClose释放队列时清除
+            failedMessages.increment();
+            queue.sending.set(false);
+            return;
+        }
+        try {
+            session.getAsyncRemote().setSendTimeout(sendTimeoutMillis);
+            if (outbound.message instanceof ByteBuffer) {
+                session.getAsyncRemote().sendBinary((ByteBuffer) outbound.message, result -> onSent(queue, outbound, result));
+            } else {
+                session.getAsyncRemote().sendText((String) outbound.message, result -> onSent(queue, outbound, result));
+            }
+        } catch (Exception e) {
+            failedMessages.increment();
+            log.error("WebSocket会话{}发送消息出错", session.getId(), e);
+            queue.sending.set(false);
+            schedule(queue);
+        }
+    }
+
+    /**
+     * 发送完成回调，在容器线程中执行，后续发送交回发送线程池
+     */
+    private void onSent(OutboundQueue queue, Outbound outbound, SendResult result) {
+        if (result.isOK()) {
+            sentMessages.increment();
+            long latency = System.currentTimeMillis() - outbound.enqueueTime;
+            totalLatencyMillis.add(latency);
+            maxLatencyMillis.accumulateAndGet(latency, Math::max);
+        } else {
+            failedMessages.increment();
+            log.warn("WebSocket会话{}发送消息失败: {}", queue.session.getId(),
+                    result.getException() == null ? null : result.getException().getMessage());
+        }
+        queue.sending.set(false);
+        schedule(queue);
+    }
+
+    private void disconnect(Session session, OutboundQueue queue) {
+        if (!queue.closing.compareAndSet(false, true)) {
+            return;
+        }
+        disconnectedSessions.increment();
+        log.warn("WebSocket会话{}发送队列已满，断开连接", session.getId());
+        executor.execute(() -> {
+            try {
+                session.close(new CloseReason(CloseReason.CloseCodes.TRY_AGAIN_LATER, "send queue overflow"));
+            } catch (IOException e) {
+                log.error("关闭WebSocket会话{}出错", session.getId(), e);
+            }
+        });
+    }
+
+    private ChatDispatchStatsVO getStats() {
+        ChatDispatchStatsVO stats = new ChatDispatchStatsVO();
+        long sent = sentMessages.sum();
+        stats.setActiveQueues(activeQueues.get());
+        stats.setQueuedMessages(queuedMessages.get());
+        stats.setQueueCapacity(queueCapacity);
+        stats.setOverflowPolicy(overflowPolicy);
+        stats.setSentMessages(sent);
+        stats.setFailedMessages(failedMessages.sum());
+        stats.setDroppedMessages(droppedMessages.sum());
+        stats.setDisconnectedSessions(disconnectedSessions.sum());
+        stats.setAverageLatencyMillis(sent == 0 ? 0.0 : (double) totalLatencyMillis.sum() / sent);
+        stats.setMaxLatencyMillis(maxLatencyMillis.get());
+        return stats;
+    }
+
+    /**
+     * 待发送的消息
+     */
+    private static class Outbound {
+        // 文本帧为String，二进制帧为ByteBuffer
+        private final Object message;
+        private final long enqueueTime = System.currentTimeMillis();
+
+        Outbound(Object message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * 单个会话的有界发送队列
+     */
+    private static class OutboundQueue {
+        private final Session session;
+        private final int capacity;
+        private final Queue<Outbound> messages = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        // 是否有消息正在发送
+        private final AtomicBoolean sending = new AtomicBoolean();
+        // 是否已因队列溢出而关闭
+        private final AtomicBoolean closing = new AtomicBoolean();
+
+        OutboundQueue(Session session, int capacity) {
+            this.session = session;
+            this.capacity = capacity;
+        }
+
+        boolean offer(Outbound outbound) {
+            if (size.incrementAndGet() > capacity) {
+                size.decrementAndGet();
+                return false;
+            }
+            messages.offer(outbound);
+            return true;
+        }
+
+        Outbound poll() {
+            Outbound outbound = messages.poll();
+            if (outbound != null) {
+                size.decrementAndGet();
+            }
+            return outbound;
+        }
+
+        boolean isEmpty() {
+            return messages.isEmpty();
+        }
+
+        int clear() {
+            int cleared = 0;
+            while (poll() != null) {
+                cleared++;
+            }
+            return cleared;
+        }
+    }
+}
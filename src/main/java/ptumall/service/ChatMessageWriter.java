@@ -0,0 +1,33 @@
+package ptumall.service;
+
+import ptumall.model.ChatMessage;
+import ptumall.vo.ChatPersistStatsVO;
+
+/**
+ * 聊天消息持久化服务
+ * 消息先追加到本地日志（落盘后即返回），再由后台线程批量写入数据库
+ */
+public interface ChatMessageWriter {
+
+    /**
+     * 保存消息，同时更新会话的最后更新时间
+     * 未启用批量写入时在当前事务中直接写库，返回时消息ID已回填；
+     * 启用后在当前事务提交后写入本地日志（没有事务时立即写入），事务提交返回时消息已落盘，
+     * 此时消息ID仍为null，批量写入数据库后才回填到对象中
+     * @param message 消息对象
+     */
+    void write(ChatMessage message);
+
+    /**
+     * 等待此前保存的消息全部写入数据库
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 是否已全部写入
+     */
+    boolean flush(long timeoutMillis);
+
+    /**
+     * 获取持久化统计
+     * @return 统计信息
+     */
+    ChatPersistStatsVO getStats();
+}
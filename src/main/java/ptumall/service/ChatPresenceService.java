@@ -0,0 +1,45 @@
+package ptumall.service;
+
+/**
+ * 在线交流在线状态与跨节点消息路由服务
+ * 记录每个在线用户连接在哪个节点上，接收者不在本节点时通过Redis频道转发给所在节点推送
+ */
+public interface ChatPresenceService {
+
+    /**
+     * 当前节点标识
+     * @return 节点ID
+     */
+    String getNodeId();
+
+    /**
+     * 用户在本节点建立WebSocket连接
+     * @param userId 用户ID
+     * @param userType 用户类型，"customer"或"admin"
+     */
+    void online(Long userId, String userType);
+
+    /**
+     * 用户在本节点的WebSocket连接断开
+     * @param userId 用户ID
+     * @param userType 用户类型
+     */
+    void offline(Long userId, String userType);
+
+    /**
+     * 用户是否在线（任意节点）
+     * @param userId 用户ID
+     * @param userType 用户类型
+     * @return 是否在线
+     */
+    boolean isOnline(Long userId, String userType);
+
+    /**
+     * 向用户推送消息，用户连接在其他节点时转发给该节点
+     * @param receiverId 接收者ID
+     * @param receiverType 接收者类型
+     * @param frame 消息帧，按接收者连接协商的编码发送，转发到其他节点时使用JSON文本
+     * @return 接收者在线并已投递（或已转发）返回true，不在线返回false
+     */
+    boolean deliver(Long receiverId, String receiverType, ChatFrame frame);
+}
@@ -3,8 +3,10 @@ package ptumall.service;
 import ptumall.model.ChatMessage;
 import ptumall.model.ChatSession;
 import ptumall.model.ChatMessageDTO;
+import ptumall.vo.CursorPageResult;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 聊天服务接口
@@ -18,6 +20,7 @@ public interface ChatService {
 
     /**
      * 发送消息
+     * 开启聊天消息批量写入（chat.persist.enabled）时返回的消息ID为null，消息写入数据库后可从历史记录中取得ID
      */
     ChatMessage sendMessage(ChatMessageDTO messageDTO);
 
@@ -26,6 +29,15 @@ public interface ChatService {
      */
     List<ChatMessage> getSessionMessages(String sessionId);
 
+    /**
+     * 分页获取会话消息历史（按消息ID向前翻页）
+     * @param sessionId 会话ID
+     * @param beforeId 只返回ID小于该值的消息，为null时返回最新的消息
+     * @param limit 每页数量
+     * @return 按消息ID升序排列的消息，nextCursor为下一页的beforeId
+     */
+    CursorPageResult<ChatMessage> getSessionMessages(String sessionId, Long beforeId, Integer limit);
+
     /**
      * 获取用户会话列表
      */
@@ -36,6 +48,11 @@ public interface ChatService {
      */
     int getUnreadCount(Long userId, String userType);
 
+    /**
+     * 获取每个会话的未读消息数
+     */
+    Map<String, Integer> getSessionUnreadCounts(Long userId, String userType);
+
     /**
      * 标记消息为已读
      */
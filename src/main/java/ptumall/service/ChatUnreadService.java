@@ -0,0 +1,69 @@
+package ptumall.service;
+
+import ptumall.model.ChatMessage;
+
+import java.util.Map;
+
+/**
+ * 聊天未读消息计数服务
+ * 按接收者和会话在Redis中维护未读数，变化时通过WebSocket推送给接收者。
+ * on开头的方法可以在事务中调用：计数在事务提交后更新，回滚时不更新；不在事务中调用时立即更新
+ */
+public interface ChatUnreadService {
+
+    /**
+     * 获取接收者的未读消息总数
+     * @param receiverId 接收者ID
+     * @param receiverType 接收者类型
+     * @return 未读消息数
+     */
+    int getUnreadCount(Long receiverId, String receiverType);
+
+    /**
+     * 获取接收者每个会话的未读消息数
+     * @param receiverId 接收者ID
+     * @param receiverType 接收者类型
+     * @return 会话ID -> 未读消息数，只包含有未读消息的会话
+     */
+    Map<String, Integer> getSessionUnreadCounts(Long receiverId, String receiverType);
+
+    /**
+     * 新消息已发送，接收者未读数加一（在事务中调用时提交后生效）
+     * @param message 消息对象
+     */
+    void onMessageSent(ChatMessage message);
+
+    /**
+     * 单条未读消息已读，接收者未读数减一（在事务中调用时提交后生效）
+     * @param message 消息对象
+     */
+    void onMessageRead(ChatMessage message);
+
+    /**
+     * 会话中发给接收者的消息全部已读，该会话未读数清零（在事务中调用时提交后生效）
+     * @param sessionId 会话ID
+     * @param receiverId 接收者ID
+     * @param receiverType 接收者类型
+     */
+    void onSessionRead(String sessionId, Long receiverId, String receiverType);
+
+    /**
+     * 删除会话，清除各接收者在该会话上的未读数（在事务中调用时提交后生效）
+     * @param sessionId 会话ID
+     * @param customerId 客户ID
+     * @param adminId 管理员ID，可为null
+     */
+    void onSessionDeleted(String sessionId, Long customerId, Long adminId);
+
+    /**
+     * 丢弃接收者的计数，下次读取时从数据库重新统计
+     * @param receiverId 接收者ID
+     * @param receiverType 接收者类型
+     */
+    void invalidate(Long receiverId, String receiverType);
+
+    /**
+     * 用数据库中的未读数校正近期活跃接收者的Redis计数
+     */
+    void reconcile();
+}
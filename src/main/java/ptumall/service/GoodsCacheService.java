@@ -0,0 +1,26 @@
+package ptumall.service;
+
+import ptumall.model.Goods;
+import ptumall.vo.GoodsCacheStatsVO;
+
+public interface GoodsCacheService {
+    /**
+     * 读取商品详情，依次查询本地缓存、Redis缓存和数据库；
+     * 缓存只保存静态信息，库存和销量按短有效期单独读取
+     * @param id 商品ID
+     * @return 商品对象，不存在返回null
+     */
+    Goods getGoods(Integer id);
+    
+    /**
+     * 商品静态信息修改后使详情缓存失效（在事务提交后执行，并通知其他节点）
+     * @param id 商品ID
+     */
+    void invalidate(Integer id);
+    
+    /**
+     * 获取缓存命中统计
+     * @return 统计数据
+     */
+    GoodsCacheStatsVO getStats();
+}
@@ -42,7 +42,7 @@ public interface GoodsCategoryService {
     /**
      * 获取指定分类及其所有子分类的ID列表
      * @param categoryId 分类ID
-     * @return 分类ID列表（包含指定分类ID及其所有子分类ID）
+     * @return 分类ID列表（包含指定分类ID及其所有子分类ID），只读
      */
     List<Integer> getCategoryAndChildrenIds(Integer categoryId);
 } 
\ No newline at end of file
@@ -0,0 +1,50 @@
+package ptumall.service;
+
+import org.springframework.web.multipart.MultipartFile;
+import ptumall.vo.GoodsImportTaskVO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 商品批量导入导出服务接口
+ * 支持CSV和JSON Lines两种格式，导入和导出都逐行流式处理，不把整个文件放入内存
+ */
+public interface GoodsImportService {
+
+    /**
+     * CSV格式，首行为表头
+     */
+    String FORMAT_CSV = "csv";
+
+    /**
+     * JSON Lines格式，每行一个商品JSON对象
+     */
+    String FORMAT_JSONL = "jsonl";
+
+    /**
+     * 提交导入任务，文件保存到临时目录后在后台导入
+     * @param file 上传的文件
+     * @param format 文件格式，为空时按文件扩展名判断
+     * @return 导入任务
+     * @throws IOException 保存文件失败
+     */
+    GoodsImportTaskVO submitImport(MultipartFile file, String format) throws IOException;
+
+    /**
+     * 查询导入任务进度
+     * @param taskId 任务ID
+     * @return 导入任务，不存在时返回null
+     */
+    GoodsImportTaskVO getImportTask(String taskId);
+
+    /**
+     * 按ID顺序流式导出商品，先读取到临时文件再写出，读取超过导出时限时抛出异常
+     * @param format 文件格式
+     * @param categoryId 分类ID，为空时导出全部商品
+     * @param out 输出流
+     * @return 导出的商品数
+     * @throws IOException 写出失败
+     */
+    long exportGoods(String format, Integer categoryId, OutputStream out) throws IOException;
+}
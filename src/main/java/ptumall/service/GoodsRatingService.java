@@ -0,0 +1,31 @@
+package ptumall.service;
+
+import ptumall.vo.GoodsRatingVO;
+
+/**
+ * 商品评分汇总服务
+ * 评分总和、评价数和1-5星分布随评价的添加和删除增量维护，读取时不再聚合评价表
+ */
+public interface GoodsRatingService {
+
+    /**
+     * 获取商品评分汇总
+     * @param goodsId 商品ID
+     * @return 评分汇总，没有评价时平均评分和评价数为0
+     */
+    GoodsRatingVO getRating(Integer goodsId);
+
+    /**
+     * 计入新增的评价并同步商品评分，需在添加评价的事务中调用
+     * @param goodsId 商品ID
+     * @param rating 评分（1-5）
+     */
+    void onReviewAdded(Integer goodsId, Integer rating);
+
+    /**
+     * 移除已删除的评价并同步商品评分，需在删除评价的事务中调用
+     * @param goodsId 商品ID
+     * @param rating 评分（1-5）
+     */
+    void onReviewDeleted(Integer goodsId, Integer rating);
+}
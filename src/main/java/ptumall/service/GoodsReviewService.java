@@ -1,6 +1,8 @@
 package ptumall.service;
 
 import ptumall.model.GoodsReview;
+import ptumall.vo.CursorPageResult;
+import ptumall.vo.GoodsRatingVO;
 import ptumall.vo.Result;
 
 import java.util.List;
@@ -21,6 +23,16 @@ public interface GoodsReviewService {
      */
     Result<List<GoodsReview>> getReviewsByGoodsId(Integer goodsId);
     
+    /**
+     * 游标分页获取商品评价列表
+     * @param goodsId 商品ID
+     * @param sort 排序方式：newest-最新，likes-点赞最多，rating-评分最高
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param pageSize 每页数量
+     * @return 游标分页的评价列表
+     */
+    Result<CursorPageResult<GoodsReview>> getReviewFeed(Integer goodsId, String sort, String cursor, Integer pageSize);
+    
     /**
      * 获取用户的评价列表
      * @param userId 用户ID
@@ -89,4 +101,11 @@ public interface GoodsReviewService {
      * @return 评价数量
      */
     Result<Integer> getReviewCount(Integer goodsId);
+    
+    /**
+     * 获取商品的评分汇总，包括平均评分、评价数和1-5星分布
+     * @param goodsId 商品ID
+     * @return 评分汇总
+     */
+    Result<GoodsRatingVO> getRatingSummary(Integer goodsId);
 } 
\ No newline at end of file
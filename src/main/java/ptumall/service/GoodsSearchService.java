@@ -0,0 +1,38 @@
+package ptumall.service;
+
+import java.util.List;
+
+public interface GoodsSearchService {
+    /**
+     * 索引是否已加载完成
+     * @return 是否可用
+     */
+    boolean isReady();
+    
+    /**
+     * 使用内存倒排索引按关键词搜索上架商品
+     * @param categoryIds 分类ID列表，可为null
+     * @param keyword 关键词
+     * @param sortBy 排序字段，可为null，可选值：price, rating, sales, newest
+     * @param sortDirection 排序方向，可为null，可选值：asc, desc
+     * @return 排好序的商品ID列表；索引未就绪或关键词无法使用索引时返回null，调用方应回退到SQL查询
+     */
+    List<Integer> search(List<Integer> categoryIds, String keyword, String sortBy, String sortDirection);
+    
+    /**
+     * 商品新增或修改后更新索引（在事务提交后执行）
+     * @param goodsId 商品ID
+     */
+    void onGoodsChanged(Integer goodsId);
+    
+    /**
+     * 商品删除后移出索引（在事务提交后执行）
+     * @param goodsId 商品ID
+     */
+    void onGoodsRemoved(Integer goodsId);
+    
+    /**
+     * 从数据库全量重建索引
+     */
+    void rebuild();
+}
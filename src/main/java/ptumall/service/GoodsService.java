@@ -71,6 +71,14 @@ public interface GoodsService {
      */
     List<Goods> getRecommendGoods(Integer limit);
     
+    /**
+     * 获取指定分类（含子分类）下的推荐商品
+     * @param categoryId 分类ID，为null时返回全站推荐
+     * @param limit 限制数量
+     * @return 商品列表
+     */
+    List<Goods> getRecommendGoods(Integer categoryId, Integer limit);
+    
     /**
      * 更新商品库存
      * @param id 商品ID
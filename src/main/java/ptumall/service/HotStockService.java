@@ -0,0 +1,96 @@
+package ptumall.service;
+
+import ptumall.vo.HotStockStatsVO;
+
+public interface HotStockService {
+    /**
+     * 是否启用热点商品库存模式
+     * @return 是否启用
+     */
+    boolean isEnabled();
+    
+    /**
+     * 判断商品是否为热点商品
+     * @param goodsId 商品ID
+     * @return 是否为热点商品
+     */
+    boolean isHot(Integer goodsId);
+    
+    /**
+     * 读取热点商品在Redis中的可售库存（已扣除预留和未回写的扣减）
+     * @param goodsId 商品ID
+     * @return 可售库存，非热点商品或Redis中没有库存时返回null
+     */
+    Integer getStock(Integer goodsId);
+    
+    /**
+     * 将商品标记为热点商品，并把数据库库存加载到Redis
+     * @param goodsId 商品ID
+     * @return 是否成功
+     */
+    boolean markHot(Integer goodsId);
+    
+    /**
+     * 取消商品的热点标记，回写未同步的库存后删除Redis库存
+     * @param goodsId 商品ID
+     * @return 是否成功
+     */
+    boolean unmarkHot(Integer goodsId);
+    
+    /**
+     * 在Redis中为订单预留热点商品库存，订单事务结束后需调用confirmDeduct或cancelDeduct；
+     * 节点在此之前宕机时，预留超时后由对账按订单是否存在确认或释放
+     * @param orderId 订单ID
+     * @param goodsId 商品ID
+     * @param quantity 扣减数量
+     * @return true-扣减成功，false-库存不足，null-Redis中没有该商品库存（需走数据库扣减）
+     */
+    Boolean tryDeduct(Integer orderId, Integer goodsId, Integer quantity);
+    
+    /**
+     * 订单事务已提交，确认预留的库存，扣减量计入待回写
+     * @param orderId 订单ID
+     * @param goodsId 商品ID
+     * @param quantity 扣减数量
+     */
+    void confirmDeduct(Integer orderId, Integer goodsId, Integer quantity);
+    
+    /**
+     * 订单事务已回滚，释放预留的库存
+     * @param orderId 订单ID
+     * @param goodsId 商品ID
+     * @param quantity 扣减数量
+     */
+    void cancelDeduct(Integer orderId, Integer goodsId, Integer quantity);
+    
+    /**
+     * 在Redis中恢复热点商品库存
+     * @param goodsId 商品ID
+     * @param quantity 恢复数量
+     */
+    void restore(Integer goodsId, Integer quantity);
+    
+    /**
+     * 管理员直接修改库存后，重新从数据库加载热点商品库存
+     * @param goodsId 商品ID
+     */
+    void reload(Integer goodsId);
+    
+    /**
+     * 将Redis中累计的库存变化批量回写到数据库
+     * @return 本次回写的商品数量
+     */
+    int flush();
+    
+    /**
+     * 对账：处理超时的库存预留，校验Redis库存 + 预留量 + 未回写扣减量 = 数据库库存，不一致时以数据库为准修正Redis
+     * @return 修正的商品数量
+     */
+    int reconcile();
+    
+    /**
+     * 获取热点库存运行指标
+     * @return 指标数据
+     */
+    HotStockStatsVO getStats();
+}
@@ -0,0 +1,151 @@
+package ptumall.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.net.InetAddress;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单编号生成器
+ * 编号由8位日期和15位序号组成，如 20230801 + 000123456789012，同一天内按生成时间递增。
+ * 序号为 当天毫秒数(27位) | 节点ID(10位) | 毫秒内序列(12位)，每个节点每毫秒最多生成4096个编号，
+ * 不同节点的编号不会重复；时间戳和序列保存在一个原子变量中通过CAS更新，不加锁。
+ * 时钟回拨或序列用尽时继续使用上一个时间戳（必要时借用下一毫秒），编号保持递增
+ */
+@Slf4j
+@Component
+public class OrderNoGenerator {
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    // 序号的十进制位数，2^49 < 10^15
+    private static final int SERIAL_DIGITS = 15;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    // 时钟回拨超过该值时记录警告（毫秒）
+    private static final long ROLLBACK_WARN_MILLIS = 1000;
+
+    // 节点ID（0-1023），多节点部署时每个节点必须不同；未配置时取本机IP地址的低10位
+    @Value("${order.no.node-id:-1}")
+    private long configuredNodeId;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private long nodeId;
+
+    // 高位为最近一次使用的时间戳（毫秒），低12位为该毫秒内的序列
+    private final AtomicLong state = new AtomicLong();
+
+    // 当天的日期前缀，跨天时替换
+    private volatile Day currentDay;
+
+    @PostConstruct
+    public void init() {
+        if (configuredNodeId >= 0) {
+            if (configuredNodeId > MAX_NODE_ID) {
+                throw new IllegalStateException("order.no.node-id 必须在0到" + MAX_NODE_ID + "之间");
+            }
+            nodeId = configuredNodeId;
+        } else {
+            nodeId = defaultNodeId();
+            log.warn("未配置order.no.node-id，使用本机IP地址生成节点ID: {}，多节点部署时请为每个节点配置不同的ID", nodeId);
+        }
+        log.info("订单编号生成器已启动，节点ID: {}", nodeId);
+    }
+
+    /**
+     * 生成订单编号
+     *
+     * @return 23位订单编号
+     */
+    public String next() {
+        long timestamp;
+        long sequence;
+        while (true) {
+            long now = currentTimeMillis();
+            long current = state.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            if (now > lastTimestamp) {
+                timestamp = now;
+                sequence = 0;
+            } else {
+                // 同一毫秒或时钟回拨：沿用上一个时间戳，序列用尽时借用下一毫秒
+                if (lastTimestamp - now > ROLLBACK_WARN_MILLIS && (current & SEQUENCE_MASK) == 0) {
+                    log.warn("检测到系统时钟回拨{}ms，订单编号沿用上次的时间戳", lastTimestamp - now);
+                }
+                sequence = ((current & SEQUENCE_MASK) + 1) & SEQUENCE_MASK;
+                timestamp = sequence == 0 ? lastTimestamp + 1 : lastTimestamp;
+            }
+            if (state.compareAndSet(current, (timestamp << SEQUENCE_BITS) | sequence)) {
+                break;
+            }
+        }
+        Day day = day(timestamp);
+        long serial = ((timestamp - day.start) << (NODE_BITS + SEQUENCE_BITS)) | (nodeId << SEQUENCE_BITS) | sequence;
+        return format(day.prefix, serial);
+    }
+
+    /**
+     * 当前时间（毫秒），测试中覆盖以模拟时钟回拨
+     */
+    long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private Day day(long timestamp) {
+        Day day = currentDay;
+        if (day == null || timestamp < day.start || timestamp >= day.end) {
+            LocalDate date = Instant.ofEpochMilli(timestamp).atZone(zone).toLocalDate();
+            day = new Day(date.format(DATE_FORMAT),
+                    date.atStartOfDay(zone).toInstant().toEpochMilli(),
+                    date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+            // 时钟回拨跨天时不替换为前一天
+            if (currentDay == null || day.start >= currentDay.start) {
+                currentDay = day;
+            }
+        }
+        return day;
+    }
+
+    private static String format(String prefix, long serial) {
+        char[] chars = new char[prefix.length() + SERIAL_DIGITS];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        for (int i = chars.length - 1; i >= prefix.length(); i--) {
+            chars[i] = (char) ('0' + serial % 10);
+            serial /= 10;
+        }
+        return new String(chars);
+    }
+
+    private static long defaultNodeId() {
+        try {
+            byte[] address = InetAddress.getLocalHost().getAddress();
+            return ((address[address.length - 2] & 0xFFL) << 8 | (address[address.length - 1] & 0xFFL)) & MAX_NODE_ID;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 日期前缀及当天的起止时间
+     */
+    private static final class Day {
+        private final String prefix;
+        private final long start;
+        private final long end;
+
+        private Day(String prefix, long start, long end) {
+            this.prefix = prefix;
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -2,9 +2,11 @@ package ptumall.service;
 
 import ptumall.model.Orders;
 import ptumall.vo.CreateOrderParam;
+import ptumall.vo.CursorPageResult;
 import ptumall.vo.OrderStatisticsVO;
 import ptumall.vo.PageResult;
 
+import java.util.Date;
 import java.util.List;
 
 /**
@@ -62,6 +64,13 @@ public interface OrderService {
      */
     boolean cancelOrder(Integer userId, Integer orderId);
     
+    /**
+     * 批量取消超时未支付的订单，恢复库存和销量
+     * @param orderIds 订单ID列表
+     * @return 实际取消的订单ID（已支付或已取消的订单会被跳过）
+     */
+    List<Integer> cancelTimeoutOrders(List<Integer> orderIds);
+    
     /**
      * 支付订单
      * @param userId 用户ID
@@ -87,6 +96,17 @@ public interface OrderService {
      */
     PageResult<Orders> getAllOrderList(Integer pageNum, Integer pageSize);
     
+    /**
+     * 游标分页获取所有订单列表（管理员接口）
+     * 翻页开销与页码深度无关
+     * @param status 订单状态，可为null
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param pageSize 每页数量
+     * @param countMode 总数统计方式：none-不统计，approx-估算，exact-精确统计
+     * @return 订单列表游标分页结果
+     */
+    CursorPageResult<Orders> getAllOrderListByCursor(Byte status, String cursor, Integer pageSize, String countMode);
+    
     /**
      * 根据状态获取所有订单列表（管理员接口）
      * @param status 订单状态
@@ -165,7 +185,10 @@ public interface OrderService {
     
     /**
      * 获取订单统计数据（管理员接口）
+     * @param startTime 时间序列开始时间（按订单创建时间），为空时不返回时间序列
+     * @param endTime 时间序列结束时间（不含）
+     * @param granularity 时间序列粒度：hour、day，默认day
      * @return 订单统计数据
      */
-    OrderStatisticsVO getOrderStatistics();
+    OrderStatisticsVO getOrderStatistics(Date startTime, Date endTime, String granularity);
 }
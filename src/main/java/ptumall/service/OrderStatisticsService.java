@@ -0,0 +1,56 @@
+package ptumall.service;
+
+import ptumall.model.Orders;
+import ptumall.vo.OrderStatisticsVO;
+
+import java.util.Date;
+
+/**
+ * 订单统计服务
+ * 订单数和金额按状态、按创建时间的小时和天汇总，随订单创建、状态变化和删除增量更新，不再每次全表聚合
+ */
+public interface OrderStatisticsService {
+
+    /**
+     * 小时粒度
+     */
+    String GRANULARITY_HOUR = "hour";
+
+    /**
+     * 天粒度
+     */
+    String GRANULARITY_DAY = "day";
+
+    /**
+     * 订单已创建（事务提交后生效）
+     * @param order 订单，需包含状态和总金额
+     */
+    void onOrderCreated(Orders order);
+
+    /**
+     * 订单状态已变化（事务提交后生效）
+     * @param order 变化前的订单，需包含状态、总金额和创建时间
+     * @param status 新状态
+     */
+    void onOrderStatusChanged(Orders order, byte status);
+
+    /**
+     * 订单已删除（事务提交后生效）
+     * @param order 删除前的订单
+     */
+    void onOrderDeleted(Orders order);
+
+    /**
+     * 获取订单统计数据
+     * @param startTime 时间序列开始时间（按订单创建时间），为空时不返回时间序列
+     * @param endTime 时间序列结束时间（不含）
+     * @param granularity 时间序列粒度：hour、day
+     * @return 订单统计数据
+     */
+    OrderStatisticsVO getStatistics(Date startTime, Date endTime, String granularity);
+
+    /**
+     * 从数据库全量重建统计数据
+     */
+    void rebuild();
+}
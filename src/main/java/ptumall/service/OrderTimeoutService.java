@@ -0,0 +1,20 @@
+package ptumall.service;
+
+/**
+ * 订单超时取消服务
+ * 订单创建后超过指定时间仍未支付时自动取消并恢复库存
+ */
+public interface OrderTimeoutService {
+
+    /**
+     * 订单已创建，开始计时（事务提交后生效）
+     * @param orderId 订单ID
+     */
+    void schedule(Integer orderId);
+
+    /**
+     * 订单已支付或已取消，停止计时（事务提交后生效）
+     * @param orderId 订单ID
+     */
+    void cancel(Integer orderId);
+}
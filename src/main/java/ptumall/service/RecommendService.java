@@ -0,0 +1,44 @@
+package ptumall.service;
+
+import ptumall.model.Goods;
+
+import java.util.List;
+
+/**
+ * 推荐商品排行服务
+ * 在内存中维护按评分、销量排序的Top-K商品，避免每次请求都对商品表排序
+ */
+public interface RecommendService {
+
+    /**
+     * 获取推荐商品
+     * @param categoryId 分类ID（含子分类），为null时返回全站推荐
+     * @param limit 返回数量
+     * @return 按评分、销量降序排列的商品列表
+     */
+    List<Goods> getRecommend(Integer categoryId, int limit);
+
+    /**
+     * 商品销量变化（事务提交后生效）
+     * @param goodsId 商品ID
+     * @param delta 销量变化量，可为负数
+     */
+    void onSalesChanged(Integer goodsId, int delta);
+
+    /**
+     * 商品评分、状态、分类等变化，从数据库重新加载该商品（事务提交后生效）
+     * @param goodsId 商品ID
+     */
+    void onGoodsChanged(Integer goodsId);
+
+    /**
+     * 商品被删除（事务提交后生效）
+     * @param goodsId 商品ID
+     */
+    void onGoodsRemoved(Integer goodsId);
+
+    /**
+     * 从数据库全量刷新排行
+     */
+    void refresh();
+}
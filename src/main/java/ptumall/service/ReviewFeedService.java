@@ -0,0 +1,42 @@
+package ptumall.service;
+
+import ptumall.model.GoodsReview;
+import ptumall.vo.CursorPageResult;
+
+/**
+ * 商品评价列表服务接口
+ * 按排序方式游标分页查询商品评价，每个商品各排序方式的前若干条评价使用本地缓存
+ */
+public interface ReviewFeedService {
+
+    /**
+     * 按创建时间从新到旧排序
+     */
+    String SORT_NEWEST = "newest";
+
+    /**
+     * 按点赞数从多到少排序
+     */
+    String SORT_LIKES = "likes";
+
+    /**
+     * 按评分从高到低排序
+     */
+    String SORT_RATING = "rating";
+
+    /**
+     * 游标分页查询商品评价
+     * @param goodsId 商品ID
+     * @param sort 排序方式：newest、likes、rating，为空时按newest
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param pageSize 每页数量
+     * @return 游标分页的评价列表
+     */
+    CursorPageResult<GoodsReview> getFeed(Integer goodsId, String sort, String cursor, Integer pageSize);
+
+    /**
+     * 失效商品的评价列表缓存，在事务提交后执行
+     * @param goodsId 商品ID
+     */
+    void invalidate(Integer goodsId);
+}
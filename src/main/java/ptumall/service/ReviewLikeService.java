@@ -0,0 +1,58 @@
+package ptumall.service;
+
+/**
+ * 评价点赞服务接口
+ * 点赞状态和点赞数在Redis中维护，点赞记录和评价点赞数由后台定时批量写入数据库
+ */
+public interface ReviewLikeService {
+
+    /**
+     * 点赞状态已变化
+     */
+    int CHANGED = 1;
+
+    /**
+     * 点赞状态未变化（重复点赞或未点赞时取消）
+     */
+    int UNCHANGED = 0;
+
+    /**
+     * 评价不存在
+     */
+    int REVIEW_NOT_FOUND = -1;
+
+    /**
+     * 点赞
+     * @param reviewId 评价ID
+     * @param userId 用户ID
+     * @return CHANGED、UNCHANGED 或 REVIEW_NOT_FOUND
+     */
+    int like(Integer reviewId, Integer userId);
+
+    /**
+     * 取消点赞
+     * @param reviewId 评价ID
+     * @param userId 用户ID
+     * @return CHANGED、UNCHANGED 或 REVIEW_NOT_FOUND
+     */
+    int unlike(Integer reviewId, Integer userId);
+
+    /**
+     * 查询用户是否已点赞某评价
+     * @param reviewId 评价ID
+     * @param userId 用户ID
+     * @return 是否已点赞
+     */
+    boolean isLiked(Integer reviewId, Integer userId);
+
+    /**
+     * 评价删除后清除其点赞数，在事务提交后执行
+     * @param reviewId 评价ID
+     */
+    void onReviewDeleted(Integer reviewId);
+
+    /**
+     * 将未写入的点赞变化批量写入数据库
+     */
+    void flush();
+}
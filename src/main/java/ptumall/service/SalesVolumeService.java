@@ -0,0 +1,29 @@
+package ptumall.service;
+
+import ptumall.vo.SalesVolumeStatsVO;
+
+/**
+ * 商品销量服务
+ * 下单、取消订单引起的销量变化先在内存中累计并定时合并到Redis，再定时合并为一条批量更新写入数据库，
+ * 下单事务只需更新库存，不再同时写商品行的销量
+ */
+public interface SalesVolumeService {
+
+    /**
+     * 记录商品销量变化（事务提交后生效），同时更新推荐排行
+     * @param goodsId 商品ID
+     * @param delta 销量变化值，取消订单时为负数
+     */
+    void add(Integer goodsId, int delta);
+
+    /**
+     * 立即把累计的销量变化写入数据库
+     */
+    void flush();
+
+    /**
+     * 获取销量回写指标
+     * @return 统计信息
+     */
+    SalesVolumeStatsVO getStats();
+}
@@ -0,0 +1,19 @@
+package ptumall.service;
+
+import ptumall.model.OrderItems;
+import java.util.List;
+
+public interface StockService {
+    /**
+     * 扣减订单商品库存
+     * 采用条件更新（stock >= quantity）保证并发下不超卖，任一商品库存不足时抛出业务异常，由调用方事务回滚
+     * @param items 订单商品列表（使用goodsId、quantity；热点商品在Redis中预留时以orderId标识，为空时改为数据库扣减）
+     */
+    void deductStock(List<OrderItems> items);
+    
+    /**
+     * 恢复订单商品库存（取消订单、退款）
+     * @param items 订单商品列表（使用goodsId、quantity）
+     */
+    void restoreStock(List<OrderItems> items);
+}
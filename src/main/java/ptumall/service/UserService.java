@@ -1,6 +1,7 @@
 package ptumall.service;
 
 import ptumall.model.User;
+import ptumall.vo.CursorPageResult;
 import ptumall.vo.PageResult;
 
 import java.util.Map;
@@ -50,6 +51,16 @@ public interface UserService {
      */
     PageResult<User> getUserList(Integer pageNum, Integer pageSize);
     
+    /**
+     * 游标分页获取用户列表
+     * 翻页开销与页码深度无关
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param pageSize 每页数量
+     * @param countMode 总数统计方式：none-不统计，approx-估算，exact-精确统计
+     * @return 用户列表游标分页结果
+     */
+    CursorPageResult<User> getUserListByCursor(String cursor, Integer pageSize, String countMode);
+    
     /**
      * 根据用户名搜索用户（分页）
      * @param username 用户名关键词
@@ -0,0 +1,187 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import ptumall.dao.GoodsCategoryDao;
+import ptumall.model.GoodsCategory;
+import ptumall.service.CategoryTreeService;
+import ptumall.utils.TransactionUtils;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分类树服务实现类
+ * 一次性加载全部分类，预先计算每个分类的子孙分类ID列表，构建为不可变的分类树快照；
+ * 分类变更时整体重建并原子替换，通过Redis发布订阅通知其他节点重建
+ */
+@Slf4j
+@Service
+public class CategoryTreeServiceImpl implements CategoryTreeService, MessageListener {
+
+    // 分类树失效通知频道
+    private static final String INVALIDATE_CHANNEL = "category:tree:invalidate";
+
+    @Autowired
+    private GoodsCategoryDao categoryDao;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 当前节点标识，忽略自己发出的通知
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final AtomicLong versionCounter = new AtomicLong();
+
+    private volatile Tree tree;
+
+    @PostConstruct
+    public void init() {
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    @Override
+    public List<Integer> getSubtreeIds(Integer categoryId) {
+        if (categoryId == null) {
+            return Collections.emptyList();
+        }
+        List<Integer> ids = currentTree().subtreeIds.get(categoryId);
+        // 与原递归查询的结果一致：0返回自身和全部分类，其他没有子分类的不存在分类只返回自身
+        return ids != null ? ids : Collections.singletonList(categoryId);
+    }
+
+    @Override
+    public boolean exists(Integer categoryId) {
+        return categoryId != null && currentTree().categoryIds.contains(categoryId);
+    }
+
+    @Override
+    public long getVersion() {
+        return currentTree().version;
+    }
+
+    @Override
+    public void invalidate() {
+        TransactionUtils.afterCommit(this::rebuildAndPublish);
+    }
+
+    /**
+     * 收到其他节点的分类变更通知后重建分类树
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object sender = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (nodeId.equals(sender)) {
+            return;
+        }
+        log.info("收到分类变更通知，重建分类树");
+        rebuild();
+    }
+
+    private void rebuildAndPublish() {
+        rebuild();
+        try {
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, nodeId);
+        } catch (Exception e) {
+            log.error("发送分类变更通知失败", e);
+        }
+    }
+
+    private Tree currentTree() {
+        Tree current = tree;
+        if (current == null) {
+            synchronized (this) {
+                current = tree;
+                if (current == null) {
+                    current = rebuild();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 从数据库加载全部分类并原子替换分类树
+     */
+    private synchronized Tree rebuild() {
+        Tree built = build(categoryDao.findList(null), versionCounter.incrementAndGet());
+        tree = built;
+        log.debug("分类树重建完成：version={}, categories={}", built.version, built.categoryIds.size());
+        return built;
+    }
+
+    /**
+     * 构建分类树：先建立父子邻接表，再对每个分类做一次深度优先遍历得到子孙ID列表；
+     * 作为父分类出现但本身不存在的ID（包括表示顶级的0）同样计算，其子孙为挂在它下面的分类
+     */
+    private static Tree build(List<GoodsCategory> categories, long version) {
+        Map<Integer, List<Integer>> children = new HashMap<>();
+        Set<Integer> categoryIds = new HashSet<>(categories.size() * 2);
+        for (GoodsCategory category : categories) {
+            categoryIds.add(category.getId());
+            if (category.getParentId() != null) {
+                children.computeIfAbsent(category.getParentId(), key -> new ArrayList<>()).add(category.getId());
+            }
+        }
+        Set<Integer> roots = new HashSet<>(categoryIds);
+        roots.addAll(children.keySet());
+
+        Map<Integer, List<Integer>> subtreeIds = new HashMap<>(roots.size() * 2);
+        for (Integer root : roots) {
+            List<Integer> ids = new ArrayList<>();
+            Set<Integer> visited = new HashSet<>();
+            Deque<Integer> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Integer id = stack.pop();
+                // 防止错误数据形成环
+                if (!visited.add(id)) {
+                    continue;
+                }
+                ids.add(id);
+                List<Integer> childIds = children.get(id);
+                if (childIds != null) {
+                    for (int i = childIds.size() - 1; i >= 0; i--) {
+                        stack.push(childIds.get(i));
+                    }
+                }
+            }
+            subtreeIds.put(root, Collections.unmodifiableList(ids));
+        }
+        return new Tree(version, Collections.unmodifiableSet(categoryIds), Collections.unmodifiableMap(subtreeIds));
+    }
+
+    /**
+     * 不可变的分类树快照
+     */
+    private static final class Tree {
+        private final long version;
+        private final Set<Integer> categoryIds;
+        private final Map<Integer, List<Integer>> subtreeIds;
+
+        private Tree(long version, Set<Integer> categoryIds, Map<Integer, List<Integer>> subtreeIds) {
+            this.version = version;
+            this.categoryIds = categoryIds;
+            this.subtreeIds = subtreeIds;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ptumall.dao.ChatMessageMapper;
+import ptumall.dao.ChatSessionMapper;
+import ptumall.model.ChatSession;
+import ptumall.service.ChatAssignmentService;
+import ptumall.service.ChatFrame;
+import ptumall.service.ChatMessageWriter;
+import ptumall.service.ChatPresenceService;
+import ptumall.service.ChatUnreadService;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.ChatAssignStatsVO;
+import ptumall.vo.ChatAssignVO;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 在线交流会话分配服务实现类
+ * 管理员连接WebSocket时登记为在线，新会话进入待分配队列后立即分配给进行中会话最少的在线管理员；
+ * 管理员负载用原子计数器维护，分配和手动接入通过CAS抢占，不加锁。
+ * 分配结果由后台线程异步写入数据库，写入时发现会话已被其他节点分配则撤销本节点的分配。
+ * 集群模式下在线管理员登记在Redis中，任一节点都可以把会话分配给连接在其他节点的管理员；
+ * 各节点的负载计数只包含本节点的分配，定时按数据库对账，并纳入其他节点创建的待分配会话。
+ * 管理员下线超过offline-grace仍未重新上线时，其进行中的会话重新分配给其他在线管理员
+ */
+@Slf4j
+@Service
+public class ChatAssignmentServiceImpl implements ChatAssignmentService {
+
+    // 转移消息前等待批量写入的最长时间（毫秒）
+    private static final long FLUSH_TIMEOUT_MILLIS = 1000;
+    // 集群模式下所有节点的在线管理员
+    private static final String ADMINS_KEY = "chat:assign:admins";
+
+    @Autowired
+    private ChatSessionMapper chatSessionMapper;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+
+    @Autowired
+    private ChatPresenceService chatPresenceService;
+
+    @Autowired
+    private ChatUnreadService chatUnreadService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 每个管理员最多同时进行的会话数，0表示不限制
+    @Value("${chat.assign.max-sessions-per-admin:0}")
+    private int maxSessionsPerAdmin;
+
+    // 没有可分配的管理员时，客户消息暂时发给的管理员，会话分配后转给实际接入的管理员
+    @Value("${chat.assign.default-admin-id:1}")
+    private Long defaultAdminId;
+
+    // 管理员下线超过该时间（毫秒）仍未重新上线时，其进行中的会话重新分配
+    @Value("${chat.assign.offline-grace:120000}")
+    private long offlineGraceMillis;
+
+    @Value("${chat.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    // 本节点在线管理员
+    private final Set<Long> onlineAdmins = ConcurrentHashMap.newKeySet();
+    // 有进行中会话但不在线的管理员 -> 首次发现其离线的时间
+    private final Map<Long, Long> offlineSince = new ConcurrentHashMap<>();
+    // 重新分配的会话 -> 原管理员，写入新的分配后使原管理员的未读计数失效
+    private final Map<String, Long> releasedFrom = new ConcurrentHashMap<>();
+    // 已分配、尚未写入数据库的会话，对账时保留其内存中的分配
+    private final Set<String> persisting = ConcurrentHashMap.newKeySet();
+    // 管理员进行中的会话数（包括离线管理员）
+    private final Map<Long, AtomicInteger> loads = new ConcurrentHashMap<>();
+    // 会话ID -> 管理员ID
+    private final Map<String, Long> assignments = new ConcurrentHashMap<>();
+    // 待分配会话，队列保持创建顺序，已分配或已关闭的会话在出队时跳过
+    private final Map<String, ChatSession> pendingSessions = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<String> pendingQueue = new ConcurrentLinkedQueue<>();
+    // 同一时刻只有一个线程执行分配
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    private ExecutorService persistExecutor;
+
+    // 统计
+    private final LongAdder assignedSessions = new LongAdder();
+    private final LongAdder totalWaitMillis = new LongAdder();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder reassignedSessions = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        persistExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "chat-assign-persist");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (ChatSession session : chatSessionMapper.findActiveAssigned()) {
+                assignments.put(session.getId(), session.getAdminId());
+                load(session.getAdminId()).incrementAndGet();
+            }
+            for (ChatSession session : chatSessionMapper.findPendingSessions()) {
+                enqueue(session);
+            }
+            log.info("会话分配状态已加载：assigned={}, pending={}", assignments.size(), pendingSessions.size());
+        } catch (Exception e) {
+            log.error("加载会话分配状态失败", e);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        persistExecutor.shutdown();
+        if (!persistExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("会话分配结果未能全部写入数据库，未写入的会话重启后重新分配");
+        }
+    }
+
+    @Override
+    public void onAdminOnline(Long adminId) {
+        load(adminId);
+        onlineAdmins.add(adminId);
+        offlineSince.remove(adminId);
+        if (clusterEnabled) {
+            try {
+                stringRedisTemplate.opsForSet().add(ADMINS_KEY, adminId.toString());
+            } catch (Exception e) {
+                log.warn("登记在线管理员失败，其他节点暂时不会向其分配会话：adminId={}, {}", adminId, e.getMessage());
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void onAdminOffline(Long adminId) {
+        onlineAdmins.remove(adminId);
+        offlineSince.putIfAbsent(adminId, System.currentTimeMillis());
+        if (clusterEnabled && !chatPresenceService.isOnline(adminId, "admin")) {
+            try {
+                stringRedisTemplate.opsForSet().remove(ADMINS_KEY, adminId.toString());
+            } catch (Exception e) {
+                log.warn("移除在线管理员失败，由对账清理：adminId={}, {}", adminId, e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void onSessionCreated(ChatSession session) {
+        TransactionUtils.afterCommit(() -> {
+            enqueue(session);
+            drain();
+        });
+    }
+
+    @Override
+    public void onSessionClosed(String sessionId) {
+        TransactionUtils.afterCommit(() -> {
+            pendingSessions.remove(sessionId);
+            Long adminId = assignments.remove(sessionId);
+            if (adminId != null) {
+                load(adminId).decrementAndGet();
+                drain();
+            }
+        });
+    }
+
+    @Override
+    public Long resolveAdmin(ChatSession session) {
+        Long adminId = assignments.get(session.getId());
+        if (adminId != null) {
+            return adminId;
+        }
+        if (Integer.valueOf(0).equals(session.getStatus())) {
+            // 会话可能创建于其他节点或在本节点重启前创建，加入队列后立即尝试分配
+            enqueue(session);
+            drain();
+            adminId = assignments.get(session.getId());
+        }
+        if (adminId == null) {
+            log.info("会话{}暂无可分配的管理员，消息先发给默认管理员{}", session.getId(), defaultAdminId);
+            return defaultAdminId;
+        }
+        return adminId;
+    }
+
+    @Override
+    public boolean claim(String sessionId, Long adminId) {
+        ChatSession session = chatSessionMapper.findById(sessionId);
+        if (session == null || !Integer.valueOf(0).equals(session.getStatus())) {
+            return false;
+        }
+        if (session.getAdminId() != null && !assignments.containsKey(sessionId)) {
+            // 已被其他节点分配
+            return session.getAdminId().equals(adminId);
+        }
+        Long current = assignments.putIfAbsent(sessionId, adminId);
+        if (current != null) {
+            return current.equals(adminId);
+        }
+        load(adminId).incrementAndGet();
+        ChatSession pending = pendingSessions.remove(sessionId);
+        assigned(pending != null ? pending : session, adminId, false);
+        return true;
+    }
+
+    @Override
+    public List<ChatSession> getPendingSessions() {
+        if (clusterEnabled) {
+            // 其他节点创建的会话不在本节点的队列中
+            return chatSessionMapper.findPendingSessions();
+        }
+        List<ChatSession> sessions = new ArrayList<>(pendingSessions.values());
+        sessions.sort(Comparator.comparing(ChatSession::getCreateTime, Comparator.nullsLast(Comparator.naturalOrder())));
+        return sessions;
+    }
+
+    @Override
+    public ChatAssignStatsVO getStats() {
+        Map<Long, Integer> adminLoads = new HashMap<>();
+        for (Long adminId : candidateAdmins()) {
+            adminLoads.put(adminId, load(adminId).get());
+        }
+        long assigned = assignedSessions.sum();
+        ChatAssignStatsVO stats = new ChatAssignStatsVO();
+        stats.setOnlineAdmins(adminLoads.size());
+        stats.setAdminLoads(adminLoads);
+        stats.setPendingSessions(pendingSessions.size());
+        stats.setAssignedSessions(assigned);
+        stats.setAverageWaitMillis(assigned == 0 ? 0.0 : (double) totalWaitMillis.sum() / assigned);
+        stats.setMaxWaitMillis(maxWaitMillis.get());
+        stats.setConflicts(conflicts.sum());
+        stats.setReassignedSessions(reassignedSessions.sum());
+        return stats;
+    }
+
+    /**
+     * 定时对账：集群模式下按数据库校正分配和负载，并纳入其他节点创建的待分配会话；
+     * 然后把离线超过offline-grace的管理员的会话重新分配
+     */
+    @Scheduled(fixedDelayString = "${chat.assign.reconcile-interval:30000}")
+    public void reconcile() {
+        try {
+            if (clusterEnabled) {
+                syncFromDatabase();
+            }
+            releaseOfflineAdmins();
+            drain();
+        } catch (Exception e) {
+            log.error("会话分配对账失败", e);
+        }
+    }
+
+    /**
+     * 按数据库重建分配和负载计数，尚未写入数据库的本节点分配保留；
+     * 重建期间并发的分配可能使计数短暂偏差，下次对账时修正
+     */
+    private void syncFromDatabase() {
+        Map<String, Long> current = new HashMap<>();
+        for (ChatSession session : chatSessionMapper.findActiveAssigned()) {
+            current.put(session.getId(), session.getAdminId());
+        }
+        for (Map.Entry<String, Long> entry : assignments.entrySet()) {
+            if (!current.containsKey(entry.getKey()) && persisting.contains(entry.getKey())) {
+                current.put(entry.getKey(), entry.getValue());
+            }
+        }
+        // 其他节点结束或释放的会话
+        assignments.keySet().removeIf(sessionId -> !current.containsKey(sessionId));
+        assignments.putAll(current);
+        Map<Long, Integer> counts = new HashMap<>();
+        for (Long adminId : current.values()) {
+            counts.merge(adminId, 1, Integer::sum);
+        }
+        for (Map.Entry<Long, AtomicInteger> entry : loads.entrySet()) {
+            entry.getValue().set(counts.getOrDefault(entry.getKey(), 0));
+        }
+        for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            load(entry.getKey()).set(entry.getValue());
+        }
+        for (ChatSession session : chatSessionMapper.findPendingSessions()) {
+            enqueue(session);
+        }
+        // 进程崩溃时没有移除的管理员
+        Set<String> admins = stringRedisTemplate.opsForSet().members(ADMINS_KEY);
+        if (admins != null) {
+            for (String admin : admins) {
+                Long adminId = Long.valueOf(admin);
+                if (!onlineAdmins.contains(adminId) && !chatPresenceService.isOnline(adminId, "admin")) {
+                    stringRedisTemplate.opsForSet().remove(ADMINS_KEY, admin);
+                }
+            }
+        }
+    }
+
+    /**
+     * 释放离线超过offline-grace的管理员的会话并重新加入待分配队列，
+     * 释放以会话仍由该管理员接入为条件，多个节点同时对账时只有一个节点成功
+     */
+    private void releaseOfflineAdmins() {
+        long now = System.currentTimeMillis();
+        Set<Long> assignedAdmins = new HashSet<>(assignments.values());
+        offlineSince.keySet().retainAll(assignedAdmins);
+        for (Long adminId : assignedAdmins) {
+            if (onlineAdmins.contains(adminId) || chatPresenceService.isOnline(adminId, "admin")) {
+                offlineSince.remove(adminId);
+                continue;
+            }
+            long since = offlineSince.computeIfAbsent(adminId, id -> now);
+            if (now - since < offlineGraceMillis) {
+                continue;
+            }
+            for (Map.Entry<String, Long> entry : assignments.entrySet()) {
+                if (adminId.equals(entry.getValue()) && !persisting.contains(entry.getKey())) {
+                    release(entry.getKey(), adminId);
+                }
+            }
+        }
+    }
+
+    private void release(String sessionId, Long adminId) {
+        if (chatSessionMapper.releaseAdmin(sessionId, adminId) == 0) {
+            // 会话已结束或已被其他节点释放，下次对账时按数据库移除
+            return;
+        }
+        if (assignments.remove(sessionId, adminId)) {
+            load(adminId).decrementAndGet();
+        }
+        ChatSession session = chatSessionMapper.findById(sessionId);
+        if (session == null) {
+            return;
+        }
+        releasedFrom.put(sessionId, adminId);
+        reassignedSessions.increment();
+        log.info("管理员{}离线超过{}ms，会话{}重新分配", adminId, offlineGraceMillis, sessionId);
+        enqueue(session);
+    }
+
+    private void enqueue(ChatSession session) {
+        if (!assignments.containsKey(session.getId()) && pendingSessions.putIfAbsent(session.getId(), session) == null) {
+            pendingQueue.offer(session.getId());
+        }
+    }
+
+    /**
+     * 按创建顺序分配待分配的会话，直到队列为空或没有可分配的管理员
+     * 其他线程正在分配时直接返回，由该线程在结束前重新检查队列
+     */
+    private void drain() {
+        do {
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                Collection<Long> admins = candidateAdmins();
+                String sessionId;
+                while ((sessionId = pendingQueue.peek()) != null) {
+                    ChatSession session = pendingSessions.get(sessionId);
+                    if (session == null || assignments.containsKey(sessionId)) {
+                        pendingQueue.poll();
+                        continue;
+                    }
+                    Long adminId = reserveAdmin(admins);
+                    if (adminId == null) {
+                        break;
+                    }
+                    pendingQueue.poll();
+                    if (assignments.putIfAbsent(sessionId, adminId) != null) {
+                        // 已被管理员手动接入
+                        load(adminId).decrementAndGet();
+                        continue;
+                    }
+                    pendingSessions.remove(sessionId);
+                    assigned(session, adminId, true);
+                }
+            } finally {
+                draining.set(false);
+            }
+        } while (!pendingQueue.isEmpty() && hasCapacity(candidateAdmins()));
+    }
+
+    /**
+     * 可分配会话的管理员：单节点时为本节点在线管理员，集群模式下为所有节点的在线管理员
+     */
+    private Collection<Long> candidateAdmins() {
+        if (!clusterEnabled) {
+            return onlineAdmins;
+        }
+        Set<Long> admins = new HashSet<>(onlineAdmins);
+        try {
+            Set<String> members = stringRedisTemplate.opsForSet().members(ADMINS_KEY);
+            if (members != null) {
+                for (String member : members) {
+                    Long adminId = Long.valueOf(member);
+                    if (!admins.contains(adminId) && chatPresenceService.isOnline(adminId, "admin")) {
+                        admins.add(adminId);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取在线管理员失败，只分配给本节点的管理员: {}", e.getMessage());
+        }
+        return admins;
+    }
+
+    /**
+     * 选出进行中会话最少的在线管理员并占用一个名额，计数在选择后被其他线程修改时重新选择
+     */
+    private Long reserveAdmin(Collection<Long> admins) {
+        while (true) {
+            Long best = null;
+            AtomicInteger bestLoad = null;
+            int bestValue = Integer.MAX_VALUE;
+            for (Long adminId : admins) {
+                AtomicInteger load = load(adminId);
+                int value = load.get();
+                if (value < bestValue && (maxSessionsPerAdmin <= 0 || value < maxSessionsPerAdmin)) {
+                    best = adminId;
+                    bestLoad = load;
+                    bestValue = value;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            if (bestLoad.compareAndSet(bestValue, bestValue + 1)) {
+                return best;
+            }
+        }
+    }
+
+    private boolean hasCapacity(Collection<Long> admins) {
+        for (Long adminId : admins) {
+            if (maxSessionsPerAdmin <= 0 || load(adminId).get() < maxSessionsPerAdmin) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 记录分配结果，异步写入数据库，自动分配的会话通知管理员
+     */
+    private void assigned(ChatSession session, Long adminId, boolean notify) {
+        Date createTime = session.getCreateTime();
+        long wait = createTime == null ? 0 : Math.max(System.currentTimeMillis() - createTime.getTime(), 0);
+        if (!releasedFrom.containsKey(session.getId())) {
+            // 重新分配的会话不计入等待时间
+            assignedSessions.increment();
+            totalWaitMillis.add(wait);
+            maxWaitMillis.accumulateAndGet(wait, Math::max);
+        }
+        log.info("会话 {} 已分配给管理员 {}，等待{}ms", session.getId(), adminId, wait);
+        persisting.add(session.getId());
+        try {
+            persistExecutor.execute(() -> persist(session.getId(), adminId));
+        } catch (RejectedExecutionException e) {
+            persist(session.getId(), adminId);
+        }
+        if (notify) {
+            ChatAssignVO notice = new ChatAssignVO();
+            notice.setSessionId(session.getId());
+            notice.setCustomerId(session.getCustomerId());
+            notice.setTitle(session.getTitle());
+            try {
+                chatPresenceService.deliver(adminId, "admin", ChatFrame.of(notice));
+            } catch (Exception e) {
+                log.warn("推送会话分配通知失败：sessionId={}, adminId={}", session.getId(), adminId, e);
+            }
+        }
+    }
+
+    private void persist(String sessionId, Long adminId) {
+        Long previousAdminId = releasedFrom.remove(sessionId);
+        try {
+            if (chatSessionMapper.claimAdmin(sessionId, adminId) > 0) {
+                // 分配前发给默认管理员（或离线的原管理员）的消息转给接入的管理员，等待批量写入中的消息先入库
+                chatMessageWriter.flush(FLUSH_TIMEOUT_MILLIS);
+                if (chatMessageMapper.transferToAdmin(sessionId, adminId) > 0) {
+                    chatUnreadService.invalidate(previousAdminId != null ? previousAdminId : defaultAdminId, "admin");
+                    chatUnreadService.invalidate(adminId, "admin");
+                }
+                return;
+            }
+            // 会话已被其他节点分配、已结束或已删除，撤销本节点的分配
+            conflicts.increment();
+            ChatSession current = chatSessionMapper.findById(sessionId);
+            if (assignments.remove(sessionId, adminId)) {
+                load(adminId).decrementAndGet();
+                if (current != null && current.getAdminId() != null && Integer.valueOf(0).equals(current.getStatus())
+                        && assignments.putIfAbsent(sessionId, current.getAdminId()) == null) {
+                    load(current.getAdminId()).incrementAndGet();
+                }
+            }
+            log.warn("会话{}已被其他管理员接入或已关闭，撤销分配给管理员{}", sessionId, adminId);
+        } catch (Exception e) {
+            // 内存中的分配继续有效，重启后该会话重新分配
+            log.error("保存会话分配失败：sessionId={}, adminId={}", sessionId, adminId, e);
+        } finally {
+            persisting.remove(sessionId);
+        }
+    }
+
+    private AtomicInteger load(Long adminId) {
+        return loads.computeIfAbsent(adminId, id -> new AtomicInteger());
+    }
+}
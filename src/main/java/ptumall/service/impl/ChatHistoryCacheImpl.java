@@ -0,0 +1,256 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import ptumall.dao.ChatMessageMapper;
+import ptumall.model.ChatMessage;
+import ptumall.service.ChatHistoryCache;
+import ptumall.service.ChatMessageWriter;
+import ptumall.service.ChatPresenceService;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.CursorPageResult;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 聊天记录缓存实现类
+ * 按会话保存最近buffer-size条消息，会话数量超过max-sessions时淘汰最久未访问的会话；
+ * 首次访问会话时先等待批量写入中的消息入库，再从数据库加载最近的消息。
+ * 集群模式下，某个节点上有新消息或已读变化时通过Redis通知其他节点丢弃该会话的缓存
+ */
+@Slf4j
+@Service
+public class ChatHistoryCacheImpl implements ChatHistoryCache, MessageListener {
+
+    // 会话缓存失效通知频道
+    private static final String INVALIDATE_CHANNEL = "chat:history:invalidate";
+    // 加载前等待批量写入的最长时间（毫秒）
+    private static final long FLUSH_TIMEOUT_MILLIS = 1000;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+
+    @Autowired
+    private ChatPresenceService chatPresenceService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    // 每个会话缓存的消息数
+    @Value("${chat.history.buffer-size:50}")
+    private int bufferSize;
+
+    // 最多缓存的会话数
+    @Value("${chat.history.max-sessions:10000}")
+    private int maxSessions;
+
+    @Value("${chat.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    private Map<String, Ring> rings;
+
+    @PostConstruct
+    public void init() {
+        rings = Collections.synchronizedMap(new LinkedHashMap<String, Ring>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Ring> eldest) {
+                return size() > maxSessions;
+            }
+        });
+        if (clusterEnabled) {
+            redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+        }
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public CursorPageResult<ChatMessage> getLatest(String sessionId, int limit) {
+        Ring ring = rings.computeIfAbsent(sessionId, id -> new Ring(bufferSize));
+        List<ChatMessage> page;
+        boolean hasMore;
+        synchronized (ring) {
+            if (!ring.loaded) {
+                load(sessionId, ring);
+            }
+            page = ring.latest(limit);
+            hasMore = page.size() < ring.messages.size() || !ring.complete;
+        }
+        if (hasMore && !page.isEmpty() && page.get(0).getId() == null) {
+            // 最早一条消息还在批量写入中，等入库后才有ID作为游标
+            chatMessageWriter.flush(FLUSH_TIMEOUT_MILLIS);
+        }
+        String nextCursor = hasMore && !page.isEmpty() && page.get(0).getId() != null
+                ? String.valueOf(page.get(0).getId()) : null;
+        return new CursorPageResult<>(nextCursor, nextCursor != null, limit, page);
+    }
+
+    @Override
+    public void onSessionCreated(String sessionId) {
+        Ring ring = new Ring(bufferSize);
+        ring.loaded = true;
+        ring.complete = true;
+        TransactionUtils.afterCommit(() -> rings.put(sessionId, ring));
+    }
+
+    @Override
+    public void append(ChatMessage message) {
+        TransactionUtils.afterCommit(() -> {
+            Ring ring = rings.get(message.getSessionId());
+            if (ring != null) {
+                // 正在从数据库加载时等待加载完成，已包含在加载结果中的消息不会重复追加
+                synchronized (ring) {
+                    if (ring.loaded) {
+                        ring.append(message);
+                    }
+                }
+            }
+            publish(message.getSessionId());
+        });
+    }
+
+    @Override
+    public void markRead(String sessionId, Long receiverId, String receiverType) {
+        Ring ring = rings.get(sessionId);
+        if (ring != null) {
+            synchronized (ring) {
+                for (ChatMessage message : ring.messages) {
+                    if (Objects.equals(message.getReceiverId(), receiverId)
+                            && Objects.equals(message.getReceiverType(), receiverType)) {
+                        message.setStatus(1);
+                    }
+                }
+            }
+        }
+        publish(sessionId);
+    }
+
+    @Override
+    public void markRead(String sessionId, Long messageId) {
+        Ring ring = sessionId == null ? null : rings.get(sessionId);
+        if (ring != null) {
+            synchronized (ring) {
+                for (ChatMessage message : ring.messages) {
+                    if (Objects.equals(message.getId(), messageId)) {
+                        message.setStatus(1);
+                    }
+                }
+            }
+        }
+        publish(sessionId);
+    }
+
+    @Override
+    public void remove(String sessionId) {
+        rings.remove(sessionId);
+        publish(sessionId);
+    }
+
+    /**
+     * 其他节点的会话有变化，丢弃本地缓存，下次访问时重新加载
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        if (separator <= 0 || body.substring(0, separator).equals(chatPresenceService.getNodeId())) {
+            return;
+        }
+        rings.remove(body.substring(separator + 1));
+    }
+
+    /**
+     * 从数据库加载会话最近的消息，多取一条用于判断是否还有更早的消息
+     */
+    private void load(String sessionId, Ring ring) {
+        chatMessageWriter.flush(FLUSH_TIMEOUT_MILLIS);
+        List<ChatMessage> latest = chatMessageMapper.findBySessionIdBefore(sessionId, null, bufferSize + 1);
+        ring.complete = latest.size() <= bufferSize;
+        // 查询结果按ID降序，放入缓冲区时改为升序
+        for (int i = Math.min(latest.size(), bufferSize) - 1; i >= 0; i--) {
+            ring.messages.addLast(latest.get(i));
+        }
+        ring.loaded = true;
+    }
+
+    private void publish(String sessionId) {
+        if (!clusterEnabled || sessionId == null) {
+            return;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(INVALIDATE_CHANNEL, chatPresenceService.getNodeId() + ":" + sessionId);
+        } catch (Exception e) {
+            log.error("发送聊天记录缓存失效通知失败：sessionId={}", sessionId, e);
+        }
+    }
+
+    /**
+     * 单个会话的环形缓冲区，所有访问在Ring对象上同步
+     */
+    private static final class Ring {
+        private final int capacity;
+        private final ArrayDeque<ChatMessage> messages;
+        // 是否已从数据库加载
+        private boolean loaded;
+        // 缓冲区是否包含了会话的全部消息
+        private boolean complete;
+
+        private Ring(int capacity) {
+            this.capacity = capacity;
+            this.messages = new ArrayDeque<>(capacity);
+        }
+
+        private void append(ChatMessage message) {
+            if (message.getId() != null) {
+                for (ChatMessage existing : messages) {
+                    if (message.getId().equals(existing.getId())) {
+                        return;
+                    }
+                }
+            }
+            messages.addLast(message);
+            if (messages.size() > capacity) {
+                messages.removeFirst();
+                complete = false;
+            }
+        }
+
+        private List<ChatMessage> latest(int limit) {
+            int skip = Math.max(messages.size() - limit, 0);
+            List<ChatMessage> result = new ArrayList<>(Math.min(limit, messages.size()));
+            Iterator<ChatMessage> iterator = messages.iterator();
+            for (int i = 0; iterator.hasNext(); i++) {
+                ChatMessage message = iterator.next();
+                if (i >= skip) {
+                    result.add(message);
+                }
+            }
+            return result;
+        }
+    }
+}
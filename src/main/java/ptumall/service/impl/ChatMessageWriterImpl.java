@@ -0,0 +1,599 @@
+package ptumall.service.impl;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.ChatMessageMapper;
+import ptumall.dao.ChatSessionMapper;
+import ptumall.model.ChatMessage;
+import ptumall.service.ChatMessageWriter;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.ChatPersistStatsVO;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 聊天消息持久化服务实现类（组提交 + 异步批量写库）
+ * 日志线程把一批消息追加到本地日志文件并强制落盘后，才通知发送方写入成功；
+ * 写库线程每隔几毫秒或凑满一批，用多行插入写入chat_message，同一会话的最后更新时间合并为一次更新，
+ * 并在同一事务中记录已入库的日志序号；节点重启时回放本地日志中序号更大的消息，保证崩溃后不丢不重。
+ * 消息在调用方事务提交后才写入本地日志，事务回滚的消息不会被写入。
+ * 未启用时在调用方事务中直接写库；待写库消息超过上限或本地日志写入失败时在独立事务中直接写库
+ */
+@Slf4j
+@Service
+public class ChatMessageWriterImpl implements ChatMessageWriter {
+
+    // 节点ID文件，保证重启后使用同一个检查点
+    private static final String NODE_ID_FILE = "node.id";
+    // 日志分段文件后缀，文件名为该分段第一条消息的序号
+    private static final String SEGMENT_SUFFIX = ".log";
+    // 写库失败后重试的最大间隔（毫秒）
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 30000;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ChatSessionMapper chatSessionMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${chat.persist.enabled:false}")
+    private boolean enabled;
+
+    // 本地日志目录
+    @Value("${chat.persist.journal-dir:./data/chat-journal}")
+    private String journalDir;
+
+    // 每批最多消息数
+    @Value("${chat.persist.batch-size:200}")
+    private int batchSize;
+
+    // 凑批最长等待时间（毫秒）
+    @Value("${chat.persist.flush-interval:5}")
+    private long flushIntervalMillis;
+
+    // 已写入日志但尚未写库的消息上限
+    @Value("${chat.persist.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 单个日志分段文件大小上限（字节）
+    @Value("${chat.persist.segment-size:67108864}")
+    private long segmentSize;
+
+    // 事务提交后直接写库时使用的独立事务
+    private TransactionTemplate directTemplate;
+
+    private ObjectMapper journalMapper;
+    private File directory;
+    private String nodeId;
+    private Semaphore permits;
+
+    private final BlockingQueue<PendingWrite> appendQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Entry> flushQueue = new LinkedBlockingQueue<>();
+    // 已写满的日志分段，全部入库后删除
+    private final List<Segment> closedSegments = new ArrayList<>();
+    private final Object flushMonitor = new Object();
+
+    // 以下两个字段只由日志线程访问
+    private Segment currentSegment;
+    private long nextSeq;
+
+    private volatile long journaledSeq;
+    private volatile long flushedSeq;
+    private volatile boolean running;
+    private Thread journalThread;
+    private Thread flushThread;
+
+    private final LongAdder journaledMessages = new LongAdder();
+    private final LongAdder flushedMessages = new LongAdder();
+    private final LongAdder flushBatches = new LongAdder();
+    private final LongAdder flushMillis = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder directWrites = new LongAdder();
+    private long recoveredMessages;
+    private long lastStatsTime = System.currentTimeMillis();
+    private long lastStatsFlushed;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        directTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        directTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        journalMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        directory = new File(journalDir);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("无法创建聊天消息日志目录: " + directory.getAbsolutePath());
+        }
+        nodeId = loadNodeId();
+        permits = new Semaphore(queueCapacity);
+
+        Long checkpoint = chatMessageMapper.findJournalCheckpoint(nodeId);
+        long lastSeq = recover(checkpoint == null ? 0 : checkpoint);
+        nextSeq = lastSeq + 1;
+        journaledSeq = lastSeq;
+        flushedSeq = lastSeq;
+        currentSegment = Segment.open(directory, nextSeq);
+
+        running = true;
+        journalThread = new Thread(this::journalLoop, "chat-journal");
+        flushThread = new Thread(this::flushLoop, "chat-flush");
+        journalThread.setDaemon(true);
+        flushThread.setDaemon(true);
+        journalThread.start();
+        flushThread.start();
+        log.info("聊天消息批量写入已启动：nodeId={}, journalDir={}, recovered={}", nodeId,
+                directory.getAbsolutePath(), recoveredMessages);
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // 日志线程写完已提交的消息后退出，写库线程再把剩余消息写入数据库
+        journalThread.join(10000);
+        flushThread.join(10000);
+        currentSegment.close();
+    }
+
+    @Override
+    public void write(ChatMessage message) {
+        if (!running) {
+            writeDirect(message);
+            return;
+        }
+        TransactionUtils.afterCommit(() -> journal(message));
+    }
+
+    @Override
+    public boolean flush(long timeoutMillis) {
+        if (!running) {
+            return true;
+        }
+        long target = journaledSeq;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (flushMonitor) {
+            while (flushedSeq < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    flushMonitor.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized ChatPersistStatsVO getStats() {
+        ChatPersistStatsVO stats = new ChatPersistStatsVO();
+        long batches = flushBatches.sum();
+        long flushed = flushedMessages.sum();
+        long now = System.currentTimeMillis();
+        stats.setEnabled(enabled);
+        stats.setPendingMessages(running ? (long) (queueCapacity - permits.availablePermits()) : 0L);
+        stats.setJournaledMessages(journaledMessages.sum());
+        stats.setFlushedMessages(flushed);
+        stats.setFlushBatches(batches);
+        stats.setAverageBatchSize(batches == 0 ? 0.0 : (double) flushed / batches);
+        stats.setAverageFlushMillis(batches == 0 ? 0.0 : (double) flushMillis.sum() / batches);
+        stats.setFlushedPerSecond(now == lastStatsTime ? 0.0 : (flushed - lastStatsFlushed) * 1000.0 / (now - lastStatsTime));
+        stats.setFailedFlushes(failedFlushes.sum());
+        stats.setDirectWrites(directWrites.sum());
+        stats.setRecoveredMessages(recoveredMessages);
+        lastStatsTime = now;
+        lastStatsFlushed = flushed;
+        return stats;
+    }
+
+    /**
+     * 写入本地日志并等待落盘，在调用方事务提交后执行，此时只能在独立事务中直接写库
+     */
+    private void journal(ChatMessage message) {
+        if (!running || !permits.tryAcquire()) {
+            directTemplate.execute(status -> {
+                writeDirect(message);
+                return null;
+            });
+            return;
+        }
+        PendingWrite pending = new PendingWrite(message);
+        appendQueue.add(pending);
+        try {
+            pending.future.join();
+        } catch (CompletionException e) {
+            permits.release();
+            log.error("聊天消息写入本地日志失败，改为直接写入数据库", e.getCause());
+            directTemplate.execute(status -> {
+                writeDirect(message);
+                return null;
+            });
+        }
+    }
+
+    private void writeDirect(ChatMessage message) {
+        directWrites.increment();
+        chatMessageMapper.insert(message);
+        chatSessionMapper.updateLastTime(message.getSessionId());
+    }
+
+    /**
+     * 日志线程：取出一批待写消息，一次写入并落盘（组提交）
+     */
+    private void journalLoop() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running || !appendQueue.isEmpty()) {
+            try {
+                PendingWrite first = appendQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                appendQueue.drainTo(batch, batchSize - 1);
+                append(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("聊天消息日志线程出错", e);
+                for (PendingWrite pending : batch) {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void append(List<PendingWrite> batch) throws IOException {
+        long startSeq = nextSeq;
+        long startPosition = currentSegment.channel.position();
+        List<Entry> entries = new ArrayList<>(batch.size());
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(batch.size() * 256);
+        for (PendingWrite pending : batch) {
+            Entry entry = new Entry(nextSeq++, pending.message);
+            buffer.write(journalMapper.writeValueAsBytes(JournalRecord.of(entry)));
+            buffer.write('\n');
+            entries.add(entry);
+        }
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                currentSegment.channel.write(bytes);
+            }
+            currentSegment.channel.force(false);
+        } catch (IOException e) {
+            // 截掉写了一半的内容，避免重启回放时与直接写库的消息重复
+            nextSeq = startSeq;
+            try {
+                currentSegment.channel.truncate(startPosition);
+                currentSegment.channel.position(startPosition);
+            } catch (IOException ignored) {
+                // 截断失败时后续写入同样会失败，消息全部改为直接写库
+            }
+            throw e;
+        }
+        currentSegment.lastSeq = nextSeq - 1;
+        journaledSeq = nextSeq - 1;
+        journaledMessages.add(entries.size());
+        flushQueue.addAll(entries);
+        for (PendingWrite pending : batch) {
+            pending.future.complete(null);
+        }
+        if (currentSegment.channel.size() >= segmentSize) {
+            rotate();
+        }
+    }
+
+    private void rotate() throws IOException {
+        Segment full = currentSegment;
+        full.close();
+        synchronized (closedSegments) {
+            closedSegments.add(full);
+        }
+        currentSegment = Segment.open(directory, nextSeq);
+    }
+
+    /**
+     * 写库线程：凑满一批或等待超过flush-interval后批量写入数据库
+     */
+    private void flushLoop() {
+        List<Entry> batch = new ArrayList<>(batchSize);
+        while (running || journalThread.isAlive() || !flushQueue.isEmpty()) {
+            try {
+                Entry first = flushQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize) {
+                    flushQueue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Entry next = flushQueue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                if (!flushWithRetry(batch)) {
+                    // 停机时数据库仍不可用，剩余消息保留在本地日志中，下次启动时回放
+                    return;
+                }
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private boolean flushWithRetry(List<Entry> batch) throws InterruptedException {
+        long backoff = 100;
+        int attempts = 0;
+        while (true) {
+            try {
+                long start = System.currentTimeMillis();
+                flushBatch(batch);
+                flushMillis.add(System.currentTimeMillis() - start);
+                flushBatches.increment();
+                flushedMessages.add(batch.size());
+                permits.release(batch.size());
+                deleteFlushedSegments();
+                return true;
+            } catch (Exception e) {
+                failedFlushes.increment();
+                attempts++;
+                log.error("聊天消息批量写入数据库失败（第{}次），{}ms后重试", attempts, backoff, e);
+                if (!running && attempts >= 3) {
+                    return false;
+                }
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中批量插入消息、合并更新会话时间并记录已入库的日志序号
+     */
+    private void flushBatch(List<Entry> batch) {
+        List<ChatMessage> messages = new ArrayList<>(batch.size());
+        Map<String, Date> lastTimes = new HashMap<>();
+        long lastSeq = 0;
+        for (Entry entry : batch) {
+            ChatMessage message = entry.message;
+            messages.add(message);
+            lastTimes.merge(message.getSessionId(), message.getCreateTime(), (a, b) -> a.after(b) ? a : b);
+            lastSeq = Math.max(lastSeq, entry.seq);
+        }
+        long checkpoint = lastSeq;
+        transactionTemplate.execute(status -> {
+            chatMessageMapper.batchInsert(messages);
+            chatSessionMapper.batchUpdateLastTime(lastTimes);
+            chatMessageMapper.saveJournalCheckpoint(nodeId, checkpoint);
+            return null;
+        });
+        synchronized (flushMonitor) {
+            flushedSeq = Math.max(flushedSeq, checkpoint);
+            flushMonitor.notifyAll();
+        }
+    }
+
+    private void deleteFlushedSegments() {
+        synchronized (closedSegments) {
+            Iterator<Segment> iterator = closedSegments.iterator();
+            while (iterator.hasNext()) {
+                Segment segment = iterator.next();
+                if (segment.lastSeq <= flushedSeq) {
+                    if (!segment.file.delete()) {
+                        log.warn("删除聊天消息日志文件失败: {}", segment.file);
+                    }
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 回放本地日志中序号大于检查点的消息（上次停机或崩溃时尚未入库），回放完成后删除旧日志
+     *
+     * @return 日志中的最大序号与检查点中较大的一个
+     */
+    private long recover(long checkpoint) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files == null || files.length == 0) {
+            return checkpoint;
+        }
+        Arrays.sort(files);
+        long lastSeq = checkpoint;
+        List<Entry> batch = new ArrayList<>(batchSize);
+        for (File file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JournalRecord record;
+                    try {
+                        record = journalMapper.readValue(line, JournalRecord.class);
+                    } catch (IOException e) {
+                        // 崩溃时最后一行可能只写了一半，该批消息未通知发送方成功
+                        log.warn("跳过无法解析的聊天消息日志: {}", file.getName());
+                        continue;
+                    }
+                    lastSeq = Math.max(lastSeq, record.seq);
+                    if (record.seq > checkpoint) {
+                        batch.add(new Entry(record.seq, record.toMessage()));
+                        if (batch.size() >= batchSize) {
+                            flushBatch(batch);
+                            recoveredMessages += batch.size();
+                            batch.clear();
+                        }
+                    }
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            flushBatch(batch);
+            recoveredMessages += batch.size();
+        }
+        for (File file : files) {
+            if (!file.delete()) {
+                log.warn("删除聊天消息日志文件失败: {}", file);
+            }
+        }
+        return lastSeq;
+    }
+
+    private String loadNodeId() throws IOException {
+        File file = new File(directory, NODE_ID_FILE);
+        if (file.exists()) {
+            String id = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+            if (!id.isEmpty()) {
+                return id;
+            }
+        }
+        String id = UUID.randomUUID().toString();
+        Files.write(file.toPath(), id.getBytes(StandardCharsets.UTF_8));
+        return id;
+    }
+
+    /**
+     * 等待写入本地日志的消息
+     */
+    private static class PendingWrite {
+        private final ChatMessage message;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingWrite(ChatMessage message) {
+            this.message = message;
+        }
+    }
+
+    /**
+     * 已写入本地日志、等待写库的消息
+     */
+    private static class Entry {
+        private final long seq;
+        private final ChatMessage message;
+
+        Entry(long seq, ChatMessage message) {
+            this.seq = seq;
+            this.message = message;
+        }
+    }
+
+    /**
+     * 本地日志中的一行记录
+     */
+    private static class JournalRecord {
+        public long seq;
+        public String content;
+        public Long senderId;
+        public String senderType;
+        public Long receiverId;
+        public String receiverType;
+        public Long createTime;
+        public Integer status;
+        public String sessionId;
+
+        static JournalRecord of(Entry entry) {
+            ChatMessage message = entry.message;
+            JournalRecord record = new JournalRecord();
+            record.seq = entry.seq;
+            record.content = message.getContent();
+            record.senderId = message.getSenderId();
+            record.senderType = message.getSenderType();
+            record.receiverId = message.getReceiverId();
+            record.receiverType = message.getReceiverType();
+            record.createTime = message.getCreateTime() == null ? null : message.getCreateTime().getTime();
+            record.status = message.getStatus();
+            record.sessionId = message.getSessionId();
+            return record;
+        }
+
+        ChatMessage toMessage() {
+            ChatMessage message = new ChatMessage();
+            message.setContent(content);
+            message.setSenderId(senderId);
+            message.setSenderType(senderType);
+            message.setReceiverId(receiverId);
+            message.setReceiverType(receiverType);
+            message.setCreateTime(createTime == null ? new Date() : new Date(createTime));
+            message.setStatus(status);
+            message.setSessionId(sessionId);
+            return message;
+        }
+    }
+
+    /**
+     * 本地日志分段文件
+     */
+    private static class Segment {
+        private final File file;
+        private final RandomAccessFile raf;
+        private final FileChannel channel;
+        private volatile long lastSeq;
+
+        private Segment(File file) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+            this.channel.position(channel.size());
+        }
+
+        static Segment open(File directory, long firstSeq) throws IOException {
+            return new Segment(new File(directory, String.format("%020d", firstSeq) + SEGMENT_SUFFIX));
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                log.warn("关闭聊天消息日志文件失败: {}", file, e);
+            }
+        }
+    }
+}
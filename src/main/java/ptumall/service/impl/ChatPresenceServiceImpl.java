@@ -0,0 +1,297 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import ptumall.service.AdminChatWebSocketServer;
+import ptumall.service.ChatFrame;
+import ptumall.service.ChatPresenceService;
+import ptumall.service.ChatWebSocketServer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.websocket.Session;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在线交流在线状态与跨节点消息路由服务实现类
+ * Redis哈希 chat:presence 记录 “用户ID_用户类型 -> 节点ID”，每个节点定时刷新 chat:node:{节点ID} 存活标记；
+ * 接收者连接在其他节点时，把消息发布到该节点专属的 chat:relay:{节点ID} 频道，由其推送给本地连接。
+ * 未开启集群模式时只使用本节点内存中的连接，行为与单机部署一致
+ */
+@Slf4j
+@Service
+public class ChatPresenceServiceImpl implements ChatPresenceService, MessageListener {
+
+    // 在线用户所在节点
+    private static final String PRESENCE_KEY = "chat:presence";
+    // 节点存活标记前缀
+    private static final String NODE_KEY_PREFIX = "chat:node:";
+    // 节点消息转发频道前缀
+    private static final String RELAY_CHANNEL_PREFIX = "chat:relay:";
+    // 转发消息中接收者标识与消息内容的分隔符
+    private static final char RELAY_SEPARATOR = '\n';
+    // 心跳时每条脚本重新登记的用户数
+    private static final int REGISTER_BATCH_SIZE = 500;
+
+    /**
+     * 仅当用户仍登记在指定节点上时才删除，避免覆盖用户在其他节点上的新连接
+     */
+    private static final DefaultRedisScript<Long> REMOVE_IF_MATCH_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], ARGV[1]) == ARGV[2] then " +
+            "return redis.call('HDEL', KEYS[1], ARGV[1]) end " +
+            "return 0", Long.class);
+
+    /**
+     * 心跳重新登记本节点的用户：只补上缺失的登记，已登记在其他节点的用户（在其他节点重新连接）保持不变；
+     * ARGV[1]为节点ID，其余为用户标识，返回补上的登记数
+     */
+    private static final DefaultRedisScript<Long> REGISTER_IF_ABSENT_SCRIPT = new DefaultRedisScript<>(
+            "local n = 0 " +
+            "for i = 2, #ARGV do " +
+            "n = n + redis.call('HSETNX', KEYS[1], ARGV[i], ARGV[1]) end " +
+            "return n", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${chat.cluster.enabled:false}")
+    private boolean enabled;
+
+    // 节点ID，未配置时启动时随机生成
+    @Value("${chat.cluster.node-id:}")
+    private String configuredNodeId;
+
+    // 节点存活标记刷新间隔（毫秒），标记有效期为3个间隔
+    @Value("${chat.cluster.heartbeat-interval:10000}")
+    private long heartbeatIntervalMillis;
+
+    private String nodeId;
+
+    // 本节点上的在线用户，用于定时重新登记
+    private final Set<String> localUsers = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        nodeId = StringUtils.hasText(configuredNodeId) ? configuredNodeId : UUID.randomUUID().toString();
+        if (!enabled) {
+            return;
+        }
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(RELAY_CHANNEL_PREFIX + nodeId));
+        heartbeat();
+        log.info("在线交流集群模式已开启，节点ID: {}", nodeId);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.delete(NODE_KEY_PREFIX + nodeId);
+            for (String user : localUsers) {
+                stringRedisTemplate.execute(REMOVE_IF_MATCH_SCRIPT, Collections.singletonList(PRESENCE_KEY), user, nodeId);
+            }
+        } catch (Exception e) {
+            log.warn("清理节点在线状态失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void online(Long userId, String userType) {
+        String user = userKey(userId, userType);
+        localUsers.add(user);
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForHash().put(PRESENCE_KEY, user, nodeId);
+        } catch (Exception e) {
+            // 下次心跳时会重新登记
+            log.error("登记在线状态失败: {}", user, e);
+        }
+    }
+
+    @Override
+    public void offline(Long userId, String userType) {
+        String user = userKey(userId, userType);
+        localUsers.remove(user);
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.execute(REMOVE_IF_MATCH_SCRIPT, Collections.singletonList(PRESENCE_KEY), user, nodeId);
+        } catch (Exception e) {
+            log.error("清除在线状态失败: {}", user, e);
+        }
+    }
+
+    @Override
+    public boolean isOnline(Long userId, String userType) {
+        if (localSession(userId, userType) != null) {
+            return true;
+        }
+        return enabled && remoteNode(userKey(userId, userType)) != null;
+    }
+
+    @Override
+    public boolean deliver(Long receiverId, String receiverType, ChatFrame frame) {
+        Session session = localSession(receiverId, receiverType);
+        if (session != null) {
+            sendLocal(session, receiverType, frame);
+            return true;
+        }
+        if (!enabled) {
+            return false;
+        }
+        String user = userKey(receiverId, receiverType);
+        String node = remoteNode(user);
+        if (node == null) {
+            return false;
+        }
+        try {
+            stringRedisTemplate.convertAndSend(RELAY_CHANNEL_PREFIX + node, user + RELAY_SEPARATOR + frame.getText());
+            log.debug("消息已转发到节点{}: {}", node, user);
+            return true;
+        } catch (Exception e) {
+            // 消息已保存到数据库，接收者可以拉取历史
+            log.error("转发消息到节点{}失败", node, e);
+            return false;
+        }
+    }
+
+    /**
+     * 接收其他节点转发过来的消息，推送给本节点上的连接
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(RELAY_SEPARATOR);
+        if (separator <= 0) {
+            return;
+        }
+        String user = body.substring(0, separator);
+        int typeSeparator = user.indexOf('_');
+        if (typeSeparator <= 0) {
+            return;
+        }
+        Long userId;
+        try {
+            userId = Long.valueOf(user.substring(0, typeSeparator));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        String userType = user.substring(typeSeparator + 1);
+        Session session = localSession(userId, userType);
+        if (session != null) {
+            sendLocal(session, userType, ChatFrame.ofText(body.substring(separator + 1)));
+        } else {
+            log.debug("转发消息的接收者{}已不在本节点", user);
+        }
+    }
+
+    /**
+     * 定时刷新节点存活标记，并重新登记本节点的在线用户（防止Redis数据丢失后无法路由）；
+     * 只登记缺失的用户，不覆盖用户在其他节点上的新连接
+     */
+    @Scheduled(fixedDelayString = "${chat.cluster.heartbeat-interval:10000}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.opsForValue().set(NODE_KEY_PREFIX + nodeId, String.valueOf(System.currentTimeMillis()),
+                    heartbeatIntervalMillis * 3, TimeUnit.MILLISECONDS);
+            List<String> args = new ArrayList<>(REGISTER_BATCH_SIZE + 1);
+            for (String user : localUsers) {
+                if (args.isEmpty()) {
+                    args.add(nodeId);
+                }
+                args.add(user);
+                if (args.size() > REGISTER_BATCH_SIZE) {
+                    registerIfAbsent(args);
+                    args.clear();
+                }
+            }
+            if (!args.isEmpty()) {
+                registerIfAbsent(args);
+            }
+        } catch (Exception e) {
+            log.error("刷新节点存活标记失败", e);
+        }
+    }
+
+    private void registerIfAbsent(List<String> args) {
+        Long restored = stringRedisTemplate.execute(REGISTER_IF_ABSENT_SCRIPT,
+                Collections.singletonList(PRESENCE_KEY), args.toArray());
+        if (restored != null && restored > 0) {
+            log.info("重新登记本节点丢失的在线状态{}个", restored);
+        }
+    }
+
+    /**
+     * 查询用户所在的其他节点，节点已失效时清除其登记
+     */
+    private String remoteNode(String user) {
+        try {
+            Object node = stringRedisTemplate.opsForHash().get(PRESENCE_KEY, user);
+            if (node == null || nodeId.equals(node)) {
+                return null;
+            }
+            String nodeValue = node.toString();
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(NODE_KEY_PREFIX + nodeValue))) {
+                stringRedisTemplate.execute(REMOVE_IF_MATCH_SCRIPT, Collections.singletonList(PRESENCE_KEY), user, nodeValue);
+                return null;
+            }
+            return nodeValue;
+        } catch (Exception e) {
+            log.error("查询用户{}所在节点失败", user, e);
+            return null;
+        }
+    }
+
+    private static Session localSession(Long userId, String userType) {
+        if ("customer".equals(userType)) {
+            return ChatWebSocketServer.getSession(userId, userType);
+        } else if ("admin".equals(userType)) {
+            return AdminChatWebSocketServer.getSession(userId);
+        }
+        return null;
+    }
+
+    private static void sendLocal(Session session, String userType, ChatFrame frame) {
+        if ("admin".equals(userType)) {
+            AdminChatWebSocketServer.sendMessage(session, frame);
+        } else {
+            ChatWebSocketServer.sendMessage(session, frame);
+        }
+    }
+
+    private static String userKey(Long userId, String userType) {
+        return userId + "_" + userType;
+    }
+}
@@ -1,7 +1,5 @@
 package ptumall.service.impl;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -11,13 +9,21 @@ import ptumall.dao.ChatSessionMapper;
 import ptumall.model.ChatMessage;
 import ptumall.model.ChatSession;
 import ptumall.model.ChatMessageDTO;
-import ptumall.service.AdminChatWebSocketServer;
+import ptumall.service.ChatAssignmentService;
+import ptumall.service.ChatFrame;
+import ptumall.service.ChatHistoryCache;
+import ptumall.service.ChatMessageWriter;
+import ptumall.service.ChatPresenceService;
 import ptumall.service.ChatService;
-import ptumall.service.ChatWebSocketServer;
+import ptumall.service.ChatUnreadService;
+import ptumall.vo.CursorPageResult;
 
-import javax.websocket.Session;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -45,10 +51,54 @@ public class ChatServiceImpl implements ChatService {
     private ChatSessionMapper chatSessionMapper;
 
     /**
-     * JSON对象映射器
-     * 用于将对象转换为JSON字符串，用在WebSocket消息传输
+     * 在线状态与跨节点路由服务
+     * 接收者连接在其他节点时由该节点推送消息
      */
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    @Autowired
+    private ChatPresenceService chatPresenceService;
+
+    /**
+     * 聊天消息持久化服务
+     * 消息写入本地日志后即返回，由后台批量写入数据库
+     */
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+
+    /**
+     * 聊天记录缓存
+     * 保存每个会话最近的消息，第一屏消息不查询数据库
+     */
+    @Autowired
+    private ChatHistoryCache chatHistoryCache;
+
+    /**
+     * 未读消息计数服务
+     * 在Redis中维护未读数并推送变化，替代COUNT查询
+     */
+    @Autowired
+    private ChatUnreadService chatUnreadService;
+
+    /**
+     * 会话分配服务
+     * 新会话自动分配给负载最低的在线管理员
+     */
+    @Autowired
+    private ChatAssignmentService chatAssignmentService;
+
+    /**
+     * 分页查询消息历史的默认每页数量
+     */
+    private static final int DEFAULT_HISTORY_LIMIT = 20;
+
+    /**
+     * 分页查询消息历史的最大每页数量
+     */
+    private static final int MAX_HISTORY_LIMIT = 100;
+
+    /**
+     * 标记会话已读前等待消息入库的最长时间（毫秒）
+     */
+    private static final long FLUSH_TIMEOUT_MILLIS = 1000;
 
     /**
      * 创建新的聊天会话
@@ -73,6 +123,8 @@ public class ChatServiceImpl implements ChatService {
         
         // 将会话保存到数据库
         chatSessionMapper.insert(chatSession);
+        chatHistoryCache.onSessionCreated(chatSession.getId());
+        chatAssignmentService.onSessionCreated(chatSession);
         log.info("创建聊天会话: {}", chatSession.getId());
         
         return chatSession;
@@ -115,13 +167,9 @@ public class ChatServiceImpl implements ChatService {
             if ("customer".equals(messageDTO.getSenderType())) {
                 // 如果是客户发送，则接收者是管理员
                 messageDTO.setReceiverType("admin");
-                messageDTO.setReceiverId(session.getAdminId());
-                
-                // 如果会话尚未分配管理员，使用默认管理员ID
-                if (messageDTO.getReceiverId() == null) {
-                    messageDTO.setReceiverId(1L); // 默认系统管理员ID
-                    log.info("会话{}尚未分配管理员，消息将发送给默认管理员", session.getId());
-                }
+                // 如果会话尚未写入分配结果，由分配服务确定管理员（没有可用管理员时为默认管理员）
+                messageDTO.setReceiverId(session.getAdminId() != null
+                        ? session.getAdminId() : chatAssignmentService.resolveAdmin(session));
             } else if ("admin".equals(messageDTO.getSenderType())) {
                 // 如果是管理员发送，则接收者是客户
                 messageDTO.setReceiverType("customer");
@@ -148,11 +196,12 @@ public class ChatServiceImpl implements ChatService {
         chatMessage.setStatus(0);  // 状态为"未读"(0)
         chatMessage.setSessionId(messageDTO.getSessionId());  // 设置会话ID
         
-        // 将消息保存到数据库
-        chatMessageMapper.insert(chatMessage);
-        
-        // 更新会话的最后更新时间
-        chatSessionMapper.updateLastTime(messageDTO.getSessionId());
+        // 保存消息并更新会话的最后更新时间（开启批量写入时事务提交后先落本地日志，再异步批量写入数据库，
+        // 返回的消息ID为null）
+        chatMessageWriter.write(chatMessage);
+        // 两者都在事务提交后生效
+        chatHistoryCache.append(chatMessage);
+        chatUnreadService.onMessageSent(chatMessage);
         
         // 尝试通过WebSocket实时发送消息
         try {
@@ -161,32 +210,15 @@ public class ChatServiceImpl implements ChatService {
                 messageDTO.setTimestamp(System.currentTimeMillis());
             }
             
-            // 根据接收者类型选择不同的WebSocket服务
-            if ("customer".equals(messageDTO.getReceiverType())) {
-                // 发送给客户
-                Session receiverSession = ChatWebSocketServer.getSession(
-                        messageDTO.getReceiverId(), "customer");
-                
-                // 如果接收者在线，通过WebSocket发送
-                if (receiverSession != null) {
-                    ChatWebSocketServer.sendMessage(receiverSession, objectMapper.writeValueAsString(messageDTO));
-                    log.debug("消息已通过WebSocket发送给客户: {}", messageDTO.getReceiverId());
-                } else {
-                    log.debug("客户{}不在线，消息已保存到数据库", messageDTO.getReceiverId());
-                }
-            } else if ("admin".equals(messageDTO.getReceiverType())) {
-                // 发送给管理员
-                Session receiverSession = AdminChatWebSocketServer.getSession(messageDTO.getReceiverId());
-                
-                // 如果接收者在线，通过WebSocket发送
-                if (receiverSession != null) {
-                    AdminChatWebSocketServer.sendMessage(receiverSession, objectMapper.writeValueAsString(messageDTO));
-                    log.debug("消息已通过WebSocket发送给管理员: {}", messageDTO.getReceiverId());
-                } else {
-                    log.debug("管理员{}不在线，消息已保存到数据库", messageDTO.getReceiverId());
-                }
+            // 推送给接收者，接收者连接在本节点时直接发送，在其他节点时转发给该节点
+            boolean delivered = chatPresenceService.deliver(messageDTO.getReceiverId(), messageDTO.getReceiverType(),
+                    ChatFrame.of(messageDTO));
+            if (delivered) {
+                log.debug("消息已通过WebSocket发送给{}: {}", messageDTO.getReceiverType(), messageDTO.getReceiverId());
+            } else {
+                log.debug("{}{}不在线，消息已保存到数据库", messageDTO.getReceiverType(), messageDTO.getReceiverId());
             }
-        } catch (JsonProcessingException e) {
+        } catch (UncheckedIOException e) {
             // 记录错误但不影响事务，消息已经保存到数据库
             log.error("消息WebSocket发送失败，但已保存到数据库", e);
         }
@@ -205,6 +237,35 @@ public class ChatServiceImpl implements ChatService {
         return chatMessageMapper.findBySessionId(sessionId);
     }
 
+    /**
+     * 分页获取会话消息历史
+     * 第一页（beforeId为空）从内存中的最近消息返回，更早的消息按(session_id, id)索引查询
+     *
+     * @param sessionId 会话ID
+     * @param beforeId 只返回ID小于该值的消息，为null时返回最新的消息
+     * @param limit 每页数量
+     * @return 按消息ID升序排列的消息，nextCursor为下一页的beforeId
+     */
+    @Override
+    public CursorPageResult<ChatMessage> getSessionMessages(String sessionId, Long beforeId, Integer limit) {
+        int pageSize = limit == null || limit <= 0 ? DEFAULT_HISTORY_LIMIT : Math.min(limit, MAX_HISTORY_LIMIT);
+        if (beforeId == null && pageSize <= chatHistoryCache.getBufferSize()) {
+            return chatHistoryCache.getLatest(sessionId, pageSize);
+        }
+        
+        // 多查一条用于判断是否还有更早的消息
+        List<ChatMessage> messages = chatMessageMapper.findBySessionIdBefore(sessionId, beforeId, pageSize + 1);
+        boolean hasMore = messages.size() > pageSize;
+        if (hasMore) {
+            messages = messages.subList(0, pageSize);
+        }
+        // 查询结果按ID降序，返回时改为升序
+        messages = new ArrayList<>(messages);
+        Collections.reverse(messages);
+        String nextCursor = hasMore ? String.valueOf(messages.get(0).getId()) : null;
+        return new CursorPageResult<>(nextCursor, hasMore, pageSize, messages);
+    }
+
     /**
      * 获取用户的会话列表
      * 根据用户类型查询不同的会话列表
@@ -234,8 +295,19 @@ public class ChatServiceImpl implements ChatService {
      */
     @Override
     public int getUnreadCount(Long userId, String userType) {
-        List<ChatMessage> unreadMessages = chatMessageMapper.findUnreadMessages(userId, userType);
-        return unreadMessages.size();
+        return chatUnreadService.getUnreadCount(userId, userType);
+    }
+
+    /**
+     * 获取用户每个会话的未读消息数量
+     *
+     * @param userId 用户ID
+     * @param userType 用户类型
+     * @return 会话ID -> 未读消息数量
+     */
+    @Override
+    public Map<String, Integer> getSessionUnreadCounts(Long userId, String userType) {
+        return chatUnreadService.getSessionUnreadCounts(userId, userType);
     }
 
     /**
@@ -245,7 +317,12 @@ public class ChatServiceImpl implements ChatService {
      */
     @Override
     public void markMessageAsRead(Long messageId) {
-        chatMessageMapper.markAsRead(messageId);
+        ChatMessage message = chatMessageMapper.findById(messageId);
+        // 只有原来未读的消息才扣减未读数，重复标记不影响计数
+        if (chatMessageMapper.markAsRead(messageId) > 0 && message != null) {
+            chatUnreadService.onMessageRead(message);
+        }
+        chatHistoryCache.markRead(message == null ? null : message.getSessionId(), messageId);
         log.debug("消息已标记为已读: {}", messageId);
     }
 
@@ -258,7 +335,13 @@ public class ChatServiceImpl implements ChatService {
      */
     @Override
     public void markSessionAsRead(String sessionId, Long userId, String userType) {
+        // 先等待批量写入中的消息入库，否则这些消息入库后仍是未读
+        if (!chatMessageWriter.flush(FLUSH_TIMEOUT_MILLIS)) {
+            log.warn("等待聊天消息写入数据库超时，部分消息可能仍为未读，会话ID: {}", sessionId);
+        }
         chatMessageMapper.markAllAsRead(sessionId, userId, userType);
+        chatHistoryCache.markRead(sessionId, userId, userType);
+        chatUnreadService.onSessionRead(sessionId, userId, userType);
         log.debug("会话{}中用户{}的所有消息已标记为已读", sessionId, userId);
     }
 
@@ -271,6 +354,7 @@ public class ChatServiceImpl implements ChatService {
     @Override
     public void endSession(String sessionId) {
         chatSessionMapper.updateStatus(sessionId, 1); // 1表示已结束
+        chatAssignmentService.onSessionClosed(sessionId);
         log.info("会话已结束: {}", sessionId);
     }
 
@@ -283,30 +367,16 @@ public class ChatServiceImpl implements ChatService {
      * @return 是否分配成功
      */
     @Override
-    @Transactional
     public boolean assignAdminToSession(String sessionId, Long adminId) {
-        try {
-            // 更新会话的管理员ID
-            int result = chatSessionMapper.assignAdmin(sessionId, adminId);
-            
-            // 检查更新结果
-            if (result > 0) {
-                log.info("会话 {} 已分配给管理员 {}", sessionId, adminId);
-                
-                // 更新会话的最后更新时间
-                chatSessionMapper.updateLastTime(sessionId);
-                
-                return true;
-            } else {
-                // 更新失败，可能是会话不存在或已被分配
-                log.error("分配管理员失败：会话ID {} 不存在或已被分配", sessionId);
-                return false;
-            }
-        } catch (Exception e) {
-            // 捕获并记录异常
-            log.error("分配管理员失败", e);
-            return false;
+        // 抢占会话，分配结果异步写入数据库
+        boolean claimed = chatAssignmentService.claim(sessionId, adminId);
+        if (claimed) {
+            log.info("会话 {} 已分配给管理员 {}", sessionId, adminId);
+        } else {
+            // 会话不存在、已结束或已被其他管理员接入
+            log.warn("分配管理员失败：会话ID {} 不存在或已被分配", sessionId);
         }
+        return claimed;
     }
 
     /**
@@ -317,7 +387,7 @@ public class ChatServiceImpl implements ChatService {
      */
     @Override
     public List<ChatSession> getPendingSessions() {
-        return chatSessionMapper.findPendingSessions();
+        return chatAssignmentService.getPendingSessions();
     }
 
     /**
@@ -349,12 +419,20 @@ public class ChatServiceImpl implements ChatService {
                 return false;
             }
             
+            // 等待尚未写入数据库的消息入库，避免删除后又被写入
+            if (!chatMessageWriter.flush(5000)) {
+                log.warn("等待聊天消息写入数据库超时，会话ID: {}", sessionId);
+            }
+            
             // 先删除会话中的所有消息
             chatMessageMapper.deleteBySessionId(sessionId);
             log.info("已删除会话 {} 的所有消息", sessionId);
             
             // 再删除会话本身
             int result = chatSessionMapper.deleteById(sessionId);
+            chatHistoryCache.remove(sessionId);
+            chatUnreadService.onSessionDeleted(sessionId, session.getCustomerId(), session.getAdminId());
+            chatAssignmentService.onSessionClosed(sessionId);
             if (result > 0) {
                 log.info("成功删除会话: {}", sessionId);
                 return true;
@@ -0,0 +1,316 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ptumall.dao.ChatMessageMapper;
+import ptumall.model.ChatMessage;
+import ptumall.service.ChatFrame;
+import ptumall.service.ChatMessageWriter;
+import ptumall.service.ChatPresenceService;
+import ptumall.service.ChatUnreadService;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.ChatUnreadVO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天未读消息计数服务实现类
+ * 每个接收者一个Redis哈希 chat:unread:{类型}:{ID}，字段为会话ID -> 未读数，另有total字段保存总数；
+ * 哈希不存在时从数据库统计一次后写入，此后随发送、已读增量维护，不再执行COUNT查询。
+ * 计数变化时向接收者推送unread通知；定时对近期有计数变化或读取过计数的接收者重新统计，校正并发导致的偏差。
+ * 发送、已读的计数更新在调用方事务提交后执行（不在事务中时立即执行），调用方不需要再自行延迟
+ */
+@Slf4j
+@Service
+public class ChatUnreadServiceImpl implements ChatUnreadService {
+
+    // 未读计数哈希前缀
+    private static final String UNREAD_KEY_PREFIX = "chat:unread:";
+    // 总数字段，同时作为计数已初始化的标记
+    private static final String TOTAL_FIELD = "total";
+    // 近期有计数变化或读取过计数的接收者（类型:ID -> 最后活跃时间）
+    private static final String ACTIVE_KEY = "chat:unread:active";
+    // 对账锁，多个节点同时只有一个执行对账
+    private static final String RECONCILE_LOCK_KEY = "chat:unread:reconcile:lock";
+    // 计数哈希有效期（秒），过期后下次访问重新从数据库统计
+    private static final long UNREAD_TTL_SECONDS = 7 * 24 * 3600;
+    // 初始化前等待批量写入的最长时间（毫秒）
+    private static final long FLUSH_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * 新消息：计数已初始化时会话未读数和总数各加一，返回{会话未读数, 总数}，未初始化返回空
+     */
+    private static final DefaultRedisScript<List> INCREMENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], 'total') == 0 then return {} end " +
+            "local session = redis.call('HINCRBY', KEYS[1], ARGV[1], 1) " +
+            "local total = redis.call('HINCRBY', KEYS[1], 'total', 1) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "return {session, total}", List.class);
+
+    /**
+     * 已读：会话未读数减少ARGV[2]（为-1时清零），总数同步减少且不小于0，返回{会话未读数, 总数}，未初始化返回空
+     */
+    private static final DefaultRedisScript<List> DECREMENT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HEXISTS', KEYS[1], 'total') == 0 then return {} end " +
+            "local session = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0') " +
+            "local delta = tonumber(ARGV[2]) " +
+            "if delta < 0 or delta > session then delta = session end " +
+            "session = session - delta " +
+            "if session == 0 then redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "else redis.call('HSET', KEYS[1], ARGV[1], session) end " +
+            "local total = tonumber(redis.call('HGET', KEYS[1], 'total')) - delta " +
+            "if total < 0 then total = 0 end " +
+            "redis.call('HSET', KEYS[1], 'total', total) " +
+            "return {session, total}", List.class);
+
+    /**
+     * 用数据库统计结果整体替换计数：ARGV[1]为有效期，之后为会话ID、未读数交替排列
+     */
+    private static final DefaultRedisScript<Long> REPLACE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "local total = 0 " +
+            "for i = 2, #ARGV, 2 do " +
+            "redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) " +
+            "total = total + tonumber(ARGV[i + 1]) end " +
+            "redis.call('HSET', KEYS[1], 'total', total) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return total", Long.class);
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ChatMessageMapper chatMessageMapper;
+
+    @Autowired
+    private ChatMessageWriter chatMessageWriter;
+
+    @Autowired
+    private ChatPresenceService chatPresenceService;
+
+    // 对账间隔（毫秒），对账范围为最近两个间隔内有计数变化的接收者
+    @Value("${chat.unread.reconcile-interval:300000}")
+    private long reconcileIntervalMillis;
+
+    private final String nodeToken = UUID.randomUUID().toString();
+
+    @Override
+    public int getUnreadCount(Long receiverId, String receiverType) {
+        String key = unreadKey(receiverId, receiverType);
+        try {
+            markActive(receiverId, receiverType);
+            Object total = stringRedisTemplate.opsForHash().get(key, TOTAL_FIELD);
+            if (total != null) {
+                return Integer.parseInt(total.toString());
+            }
+            return load(receiverId, receiverType).values().stream().mapToInt(Integer::intValue).sum();
+        } catch (Exception e) {
+            log.error("读取未读计数失败，改为查询数据库：{}", key, e);
+            return countFromDatabase(receiverId, receiverType).values().stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> getSessionUnreadCounts(Long receiverId, String receiverType) {
+        String key = unreadKey(receiverId, receiverType);
+        try {
+            markActive(receiverId, receiverType);
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+            if (!entries.containsKey(TOTAL_FIELD)) {
+                return load(receiverId, receiverType);
+            }
+            Map<String, Integer> counts = new HashMap<>();
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                if (!TOTAL_FIELD.equals(entry.getKey())) {
+                    counts.put(entry.getKey().toString(), Integer.parseInt(entry.getValue().toString()));
+                }
+            }
+            return counts;
+        } catch (Exception e) {
+            log.error("读取未读计数失败，改为查询数据库：{}", key, e);
+            return countFromDatabase(receiverId, receiverType);
+        }
+    }
+
+    @Override
+    public void onMessageSent(ChatMessage message) {
+        TransactionUtils.afterCommit(() -> update(message.getReceiverId(), message.getReceiverType(),
+                message.getSessionId(), INCREMENT_SCRIPT, String.valueOf(UNREAD_TTL_SECONDS)));
+    }
+
+    @Override
+    public void onMessageRead(ChatMessage message) {
+        TransactionUtils.afterCommit(() -> update(message.getReceiverId(), message.getReceiverType(),
+                message.getSessionId(), DECREMENT_SCRIPT, "1"));
+    }
+
+    @Override
+    public void onSessionRead(String sessionId, Long receiverId, String receiverType) {
+        TransactionUtils.afterCommit(() -> update(receiverId, receiverType, sessionId, DECREMENT_SCRIPT, "-1"));
+    }
+
+    @Override
+    public void onSessionDeleted(String sessionId, Long customerId, Long adminId) {
+        TransactionUtils.afterCommit(() -> {
+            update(customerId, "customer", sessionId, DECREMENT_SCRIPT, "-1");
+            if (adminId != null) {
+                update(adminId, "admin", sessionId, DECREMENT_SCRIPT, "-1");
+            }
+        });
+    }
+
+    @Override
+    public void invalidate(Long receiverId, String receiverType) {
+        try {
+            stringRedisTemplate.delete(unreadKey(receiverId, receiverType));
+        } catch (Exception e) {
+            log.error("清除未读计数失败：{}:{}", receiverType, receiverId, e);
+        }
+    }
+
+    /**
+     * 定时对账：重新统计近期有计数变化的接收者，覆盖Redis中的计数
+     * 发送与已读的增量更新在事务提交后执行，极端情况下可能与初始化统计交错产生偏差，由对账修正
+     */
+    @Scheduled(initialDelayString = "${chat.unread.reconcile-interval:300000}",
+            fixedDelayString = "${chat.unread.reconcile-interval:300000}")
+    @Override
+    public void reconcile() {
+        try {
+            Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(RECONCILE_LOCK_KEY, nodeToken,
+                    reconcileIntervalMillis, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(locked)) {
+                return;
+            }
+        } catch (Exception e) {
+            log.error("未读计数对账加锁失败", e);
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            // 超过计数有效期的记录不再需要对账
+            stringRedisTemplate.opsForZSet().removeRangeByScore(ACTIVE_KEY, 0, now - UNREAD_TTL_SECONDS * 1000);
+            Set<String> receivers = stringRedisTemplate.opsForZSet()
+                    .rangeByScore(ACTIVE_KEY, now - reconcileIntervalMillis * 2, now);
+            if (receivers == null || receivers.isEmpty()) {
+                return;
+            }
+            chatMessageWriter.flush(FLUSH_TIMEOUT_MILLIS);
+            int corrected = 0;
+            for (String receiver : receivers) {
+                int separator = receiver.indexOf(':');
+                String receiverType = receiver.substring(0, separator);
+                Long receiverId = Long.valueOf(receiver.substring(separator + 1));
+                String key = unreadKey(receiverId, receiverType);
+                Object before = stringRedisTemplate.opsForHash().get(key, TOTAL_FIELD);
+                Map<String, Integer> counts = countFromDatabase(receiverId, receiverType);
+                int total = replace(key, counts);
+                if (before != null && Integer.parseInt(before.toString()) != total) {
+                    corrected++;
+                    push(receiverId, receiverType, null, null, total);
+                }
+            }
+            log.info("未读计数对账完成：receivers={}, corrected={}", receivers.size(), corrected);
+        } catch (Exception e) {
+            log.error("未读计数对账失败", e);
+        } finally {
+            try {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(RECONCILE_LOCK_KEY), nodeToken);
+            } catch (Exception e) {
+                log.warn("未读计数对账解锁失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 执行计数脚本并推送变化，计数尚未初始化时不做处理（下次读取时从数据库统计）
+     */
+    private void update(Long receiverId, String receiverType, String sessionId, DefaultRedisScript<List> script, String arg) {
+        if (receiverId == null || receiverType == null || sessionId == null) {
+            return;
+        }
+        try {
+            List<?> result = stringRedisTemplate.execute(script,
+                    Collections.singletonList(unreadKey(receiverId, receiverType)), sessionId, arg);
+            markActive(receiverId, receiverType);
+            if (result == null || result.size() < 2) {
+                return;
+            }
+            push(receiverId, receiverType, sessionId, ((Number) result.get(0)).intValue(), ((Number) result.get(1)).intValue());
+        } catch (Exception e) {
+            // 计数可能出现偏差，由定时对账修正
+            log.error("更新未读计数失败：{}:{}", receiverType, receiverId, e);
+        }
+    }
+
+    /**
+     * 记录接收者近期活跃，纳入下一次对账；读取时也记录，只读取不发送的接收者的计数偏差同样能被修正
+     */
+    private void markActive(Long receiverId, String receiverType) {
+        stringRedisTemplate.opsForZSet().add(ACTIVE_KEY, receiverType + ":" + receiverId, System.currentTimeMillis());
+    }
+
+    /**
+     * 从数据库统计并写入Redis
+     */
+    private Map<String, Integer> load(Long receiverId, String receiverType) {
+        chatMessageWriter.flush(FLUSH_TIMEOUT_MILLIS);
+        Map<String, Integer> counts = countFromDatabase(receiverId, receiverType);
+        replace(unreadKey(receiverId, receiverType), counts);
+        return counts;
+    }
+
+    private int replace(String key, Map<String, Integer> counts) {
+        List<String> args = new ArrayList<>(counts.size() * 2 + 1);
+        args.add(String.valueOf(UNREAD_TTL_SECONDS));
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            args.add(entry.getKey());
+            args.add(String.valueOf(entry.getValue()));
+        }
+        Long total = stringRedisTemplate.execute(REPLACE_SCRIPT, Collections.singletonList(key), args.toArray());
+        return total == null ? 0 : total.intValue();
+    }
+
+    private Map<String, Integer> countFromDatabase(Long receiverId, String receiverType) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Map<String, Object> row : chatMessageMapper.countUnreadBySession(receiverId, receiverType)) {
+            counts.put(String.valueOf(row.get("sessionId")), ((Number) row.get("unreadCount")).intValue());
+        }
+        return counts;
+    }
+
+    /**
+     * 推送未读数变化，接收者不在线时忽略
+     */
+    private void push(Long receiverId, String receiverType, String sessionId, Integer sessionUnread, int totalUnread) {
+        ChatUnreadVO notice = new ChatUnreadVO();
+        notice.setSessionId(sessionId);
+        notice.setSessionUnread(sessionUnread);
+        notice.setTotalUnread(totalUnread);
+        try {
+            chatPresenceService.deliver(receiverId, receiverType, ChatFrame.of(notice));
+        } catch (Exception e) {
+            log.warn("推送未读数变化失败：{}:{}", receiverType, receiverId, e);
+        }
+    }
+
+    private static String unreadKey(Long receiverId, String receiverType) {
+        return UNREAD_KEY_PREFIX + receiverType + ":" + receiverId;
+    }
+}
@@ -0,0 +1,393 @@
+package ptumall.service.impl;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+import ptumall.dao.GoodsDao;
+import ptumall.model.Goods;
+import ptumall.service.GoodsCacheService;
+import ptumall.service.HotStockService;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.GoodsCacheStatsVO;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品详情缓存服务实现类
+ * 两级缓存：本地有界LRU + Redis；同一商品同时未命中时只有一个线程查询数据库，
+ * 不存在的商品缓存空值防止穿透；商品修改后删除缓存并通过Redis发布订阅通知其他节点。
+ * 缓存中只保存商品的静态信息，库存和销量随下单频繁变化，单独按短有效期读取后覆盖到返回结果
+ * （热点商品的库存直接读Redis），下单和回写不再使详情缓存失效
+ */
+@Slf4j
+@Service
+public class GoodsCacheServiceImpl implements GoodsCacheService, MessageListener {
+
+    // 商品详情缓存Redis前缀
+    private static final String CACHE_KEY_PREFIX = "goods:detail:";
+    // 缓存失效通知频道
+    private static final String INVALIDATE_CHANNEL = "goods:cache:invalidate";
+    // 商品不存在时缓存的空值标记
+    private static final String NULL_VALUE = "";
+
+    @Autowired
+    private GoodsDao goodsDao;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private HotStockService hotStockService;
+
+    @Value("${cache.goods.enabled:true}")
+    private boolean enabled;
+
+    // 本地缓存最大条目数
+    @Value("${cache.goods.local-max-size:10000}")
+    private int localMaxSize;
+
+    // 本地缓存有效期（毫秒）
+    @Value("${cache.goods.local-ttl:30000}")
+    private long localTtlMillis;
+
+    // Redis缓存有效期（秒）
+    @Value("${cache.goods.redis-ttl:600}")
+    private long redisTtlSeconds;
+
+    // 空值缓存有效期（秒）
+    @Value("${cache.goods.null-ttl:60}")
+    private long nullTtlSeconds;
+
+    // 库存和销量的本地有效期（毫秒），详情页看到的库存最多滞后这么久
+    @Value("${cache.goods.stock-ttl:1000}")
+    private long stockTtlMillis;
+
+    private ObjectMapper cacheMapper;
+
+    // 商品静态信息
+    private LocalCache localCache;
+
+    // 商品库存和销量，条目中只有stock、salesVolume有值
+    private LocalCache stockCache;
+
+    // 正在从数据库加载的商品，同一商品的并发请求共享一次加载；
+    // 失效时移除该商品的加载任务，加载完成时任务已不在表中说明期间发生过失效，不回填缓存，避免写入旧数据
+    private final Map<Integer, CompletableFuture<Goods>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong localHits = new AtomicLong();
+    private final AtomicLong redisHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalescedLoads = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+    private final AtomicLong stockLoads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        // Goods包含只读的image属性，反序列化时忽略
+        cacheMapper = objectMapper.copy().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        localCache = new LocalCache(localMaxSize);
+        stockCache = new LocalCache(localMaxSize);
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 每次返回新的商品对象，库存和销量为最近stock-ttl内读取的值
+     */
+    @Override
+    public Goods getGoods(Integer id) {
+        if (!enabled || id == null) {
+            return goodsDao.findById(id);
+        }
+        Goods goods = getStaticGoods(id);
+        if (goods == null) {
+            return null;
+        }
+        Goods result = new Goods();
+        BeanUtils.copyProperties(goods, result);
+        Goods stock = getStock(id);
+        result.setStock(stock.getStock());
+        result.setSalesVolume(stock.getSalesVolume());
+        return result;
+    }
+
+    @Override
+    public void invalidate(Integer id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> evict(id, true));
+    }
+
+    @Override
+    public GoodsCacheStatsVO getStats() {
+        GoodsCacheStatsVO stats = new GoodsCacheStatsVO();
+        stats.setEnabled(enabled);
+        stats.setLocalSize(localCache.size());
+        stats.setLocalHits(localHits.get());
+        stats.setRedisHits(redisHits.get());
+        stats.setMisses(misses.get());
+        stats.setCoalescedLoads(coalescedLoads.get());
+        stats.setNegativeHits(negativeHits.get());
+        stats.setLoads(loads.get());
+        stats.setAverageLoadMillis(loads.get() == 0 ? 0.0 : loadNanos.get() / 1_000_000.0 / loads.get());
+        stats.setStockLoads(stockLoads.get());
+        stats.setInvalidations(invalidations.get());
+        long hits = localHits.get() + redisHits.get() + coalescedLoads.get();
+        long total = hits + misses.get();
+        stats.setHitRate(total == 0 ? 0.0 : (double) hits / total);
+        return stats;
+    }
+
+    /**
+     * 收到其他节点的失效通知后删除本地缓存
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object id = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (id instanceof Number) {
+            evict(((Number) id).intValue(), false);
+        } else if (id instanceof Collection) {
+            for (Object each : (Collection<?>) id) {
+                if (each instanceof Number) {
+                    evict(((Number) each).intValue(), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取商品静态信息，返回的对象被多个请求共享，不能修改
+     */
+    private Goods getStaticGoods(Integer id) {
+        LocalEntry entry = localCache.getIfFresh(id);
+        if (entry != null) {
+            localHits.incrementAndGet();
+            if (entry.goods == null) {
+                negativeHits.incrementAndGet();
+            }
+            return entry.goods;
+        }
+
+        CompletableFuture<Goods> future = new CompletableFuture<>();
+        CompletableFuture<Goods> existing = loading.putIfAbsent(id, future);
+        if (existing != null) {
+            coalescedLoads.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        try {
+            Goods goods = load(id, future);
+            future.complete(goods);
+            return goods;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(id, future);
+        }
+    }
+
+    /**
+     * 读取库存和销量，热点商品的库存以Redis为准，Redis不可用时用数据库库存
+     */
+    private Goods getStock(Integer id) {
+        LocalEntry entry = stockCache.getIfFresh(id);
+        if (entry != null) {
+            return entry.goods;
+        }
+        stockLoads.incrementAndGet();
+        Goods stock = goodsDao.selectStockById(id);
+        if (stock == null) {
+            stock = new Goods();
+        }
+        try {
+            Integer hotStock = hotStockService.getStock(id);
+            if (hotStock != null) {
+                stock.setStock(hotStock);
+            }
+        } catch (Exception e) {
+            log.warn("读取热点商品库存失败，使用数据库库存：goodsId={}", id, e);
+        }
+        stockCache.put(id, stock, stockTtlMillis);
+        return stock;
+    }
+
+    /**
+     * 先查Redis，未命中再查数据库并回填两级缓存，缓存中不保存库存和销量
+     */
+    private Goods load(Integer id, CompletableFuture<Goods> future) {
+        String key = CACHE_KEY_PREFIX + id;
+
+        String cached = null;
+        try {
+            cached = stringRedisTemplate.opsForValue().get(key);
+        } catch (Exception e) {
+            log.warn("读取商品缓存失败：goodsId={}", id, e);
+        }
+        if (cached != null) {
+            Goods goods = NULL_VALUE.equals(cached) ? null : fromJson(cached);
+            if (NULL_VALUE.equals(cached) || goods != null) {
+                redisHits.incrementAndGet();
+                if (goods == null) {
+                    negativeHits.incrementAndGet();
+                }
+                if (loading.get(id) == future) {
+                    localCache.put(id, goods, localTtlMillis);
+                }
+                return goods;
+            }
+        }
+
+        misses.incrementAndGet();
+        long start = System.nanoTime();
+        Goods goods = goodsDao.findById(id);
+        loads.incrementAndGet();
+        loadNanos.addAndGet(System.nanoTime() - start);
+        if (goods != null) {
+            goods.setStock(null);
+            goods.setSalesVolume(null);
+        }
+
+        if (loading.get(id) == future) {
+            try {
+                if (goods == null) {
+                    stringRedisTemplate.opsForValue().set(key, NULL_VALUE, nullTtlSeconds, TimeUnit.SECONDS);
+                } else {
+                    stringRedisTemplate.opsForValue().set(key, cacheMapper.writeValueAsString(goods), redisTtlSeconds, TimeUnit.SECONDS);
+                }
+                // 写入期间发生了失效，删掉可能写入的旧数据
+                if (loading.get(id) != future) {
+                    stringRedisTemplate.delete(key);
+                }
+            } catch (Exception e) {
+                log.warn("写入商品缓存失败：goodsId={}", id, e);
+            }
+            localCache.put(id, goods, goods == null ? Math.min(localTtlMillis, nullTtlSeconds * 1000) : localTtlMillis);
+        }
+        return goods;
+    }
+
+    /**
+     * 先删Redis再删本地缓存：删除Redis之前从Redis回填到本地的旧数据会被随后的本地删除清掉
+     */
+    private void evict(Integer id, boolean broadcast) {
+        loading.remove(id);
+        invalidations.incrementAndGet();
+        if (broadcast) {
+            try {
+                stringRedisTemplate.delete(CACHE_KEY_PREFIX + id);
+            } catch (Exception e) {
+                log.error("删除商品缓存失败：goodsId={}", id, e);
+            }
+        }
+        localCache.remove(id);
+        stockCache.remove(id);
+        if (!broadcast) {
+            return;
+        }
+        try {
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, id);
+        } catch (Exception e) {
+            log.error("发送商品缓存失效通知失败：goodsId={}", id, e);
+        }
+    }
+
+    private Goods fromJson(String json) {
+        try {
+            return cacheMapper.readValue(json, Goods.class);
+        } catch (Exception e) {
+            log.warn("商品缓存数据无法解析，将重新加载", e);
+            return null;
+        }
+    }
+
+    /**
+     * 本地缓存条目，goods为null表示商品不存在
+     */
+    private static final class LocalEntry {
+        private final Goods goods;
+        private final long expireAt;
+
+        private LocalEntry(Goods goods, long expireAt) {
+            this.goods = goods;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 按访问顺序淘汰的有界本地缓存
+     */
+    private static final class LocalCache {
+        private final Map<Integer, LocalEntry> entries;
+
+        private LocalCache(int maxSize) {
+            this.entries = new LinkedHashMap<Integer, LocalEntry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, LocalEntry> eldest) {
+                    return size() > maxSize;
+                }
+            };
+        }
+
+        private synchronized LocalEntry getIfFresh(Integer id) {
+            LocalEntry entry = entries.get(id);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expireAt < System.currentTimeMillis()) {
+                entries.remove(id);
+                return null;
+            }
+            return entry;
+        }
+
+        private synchronized void put(Integer id, Goods goods, long ttlMillis) {
+            entries.put(id, new LocalEntry(goods, System.currentTimeMillis() + ttlMillis));
+        }
+
+        private synchronized void remove(Integer id) {
+            entries.remove(id);
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+    }
+}
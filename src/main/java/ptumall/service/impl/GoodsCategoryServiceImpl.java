@@ -7,9 +7,9 @@ import ptumall.dao.GoodsCategoryDao;
 import ptumall.dao.GoodsDao;
 import ptumall.model.Goods;
 import ptumall.model.GoodsCategory;
+import ptumall.service.CategoryTreeService;
 import ptumall.service.GoodsCategoryService;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -23,6 +23,9 @@ public class GoodsCategoryServiceImpl implements GoodsCategoryService {
     @Autowired
     private GoodsDao goodsDao;
     
+    @Autowired
+    private CategoryTreeService categoryTreeService;
+    
     @Override
     public GoodsCategory getCategoryById(Integer id) {
         return categoryDao.findById(id);
@@ -64,6 +67,7 @@ public class GoodsCategoryServiceImpl implements GoodsCategoryService {
         
         int rows = categoryDao.insert(category);
         if (rows > 0) {
+            categoryTreeService.invalidate();
             return category;
         }
         return null;
@@ -92,6 +96,9 @@ public class GoodsCategoryServiceImpl implements GoodsCategoryService {
         }
         
         int rows = categoryDao.update(category);
+        if (rows > 0) {
+            categoryTreeService.invalidate();
+        }
         return rows > 0;
     }
     
@@ -112,43 +119,15 @@ public class GoodsCategoryServiceImpl implements GoodsCategoryService {
         }
         
         int rows = categoryDao.deleteById(id);
+        if (rows > 0) {
+            categoryTreeService.invalidate();
+        }
         return rows > 0;
     }
     
     @Override
     public List<Integer> getCategoryAndChildrenIds(Integer categoryId) {
-        List<Integer> categoryIds = new ArrayList<>();
-        
-        // 如果分类ID为空，直接返回空列表
-        if (categoryId == null) {
-            return categoryIds;
-        }
-        
-        // 添加当前分类ID
-        categoryIds.add(categoryId);
-        
-        // 递归获取子分类ID
-        collectChildCategoryIds(categoryId, categoryIds);
-        
-        return categoryIds;
-    }
-    
-    /**
-     * 递归收集子分类ID
-     * @param parentId 父分类ID
-     * @param categoryIds 收集的分类ID列表
-     */
-    private void collectChildCategoryIds(Integer parentId, List<Integer> categoryIds) {
-        // 获取直接子分类
-        List<GoodsCategory> children = categoryDao.findList(parentId);
-        
-        if (children != null && !children.isEmpty()) {
-            for (GoodsCategory child : children) {
-                // 添加子分类ID
-                categoryIds.add(child.getId());
-                // 递归获取子分类的子分类
-                collectChildCategoryIds(child.getId(), categoryIds);
-            }
-        }
+        // 从内存分类树中直接读取预先计算好的子孙分类ID
+        return categoryTreeService.getSubtreeIds(categoryId);
     }
 } 
\ No newline at end of file
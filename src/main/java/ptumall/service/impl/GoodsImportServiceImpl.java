@@ -0,0 +1,617 @@
+package ptumall.service.impl;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import ptumall.dao.GoodsDao;
+import ptumall.exception.BusinessException;
+import ptumall.model.Goods;
+import ptumall.service.CategoryTreeService;
+import ptumall.service.GoodsImportService;
+import ptumall.service.GoodsSearchService;
+import ptumall.service.RecommendService;
+import ptumall.utils.CsvUtils;
+import ptumall.vo.GoodsImportTaskVO;
+import ptumall.vo.ResultCode;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 商品批量导入导出服务实现类
+ * 导入：上传文件先保存到临时文件，由单独的线程逐行解析和校验（分类从内存分类树中判断），
+ * 每batch-size行通过MyBatis BATCH执行器在一个事务中批量插入，一批失败只回滚该批；
+ * 导入按提交顺序逐个执行，进度保存在内存中供查询。
+ * 导出：在限时的只读事务中通过MyBatis Cursor按ID顺序流式读取商品写入临时文件，事务结束后再输出到响应
+ */
+@Slf4j
+@Service
+public class GoodsImportServiceImpl implements GoodsImportService {
+
+    private static final String STATUS_WAITING = "waiting";
+    private static final String STATUS_RUNNING = "running";
+    private static final String STATUS_COMPLETED = "completed";
+    private static final String STATUS_FAILED = "failed";
+    // 内存中保留的最近任务数
+    private static final int MAX_TASKS = 50;
+    private static final int MAX_NAME_LENGTH = 100;
+    private static final int MAX_IMAGE_URL_LENGTH = 255;
+    // 导出的列，导入时按同名列读取（忽略大小写和下划线），其余列忽略
+    private static final String[] EXPORT_COLUMNS = {"id", "name", "price", "description", "categoryId", "stock",
+            "status", "imageUrl", "rating", "salesVolume", "createTime", "updateTime"};
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private CategoryTreeService categoryTreeService;
+
+    @Autowired
+    private GoodsSearchService goodsSearchService;
+
+    @Autowired
+    private RecommendService recommendService;
+
+    @Autowired
+    private GoodsDao goodsDao;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 每批插入的商品数，JDBC URL加上rewriteBatchedStatements=true时一批合并为一条多值INSERT
+    @Value("${goods.import.batch-size:1000}")
+    private int batchSize;
+
+    // 每个任务最多保留的错误信息条数
+    @Value("${goods.import.max-errors:100}")
+    private int maxErrors;
+
+    // 导出时读取数据库的最长时间（秒），超过后中止导出
+    @Value("${goods.export.timeout:300}")
+    private int exportTimeoutSeconds;
+
+    private SqlSessionTemplate batchSqlSession;
+    private GoodsDao batchGoodsDao;
+    private ObjectReader goodsReader;
+    private ExecutorService executor;
+    // 导出使用的限时只读事务
+    private TransactionTemplate exportTemplate;
+
+    // 任务ID -> 任务，按提交顺序保留最近MAX_TASKS个
+    private final Map<String, ImportTask> tasks = Collections.synchronizedMap(
+            new LinkedHashMap<String, ImportTask>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ImportTask> eldest) {
+                    return size() > MAX_TASKS;
+                }
+            });
+
+    @PostConstruct
+    public void init() {
+        batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        batchGoodsDao = batchSqlSession.getMapper(GoodsDao.class);
+        goodsReader = objectMapper.readerFor(Goods.class).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        exportTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        exportTemplate.setReadOnly(true);
+        exportTemplate.setTimeout(exportTimeoutSeconds);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "goods-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public GoodsImportTaskVO submitImport(MultipartFile file, String format) throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "导入文件不能为空");
+        }
+        String resolved = resolveFormat(format, file.getOriginalFilename());
+        Path temp = Files.createTempFile("goods-import-", "." + resolved);
+        try {
+            file.transferTo(temp.toFile());
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        ImportTask task = new ImportTask(UUID.randomUUID().toString().replace("-", ""), file.getOriginalFilename(), resolved);
+        tasks.put(task.taskId, task);
+        executor.execute(() -> run(task, temp));
+        log.info("商品导入任务已提交：taskId={}, file={}, size={}", task.taskId, task.fileName, file.getSize());
+        return task.toVO();
+    }
+
+    @Override
+    public GoodsImportTaskVO getImportTask(String taskId) {
+        ImportTask task = tasks.get(taskId);
+        return task == null ? null : task.toVO();
+    }
+
+    /**
+     * 先在限时的只读事务内遍历游标写入临时文件，事务结束后再把文件复制到输出流，
+     * 下载较慢时不占用数据库连接
+     */
+    @Override
+    public long exportGoods(String format, Integer categoryId, OutputStream out) throws IOException {
+        String resolved = checkFormat(format);
+        boolean csv = FORMAT_CSV.equals(resolved);
+        Path temp = Files.createTempFile("goods-export-", "." + resolved);
+        try {
+            long count;
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                count = exportTemplate.execute(status -> {
+                    try {
+                        return writeExport(csv, categoryId, writer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            Files.copy(temp, out);
+            out.flush();
+            return count;
+        } finally {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.warn("删除导出临时文件失败: {}", temp, e);
+            }
+        }
+    }
+
+    /**
+     * 遍历游标写出商品，超过导出时限时中止，事务结束时关闭游标和连接
+     */
+    private long writeExport(boolean csv, Integer categoryId, Writer writer) throws IOException {
+        long deadline = System.currentTimeMillis() + exportTimeoutSeconds * 1000L;
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        if (csv) {
+            writer.write(String.join(",", EXPORT_COLUMNS));
+            writer.write("\r\n");
+        }
+        long count = 0;
+        try (Cursor<Goods> cursor = goodsDao.streamForExport(categoryId)) {
+            for (Goods goods : cursor) {
+                if (csv) {
+                    writeCsv(writer, goods, dateFormat);
+                } else {
+                    writer.write(objectMapper.writeValueAsString(goods));
+                    writer.write('\n');
+                }
+                count++;
+                // 事务超时只作用于语句执行，遍历结果期间按时限自行检查
+                if ((count & 1023) == 0 && System.currentTimeMillis() > deadline) {
+                    throw new BusinessException(ResultCode.FAILED, "导出超时，请按分类分批导出");
+                }
+            }
+        }
+        return count;
+    }
+
+    private void run(ImportTask task, Path file) {
+        task.startTime = new Date();
+        task.status = STATUS_RUNNING;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8), 64 * 1024)) {
+            RowSource source = FORMAT_CSV.equals(task.format) ? new CsvRowSource(reader) : new JsonLinesRowSource(reader);
+            List<Goods> batch = new ArrayList<>(batchSize);
+            long batchFirstLine = 0;
+            Row row;
+            while ((row = source.next()) != null) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IllegalStateException("服务关闭，导入中断");
+                }
+                task.processed.incrementAndGet();
+                String error = row.error != null ? row.error : validate(row.goods);
+                if (error != null) {
+                    task.failed.incrementAndGet();
+                    task.addError("第" + row.line + "行: " + error, maxErrors);
+                    continue;
+                }
+                if (batch.isEmpty()) {
+                    batchFirstLine = row.line;
+                }
+                batch.add(row.goods);
+                if (batch.size() >= batchSize) {
+                    insertBatch(task, batch, batchFirstLine, row.line);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                insertBatch(task, batch, batchFirstLine, source.lastLine());
+            }
+            task.status = STATUS_COMPLETED;
+        } catch (Exception e) {
+            log.error("商品导入任务失败：taskId={}", task.taskId, e);
+            task.addError("导入中止: " + e.getMessage(), maxErrors + 1);
+            task.status = STATUS_FAILED;
+        } finally {
+            task.endTime = new Date();
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("删除导入临时文件失败: {}", file, e);
+            }
+            if (task.activated.get() > 0) {
+                // 导入的上架商品较多，整体重建搜索索引和推荐排行，不逐个更新
+                refreshIndexes();
+            }
+            log.info("商品导入任务结束：taskId={}, status={}, processed={}, imported={}, failed={}, cost={}ms",
+                    task.taskId, task.status, task.processed.get(), task.imported.get(), task.failed.get(),
+                    task.endTime.getTime() - task.startTime.getTime());
+        }
+    }
+
+    /**
+     * 在一个事务中批量插入一批商品，BATCH执行器在flushStatements时一次性发送
+     */
+    private void insertBatch(ImportTask task, List<Goods> batch, long firstLine, long lastLine) {
+        try {
+            transactionTemplate.execute(status -> {
+                for (Goods goods : batch) {
+                    batchGoodsDao.insert(goods);
+                }
+                batchSqlSession.flushStatements();
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("商品导入批量写入失败：taskId={}, lines={}-{}", task.taskId, firstLine, lastLine, e);
+            task.failed.addAndGet(batch.size());
+            task.addError("第" + firstLine + "-" + lastLine + "行写入失败，已回滚该批" + batch.size() + "个商品: "
+                    + rootMessage(e), maxErrors);
+            return;
+        }
+        task.imported.addAndGet(batch.size());
+        for (Goods goods : batch) {
+            if (goods.getStatus() == 1) {
+                task.activated.incrementAndGet();
+            }
+        }
+    }
+
+    private void refreshIndexes() {
+        try {
+            goodsSearchService.rebuild();
+        } catch (Exception e) {
+            log.error("导入后重建商品搜索索引失败", e);
+        }
+        try {
+            recommendService.refresh();
+        } catch (Exception e) {
+            log.error("导入后刷新推荐排行失败", e);
+        }
+    }
+
+    /**
+     * 校验并补全导入的商品，与addGoods的默认值一致，返回错误信息，通过时返回null
+     */
+    private String validate(Goods goods) {
+        if (goods.getName() == null || goods.getName().trim().isEmpty()) {
+            return "商品名称不能为空";
+        }
+        goods.setName(goods.getName().trim());
+        if (goods.getName().length() > MAX_NAME_LENGTH) {
+            return "商品名称不能超过" + MAX_NAME_LENGTH + "个字符";
+        }
+        if (goods.getPrice() == null || goods.getPrice().signum() < 0 || goods.getPrice().scale() > 2
+                || goods.getPrice().precision() - goods.getPrice().scale() > 8) {
+            return "商品价格无效";
+        }
+        if (goods.getCategoryId() == null) {
+            return "分类ID不能为空";
+        }
+        if (!categoryTreeService.exists(goods.getCategoryId())) {
+            return "分类不存在: " + goods.getCategoryId();
+        }
+        if (goods.getStock() == null) {
+            goods.setStock(0);
+        } else if (goods.getStock() < 0) {
+            return "库存不能为负数";
+        }
+        if (goods.getStatus() == null) {
+            goods.setStatus((byte) 0);
+        } else if (goods.getStatus() != 0 && goods.getStatus() != 1) {
+            return "状态只能为0或1";
+        }
+        if (goods.getImageUrl() != null && goods.getImageUrl().length() > MAX_IMAGE_URL_LENGTH) {
+            return "图片地址不能超过" + MAX_IMAGE_URL_LENGTH + "个字符";
+        }
+        // 评分、销量和时间不从文件导入
+        Date now = new Date();
+        goods.setId(null);
+        goods.setRating(new BigDecimal("0.0"));
+        goods.setSalesVolume(0);
+        goods.setCreateTime(now);
+        goods.setUpdateTime(now);
+        return null;
+    }
+
+    private void writeCsv(Writer writer, Goods goods, SimpleDateFormat dateFormat) throws IOException {
+        writer.write(String.valueOf(goods.getId()));
+        writer.write(',');
+        writer.write(CsvUtils.escape(goods.getName()));
+        writer.write(',');
+        writer.write(goods.getPrice() == null ? "" : goods.getPrice().toPlainString());
+        writer.write(',');
+        writer.write(CsvUtils.escape(goods.getDescription()));
+        writer.write(',');
+        writer.write(goods.getCategoryId() == null ? "" : goods.getCategoryId().toString());
+        writer.write(',');
+        writer.write(goods.getStock() == null ? "" : goods.getStock().toString());
+        writer.write(',');
+        writer.write(goods.getStatus() == null ? "" : goods.getStatus().toString());
+        writer.write(',');
+        writer.write(CsvUtils.escape(goods.getImageUrl()));
+        writer.write(',');
+        writer.write(goods.getRating() == null ? "" : goods.getRating().toPlainString());
+        writer.write(',');
+        writer.write(goods.getSalesVolume() == null ? "" : goods.getSalesVolume().toString());
+        writer.write(',');
+        writer.write(goods.getCreateTime() == null ? "" : dateFormat.format(goods.getCreateTime()));
+        writer.write(',');
+        writer.write(goods.getUpdateTime() == null ? "" : dateFormat.format(goods.getUpdateTime()));
+        writer.write("\r\n");
+    }
+
+    private static String resolveFormat(String format, String fileName) {
+        if (format == null || format.isEmpty()) {
+            String name = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return FORMAT_CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+                return FORMAT_JSONL;
+            }
+            throw new BusinessException(ResultCode.PARAM_ERROR, "无法根据文件名判断格式，请指定format为csv或jsonl");
+        }
+        return checkFormat(format);
+    }
+
+    private static String checkFormat(String format) {
+        String value = format == null ? "" : format.toLowerCase(Locale.ROOT);
+        if (!FORMAT_CSV.equals(value) && !FORMAT_JSONL.equals(value)) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "不支持的文件格式: " + format);
+        }
+        return value;
+    }
+
+    private static String rootMessage(Throwable e) {
+        Throwable root = e;
+        while (root.getCause() != null && root.getCause() != root) {
+            root = root.getCause();
+        }
+        return root.getMessage();
+    }
+
+    /**
+     * 解析出的一行：goods和error只有一个不为空
+     */
+    private static final class Row {
+        private final long line;
+        private final Goods goods;
+        private final String error;
+
+        private Row(long line, Goods goods, String error) {
+            this.line = line;
+            this.goods = goods;
+            this.error = error;
+        }
+    }
+
+    private interface RowSource {
+        /**
+         * 读取下一行商品，跳过空行，输入结束时返回null
+         */
+        Row next() throws IOException;
+
+        /**
+         * 最近一次返回的行的行号
+         */
+        long lastLine();
+    }
+
+    /**
+     * CSV：首行为表头，列名忽略大小写和下划线
+     */
+    private static final class CsvRowSource implements RowSource {
+        private final CsvUtils.RecordReader reader;
+        // 列名 -> 列序号
+        private final Map<String, Integer> columns = new HashMap<>();
+
+        private CsvRowSource(BufferedReader input) throws IOException {
+            reader = new CsvUtils.RecordReader(input);
+            List<String> header = reader.read();
+            if (header == null) {
+                throw new IOException("文件为空");
+            }
+            for (int i = 0; i < header.size(); i++) {
+                columns.put(normalize(header.get(i)), i);
+            }
+            for (String required : new String[]{"name", "price", "categoryid"}) {
+                if (!columns.containsKey(required)) {
+                    throw new IOException("表头缺少必需的列: " + required);
+                }
+            }
+        }
+
+        @Override
+        public Row next() throws IOException {
+            List<String> record;
+            do {
+                record = reader.read();
+                if (record == null) {
+                    return null;
+                }
+            } while (record.size() == 1 && record.get(0).trim().isEmpty());
+            long line = reader.getRecordLine();
+            try {
+                Goods goods = new Goods();
+                goods.setName(value(record, "name"));
+                String price = value(record, "price");
+                goods.setPrice(price == null ? null : new BigDecimal(price));
+                goods.setDescription(value(record, "description"));
+                String categoryId = value(record, "categoryid");
+                goods.setCategoryId(categoryId == null ? null : Integer.valueOf(categoryId));
+                String stock = value(record, "stock");
+                goods.setStock(stock == null ? null : Integer.valueOf(stock));
+                String status = value(record, "status");
+                goods.setStatus(status == null ? null : Byte.valueOf(status));
+                goods.setImageUrl(value(record, "imageurl"));
+                return new Row(line, goods, null);
+            } catch (NumberFormatException e) {
+                return new Row(line, null, "价格、分类ID、库存或状态不是有效的数字");
+            }
+        }
+
+        @Override
+        public long lastLine() {
+            return reader.getRecordLine();
+        }
+
+        /**
+         * 取列值，列不存在或为空时返回null；数字列由调用方解析
+         */
+        private String value(List<String> record, String column) {
+            Integer index = columns.get(column);
+            if (index == null || index >= record.size()) {
+                return null;
+            }
+            String value = record.get(index).trim();
+            return value.isEmpty() ? null : value;
+        }
+
+        private static String normalize(String column) {
+            return column.trim().replace("_", "").toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * JSON Lines：每行一个商品JSON对象，字段名与商品接口一致
+     */
+    private final class JsonLinesRowSource implements RowSource {
+        private final BufferedReader reader;
+        private long line;
+
+        private JsonLinesRowSource(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Row next() throws IOException {
+            String text;
+            do {
+                text = reader.readLine();
+                if (text == null) {
+                    return null;
+                }
+                line++;
+            } while (text.trim().isEmpty());
+            try {
+                return new Row(line, goodsReader.readValue(text), null);
+            } catch (JsonProcessingException e) {
+                return new Row(line, null, "JSON格式错误: " + e.getOriginalMessage());
+            }
+        }
+
+        @Override
+        public long lastLine() {
+            return line;
+        }
+    }
+
+    /**
+     * 导入任务进度，由导入线程更新，查询时复制为VO
+     */
+    private static final class ImportTask {
+        private final String taskId;
+        private final String fileName;
+        private final String format;
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        // 已导入的上架商品数
+        private final AtomicLong activated = new AtomicLong();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile String status = STATUS_WAITING;
+        private volatile Date startTime;
+        private volatile Date endTime;
+
+        private ImportTask(String taskId, String fileName, String format) {
+            this.taskId = taskId;
+            this.fileName = fileName;
+            this.format = format;
+        }
+
+        private void addError(String error, int limit) {
+            if (errors.size() < limit) {
+                errors.add(error);
+            }
+        }
+
+        private GoodsImportTaskVO toVO() {
+            GoodsImportTaskVO vo = new GoodsImportTaskVO();
+            vo.setTaskId(taskId);
+            vo.setFileName(fileName);
+            vo.setFormat(format);
+            vo.setStatus(status);
+            vo.setProcessedRows(processed.get());
+            vo.setImportedRows(imported.get());
+            vo.setFailedRows(failed.get());
+            synchronized (errors) {
+                vo.setErrors(new ArrayList<>(errors));
+            }
+            Date start = startTime;
+            Date end = endTime;
+            vo.setStartTime(start);
+            vo.setEndTime(end);
+            if (start != null) {
+                vo.setElapsedMillis((end != null ? end.getTime() : System.currentTimeMillis()) - start.getTime());
+            }
+            return vo;
+        }
+    }
+}
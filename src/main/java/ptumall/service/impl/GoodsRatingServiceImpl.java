@@ -0,0 +1,151 @@
+package ptumall.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ptumall.dao.GoodsRatingDao;
+import ptumall.model.GoodsRating;
+import ptumall.service.GoodsCacheService;
+import ptumall.service.GoodsRatingService;
+import ptumall.service.RecommendService;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.GoodsRatingVO;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 商品评分汇总服务实现类
+ * 汇总保存在goods_rating表中，添加、删除评价时在同一事务中增减计数并同步goods.rating；
+ * 读取时使用按访问顺序淘汰的有界本地缓存，本节点的变化提交后立即失效，其他节点的变化在缓存过期后生效；
+ * 加载期间该商品发生失效时不写入缓存，避免提交前读到的旧值在失效后被放回
+ */
+@Service
+public class GoodsRatingServiceImpl implements GoodsRatingService {
+
+    // 失效版本号的分段数
+    private static final int VERSION_STRIPES = 1024;
+
+    @Autowired
+    private GoodsRatingDao goodsRatingDao;
+
+    @Autowired
+    private GoodsCacheService goodsCacheService;
+
+    @Autowired
+    private RecommendService recommendService;
+
+    // 本地缓存有效期（毫秒）
+    @Value("${review.rating.cache-ttl:30000}")
+    private long cacheTtlMillis;
+
+    // 最多缓存的商品数，超过后淘汰最久未访问的
+    @Value("${review.rating.cache-max-size:10000}")
+    private int cacheMaxSize;
+
+    private Map<Integer, CachedRating> cache;
+    // 按商品ID分段的失效版本号，商品失效时所在分段加一
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    @PostConstruct
+    public void init() {
+        cache = Collections.synchronizedMap(new LinkedHashMap<Integer, CachedRating>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedRating> eldest) {
+                return size() > cacheMaxSize;
+            }
+        });
+    }
+
+    @Override
+    public GoodsRatingVO getRating(Integer goodsId) {
+        long now = System.currentTimeMillis();
+        CachedRating cached = cache.get(goodsId);
+        if (cached != null && cached.expireTime > now) {
+            return copy(cached.rating);
+        }
+        int stripe = stripe(goodsId);
+        long version = versions.get(stripe);
+        GoodsRatingVO rating = toVO(goodsId, goodsRatingDao.findByGoodsId(goodsId));
+        if (versions.get(stripe) == version) {
+            cache.put(goodsId, new CachedRating(rating, now + cacheTtlMillis));
+            // 写入期间发生的失效可能没有清除刚写入的条目
+            if (versions.get(stripe) != version) {
+                cache.remove(goodsId);
+            }
+        }
+        return copy(rating);
+    }
+
+    @Override
+    public void onReviewAdded(Integer goodsId, Integer rating) {
+        goodsRatingDao.addRating(goodsId, rating);
+        changed(goodsId);
+    }
+
+    @Override
+    public void onReviewDeleted(Integer goodsId, Integer rating) {
+        if (goodsRatingDao.removeRating(goodsId, rating) > 0) {
+            changed(goodsId);
+        }
+    }
+
+    /**
+     * 同步商品评分，并在事务提交后失效评分缓存、商品详情缓存和推荐排行
+     */
+    private void changed(Integer goodsId) {
+        goodsRatingDao.syncGoodsRating(goodsId);
+        TransactionUtils.afterCommit(() -> {
+            versions.incrementAndGet(stripe(goodsId));
+            cache.remove(goodsId);
+        });
+        goodsCacheService.invalidate(goodsId);
+        recommendService.onGoodsChanged(goodsId);
+    }
+
+    private static int stripe(Integer goodsId) {
+        return Math.floorMod(goodsId, VERSION_STRIPES);
+    }
+
+    private static GoodsRatingVO toVO(Integer goodsId, GoodsRating rating) {
+        int count = rating == null ? 0 : rating.getRatingCount();
+        int sum = rating == null ? 0 : rating.getRatingSum();
+        GoodsRatingVO vo = new GoodsRatingVO();
+        vo.setGoodsId(goodsId);
+        vo.setRatingCount(count);
+        vo.setAverageRating(count == 0 ? 0.0 : (double) sum / count);
+        Map<Integer, Integer> distribution = new LinkedHashMap<>();
+        distribution.put(1, rating == null ? 0 : rating.getStar1());
+        distribution.put(2, rating == null ? 0 : rating.getStar2());
+        distribution.put(3, rating == null ? 0 : rating.getStar3());
+        distribution.put(4, rating == null ? 0 : rating.getStar4());
+        distribution.put(5, rating == null ? 0 : rating.getStar5());
+        vo.setDistribution(distribution);
+        return vo;
+    }
+
+    /**
+     * 返回副本，避免调用方修改缓存中的对象
+     */
+    private static GoodsRatingVO copy(GoodsRatingVO rating) {
+        GoodsRatingVO vo = new GoodsRatingVO();
+        vo.setGoodsId(rating.getGoodsId());
+        vo.setAverageRating(rating.getAverageRating());
+        vo.setRatingCount(rating.getRatingCount());
+        vo.setDistribution(new LinkedHashMap<>(rating.getDistribution()));
+        return vo;
+    }
+
+    private static final class CachedRating {
+        private final GoodsRatingVO rating;
+        private final long expireTime;
+
+        private CachedRating(GoodsRatingVO rating, long expireTime) {
+            this.rating = rating;
+            this.expireTime = expireTime;
+        }
+    }
+}
@@ -6,12 +6,16 @@ import org.springframework.transaction.annotation.Transactional;
 import ptumall.dao.GoodsDao;
 import ptumall.dao.GoodsReviewDao;
 import ptumall.dao.OrderDao;
-import ptumall.dao.ReviewLikeDao;
 import ptumall.model.Goods;
 import ptumall.model.GoodsReview;
 import ptumall.model.Orders;
-import ptumall.model.ReviewLike;
+import ptumall.service.GoodsCacheService;
+import ptumall.service.GoodsRatingService;
 import ptumall.service.GoodsReviewService;
+import ptumall.service.ReviewFeedService;
+import ptumall.service.ReviewLikeService;
+import ptumall.vo.CursorPageResult;
+import ptumall.vo.GoodsRatingVO;
 import ptumall.vo.Result;
 import ptumall.vo.ResultCode;
 
@@ -30,10 +34,25 @@ public class GoodsReviewServiceImpl implements GoodsReviewService {
     private OrderDao orderDao;
     
     @Autowired
-    private ReviewLikeDao reviewLikeDao;
+    private ReviewLikeService reviewLikeService;
+    
+    @Autowired
+    private ReviewFeedService reviewFeedService;
+    
+    @Autowired
+    private GoodsRatingService goodsRatingService;
+    
+    @Autowired
+    private GoodsCacheService goodsCacheService;
     
     @Override
+    @Transactional
     public Result<GoodsReview> addReview(GoodsReview goodsReview) {
+        // 检查评分范围
+        if (goodsReview.getRating() == null || goodsReview.getRating() < 1 || goodsReview.getRating() > 5) {
+            return Result.validateFailed("评分必须在1-5之间");
+        }
+        
         // 检查商品是否存在
         Goods goods = goodsDao.findById(goodsReview.getGoodsId());
         if (goods == null) {
@@ -67,6 +86,10 @@ public class GoodsReviewServiceImpl implements GoodsReviewService {
         // 添加评价
         int result = goodsReviewDao.insert(goodsReview);
         if (result > 0) {
+            // 计入商品评分汇总并同步商品评分
+            goodsRatingService.onReviewAdded(goodsReview.getGoodsId(), goodsReview.getRating().intValue());
+            reviewFeedService.invalidate(goodsReview.getGoodsId());
+            
             // 查询刚插入的评价，包含用户名和商品名称
             GoodsReview insertedReview = goodsReviewDao.findById(goodsReview.getId());
             return Result.success(insertedReview);
@@ -87,6 +110,17 @@ public class GoodsReviewServiceImpl implements GoodsReviewService {
         return Result.success(reviews);
     }
     
+    @Override
+    public Result<CursorPageResult<GoodsReview>> getReviewFeed(Integer goodsId, String sort, String cursor, Integer pageSize) {
+        // 检查商品是否存在
+        Goods goods = goodsCacheService.getGoods(goodsId);
+        if (goods == null) {
+            return Result.validateFailed("商品不存在");
+        }
+        
+        return Result.success(reviewFeedService.getFeed(goodsId, sort, cursor, pageSize));
+    }
+    
     @Override
     public Result<List<GoodsReview>> getReviewsByUserId(Integer userId) {
         List<GoodsReview> reviews = goodsReviewDao.findByUserId(userId);
@@ -112,71 +146,37 @@ public class GoodsReviewServiceImpl implements GoodsReviewService {
     }
     
     @Override
-    @Transactional
     public Result<Void> likeReview(Integer reviewId, Integer userId) {
-        // 检查评价是否存在
-        GoodsReview review = goodsReviewDao.findById(reviewId);
-        if (review == null) {
+        // 点赞状态和点赞数在Redis中更新，后台批量写库
+        int result = reviewLikeService.like(reviewId, userId);
+        if (result == ReviewLikeService.REVIEW_NOT_FOUND) {
             return Result.validateFailed("评价不存在");
         }
-        
-        // 检查用户是否已点赞
-        ReviewLike existingLike = reviewLikeDao.findByUserIdAndReviewId(userId, reviewId);
-        if (existingLike != null) {
+        if (result == ReviewLikeService.UNCHANGED) {
             return Result.validateFailed("已经点赞过此评价");
         }
-        
-        // 添加点赞记录
-        ReviewLike reviewLike = new ReviewLike();
-        reviewLike.setUserId(userId);
-        reviewLike.setReviewId(reviewId);
-        int result = reviewLikeDao.insert(reviewLike);
-        
-        if (result > 0) {
-            // 更新评价的点赞数
-            int likeCount = reviewLikeDao.countByReviewId(reviewId);
-            goodsReviewDao.updateLikeCount(reviewId, likeCount);
-            return Result.success();
-        } else {
-            return Result.failed(ResultCode.FAILED, "点赞失败");
-        }
+        return Result.success();
     }
     
     @Override
-    @Transactional
     public Result<Void> unlikeReview(Integer reviewId, Integer userId) {
-        // 检查评价是否存在
-        GoodsReview review = goodsReviewDao.findById(reviewId);
-        if (review == null) {
+        int result = reviewLikeService.unlike(reviewId, userId);
+        if (result == ReviewLikeService.REVIEW_NOT_FOUND) {
             return Result.validateFailed("评价不存在");
         }
-        
-        // 检查用户是否已点赞
-        ReviewLike existingLike = reviewLikeDao.findByUserIdAndReviewId(userId, reviewId);
-        if (existingLike == null) {
+        if (result == ReviewLikeService.UNCHANGED) {
             return Result.validateFailed("未点赞此评价");
         }
-        
-        // 删除点赞记录
-        int result = reviewLikeDao.deleteByUserIdAndReviewId(userId, reviewId);
-        
-        if (result > 0) {
-            // 更新评价的点赞数
-            int likeCount = reviewLikeDao.countByReviewId(reviewId);
-            goodsReviewDao.updateLikeCount(reviewId, likeCount);
-            return Result.success();
-        } else {
-            return Result.failed(ResultCode.FAILED, "取消点赞失败");
-        }
+        return Result.success();
     }
     
     @Override
     public Result<Boolean> checkLikeExists(Integer reviewId, Integer userId) {
-        ReviewLike reviewLike = reviewLikeDao.findByUserIdAndReviewId(userId, reviewId);
-        return Result.success(reviewLike != null);
+        return Result.success(reviewLikeService.isLiked(reviewId, userId));
     }
     
     @Override
+    @Transactional
     public Result<Void> deleteReview(Integer reviewId, Integer userId) {
         // 检查评价是否存在
         GoodsReview review = goodsReviewDao.findById(reviewId);
@@ -191,6 +191,10 @@ public class GoodsReviewServiceImpl implements GoodsReviewService {
         
         int result = goodsReviewDao.deleteById(reviewId);
         if (result > 0) {
+            // 从商品评分汇总中移除并同步商品评分
+            goodsRatingService.onReviewDeleted(review.getGoodsId(), review.getRating().intValue());
+            reviewLikeService.onReviewDeleted(reviewId);
+            reviewFeedService.invalidate(review.getGoodsId());
             return Result.success();
         } else {
             return Result.failed(ResultCode.FAILED, "删除失败");
@@ -200,28 +204,34 @@ public class GoodsReviewServiceImpl implements GoodsReviewService {
     @Override
     public Result<Double> getAverageRating(Integer goodsId) {
         // 检查商品是否存在
-        Goods goods = goodsDao.findById(goodsId);
+        Goods goods = goodsCacheService.getGoods(goodsId);
         if (goods == null) {
             return Result.validateFailed("商品不存在");
         }
         
-        Double averageRating = goodsReviewDao.getAverageRatingByGoodsId(goodsId);
-        // 如果没有评价，返回0
-        if (averageRating == null) {
-            averageRating = 0.0;
-        }
-        return Result.success(averageRating);
+        // 没有评价时返回0
+        return Result.success(goodsRatingService.getRating(goodsId).getAverageRating());
     }
     
     @Override
     public Result<Integer> getReviewCount(Integer goodsId) {
         // 检查商品是否存在
-        Goods goods = goodsDao.findById(goodsId);
+        Goods goods = goodsCacheService.getGoods(goodsId);
+        if (goods == null) {
+            return Result.validateFailed("商品不存在");
+        }
+        
+        return Result.success(goodsRatingService.getRating(goodsId).getRatingCount());
+    }
+    
+    @Override
+    public Result<GoodsRatingVO> getRatingSummary(Integer goodsId) {
+        // 检查商品是否存在
+        Goods goods = goodsCacheService.getGoods(goodsId);
         if (goods == null) {
             return Result.validateFailed("商品不存在");
         }
         
-        Integer count = goodsReviewDao.countByGoodsId(goodsId);
-        return Result.success(count);
+        return Result.success(goodsRatingService.getRating(goodsId));
     }
 } 
\ No newline at end of file
@@ -0,0 +1,395 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ptumall.dao.GoodsDao;
+import ptumall.model.Goods;
+import ptumall.service.GoodsSearchService;
+import ptumall.utils.TransactionUtils;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 商品搜索服务实现类
+ * 对上架商品的名称和描述建立内存倒排索引（按字符二元组切分，兼容中文），
+ * 替代 name LIKE '%keyword%' 的全表扫描；索引随商品增删改增量维护，并定时全量重建。
+ * 二元组全部命中不代表包含完整关键词，名称命中用索引中的名称校验，描述命中按主键回表校验；
+ * 匹配规则与回退的SQL查询（GoodsMapper.findList）一致：名称或描述包含关键词，不区分大小写。
+ * 商品变化后本节点更新索引，并通过Redis发布订阅通知其他节点重新加载该商品
+ */
+@Slf4j
+@Service
+public class GoodsSearchServiceImpl implements GoodsSearchService, MessageListener {
+
+    // 校验描述命中时每条查询最多包含的商品数
+    private static final int VERIFY_BATCH_SIZE = 1000;
+    // 索引更新通知频道，消息格式为 节点标识:商品ID
+    private static final String REINDEX_CHANNEL = "goods:search:reindex";
+
+    @Autowired
+    private GoodsDao goodsDao;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Value("${search.goods.enabled:true}")
+    private boolean enabled;
+
+    // 当前使用的索引，重建时整体替换
+    private volatile Index index;
+
+    // 重建期间发生变化的商品，重建完成后重新加载
+    private final Set<Integer> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile boolean rebuilding;
+
+    // 当前节点标识，忽略自己发出的通知
+    private final String nodeToken = UUID.randomUUID().toString();
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(REINDEX_CHANNEL));
+        }
+    }
+
+    @Override
+    public boolean isReady() {
+        return enabled && index != null;
+    }
+
+    @Override
+    public List<Integer> search(List<Integer> categoryIds, String keyword, String sortBy, String sortDirection) {
+        Index current = index;
+        if (!enabled || current == null || keyword == null) {
+            return null;
+        }
+        String normalized = normalize(keyword.trim());
+        String[] tokens = tokenize(normalized, Integer.MAX_VALUE);
+        if (tokens.length == 0) {
+            // 单字或纯符号关键词无法用二元组索引，回退到SQL
+            return null;
+        }
+
+        Set<Integer> matched = new HashSet<>();
+        // 名称命中需再校验是否包含完整关键词
+        for (Integer id : intersect(current.namePostings, tokens)) {
+            Doc doc = current.docs.get(id);
+            if (doc != null && doc.name.contains(normalized)) {
+                matched.add(id);
+            }
+        }
+        // 描述不保存在索引中，名称未命中的候选按主键回表校验是否包含完整关键词
+        List<Integer> candidates = new ArrayList<>();
+        for (Integer id : intersect(current.descriptionPostings, tokens)) {
+            if (!matched.contains(id) && current.docs.containsKey(id)) {
+                candidates.add(id);
+            }
+        }
+        for (int from = 0; from < candidates.size(); from += VERIFY_BATCH_SIZE) {
+            matched.addAll(goodsDao.filterIdsByDescription(
+                    candidates.subList(from, Math.min(from + VERIFY_BATCH_SIZE, candidates.size())), normalized));
+        }
+
+        Set<Integer> categories = categoryIds == null || categoryIds.isEmpty() ? null : new HashSet<>(categoryIds);
+        List<Doc> docs = new ArrayList<>(matched.size());
+        for (Integer id : matched) {
+            Doc doc = current.docs.get(id);
+            if (doc != null && (categories == null || categories.contains(doc.categoryId))) {
+                docs.add(doc);
+            }
+        }
+        docs.sort(comparator(sortBy, sortDirection));
+
+        List<Integer> ids = new ArrayList<>(docs.size());
+        for (Doc doc : docs) {
+            ids.add(doc.id);
+        }
+        return ids;
+    }
+
+    @Override
+    public void onGoodsChanged(Integer goodsId) {
+        afterCommit(() -> {
+            reindex(goodsId);
+            publishReindex(goodsId);
+        });
+    }
+
+    @Override
+    public void onGoodsRemoved(Integer goodsId) {
+        afterCommit(() -> {
+            Index current = index;
+            if (current != null) {
+                current.remove(goodsId);
+            }
+            if (rebuilding) {
+                changedDuringRebuild.add(goodsId);
+            }
+            publishReindex(goodsId);
+        });
+    }
+
+    /**
+     * 收到其他节点的商品变化通知后从数据库重新加载该商品，已删除或下架的商品移出索引
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!enabled) {
+            return;
+        }
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator <= 0 || body.substring(0, separator).equals(nodeToken)) {
+            return;
+        }
+        try {
+            reindex(Integer.valueOf(body.substring(separator + 1)));
+        } catch (Exception e) {
+            log.error("处理商品索引更新通知失败：{}", body, e);
+        }
+    }
+
+    /**
+     * 定时全量重建索引，启动后立即执行一次；
+     * 销量、评分等排序字段由下单、评价直接写库，靠重建保持排序新鲜度
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${search.goods.refresh-interval:600000}")
+    @Override
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        changedDuringRebuild.clear();
+        rebuilding = true;
+        try {
+            Index built = new Index();
+            goodsDao.scanActiveGoods(context -> built.add(context.getResultObject()));
+            index = built;
+        } catch (Exception e) {
+            log.error("商品搜索索引重建失败，继续使用旧索引", e);
+            return;
+        } finally {
+            rebuilding = false;
+        }
+
+        // 补上重建期间发生的变化
+        for (Integer goodsId : new ArrayList<>(changedDuringRebuild)) {
+            reindex(goodsId);
+        }
+        changedDuringRebuild.clear();
+        log.info("商品搜索索引重建完成：goods={}, terms={}, cost={}ms", index.docs.size(),
+                index.namePostings.size() + index.descriptionPostings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 从数据库重新加载单个商品并更新索引，下架或已删除的商品移出索引
+     */
+    private void reindex(Integer goodsId) {
+        if (rebuilding) {
+            changedDuringRebuild.add(goodsId);
+        }
+        Index current = index;
+        if (current == null) {
+            return;
+        }
+        Goods goods = goodsDao.findById(goodsId);
+        if (goods == null || goods.getStatus() == null || goods.getStatus() != 1) {
+            current.remove(goodsId);
+        } else {
+            current.add(goods);
+        }
+    }
+
+    private void publishReindex(Integer goodsId) {
+        try {
+            stringRedisTemplate.convertAndSend(REINDEX_CHANNEL, nodeToken + ":" + goodsId);
+        } catch (Exception e) {
+            log.error("发送商品索引更新通知失败：goodsId={}", goodsId, e);
+        }
+    }
+
+    private void afterCommit(Runnable action) {
+        if (enabled) {
+            TransactionUtils.afterCommit(action);
+        }
+    }
+
+    /**
+     * 统一转小写后匹配，与SQL中的 LOWER() 对应
+     */
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 求所有词项倒排表的交集，从最短的倒排表开始遍历
+     */
+    private static Set<Integer> intersect(Map<String, Set<Integer>> postings, String[] tokens) {
+        List<Set<Integer>> lists = new ArrayList<>(tokens.length);
+        for (String token : tokens) {
+            Set<Integer> list = postings.get(token);
+            if (list == null || list.isEmpty()) {
+                return new HashSet<>();
+            }
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        Set<Integer> result = new HashSet<>();
+        Set<Integer> smallest = lists.get(0);
+        for (Integer id : smallest) {
+            boolean all = true;
+            for (int i = 1; i < lists.size() && all; i++) {
+                all = lists.get(i).contains(id);
+            }
+            if (all) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 切分词项：以非字母数字字符分段，段内按相邻两个字符切分为二元组
+     *
+     * @param text 已转小写的文本
+     * @param maxLength 参与切分的最大长度
+     * @return 去重后的词项
+     */
+    static String[] tokenize(String text, int maxLength) {
+        if (text == null || text.isEmpty()) {
+            return new String[0];
+        }
+        Set<String> tokens = new LinkedHashSet<>();
+        int length = Math.min(text.length(), maxLength);
+        char previous = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (!Character.isLetterOrDigit(c)) {
+                previous = 0;
+                continue;
+            }
+            if (previous != 0) {
+                tokens.add(new String(new char[]{previous, c}));
+            }
+            previous = c;
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * 与GoodsMapper.findList一致的排序规则，ID倒序兜底保证结果稳定
+     */
+    private static Comparator<Doc> comparator(String sortBy, String sortDirection) {
+        Comparator<Doc> comparator;
+        if ("price".equals(sortBy) && "asc".equals(sortDirection)) {
+            comparator = Comparator.comparing((Doc doc) -> doc.price);
+        } else if ("price".equals(sortBy) && "desc".equals(sortDirection)) {
+            comparator = Comparator.comparing((Doc doc) -> doc.price).reversed();
+        } else if ("rating".equals(sortBy)) {
+            comparator = Comparator.comparing((Doc doc) -> doc.rating).reversed();
+        } else if ("sales".equals(sortBy)) {
+            comparator = Comparator.comparingInt((Doc doc) -> doc.salesVolume).reversed();
+        } else if ("newest".equals(sortBy)) {
+            comparator = Comparator.comparingLong((Doc doc) -> doc.createTime).reversed();
+        } else {
+            comparator = Comparator.comparingLong((Doc doc) -> doc.updateTime).reversed();
+        }
+        return comparator.thenComparing(Comparator.comparingInt((Doc doc) -> doc.id).reversed());
+    }
+
+    /**
+     * 索引中保存的商品信息，只包含过滤和排序需要的字段
+     */
+    private static final class Doc {
+        private final int id;
+        private final Integer categoryId;
+        private final String name;
+        private final BigDecimal price;
+        private final BigDecimal rating;
+        private final int salesVolume;
+        private final long createTime;
+        private final long updateTime;
+        private final String[] nameTokens;
+        private final String[] descriptionTokens;
+
+        private Doc(Goods goods) {
+            this.id = goods.getId();
+            this.categoryId = goods.getCategoryId();
+            this.name = goods.getName() == null ? "" : normalize(goods.getName());
+            this.price = goods.getPrice() == null ? BigDecimal.ZERO : goods.getPrice();
+            this.rating = goods.getRating() == null ? BigDecimal.ZERO : goods.getRating();
+            this.salesVolume = goods.getSalesVolume() == null ? 0 : goods.getSalesVolume();
+            this.createTime = goods.getCreateTime() == null ? 0 : goods.getCreateTime().getTime();
+            this.updateTime = goods.getUpdateTime() == null ? 0 : goods.getUpdateTime().getTime();
+            this.nameTokens = tokenize(this.name, Integer.MAX_VALUE);
+            this.descriptionTokens = goods.getDescription() == null ? new String[0]
+                    : tokenize(normalize(goods.getDescription()), Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 倒排索引，名称和描述分别建立倒排表
+     */
+    private static final class Index {
+        private final Map<Integer, Doc> docs = new ConcurrentHashMap<>();
+        private final Map<String, Set<Integer>> namePostings = new ConcurrentHashMap<>();
+        private final Map<String, Set<Integer>> descriptionPostings = new ConcurrentHashMap<>();
+
+        private synchronized void add(Goods goods) {
+            remove(goods.getId());
+            Doc doc = new Doc(goods);
+            docs.put(doc.id, doc);
+            addPostings(namePostings, doc.nameTokens, doc.id);
+            addPostings(descriptionPostings, doc.descriptionTokens, doc.id);
+        }
+
+        private synchronized void remove(Integer goodsId) {
+            Doc doc = docs.remove(goodsId);
+            if (doc == null) {
+                return;
+            }
+            removePostings(namePostings, doc.nameTokens, doc.id);
+            removePostings(descriptionPostings, doc.descriptionTokens, doc.id);
+        }
+
+        private static void addPostings(Map<String, Set<Integer>> postings, String[] tokens, int id) {
+            for (String token : tokens) {
+                postings.computeIfAbsent(token, key -> ConcurrentHashMap.newKeySet()).add(id);
+            }
+        }
+
+        private static void removePostings(Map<String, Set<Integer>> postings, String[] tokens, int id) {
+            for (String token : tokens) {
+                Set<Integer> list = postings.get(token);
+                if (list != null) {
+                    list.remove(id);
+                }
+            }
+        }
+    }
+}
@@ -7,13 +7,20 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ptumall.dao.GoodsDao;
 import ptumall.model.Goods;
+import ptumall.service.GoodsCacheService;
 import ptumall.service.GoodsCategoryService;
+import ptumall.service.GoodsSearchService;
 import ptumall.service.GoodsService;
+import ptumall.service.HotStockService;
+import ptumall.service.RecommendService;
 import ptumall.vo.PageResult;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class GoodsServiceImpl implements GoodsService {
@@ -24,9 +31,24 @@ public class GoodsServiceImpl implements GoodsService {
     @Autowired
     private GoodsCategoryService categoryService;
     
+    @Autowired
+    private HotStockService hotStockService;
+    
+    @Autowired
+    private GoodsSearchService goodsSearchService;
+    
+    @Autowired
+    private GoodsCacheService goodsCacheService;
+    
+    @Autowired
+    private RecommendService recommendService;
+    
+    // 按ID批量查询商品时每批的数量
+    private static final int SELECT_BATCH_SIZE = 1000;
+    
     @Override
     public Goods getGoodsById(Integer id) {
-        return goodsDao.findById(id);
+        return goodsCacheService.getGoods(id);
     }
     
     @Override
@@ -36,6 +58,14 @@ public class GoodsServiceImpl implements GoodsService {
         if (categoryId != null) {
             categoryIds = categoryService.getCategoryAndChildrenIds(categoryId);
         }
+        // 索引和SQL查询都按去掉首尾空白后的关键词匹配
+        keyword = keyword == null ? null : keyword.trim();
+        
+        // 有关键词时优先走搜索索引
+        List<Integer> matchedIds = searchGoodsIds(categoryIds, keyword, sortBy, sortDirection);
+        if (matchedIds != null) {
+            return selectByIdsInOrder(matchedIds);
+        }
         
         return goodsDao.findList(categoryIds, keyword, sortBy, sortDirection);
     }
@@ -47,6 +77,8 @@ public class GoodsServiceImpl implements GoodsService {
         if (categoryId != null) {
             categoryIds = categoryService.getCategoryAndChildrenIds(categoryId);
         }
+        // 索引和SQL查询都按去掉首尾空白后的关键词匹配
+        keyword = keyword == null ? null : keyword.trim();
         
         // 设置默认值
         if (pageNum == null || pageNum < 1) {
@@ -56,6 +88,20 @@ public class GoodsServiceImpl implements GoodsService {
             pageSize = 10;
         }
         
+        // 有关键词时优先走搜索索引，只查询当前页的商品
+        List<Integer> matchedIds = searchGoodsIds(categoryIds, keyword, sortBy, sortDirection);
+        if (matchedIds != null) {
+            int total = matchedIds.size();
+            int pages = (total + pageSize - 1) / pageSize;
+            // 与PageHelper的reasonable配置一致，页码超出时返回最后一页
+            if (pages > 0 && pageNum > pages) {
+                pageNum = pages;
+            }
+            int from = Math.min((pageNum - 1) * pageSize, total);
+            int to = Math.min(from + pageSize, total);
+            return new PageResult<>(total, pages, pageNum, pageSize, selectByIdsInOrder(matchedIds.subList(from, to)));
+        }
+        
         // 使用PageHelper进行分页查询
         PageHelper.startPage(pageNum, pageSize);
         List<Goods> goodsList = goodsDao.findList(categoryIds, keyword, sortBy, sortDirection);
@@ -71,6 +117,43 @@ public class GoodsServiceImpl implements GoodsService {
         );
     }
     
+    /**
+     * 使用搜索索引查询匹配关键词的商品ID
+     * 
+     * @return 排好序的商品ID列表，没有关键词或索引不可用时返回null
+     */
+    private List<Integer> searchGoodsIds(List<Integer> categoryIds, String keyword, String sortBy, String sortDirection) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return null;
+        }
+        return goodsSearchService.search(categoryIds, keyword, sortBy, sortDirection);
+    }
+    
+    /**
+     * 按ID批量查询商品，并保持传入ID的顺序
+     * 
+     * @param ids 商品ID列表
+     * @return 商品列表
+     */
+    private List<Goods> selectByIdsInOrder(List<Integer> ids) {
+        Map<Integer, Goods> goodsById = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += SELECT_BATCH_SIZE) {
+            List<Integer> batch = ids.subList(from, Math.min(from + SELECT_BATCH_SIZE, ids.size()));
+            for (Goods goods : goodsDao.selectByIds(batch)) {
+                goodsById.put(goods.getId(), goods);
+            }
+        }
+        
+        List<Goods> goodsList = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Goods goods = goodsById.get(id);
+            if (goods != null) {
+                goodsList.add(goods);
+            }
+        }
+        return goodsList;
+    }
+    
     @Override
     @Transactional
     public Goods addGoods(Goods goods) {
@@ -95,6 +178,8 @@ public class GoodsServiceImpl implements GoodsService {
         
         int rows = goodsDao.insert(goods);
         if (rows > 0) {
+            goodsSearchService.onGoodsChanged(goods.getId());
+            recommendService.onGoodsChanged(goods.getId());
             return goods;
         }
         return null;
@@ -111,6 +196,16 @@ public class GoodsServiceImpl implements GoodsService {
         goods.setUpdateTime(new Date());
         
         int rows = goodsDao.update(goods);
+        
+        // 热点商品的库存被直接修改时，重新加载Redis库存
+        if (rows > 0 && goods.getStock() != null) {
+            hotStockService.reload(goods.getId());
+        }
+        if (rows > 0) {
+            goodsSearchService.onGoodsChanged(goods.getId());
+            goodsCacheService.invalidate(goods.getId());
+            recommendService.onGoodsChanged(goods.getId());
+        }
         return rows > 0;
     }
     
@@ -118,6 +213,11 @@ public class GoodsServiceImpl implements GoodsService {
     @Transactional
     public boolean deleteGoods(Integer id) {
         int rows = goodsDao.deleteById(id);
+        if (rows > 0) {
+            goodsSearchService.onGoodsRemoved(id);
+            goodsCacheService.invalidate(id);
+            recommendService.onGoodsRemoved(id);
+        }
         return rows > 0;
     }
     
@@ -125,15 +225,25 @@ public class GoodsServiceImpl implements GoodsService {
     @Transactional
     public boolean updateStatus(Integer id, Byte status) {
         int rows = goodsDao.updateStatus(id, status);
+        if (rows > 0) {
+            goodsSearchService.onGoodsChanged(id);
+            goodsCacheService.invalidate(id);
+            recommendService.onGoodsChanged(id);
+        }
         return rows > 0;
     }
     
     @Override
     public List<Goods> getRecommendGoods(Integer limit) {
+        return getRecommendGoods(null, limit);
+    }
+    
+    @Override
+    public List<Goods> getRecommendGoods(Integer categoryId, Integer limit) {
         if (limit == null || limit <= 0) {
             limit = 10; // 默认返回10条推荐商品
         }
-        return goodsDao.findRecommend(limit);
+        return recommendService.getRecommend(categoryId, limit);
     }
     
     @Override
@@ -144,6 +254,12 @@ public class GoodsServiceImpl implements GoodsService {
         }
         
         int rows = goodsDao.updateStock(id, stock);
+        
+        // 热点商品的库存被直接修改时，重新加载Redis库存
+        if (rows > 0) {
+            hotStockService.reload(id);
+            goodsCacheService.invalidate(id);
+        }
         return rows > 0;
     }
     
@@ -155,6 +271,10 @@ public class GoodsServiceImpl implements GoodsService {
         }
         
         int rows = goodsDao.updateRating(id, rating);
+        if (rows > 0) {
+            goodsCacheService.invalidate(id);
+            recommendService.onGoodsChanged(id);
+        }
         return rows > 0;
     }
     
@@ -166,6 +286,9 @@ public class GoodsServiceImpl implements GoodsService {
         }
         
         int rows = goodsDao.updateSalesVolume(id, increment);
+        if (rows > 0) {
+            recommendService.onSalesChanged(id, increment);
+        }
         return rows > 0;
     }
     
@@ -0,0 +1,599 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.FlushBatchDao;
+import ptumall.dao.GoodsDao;
+import ptumall.dao.OrderDao;
+import ptumall.model.Goods;
+import ptumall.model.OrderItems;
+import ptumall.service.HotStockService;
+import ptumall.vo.HotStockStatsVO;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点商品库存服务实现类
+ * 热点商品的库存镜像在Redis中，下单时通过Lua脚本原子预留，订单事务提交后预留才转为待回写的扣减量，
+ * 回滚时归还；由定时任务批量回写到数据库。始终满足：Redis库存 + 预留量 + 待回写扣减量 + 回写中扣减量 = 数据库库存。
+ * 节点在订单事务结束前宕机时预留一直保留，超时后由对账按订单是否已入库确认或释放。
+ * 回写时先把待回写Hash整体移入回写中Hash并生成批次ID，批次ID与库存变化在同一事务中写入数据库，
+ * 提交后才删除回写中Hash；宕机后重放时批次已存在则跳过，不会重复扣减
+ */
+@Slf4j
+@Service
+public class HotStockServiceImpl implements HotStockService, MessageListener {
+
+    // 热点商品库存Redis前缀
+    private static final String STOCK_KEY_PREFIX = "stock:hot:";
+    // 热点商品ID集合
+    private static final String HOT_SET_KEY = "stock:hot:goods";
+    // 待回写的库存扣减量（商品ID -> 扣减量，负数表示需要增加的库存）
+    private static final String PENDING_KEY = "stock:hot:pending";
+    // 每个商品最早一笔未回写变化的时间，用于计算回写延迟
+    private static final String PENDING_SINCE_KEY = "stock:hot:pending:since";
+    // 已取出、正在写入数据库的扣减量，提交成功后删除
+    private static final String PROCESSING_KEY = "stock:hot:processing";
+    // 回写中扣减量最早一笔变化的时间
+    private static final String PROCESSING_SINCE_KEY = "stock:hot:processing:since";
+    // 回写中扣减量的批次ID
+    private static final String PROCESSING_BATCH_KEY = "stock:hot:processing:batch";
+    // 订单事务未结束的预留量（商品ID -> 预留量）
+    private static final String RESERVED_KEY = "stock:hot:reserved";
+    // 预留明细（订单ID:商品ID:数量 -> 预留时间），用于处理超时的预留
+    private static final String RESERVATIONS_KEY = "stock:hot:reservations";
+    // 对账处理超时预留的结果前缀，订单事务随后才结束时据此避免重复处理
+    private static final String RESOLVED_KEY_PREFIX = "stock:hot:resolved:";
+    // 对账结果保留时间（秒）
+    private static final long RESOLVED_EXPIRE_SECONDS = 24 * 3600;
+    // 回写批次记录的来源标识
+    private static final String FLUSH_SOURCE = "stock:hot";
+    // 回写批次记录的保留时间（毫秒）
+    private static final long FLUSH_BATCH_RETENTION_MILLIS = 24 * 3600 * 1000L;
+    // 热点商品集合变更通知频道
+    private static final String HOT_SET_CHANNEL = "stock:hot:changed";
+    // 回写与对账共用的分布式锁
+    private static final String LOCK_KEY = "stock:hot:lock";
+    // 锁超时时间（秒）
+    private static final long LOCK_EXPIRE_SECONDS = 30;
+
+    /**
+     * 预留库存：返回-1表示Redis中无该商品库存，0表示库存不足，1表示预留成功
+     */
+    private static final DefaultRedisScript<Long> DEDUCT_SCRIPT = new DefaultRedisScript<>(
+            "local stock = redis.call('GET', KEYS[1]) " +
+            "if not stock then return -1 end " +
+            "local qty = tonumber(ARGV[1]) " +
+            "if tonumber(stock) < qty then return 0 end " +
+            "redis.call('DECRBY', KEYS[1], qty) " +
+            "redis.call('HINCRBY', KEYS[2], ARGV[2], qty) " +
+            "redis.call('ZADD', KEYS[3], ARGV[4], ARGV[3]) " +
+            "return 1", Long.class);
+
+    /**
+     * 订单事务已提交：预留转为待回写扣减量。预留已被对账释放时重新扣减Redis库存，已被对账确认时不再处理
+     */
+    private static final DefaultRedisScript<Long> CONFIRM_SCRIPT = new DefaultRedisScript<>(
+            "local qty = tonumber(ARGV[1]) " +
+            "if redis.call('ZREM', KEYS[3], ARGV[3]) == 1 then " +
+            "  redis.call('HINCRBY', KEYS[2], ARGV[2], -qty) " +
+            "else " +
+            "  if redis.call('GET', KEYS[6]) == 'confirmed' then return 0 end " +
+            "  if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('DECRBY', KEYS[1], qty) end " +
+            "end " +
+            "redis.call('HINCRBY', KEYS[4], ARGV[2], qty) " +
+            "redis.call('HSETNX', KEYS[5], ARGV[2], ARGV[4]) " +
+            "return 1", Long.class);
+
+    /**
+     * 订单事务已回滚：归还预留的库存，预留已被对账释放时不再处理
+     */
+    private static final DefaultRedisScript<Long> CANCEL_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('ZREM', KEYS[3], ARGV[3]) == 0 then return 0 end " +
+            "redis.call('HINCRBY', KEYS[2], ARGV[2], -tonumber(ARGV[1])) " +
+            "if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('INCRBY', KEYS[1], ARGV[1]) end " +
+            "return 1", Long.class);
+
+    /**
+     * 对账处理超时的预留：ARGV[5]为1表示订单已入库，按确认处理，否则归还库存；记录处理结果
+     */
+    private static final DefaultRedisScript<Long> RESOLVE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('ZREM', KEYS[3], ARGV[3]) == 0 then return 0 end " +
+            "local qty = tonumber(ARGV[1]) " +
+            "redis.call('HINCRBY', KEYS[2], ARGV[2], -qty) " +
+            "if tonumber(ARGV[5]) == 1 then " +
+            "  redis.call('HINCRBY', KEYS[4], ARGV[2], qty) " +
+            "  redis.call('HSETNX', KEYS[5], ARGV[2], ARGV[4]) " +
+            "  redis.call('SET', KEYS[6], 'confirmed', 'EX', ARGV[6]) " +
+            "else " +
+            "  if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('INCRBY', KEYS[1], qty) end " +
+            "  redis.call('SET', KEYS[6], 'released', 'EX', ARGV[6]) " +
+            "end " +
+            "return 1", Long.class);
+
+    /**
+     * 恢复库存：Redis库存存在时加回，并记录需要回写到数据库的增加量
+     */
+    private static final DefaultRedisScript<Long> RESTORE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('INCRBY', KEYS[1], ARGV[1]) end " +
+            "redis.call('HINCRBY', KEYS[2], ARGV[2], -tonumber(ARGV[1])) " +
+            "redis.call('HSETNX', KEYS[3], ARGV[2], ARGV[3]) " +
+            "return 1", Long.class);
+
+    /**
+     * 按数据库库存校准Redis库存：Redis库存 = 数据库库存 - 待回写扣减量 - 回写中扣减量 - 预留量，返回1表示发生了修正
+     */
+    private static final DefaultRedisScript<Long> RESET_SCRIPT = new DefaultRedisScript<>(
+            "local stock = redis.call('GET', KEYS[1]) " +
+            "local pending = tonumber(redis.call('HGET', KEYS[2], ARGV[2]) or '0') " +
+            "local processing = tonumber(redis.call('HGET', KEYS[3], ARGV[2]) or '0') " +
+            "local reserved = tonumber(redis.call('HGET', KEYS[4], ARGV[2]) or '0') " +
+            "local expected = tonumber(ARGV[1]) - pending - processing - reserved " +
+            "if stock and tonumber(stock) == expected then return 0 end " +
+            "redis.call('SET', KEYS[1], expected) " +
+            "return 1", Long.class);
+
+    /**
+     * 取出本次要回写的扣减量，返回{批次ID, 商品ID, 扣减量, ...}：上次回写未删除时原样返回回写中Hash及其批次ID重放，
+     * 否则把待回写Hash整体移入回写中Hash，以ARGV[1]为新的批次ID
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TAKE_PENDING_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[3]) == 0 then " +
+            "  if redis.call('EXISTS', KEYS[1]) == 0 then return {} end " +
+            "  redis.call('RENAME', KEYS[1], KEYS[3]) " +
+            "  if redis.call('EXISTS', KEYS[2]) == 1 then redis.call('RENAME', KEYS[2], KEYS[4]) end " +
+            "  redis.call('SET', KEYS[5], ARGV[1]) " +
+            "end " +
+            "local batch = redis.call('GET', KEYS[5]) " +
+            "if not batch then batch = ARGV[1] redis.call('SET', KEYS[5], batch) end " +
+            "local result = redis.call('HGETALL', KEYS[3]) " +
+            "table.insert(result, 1, batch) " +
+            "return result", List.class);
+
+    /**
+     * 仅释放自己持有的锁
+     */
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private RedisTemplate<String, Object> redisTemplate;
+
+    @Autowired
+    private GoodsDao goodsDao;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private OrderDao orderDao;
+
+    @Autowired
+    private FlushBatchDao flushBatchDao;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${stock.hot.enabled:false}")
+    private boolean enabled;
+
+    // 预留超过该时间（毫秒）订单事务仍未结束时，由对账按订单是否已入库确认或释放，应大于最长的下单事务时间
+    @Value("${stock.hot.reservation-timeout:300000}")
+    private long reservationTimeoutMillis;
+
+    // 本地缓存的热点商品ID，避免每个订单项都访问Redis判断；任一节点修改热点集合后广播通知各节点重新加载
+    private final Set<Integer> hotGoodsIds = ConcurrentHashMap.newKeySet();
+
+    // 当前节点标识，用于分布式锁
+    private final String nodeToken = UUID.randomUUID().toString();
+
+    private volatile Date lastFlushTime;
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedQuantity = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong reconcileCorrections = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        redisMessageListenerContainer.addMessageListener(this, new ChannelTopic(HOT_SET_CHANNEL));
+        try {
+            refreshHotGoodsIds();
+            log.info("热点商品库存模式已启用，热点商品：{}", hotGoodsIds);
+        } catch (Exception e) {
+            log.error("加载热点商品列表失败", e);
+        }
+        try {
+            // 重放上次宕机时未确认提交的回写
+            flush();
+        } catch (Exception e) {
+            log.error("启动时回写热点商品库存失败", e);
+        }
+    }
+
+    /**
+     * 收到热点商品集合变更通知后重新加载本地热点商品ID
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!enabled) {
+            return;
+        }
+        Object sender = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (nodeToken.equals(sender)) {
+            return;
+        }
+        try {
+            refreshHotGoodsIds();
+            log.info("收到热点商品变更通知，当前热点商品：{}", hotGoodsIds);
+        } catch (Exception e) {
+            log.error("重新加载热点商品列表失败", e);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean isHot(Integer goodsId) {
+        return enabled && goodsId != null && hotGoodsIds.contains(goodsId);
+    }
+
+    @Override
+    public Integer getStock(Integer goodsId) {
+        if (!isHot(goodsId)) {
+            return null;
+        }
+        Object stock = redisTemplate.opsForValue().get(STOCK_KEY_PREFIX + goodsId);
+        return stock instanceof Number ? ((Number) stock).intValue() : null;
+    }
+
+    @Override
+    public boolean markHot(Integer goodsId) {
+        Goods goods = goodsDao.selectById(goodsId);
+        if (goods == null) {
+            return false;
+        }
+        resetStock(goodsId, goods.getStock());
+        redisTemplate.opsForSet().add(HOT_SET_KEY, goodsId);
+        hotGoodsIds.add(goodsId);
+        publishHotSetChanged();
+        log.info("商品标记为热点商品：goodsId={}, stock={}", goodsId, goods.getStock());
+        return true;
+    }
+
+    @Override
+    public boolean unmarkHot(Integer goodsId) {
+        redisTemplate.opsForSet().remove(HOT_SET_KEY, goodsId);
+        hotGoodsIds.remove(goodsId);
+        publishHotSetChanged();
+        // 先回写再删除Redis库存，删除后的扣减会回落到数据库
+        flush();
+        redisTemplate.delete(STOCK_KEY_PREFIX + goodsId);
+        log.info("取消热点商品标记：goodsId={}", goodsId);
+        return true;
+    }
+
+    @Override
+    public Boolean tryDeduct(Integer orderId, Integer goodsId, Integer quantity) {
+        Long result = redisTemplate.execute(DEDUCT_SCRIPT,
+                Arrays.asList(STOCK_KEY_PREFIX + goodsId, RESERVED_KEY, RESERVATIONS_KEY),
+                quantity, goodsId, reservation(orderId, goodsId, quantity), System.currentTimeMillis());
+        if (result == null || result < 0) {
+            return null;
+        }
+        return result == 1;
+    }
+
+    @Override
+    public void confirmDeduct(Integer orderId, Integer goodsId, Integer quantity) {
+        String reservation = reservation(orderId, goodsId, quantity);
+        redisTemplate.execute(CONFIRM_SCRIPT,
+                Arrays.asList(STOCK_KEY_PREFIX + goodsId, RESERVED_KEY, RESERVATIONS_KEY,
+                        PENDING_KEY, PENDING_SINCE_KEY, RESOLVED_KEY_PREFIX + reservation),
+                quantity, goodsId, reservation, System.currentTimeMillis());
+    }
+
+    @Override
+    public void cancelDeduct(Integer orderId, Integer goodsId, Integer quantity) {
+        redisTemplate.execute(CANCEL_SCRIPT,
+                Arrays.asList(STOCK_KEY_PREFIX + goodsId, RESERVED_KEY, RESERVATIONS_KEY),
+                quantity, goodsId, reservation(orderId, goodsId, quantity));
+    }
+
+    @Override
+    public void restore(Integer goodsId, Integer quantity) {
+        redisTemplate.execute(RESTORE_SCRIPT,
+                Arrays.asList(STOCK_KEY_PREFIX + goodsId, PENDING_KEY, PENDING_SINCE_KEY),
+                quantity, goodsId, System.currentTimeMillis());
+    }
+
+    @Override
+    public void reload(Integer goodsId) {
+        if (!isHot(goodsId)) {
+            return;
+        }
+        Goods goods = goodsDao.selectById(goodsId);
+        if (goods != null) {
+            resetStock(goodsId, goods.getStock());
+        }
+    }
+
+    @Override
+    public int flush() {
+        if (!tryLock()) {
+            return 0;
+        }
+        try {
+            return doFlush();
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public int reconcile() {
+        if (!tryLock()) {
+            return 0;
+        }
+        int corrected = 0;
+        try {
+            resolveExpiredReservations();
+            // 先把待回写量落库，缩小对账窗口
+            doFlush();
+            flushBatchDao.deleteBefore(new Date(System.currentTimeMillis() - FLUSH_BATCH_RETENTION_MILLIS));
+            refreshHotGoodsIds();
+            for (Integer goodsId : hotGoodsIds) {
+                Goods goods = goodsDao.selectById(goodsId);
+                if (goods == null) {
+                    continue;
+                }
+                if (resetStock(goodsId, goods.getStock())) {
+                    corrected++;
+                    log.warn("热点商品库存对账不一致，已按数据库修正：goodsId={}, dbStock={}", goodsId, goods.getStock());
+                }
+            }
+        } finally {
+            unlock();
+        }
+        reconcileCorrections.addAndGet(corrected);
+        return corrected;
+    }
+
+    @Override
+    public HotStockStatsVO getStats() {
+        HotStockStatsVO stats = new HotStockStatsVO();
+        stats.setEnabled(enabled);
+        stats.setHotGoodsIds(new ArrayList<>(hotGoodsIds));
+        stats.setLastFlushTime(lastFlushTime);
+        stats.setFlushCount(flushCount.get());
+        stats.setFlushedQuantity(flushedQuantity.get());
+        stats.setFlushFailures(flushFailures.get());
+        stats.setReconcileCorrections(reconcileCorrections.get());
+
+        Map<Object, Object> pending = redisTemplate.opsForHash().entries(PENDING_KEY);
+        Map<Object, Object> processing = redisTemplate.opsForHash().entries(PROCESSING_KEY);
+        Set<Object> pendingGoods = new HashSet<>(pending.keySet());
+        pendingGoods.addAll(processing.keySet());
+        long pendingQuantity = 0;
+        for (Object value : pending.values()) {
+            pendingQuantity += Math.abs(((Number) value).longValue());
+        }
+        for (Object value : processing.values()) {
+            pendingQuantity += Math.abs(((Number) value).longValue());
+        }
+        stats.setPendingGoods(pendingGoods.size());
+        stats.setPendingQuantity(pendingQuantity);
+        long reservedQuantity = 0;
+        for (Object value : redisTemplate.opsForHash().values(RESERVED_KEY)) {
+            reservedQuantity += ((Number) value).longValue();
+        }
+        stats.setReservedQuantity(reservedQuantity);
+
+        long oldest = Long.MAX_VALUE;
+        for (Object value : redisTemplate.opsForHash().values(PENDING_SINCE_KEY)) {
+            oldest = Math.min(oldest, ((Number) value).longValue());
+        }
+        for (Object value : redisTemplate.opsForHash().values(PROCESSING_SINCE_KEY)) {
+            oldest = Math.min(oldest, ((Number) value).longValue());
+        }
+        stats.setWriteBackLagMillis(oldest == Long.MAX_VALUE ? 0L : System.currentTimeMillis() - oldest);
+        return stats;
+    }
+
+    /**
+     * 定时批量回写库存变化
+     */
+    @Scheduled(fixedDelayString = "${stock.hot.flush-interval:500}")
+    public void scheduledFlush() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("热点商品库存回写失败", e);
+        }
+    }
+
+    /**
+     * 定时对账
+     */
+    @Scheduled(fixedDelayString = "${stock.hot.reconcile-interval:60000}")
+    public void scheduledReconcile() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.error("热点商品库存对账失败", e);
+        }
+    }
+
+    /**
+     * 取出待回写量，在一个事务中登记批次ID并用一条批量更新写入数据库，提交成功后才删除回写中Hash；
+     * 失败或宕机时回写中Hash保留，下次回写原样重放，批次已登记说明上次已提交，只删除回写中Hash
+     * 调用方需持有锁
+     */
+    private int doFlush() {
+        List<?> raw = redisTemplate.execute(TAKE_PENDING_SCRIPT,
+                Arrays.asList(PENDING_KEY, PENDING_SINCE_KEY, PROCESSING_KEY, PROCESSING_SINCE_KEY, PROCESSING_BATCH_KEY),
+                UUID.randomUUID().toString());
+        if (raw == null || raw.isEmpty()) {
+            return 0;
+        }
+        String batchId = raw.get(0).toString();
+
+        List<OrderItems> items = new ArrayList<>();
+        long total = 0;
+        for (int i = 1; i + 1 < raw.size(); i += 2) {
+            int goodsId = ((Number) raw.get(i)).intValue();
+            int deducted = ((Number) raw.get(i + 1)).intValue();
+            if (deducted == 0) {
+                continue;
+            }
+            // 扣减量为正表示数据库库存需要减少
+            OrderItems item = new OrderItems();
+            item.setGoodsId(goodsId);
+            item.setQuantity(-deducted);
+            items.add(item);
+            total += Math.abs(deducted);
+        }
+        if (items.isEmpty()) {
+            deleteProcessing();
+            return 0;
+        }
+
+        Boolean applied;
+        try {
+            applied = transactionTemplate.execute(status -> {
+                if (flushBatchDao.insertIfAbsent(batchId, FLUSH_SOURCE) == 0) {
+                    return false;
+                }
+                // 库存最低减到0，管理员调低库存后多扣的部分由对账按数据库修正Redis库存
+                goodsDao.batchApplyStockDelta(items);
+                return true;
+            });
+        } catch (RuntimeException e) {
+            flushFailures.incrementAndGet();
+            throw e;
+        }
+        deleteProcessing();
+        if (!Boolean.TRUE.equals(applied)) {
+            log.warn("热点商品库存回写批次已提交过，跳过重放：batchId={}", batchId);
+            return 0;
+        }
+
+        lastFlushTime = new Date();
+        flushCount.incrementAndGet();
+        flushedQuantity.addAndGet(total);
+        log.debug("热点商品库存回写完成：batchId={}, goods={}, quantity={}", batchId, items.size(), total);
+        return items.size();
+    }
+
+    private void deleteProcessing() {
+        redisTemplate.delete(Arrays.asList(PROCESSING_KEY, PROCESSING_SINCE_KEY, PROCESSING_BATCH_KEY));
+    }
+
+    /**
+     * 处理超时的预留：订单已入库说明事务已提交但节点未能确认（如宕机），按确认处理，否则归还库存
+     * 调用方需持有锁
+     */
+    private void resolveExpiredReservations() {
+        long now = System.currentTimeMillis();
+        Set<Object> expired = redisTemplate.opsForZSet().rangeByScore(RESERVATIONS_KEY, 0, now - reservationTimeoutMillis);
+        if (expired == null || expired.isEmpty()) {
+            return;
+        }
+        int confirmed = 0;
+        for (Object member : expired) {
+            String reservation = member.toString();
+            String[] parts = reservation.split(":");
+            Integer orderId = Integer.valueOf(parts[0]);
+            Integer goodsId = Integer.valueOf(parts[1]);
+            Integer quantity = Integer.valueOf(parts[2]);
+            boolean committed = orderDao.selectById(orderId) != null;
+            Long resolved = redisTemplate.execute(RESOLVE_SCRIPT,
+                    Arrays.asList(STOCK_KEY_PREFIX + goodsId, RESERVED_KEY, RESERVATIONS_KEY,
+                            PENDING_KEY, PENDING_SINCE_KEY, RESOLVED_KEY_PREFIX + reservation),
+                    quantity, goodsId, reservation, now, committed ? 1 : 0, RESOLVED_EXPIRE_SECONDS);
+            if (resolved != null && resolved == 1 && committed) {
+                confirmed++;
+            }
+        }
+        log.warn("处理超时的热点商品库存预留：total={}, confirmed={}", expired.size(), confirmed);
+    }
+
+    /**
+     * 按数据库库存校准Redis库存
+     * @return 是否发生了修正
+     */
+    private boolean resetStock(Integer goodsId, Integer dbStock) {
+        Long changed = redisTemplate.execute(RESET_SCRIPT,
+                Arrays.asList(STOCK_KEY_PREFIX + goodsId, PENDING_KEY, PROCESSING_KEY, RESERVED_KEY),
+                dbStock, goodsId);
+        return changed != null && changed == 1;
+    }
+
+    private static String reservation(Integer orderId, Integer goodsId, Integer quantity) {
+        return orderId + ":" + goodsId + ":" + quantity;
+    }
+
+    private void refreshHotGoodsIds() {
+        Set<Object> members = redisTemplate.opsForSet().members(HOT_SET_KEY);
+        Set<Integer> latest = ConcurrentHashMap.newKeySet();
+        if (members != null) {
+            for (Object member : members) {
+                latest.add(((Number) member).intValue());
+            }
+        }
+        hotGoodsIds.retainAll(latest);
+        hotGoodsIds.addAll(latest);
+    }
+
+    private void publishHotSetChanged() {
+        try {
+            redisTemplate.convertAndSend(HOT_SET_CHANNEL, nodeToken);
+        } catch (Exception e) {
+            log.error("发送热点商品变更通知失败", e);
+        }
+    }
+
+    private boolean tryLock() {
+        Boolean locked = redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, nodeToken, LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS);
+        return Boolean.TRUE.equals(locked);
+    }
+
+    private void unlock() {
+        redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_KEY), nodeToken);
+    }
+}
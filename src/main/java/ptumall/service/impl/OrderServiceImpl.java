@@ -11,8 +11,16 @@ import ptumall.dao.OrderDao;
 import ptumall.dao.UserAddressDao;
 import ptumall.exception.BusinessException;
 import ptumall.model.*;
+import ptumall.service.HotStockService;
+import ptumall.service.OrderNoGenerator;
 import ptumall.service.OrderService;
+import ptumall.service.OrderStatisticsService;
+import ptumall.service.OrderTimeoutService;
+import ptumall.service.SalesVolumeService;
+import ptumall.service.StockService;
+import ptumall.utils.CursorUtils;
 import ptumall.vo.CreateOrderParam;
+import ptumall.vo.CursorPageResult;
 import ptumall.vo.PageResult;
 import ptumall.vo.ResultCode;
 import ptumall.vo.OrderStatisticsVO;
@@ -20,8 +28,11 @@ import ptumall.vo.OrderStatisticsVO;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -43,6 +54,24 @@ public class OrderServiceImpl implements OrderService {
    
     @Autowired
     private UserAddressDao userAddressDao;
+    
+    @Autowired
+    private StockService stockService;
+    
+    @Autowired
+    private OrderNoGenerator orderNoGenerator;
+    
+    @Autowired
+    private OrderTimeoutService orderTimeoutService;
+    
+    @Autowired
+    private OrderStatisticsService orderStatisticsService;
+    
+    @Autowired
+    private HotStockService hotStockService;
+    
+    @Autowired
+    private SalesVolumeService salesVolumeService;
 
     /**
      * 创建订单
@@ -66,7 +95,7 @@ public class OrderServiceImpl implements OrderService {
         // 创建订单基本信息
         Orders order = new Orders();
         order.setUserId(userId);
-        order.setOrderNo(generateOrderNo());  // 生成订单编号
+        order.setOrderNo(orderNoGenerator.next());  // 生成订单编号
         order.setStatus((byte) 0);  // 设置订单状态为待付款
         order.setAddressId(param.getAddressId());
         
@@ -79,15 +108,22 @@ public class OrderServiceImpl implements OrderService {
             // 获取购物车商品列表
             List<Cart> cartList = cartDao.selectByIds(param.getCartItemIds());
             
-            // 验证购物车商品
+            // 验证购物车是否属于当前用户，并按商品合并购买数量
+            Map<Integer, Integer> quantityByGoods = new HashMap<>();
             for (Cart cart : cartList) {
-                // 验证购物车是否属于当前用户
                 if (!cart.getUserId().equals(userId)) {
                     throw new BusinessException(ResultCode.PARAM_ERROR, "购物车数据异常");
                 }
-                
-                // 获取并验证商品信息
-                Goods goods = goodsDao.selectById(cart.getGoodsId());
+                quantityByGoods.merge(cart.getGoodsId(), cart.getQuantity(), Integer::sum);
+            }
+            
+            // 一次查询所有商品：普通商品按ID顺序加锁，校验结果在扣减库存前不会改变；
+            // 热点商品库存由Redis预扣保证，不锁数据库行
+            Map<Integer, Goods> goodsMap = selectGoodsForCheckout(new ArrayList<>(quantityByGoods.keySet()));
+            
+            // 在内存中验证商品
+            for (Map.Entry<Integer, Integer> entry : quantityByGoods.entrySet()) {
+                Goods goods = goodsMap.get(entry.getKey());
                 if (goods == null) {
                     throw new BusinessException(ResultCode.PARAM_ERROR, "商品不存在");
                 }
@@ -98,11 +134,14 @@ public class OrderServiceImpl implements OrderService {
                 }
                 
                 // 验证商品库存
-                if (goods.getStock() < cart.getQuantity()) {
+                if (goods.getStock() < entry.getValue()) {
                     throw new BusinessException(ResultCode.PARAM_ERROR, "商品[" + goods.getName() + "]库存不足");
                 }
-                
-                // 创建订单项
+            }
+            
+            // 创建订单项
+            for (Cart cart : cartList) {
+                Goods goods = goodsMap.get(cart.getGoodsId());
                 OrderItems orderItem = new OrderItems();
                 orderItem.setGoodsId(goods.getId());
                 orderItem.setGoodsName(goods.getName());
@@ -128,11 +167,12 @@ public class OrderServiceImpl implements OrderService {
             }
             orderDao.batchInsertOrderItems(orderItems);
             
-            // 更新商品库存和销量
-            for (Cart cart : cartList) {
-                Goods goods = goodsDao.selectById(cart.getGoodsId());
-                goodsDao.updateStock(goods.getId(), goods.getStock() - cart.getQuantity());
-                goodsDao.updateSalesVolume(goods.getId(), cart.getQuantity());
+            // 条件扣减商品库存，库存不足时抛出异常回滚整个订单
+            stockService.deductStock(orderItems);
+            
+            // 更新商品销量（事务提交后累计，定时批量写库）
+            for (Map.Entry<Integer, Integer> entry : quantityByGoods.entrySet()) {
+                salesVolumeService.add(entry.getKey(), entry.getValue());
             }
             
             // 清空已下单的购物车商品
@@ -177,9 +217,11 @@ public class OrderServiceImpl implements OrderService {
             orderItem.setOrderId(order.getId());
             orderDao.insertOrderItem(orderItem);
             
-            // 更新商品库存和销量
-            goodsDao.updateStock(goods.getId(), goods.getStock() - param.getQuantity());
-            goodsDao.updateSalesVolume(goods.getId(), param.getQuantity());
+            // 条件扣减商品库存，库存不足时抛出异常回滚整个订单
+            stockService.deductStock(orderItems);
+            
+            // 更新商品销量（事务提交后累计，定时批量写库）
+            salesVolumeService.add(goods.getId(), param.getQuantity());
         } else {
             throw new BusinessException(ResultCode.PARAM_ERROR, "参数错误");
         }
@@ -188,20 +230,49 @@ public class OrderServiceImpl implements OrderService {
         order.setOrderItems(orderItems);
         order.setAddress(address);
         
+        // 超时未支付时自动取消
+        orderTimeoutService.schedule(order.getId());
+        orderStatisticsService.onOrderCreated(order);
+        
         return order;
     }
 
     /**
-     * 生成订单编号
-     * 格式：年月日+6位随机数
-     * 例如：20240315123456
+     * 批量填充订单商品和收货地址
+     * 整页订单只查询一次订单商品、一次收货地址，避免逐条查询
      * 
-     * @return 订单编号
+     * @param orderList 订单列表
      */
-    private String generateOrderNo() {
-        String date = String.format("%1$tY%1$tm%1$td", new Date());
-        String uuid = UUID.randomUUID().toString().replaceAll("-", "").substring(0, 6);
-        return date + uuid;
+    private void fillOrderDetails(List<Orders> orderList) {
+        if (orderList == null || orderList.isEmpty()) {
+            return;
+        }
+        
+        List<Integer> orderIds = new ArrayList<>();
+        Set<Integer> addressIds = new LinkedHashSet<>();
+        for (Orders order : orderList) {
+            orderIds.add(order.getId());
+            if (order.getAddressId() != null) {
+                addressIds.add(order.getAddressId());
+            }
+        }
+        
+        // 按订单ID分组订单商品
+        Map<Integer, List<OrderItems>> itemsByOrderId = orderDao.selectOrderItemsByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderItems::getOrderId));
+        
+        // 按ID索引收货地址
+        Map<Integer, UserAddress> addressById = new HashMap<>();
+        if (!addressIds.isEmpty()) {
+            for (UserAddress address : userAddressDao.selectByIds(new ArrayList<>(addressIds))) {
+                addressById.put(address.getId(), address);
+            }
+        }
+        
+        for (Orders order : orderList) {
+            order.setOrderItems(itemsByOrderId.getOrDefault(order.getId(), new ArrayList<>()));
+            order.setAddress(addressById.get(order.getAddressId()));
+        }
     }
 
     /**
@@ -272,14 +343,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> orderList = orderDao.selectByUserId(userId);
         PageInfo<Orders> pageInfo = new PageInfo<>(orderList);
         
-        // 获取每个订单的商品和地址信息
-        for (Orders order : orderList) {
-            List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
-            order.setOrderItems(orderItems);
-            
-            UserAddress address = userAddressDao.selectById(order.getAddressId());
-            order.setAddress(address);
-        }
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
         
         // 构建分页结果
         return new PageResult<>(
@@ -307,14 +372,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> orderList = orderDao.selectByUserIdAndStatus(userId, status);
         PageInfo<Orders> pageInfo = new PageInfo<>(orderList);
         
-        // 获取每个订单的商品和地址信息
-        for (Orders order : orderList) {
-            List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
-            order.setOrderItems(orderItems);
-            
-            UserAddress address = userAddressDao.selectById(order.getAddressId());
-            order.setAddress(address);
-        }
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
         
         // 构建分页结果
         return new PageResult<>(
@@ -349,25 +408,93 @@ public class OrderServiceImpl implements OrderService {
             throw new BusinessException(ResultCode.PARAM_ERROR, "当前订单状态不可取消");
         }
         
-        // 获取订单商品
-        List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(orderId);
+        // 从待付款(0)条件更新为已取消(4)，并发取消或支付时只有一方成功，避免重复恢复库存
+        if (orderDao.updateStatusIfMatch(orderId, (byte) 0, (byte) 4) == 0) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "当前订单状态不可取消");
+        }
+        
+        orderTimeoutService.cancel(orderId);
+        orderStatisticsService.onOrderStatusChanged(order, (byte) 4);
         
         // 恢复商品库存和销量
+        restoreStockAndSales(orderDao.selectOrderItemsByOrderId(orderId));
+        
+        return true;
+    }
+
+    /**
+     * 批量取消超时未支付的订单
+     * 先锁定仍待付款的订单，与用户支付、取消互斥，再一次性更新状态并恢复库存和销量
+     * 
+     * @param orderIds 订单ID列表
+     * @return 实际取消的订单ID
+     */
+    @Override
+    @Transactional
+    public List<Integer> cancelTimeoutOrders(List<Integer> orderIds) {
+        if (orderIds == null || orderIds.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Orders> unpaidOrders = orderDao.selectUnpaidForUpdate(orderIds);
+        List<Integer> unpaidIds = new ArrayList<>(unpaidOrders.size());
+        for (Orders order : unpaidOrders) {
+            unpaidIds.add(order.getId());
+        }
+        if (unpaidIds.isEmpty()) {
+            return unpaidIds;
+        }
+        orderDao.cancelUnpaid(unpaidIds);
+        for (Orders order : unpaidOrders) {
+            orderStatisticsService.onOrderStatusChanged(order, (byte) 4);
+        }
+        restoreStockAndSales(orderDao.selectOrderItemsByOrderIds(unpaidIds));
+        return unpaidIds;
+    }
+
+    /**
+     * 恢复已取消订单的商品库存和销量
+     * 
+     * @param orderItems 订单商品列表
+     */
+    private void restoreStockAndSales(List<OrderItems> orderItems) {
+        // 恢复商品库存
+        stockService.restoreStock(orderItems);
+        
+        // 恢复商品销量，回写时销量不会减为负数
         for (OrderItems item : orderItems) {
-            Goods goods = goodsDao.selectById(item.getGoodsId());
-            if (goods != null) {
-                // 恢复库存
-                goodsDao.updateStock(goods.getId(), goods.getStock() + item.getQuantity());
-                
-                // 恢复销量
-                if (goods.getSalesVolume() != null && goods.getSalesVolume() >= item.getQuantity()) {
-                    goodsDao.updateSalesVolume(goods.getId(), -item.getQuantity());
-                }
+            salesVolumeService.add(item.getGoodsId(), -item.getQuantity());
+        }
+    }
+
+    /**
+     * 批量查询下单的商品
+     * 普通商品按ID顺序加行锁，热点商品只读取不加锁（库存在Redis中预扣，加锁会让热点商品的下单串行化）
+     * 
+     * @param goodsIds 商品ID列表
+     * @return 商品ID -> 商品
+     */
+    private Map<Integer, Goods> selectGoodsForCheckout(List<Integer> goodsIds) {
+        List<Integer> lockIds = new ArrayList<>(goodsIds.size());
+        List<Integer> hotIds = new ArrayList<>();
+        for (Integer goodsId : goodsIds) {
+            if (hotStockService.isHot(goodsId)) {
+                hotIds.add(goodsId);
+            } else {
+                lockIds.add(goodsId);
             }
         }
-        
-        // 更新订单状态为已取消(4)
-        return orderDao.updateStatus(orderId, (byte) 4) > 0;
+        Map<Integer, Goods> goodsMap = new HashMap<>(goodsIds.size() * 2);
+        if (!lockIds.isEmpty()) {
+            for (Goods goods : goodsDao.selectByIdsForUpdate(lockIds)) {
+                goodsMap.put(goods.getId(), goods);
+            }
+        }
+        if (!hotIds.isEmpty()) {
+            for (Goods goods : goodsDao.selectByIds(hotIds)) {
+                goodsMap.put(goods.getId(), goods);
+            }
+        }
+        return goodsMap;
     }
 
     /**
@@ -393,8 +520,13 @@ public class OrderServiceImpl implements OrderService {
             throw new BusinessException(ResultCode.PARAM_ERROR, "当前订单状态不可支付");
         }
         
-        // 更新订单状态为已支付(1)
-        return orderDao.pay(orderId, paymentType) > 0;
+        // 更新订单状态为已支付(1)，并取消超时自动取消
+        if (orderDao.pay(orderId, paymentType) == 0) {
+            return false;
+        }
+        orderTimeoutService.cancel(orderId);
+        orderStatisticsService.onOrderStatusChanged(order, (byte) 1);
+        return true;
     }
 
     /**
@@ -419,8 +551,12 @@ public class OrderServiceImpl implements OrderService {
             throw new BusinessException(ResultCode.PARAM_ERROR, "当前订单状态不可确认收货");
         }
         
-        // 更新订单状态为已完成(3)
-        return orderDao.updateStatus(orderId, (byte) 3) > 0;
+        // 从已发货(2)条件更新为已完成(3)，并发确认时只有一方成功，统计事件只发一次
+        if (orderDao.updateStatusIfMatch(orderId, (byte) 2, (byte) 3) == 0) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "当前订单状态不可确认收货");
+        }
+        orderStatisticsService.onOrderStatusChanged(order, (byte) 3);
+        return true;
     }
 
     /**
@@ -437,14 +573,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> orderList = orderDao.selectAll();
         PageInfo<Orders> pageInfo = new PageInfo<>(orderList);
         
-        // 获取每个订单的商品和地址信息
-        for (Orders order : orderList) {
-            List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
-            order.setOrderItems(orderItems);
-            
-            UserAddress address = userAddressDao.selectById(order.getAddressId());
-            order.setAddress(address);
-        }
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
         
         // 构建分页结果
         return new PageResult<>(
@@ -456,6 +586,51 @@ public class OrderServiceImpl implements OrderService {
         );
     }
     
+    /**
+     * 游标分页获取所有订单列表（管理员接口）
+     * 按(create_time, id)倒序翻页，不使用COUNT和OFFSET，任意深度的翻页开销只与每页数量有关
+     * 
+     * @param status 订单状态，可为null
+     * @param cursor 上一页返回的游标，第一页为null
+     * @param pageSize 每页数量
+     * @param countMode 总数统计方式：none-不统计，approx-估算，exact-精确统计
+     * @return 游标分页的订单列表
+     */
+    @Override
+    public CursorPageResult<Orders> getAllOrderListByCursor(Byte status, String cursor, Integer pageSize, String countMode) {
+        CursorUtils.Position position = CursorUtils.decode(cursor);
+        int size = CursorUtils.normalizePageSize(pageSize);
+        
+        // 多查一条用于判断是否还有下一页
+        List<Orders> orderList = orderDao.selectAllByCursor(status,
+                position == null ? null : position.getCreateTime(),
+                position == null ? null : position.getId(),
+                size + 1);
+        boolean hasMore = orderList.size() > size;
+        if (hasMore) {
+            orderList = new ArrayList<>(orderList.subList(0, size));
+        }
+        
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
+        
+        String nextCursor = null;
+        if (hasMore) {
+            Orders last = orderList.get(orderList.size() - 1);
+            nextCursor = CursorUtils.encode(last.getCreateTime(), last.getId());
+        }
+        
+        CursorPageResult<Orders> result = new CursorPageResult<>(nextCursor, hasMore, size, orderList);
+        if (CursorUtils.COUNT_EXACT.equals(countMode)) {
+            result.setTotal((long) (status == null ? orderDao.count() : orderDao.countByStatus(status)));
+        } else if (CursorUtils.COUNT_APPROX.equals(countMode) && status == null) {
+            // 按状态筛选时没有可用的表统计信息，不返回估算值
+            result.setTotal(orderDao.estimateCount());
+            result.setApproximateTotal(true);
+        }
+        return result;
+    }
+    
     /**
      * 根据状态获取所有订单列表（管理员接口）
      * 
@@ -471,14 +646,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> orderList = orderDao.selectAllByStatus(status);
         PageInfo<Orders> pageInfo = new PageInfo<>(orderList);
         
-        // 获取每个订单的商品和地址信息
-        for (Orders order : orderList) {
-            List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
-            order.setOrderItems(orderItems);
-            
-            UserAddress address = userAddressDao.selectById(order.getAddressId());
-            order.setAddress(address);
-        }
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
         
         // 构建分页结果
         return new PageResult<>(
@@ -505,14 +674,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> orderList = orderDao.selectByOrderNoKeyword(orderNo);
         PageInfo<Orders> pageInfo = new PageInfo<>(orderList);
         
-        // 获取每个订单的商品和地址信息
-        for (Orders order : orderList) {
-            List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
-            order.setOrderItems(orderItems);
-            
-            UserAddress address = userAddressDao.selectById(order.getAddressId());
-            order.setAddress(address);
-        }
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
         
         // 构建分页结果
         return new PageResult<>(
@@ -539,14 +702,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> orderList = orderDao.selectByUserIdAdmin(userId);
         PageInfo<Orders> pageInfo = new PageInfo<>(orderList);
         
-        // 获取每个订单的商品和地址信息
-        for (Orders order : orderList) {
-            List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
-            order.setOrderItems(orderItems);
-            
-            UserAddress address = userAddressDao.selectById(order.getAddressId());
-            order.setAddress(address);
-        }
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
         
         // 构建分页结果
         return new PageResult<>(
@@ -574,14 +731,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> orderList = orderDao.selectByOrderNoAndStatus(orderNo, status);
         PageInfo<Orders> pageInfo = new PageInfo<>(orderList);
         
-        // 获取每个订单的商品和地址信息
-        for (Orders order : orderList) {
-            List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
-            order.setOrderItems(orderItems);
-            
-            UserAddress address = userAddressDao.selectById(order.getAddressId());
-            order.setAddress(address);
-        }
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
         
         // 构建分页结果
         return new PageResult<>(
@@ -609,14 +760,8 @@ public class OrderServiceImpl implements OrderService {
         List<Orders> orderList = orderDao.selectByUserIdAndStatusAdmin(userId, status);
         PageInfo<Orders> pageInfo = new PageInfo<>(orderList);
         
-        // 获取每个订单的商品和地址信息
-        for (Orders order : orderList) {
-            List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
-            order.setOrderItems(orderItems);
-            
-            UserAddress address = userAddressDao.selectById(order.getAddressId());
-            order.setAddress(address);
-        }
+        // 批量填充订单的商品和地址信息
+        fillOrderDetails(orderList);
         
         // 构建分页结果
         return new PageResult<>(
@@ -649,18 +794,19 @@ public class OrderServiceImpl implements OrderService {
             throw new BusinessException(ResultCode.PARAM_ERROR, "订单状态不正确，无法发货");
         }
         
-        // 更新订单状态为已发货
-        int rows = orderDao.updateStatus(orderId, (byte) 2);
+        // 从已付款(1)条件更新为已发货(2)，并发发货或退款时只有一方成功，统计事件只发一次
+        if (orderDao.updateStatusIfMatch(orderId, (byte) 1, (byte) 2) == 0) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "订单状态不正确，无法发货");
+        }
         
         // 设置发货时间
-        if (rows > 0) {
-            Orders updateOrder = new Orders();
-            updateOrder.setId(orderId);
-            updateOrder.setShippingTime(new Date());
-            orderDao.updateById(updateOrder);
-        }
+        Orders updateOrder = new Orders();
+        updateOrder.setId(orderId);
+        updateOrder.setShippingTime(new Date());
+        orderDao.updateById(updateOrder);
+        orderStatisticsService.onOrderStatusChanged(order, (byte) 2);
         
-        return rows > 0;
+        return true;
     }
     
     /**
@@ -683,7 +829,11 @@ public class OrderServiceImpl implements OrderService {
         orderDao.deleteOrderItems(orderId);
         
         // 再删除订单
-        return orderDao.deleteById(orderId) > 0;
+        if (orderDao.deleteById(orderId) == 0) {
+            return false;
+        }
+        orderStatisticsService.onOrderDeleted(order);
+        return true;
     }
     
     /**
@@ -708,7 +858,11 @@ public class OrderServiceImpl implements OrderService {
             throw new BusinessException(ResultCode.PARAM_ERROR, "当前订单状态不可删除");
         }
         
-        return orderDao.deleteById(orderId) > 0;
+        if (orderDao.deleteById(orderId) == 0) {
+            return false;
+        }
+        orderStatisticsService.onOrderDeleted(order);
+        return true;
     }
     
     /**
@@ -737,14 +891,15 @@ public class OrderServiceImpl implements OrderService {
 
     /**
      * 获取订单统计信息
-     * 包括总订单数和总销售额
+     * 包括总订单数、总销售额、各状态订单数和金额，指定时间范围时返回按小时或按天的时间序列
      * 
+     * @param startTime 时间序列开始时间，可为空
+     * @param endTime 时间序列结束时间，可为空
+     * @param granularity 时间序列粒度：hour、day
      * @return 订单统计信息
      */
     @Override
-    public OrderStatisticsVO getOrderStatistics() {
-        int totalOrders = orderDao.count();
-        BigDecimal totalSales = orderDao.sumTotalAmount();
-        return new OrderStatisticsVO(totalOrders, totalSales);
+    public OrderStatisticsVO getOrderStatistics(Date startTime, Date endTime, String granularity) {
+        return orderStatisticsService.getStatistics(startTime, endTime, granularity);
     }
 }
@@ -0,0 +1,425 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.OrderDao;
+import ptumall.exception.BusinessException;
+import ptumall.model.Orders;
+import ptumall.service.OrderStatisticsService;
+import ptumall.vo.OrderStatisticsPointVO;
+import ptumall.vo.OrderStatisticsVO;
+import ptumall.vo.ResultCode;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 订单统计服务实现类
+ * 每个订单按创建时间所在的小时和天归入时间段，时间段内按状态记录订单数和金额（以分为单位）；
+ * 订单事件在事务提交后增量更新。启动后及每隔rebuild-interval在独立线程中从数据库流式重建一次，
+ * 修正其他节点或直接修改数据库造成的偏差；重建期间的事件先记录下来，重建完成后在新数据上重放。
+ * 重建时先阻塞订单事务提交、建立一致性读快照并递增快照版本，再放行提交；
+ * 事件记录提交时的快照版本，重放时跳过版本更早（已包含在快照中）的事件，避免重复计数
+ */
+@Slf4j
+@Service
+public class OrderStatisticsServiceImpl implements OrderStatisticsService {
+
+    // 订单状态数：0待付款 1已付款 2已发货 3已完成 4已取消 5已退款
+    private static final int STATUS_COUNT = 6;
+    // 计入销售额的最小状态，与原 SUM(total_amount) WHERE status > 0 口径一致
+    private static final int SALES_MIN_STATUS = 1;
+    // 一次查询最多返回的时间段数
+    private static final int MAX_POINTS = 2000;
+
+    @Autowired
+    private OrderDao orderDao;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 全量重建间隔（毫秒）
+    @Value("${order.statistics.rebuild-interval:3600000}")
+    private long rebuildInterval;
+
+    // 重建在独立线程中执行，不占用定时任务线程
+    private ScheduledExecutorService rebuildExecutor;
+
+    // 一致性读快照所在的只读事务
+    private TransactionTemplate snapshotTemplate;
+
+    // 订单事务提交时持有读锁，重建建立快照时持有写锁，使每个事件的提交明确地早于或晚于快照
+    private final ReentrantReadWriteLock commitGate = new ReentrantReadWriteLock();
+    // 快照版本，每次建立快照时递增
+    private volatile long snapshotVersion;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    // 所有统计数据的读写都在该锁内进行，订单事件频率较低，锁内只有少量数组操作
+    private final Object lock = new Object();
+    // 当前统计数据，首次重建完成前为null
+    private Stats stats;
+    // 重建期间（包括首次重建完成前）发生的事件
+    private List<Event> journal = new ArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        snapshotTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        snapshotTemplate.setReadOnly(true);
+        snapshotTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        rebuildExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-statistics-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 启动后立即重建一次，之后定时重建
+        rebuildExecutor.scheduleWithFixedDelay(this::scheduledRebuild, 0, rebuildInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    @Override
+    public void onOrderCreated(Orders order) {
+        afterCommit(event(order, order.getStatus(), 1));
+    }
+
+    @Override
+    public void onOrderStatusChanged(Orders order, byte status) {
+        if (order.getStatus() != null && order.getStatus() == status) {
+            return;
+        }
+        afterCommit(event(order, order.getStatus(), -1), event(order, status, 1));
+    }
+
+    @Override
+    public void onOrderDeleted(Orders order) {
+        afterCommit(event(order, order.getStatus(), -1));
+    }
+
+    @Override
+    public OrderStatisticsVO getStatistics(Date startTime, Date endTime, String granularity) {
+        if ((startTime == null) != (endTime == null)) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "开始时间和结束时间需同时指定");
+        }
+        String unit = granularity == null || granularity.isEmpty() ? GRANULARITY_DAY : granularity;
+        if (!GRANULARITY_HOUR.equals(unit) && !GRANULARITY_DAY.equals(unit)) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "不支持的统计粒度: " + granularity);
+        }
+        List<Long> bucketStarts = null;
+        if (startTime != null) {
+            if (!startTime.before(endTime)) {
+                throw new BusinessException(ResultCode.PARAM_ERROR, "开始时间必须早于结束时间");
+            }
+            bucketStarts = bucketStarts(startTime.getTime(), endTime.getTime(), GRANULARITY_HOUR.equals(unit));
+        }
+
+        long[] totals = null;
+        List<long[]> buckets = null;
+        synchronized (lock) {
+            if (stats != null) {
+                totals = stats.totals.clone();
+            }
+            if (totals != null && bucketStarts != null) {
+                NavigableMap<Long, long[]> source = GRANULARITY_HOUR.equals(unit) ? stats.hours : stats.days;
+                buckets = new ArrayList<>(bucketStarts.size());
+                for (Long start : bucketStarts) {
+                    long[] bucket = source.get(start);
+                    buckets.add(bucket == null ? null : bucket.clone());
+                }
+            }
+        }
+        if (totals == null) {
+            // 首次重建完成前按数据库实时统计，不提供时间序列
+            return fallback();
+        }
+
+        OrderStatisticsVO vo = new OrderStatisticsVO();
+        vo.setTotalOrders((int) orderCount(totals));
+        vo.setTotalSales(salesAmount(totals));
+        vo.setStatusCounts(statusCounts(totals));
+        Map<Integer, BigDecimal> statusAmounts = new LinkedHashMap<>();
+        for (int status = 0; status < STATUS_COUNT; status++) {
+            statusAmounts.put(status, BigDecimal.valueOf(totals[STATUS_COUNT + status], 2));
+        }
+        vo.setStatusAmounts(statusAmounts);
+        if (bucketStarts != null) {
+            vo.setGranularity(unit);
+            vo.setStartTime(new Date(bucketStarts.get(0)));
+            vo.setEndTime(endTime);
+            List<OrderStatisticsPointVO> series = new ArrayList<>(bucketStarts.size());
+            for (int i = 0; i < bucketStarts.size(); i++) {
+                long[] bucket = buckets.get(i) == null ? new long[STATUS_COUNT * 2] : buckets.get(i);
+                OrderStatisticsPointVO point = new OrderStatisticsPointVO();
+                point.setTime(new Date(bucketStarts.get(i)));
+                point.setTotalOrders(orderCount(bucket));
+                point.setTotalSales(salesAmount(bucket));
+                point.setStatusCounts(statusCounts(bucket));
+                series.add(point);
+            }
+            vo.setSeries(series);
+        }
+        return vo;
+    }
+
+    private void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("订单统计重建失败", e);
+        }
+    }
+
+    @Override
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (lock) {
+            if (journal == null) {
+                journal = new ArrayList<>();
+            }
+        }
+        Stats built = new Stats();
+        long[] rows = new long[1];
+        long[] version = new long[1];
+        try {
+            snapshotTemplate.execute(status -> {
+                commitGate.writeLock().lock();
+                try {
+                    // 事务中的第一次一致性读建立快照：此前提交的事件都已包含在快照中，之后提交的事件版本不小于新版本
+                    orderDao.findFirstId();
+                    version[0] = ++snapshotVersion;
+                } finally {
+                    commitGate.writeLock().unlock();
+                }
+                orderDao.scanForStatistics(context -> {
+                    Orders order = context.getResultObject();
+                    built.add(createTimeOf(order), statusOf(order.getStatus()), cents(order.getTotalAmount()), 1);
+                    rows[0]++;
+                });
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("订单统计重建失败，继续使用增量统计", e);
+            synchronized (lock) {
+                if (stats != null) {
+                    journal = null;
+                }
+            }
+            return;
+        }
+        int replayed = 0;
+        synchronized (lock) {
+            for (Event event : journal) {
+                if (event.version >= version[0]) {
+                    built.add(event.createTime, event.status, event.cents, event.sign);
+                    replayed++;
+                }
+            }
+            if (stats != null && !Arrays.equals(stats.totals, built.totals)) {
+                log.info("订单统计与数据库存在偏差，已按数据库修正");
+            }
+            stats = built;
+            journal = null;
+        }
+        log.info("订单统计重建完成：orders={}, replayed={}, cost={}ms", rows[0], replayed,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 在事务提交后应用事件；提交期间持有读锁，记录提交时的快照版本
+     */
+    private void afterCommit(Event... events) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(snapshotVersion, events);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean locked;
+            private long version;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                commitGate.readLock().lock();
+                locked = true;
+                version = snapshotVersion;
+            }
+
+            @Override
+            public void afterCommit() {
+                apply(version, events);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (locked) {
+                    locked = false;
+                    commitGate.readLock().unlock();
+                }
+            }
+        });
+    }
+
+    private void apply(long version, Event... events) {
+        synchronized (lock) {
+            for (Event event : events) {
+                event.version = version;
+                if (stats != null) {
+                    stats.add(event.createTime, event.status, event.cents, event.sign);
+                }
+                if (journal != null) {
+                    journal.add(event);
+                }
+            }
+        }
+    }
+
+    private OrderStatisticsVO fallback() {
+        OrderStatisticsVO vo = new OrderStatisticsVO();
+        vo.setTotalOrders(orderDao.count());
+        vo.setTotalSales(orderDao.sumTotalAmount());
+        return vo;
+    }
+
+    /**
+     * 计算查询范围内各时间段的开始时间，开始时间向下取整到时间段
+     */
+    private List<Long> bucketStarts(long startTime, long endTime, boolean hourly) {
+        List<Long> starts = new ArrayList<>();
+        LocalDateTime time = truncate(startTime, hourly);
+        while (true) {
+            long millis = time.atZone(zone).toInstant().toEpochMilli();
+            if (millis >= endTime) {
+                break;
+            }
+            if (starts.size() >= MAX_POINTS) {
+                throw new BusinessException(ResultCode.PARAM_ERROR, "查询范围过大，最多返回" + MAX_POINTS + "个时间段");
+            }
+            starts.add(millis);
+            time = hourly ? time.plusHours(1) : time.plusDays(1);
+        }
+        return starts;
+    }
+
+    private LocalDateTime truncate(long millis, boolean hourly) {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+        return time.truncatedTo(hourly ? ChronoUnit.HOURS : ChronoUnit.DAYS);
+    }
+
+    private Event event(Orders order, Byte status, int sign) {
+        return new Event(createTimeOf(order), statusOf(status), cents(order.getTotalAmount()), sign);
+    }
+
+    private static long createTimeOf(Orders order) {
+        // 刚插入的订单创建时间由数据库生成，对象中为空
+        return order.getCreateTime() != null ? order.getCreateTime().getTime() : System.currentTimeMillis();
+    }
+
+    /**
+     * 未知状态返回-1，不计入统计
+     */
+    private static int statusOf(Byte status) {
+        return status == null || status < 0 || status >= STATUS_COUNT ? -1 : status;
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount == null ? 0 : amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    private static long orderCount(long[] counters) {
+        long count = 0;
+        for (int status = 0; status < STATUS_COUNT; status++) {
+            count += counters[status];
+        }
+        return count;
+    }
+
+    private static BigDecimal salesAmount(long[] counters) {
+        long cents = 0;
+        for (int status = SALES_MIN_STATUS; status < STATUS_COUNT; status++) {
+            cents += counters[STATUS_COUNT + status];
+        }
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static Map<Integer, Long> statusCounts(long[] counters) {
+        Map<Integer, Long> counts = new LinkedHashMap<>();
+        for (int status = 0; status < STATUS_COUNT; status++) {
+            counts.put(status, counters[status]);
+        }
+        return counts;
+    }
+
+    /**
+     * 统计数据：每组计数器前STATUS_COUNT个为各状态订单数，后STATUS_COUNT个为各状态金额（分）
+     */
+    private final class Stats {
+        private final long[] totals = new long[STATUS_COUNT * 2];
+        // 时间段开始时间 -> 计数器
+        private final TreeMap<Long, long[]> hours = new TreeMap<>();
+        private final TreeMap<Long, long[]> days = new TreeMap<>();
+
+        private void add(long createTime, int status, long cents, int sign) {
+            if (status < 0) {
+                return;
+            }
+            add(totals, status, cents, sign);
+            add(bucket(hours, truncate(createTime, true)), status, cents, sign);
+            add(bucket(days, truncate(createTime, false)), status, cents, sign);
+        }
+
+        private long[] bucket(TreeMap<Long, long[]> buckets, LocalDateTime start) {
+            return buckets.computeIfAbsent(start.atZone(zone).toInstant().toEpochMilli(),
+                    key -> new long[STATUS_COUNT * 2]);
+        }
+
+        private void add(long[] counters, int status, long cents, int sign) {
+            counters[status] += sign;
+            counters[STATUS_COUNT + status] += sign * cents;
+        }
+    }
+
+    /**
+     * 一次计数变化：某个创建时间、某个状态的订单数加减一
+     */
+    private static final class Event {
+        private final long createTime;
+        private final int status;
+        private final long cents;
+        private final int sign;
+        // 提交时的快照版本
+        private long version;
+
+        private Event(long createTime, int status, long cents, int sign) {
+            this.createTime = createTime;
+            this.status = status;
+            this.cents = cents;
+            this.sign = sign;
+        }
+    }
+}
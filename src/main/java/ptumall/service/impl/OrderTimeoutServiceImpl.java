@@ -0,0 +1,396 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ptumall.dao.OrderDao;
+import ptumall.model.Orders;
+import ptumall.service.OrderService;
+import ptumall.service.OrderTimeoutService;
+import ptumall.utils.TransactionUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单超时取消服务实现类
+ * 待支付订单的截止时间放入进程内的分层时间轮，每个刻度只处理到期的订单，到期后分批调用
+ * OrderService.cancelTimeoutOrders 取消订单并恢复库存。截止时间同时保存在Redis有序集合中，
+ * 服务重启后从Redis恢复；其他节点宕机遗留的过期订单由定时扫描接管，扫描同时按创建时间查询数据库，
+ * 补上写入Redis失败、从未登记过的待付款订单
+ */
+@Slf4j
+@Service
+public class OrderTimeoutServiceImpl implements OrderTimeoutService {
+
+    // 待支付订单截止时间（订单ID -> 截止时间戳）
+    private static final String TIMEOUT_KEY = "order:timeout";
+    // 时间轮层数和每层槽位数，刻度1秒时覆盖60小时，超出范围的订单放在最高层最远的槽位，降级时重新放置
+    private static final int LEVELS = 3;
+    private static final int SLOTS = 60;
+    // 取消失败后重试的间隔（毫秒）
+    private static final long RETRY_DELAY_MILLIS = 10000;
+    // 每次扫描最多接管的批数，其余留到下次扫描
+    private static final int SWEEP_MAX_BATCHES = 10;
+
+    @Value("${order.timeout.enabled:true}")
+    private boolean enabled;
+
+    // 订单创建后多久未支付自动取消（毫秒）
+    @Value("${order.timeout.unpaid-timeout:1800000}")
+    private long unpaidTimeoutMillis;
+
+    // 每次批量取消的订单数
+    @Value("${order.timeout.batch-size:100}")
+    private int batchSize;
+
+    // 时间轮刻度（毫秒）
+    @Value("${order.timeout.tick:1000}")
+    private long tickMillis;
+
+    // 定时扫描只接管超过截止时间该时长仍未处理的订单，给负责的节点留出处理时间（毫秒）
+    @Value("${order.timeout.sweep-grace:60000}")
+    private long sweepGraceMillis;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private OrderDao orderDao;
+
+    // OrderService依赖本服务登记超时，延迟注入避免循环依赖
+    @Lazy
+    @Autowired
+    private OrderService orderService;
+
+    // 本节点负责的订单及其当前截止时间，支付或取消时移除，时间轮中残留的任务到期时按此判断是否仍有效
+    private final Map<Integer, Long> deadlines = new ConcurrentHashMap<>();
+    // 新登记的任务先放入队列，由时间轮线程放入槽位，时间轮本身只由该线程访问
+    private final ConcurrentLinkedQueue<Task> inbox = new ConcurrentLinkedQueue<>();
+
+    private List<Task>[][] wheel;
+    // 每层一个槽位代表的刻度数：1、60、3600
+    private long[] spans;
+    private long startTime;
+    // 已处理到的刻度，只由时间轮线程访问
+    private long currentTick;
+
+    private ScheduledExecutorService timer;
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void init() {
+        if (!enabled) {
+            log.info("订单超时自动取消未启用");
+            return;
+        }
+        wheel = new List[LEVELS][SLOTS];
+        spans = new long[LEVELS];
+        for (int level = 0; level < LEVELS; level++) {
+            spans[level] = level == 0 ? 1 : spans[level - 1] * SLOTS;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[level][slot] = new ArrayList<>();
+            }
+        }
+        startTime = System.currentTimeMillis();
+        recover();
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+        log.info("订单超时自动取消已启动：timeout={}ms, tick={}ms, 待处理订单数={}",
+                unpaidTimeoutMillis, tickMillis, deadlines.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    @Override
+    public void schedule(Integer orderId) {
+        if (!enabled || orderId == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            long deadline = System.currentTimeMillis() + unpaidTimeoutMillis;
+            deadlines.put(orderId, deadline);
+            inbox.add(new Task(orderId, deadline, deadline));
+            try {
+                stringRedisTemplate.opsForZSet().add(TIMEOUT_KEY, orderId.toString(), deadline);
+            } catch (Exception e) {
+                // Redis不可用时仅在本节点计时，重启前仍会按时取消
+                log.warn("订单{}超时时间写入Redis失败: {}", orderId, e.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void cancel(Integer orderId) {
+        if (!enabled || orderId == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            // 时间轮中的任务不移除，到期时发现已不在deadlines中直接丢弃
+            deadlines.remove(orderId);
+            try {
+                stringRedisTemplate.opsForZSet().remove(TIMEOUT_KEY, orderId.toString());
+            } catch (Exception e) {
+                log.warn("订单{}超时时间从Redis移除失败: {}", orderId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 接管其他节点遗留的过期订单
+     * 截止时间已过去sweep-grace仍留在Redis中、且不由本节点负责的订单，说明负责的节点已停止，
+     * 放入本节点的时间轮立即处理；多个节点同时接管时由数据库行锁保证只取消一次
+     */
+    @Scheduled(fixedDelayString = "${order.timeout.sweep-interval:60000}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        sweepRedis(now);
+        sweepDatabase(now);
+    }
+
+    private void sweepRedis(long now) {
+        try {
+            Set<ZSetOperations.TypedTuple<String>> overdue = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(TIMEOUT_KEY, 0, now - sweepGraceMillis, 0, batchSize * 10L);
+            if (overdue == null || overdue.isEmpty()) {
+                return;
+            }
+            int taken = 0;
+            for (ZSetOperations.TypedTuple<String> tuple : overdue) {
+                Integer orderId = Integer.valueOf(tuple.getValue());
+                long deadline = tuple.getScore().longValue();
+                if (deadlines.putIfAbsent(orderId, deadline) == null) {
+                    inbox.add(new Task(orderId, deadline, now));
+                    taken++;
+                }
+            }
+            if (taken > 0) {
+                log.info("接管过期未处理的订单{}个", taken);
+            }
+        } catch (Exception e) {
+            log.error("扫描过期订单出错", e);
+        }
+    }
+
+    /**
+     * 按创建时间分批查询数据库中超时仍未支付的订单，补上截止时间没有写入Redis（下单后写入失败、
+     * 节点在写入前宕机）的订单；按 (create_time, id) 翻页，每次扫描最多处理SWEEP_MAX_BATCHES批
+     */
+    private void sweepDatabase(long now) {
+        try {
+            Date before = new Date(now - unpaidTimeoutMillis - sweepGraceMillis);
+            Date afterCreateTime = null;
+            Integer afterId = null;
+            int taken = 0;
+            for (int round = 0; round < SWEEP_MAX_BATCHES; round++) {
+                List<Orders> overdue = orderDao.selectOverdueUnpaid(before, afterCreateTime, afterId, batchSize);
+                for (Orders order : overdue) {
+                    long deadline = order.getCreateTime().getTime() + unpaidTimeoutMillis;
+                    if (deadlines.putIfAbsent(order.getId(), deadline) == null) {
+                        inbox.add(new Task(order.getId(), deadline, now));
+                        taken++;
+                    }
+                }
+                if (overdue.size() < batchSize) {
+                    break;
+                }
+                Orders last = overdue.get(overdue.size() - 1);
+                afterCreateTime = last.getCreateTime();
+                afterId = last.getId();
+            }
+            if (taken > 0) {
+                log.info("按数据库接管超时未登记的订单{}个", taken);
+            }
+        } catch (Exception e) {
+            log.error("从数据库扫描超时订单出错", e);
+        }
+    }
+
+    /**
+     * 启动时恢复待处理的订单：优先从Redis读取，Redis中没有记录时（首次部署或数据丢失）按数据库中待付款订单的创建时间重建
+     */
+    private void recover() {
+        try {
+            Set<ZSetOperations.TypedTuple<String>> entries = stringRedisTemplate.opsForZSet()
+                    .rangeWithScores(TIMEOUT_KEY, 0, -1);
+            if (entries != null && !entries.isEmpty()) {
+                for (ZSetOperations.TypedTuple<String> tuple : entries) {
+                    Integer orderId = Integer.valueOf(tuple.getValue());
+                    long deadline = tuple.getScore().longValue();
+                    deadlines.put(orderId, deadline);
+                    inbox.add(new Task(orderId, deadline, deadline));
+                }
+                return;
+            }
+            List<Orders> unpaid = orderDao.selectUnpaid();
+            for (Orders order : unpaid) {
+                long created = order.getCreateTime() != null ? order.getCreateTime().getTime() : startTime;
+                long deadline = created + unpaidTimeoutMillis;
+                deadlines.put(order.getId(), deadline);
+                inbox.add(new Task(order.getId(), deadline, deadline));
+                stringRedisTemplate.opsForZSet().add(TIMEOUT_KEY, order.getId().toString(), deadline);
+            }
+            if (!unpaid.isEmpty()) {
+                log.info("按数据库重建订单超时记录{}条", unpaid.size());
+            }
+        } catch (Exception e) {
+            log.error("恢复订单超时记录失败，过期订单将由定时扫描处理", e);
+        }
+    }
+
+    /**
+     * 处理从上次处理到当前时间之间的所有刻度（线程被取消订单阻塞时补上错过的刻度）
+     */
+    private void advance() {
+        try {
+            List<Task> expired = new ArrayList<>();
+            Task task;
+            while ((task = inbox.poll()) != null) {
+                place(task, expired);
+            }
+            long targetTick = (System.currentTimeMillis() - startTime) / tickMillis;
+            while (currentTick < targetTick) {
+                currentTick++;
+                // 先由高层向低层降级，再处理最低层当前槽位
+                for (int level = LEVELS - 1; level > 0; level--) {
+                    if (currentTick % spans[level] == 0) {
+                        cascade(level, expired);
+                    }
+                }
+                List<Task> slot = wheel[0][(int) (currentTick % SLOTS)];
+                expired.addAll(slot);
+                slot.clear();
+            }
+            if (!expired.isEmpty()) {
+                expire(expired);
+            }
+        } catch (Exception e) {
+            log.error("订单超时处理出错", e);
+        }
+    }
+
+    private void cascade(int level, List<Task> expired) {
+        List<Task> slot = wheel[level][(int) (currentTick / spans[level] % SLOTS)];
+        List<Task> tasks = new ArrayList<>(slot);
+        slot.clear();
+        for (Task task : tasks) {
+            place(task, expired);
+        }
+    }
+
+    /**
+     * 按到期刻度放入能容纳它的最低层；已到期的放入expired
+     */
+    private void place(Task task, List<Task> expired) {
+        // 向上取整到刻度，保证订单不会在截止时间前被取消
+        long tick = (task.due - startTime + tickMillis - 1) / tickMillis;
+        if (tick <= currentTick) {
+            expired.add(task);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            long span = spans[level];
+            if (tick / span - currentTick / span < SLOTS) {
+                wheel[level][(int) (tick / span % SLOTS)].add(task);
+                return;
+            }
+        }
+        long topSpan = spans[LEVELS - 1];
+        wheel[LEVELS - 1][(int) ((currentTick / topSpan + SLOTS - 1) % SLOTS)].add(task);
+    }
+
+    /**
+     * 丢弃已支付或已取消订单的残留任务，其余分批取消
+     */
+    private void expire(List<Task> expired) {
+        List<Task> batch = new ArrayList<>(batchSize);
+        for (Task task : expired) {
+            Long deadline = deadlines.get(task.orderId);
+            if (deadline == null || deadline != task.deadline) {
+                continue;
+            }
+            batch.add(task);
+            if (batch.size() >= batchSize) {
+                cancelBatch(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            cancelBatch(batch);
+        }
+    }
+
+    private void cancelBatch(List<Task> batch) {
+        List<Integer> orderIds = new ArrayList<>(batch.size());
+        for (Task task : batch) {
+            orderIds.add(task.orderId);
+        }
+        try {
+            List<Integer> cancelled = orderService.cancelTimeoutOrders(orderIds);
+            if (!cancelled.isEmpty()) {
+                log.info("自动取消超时未支付订单{}个: {}", cancelled.size(), cancelled);
+            }
+        } catch (Exception e) {
+            log.error("批量取消超时订单失败，{}ms后重试: {}", RETRY_DELAY_MILLIS, orderIds, e);
+            long retryAt = System.currentTimeMillis() + RETRY_DELAY_MILLIS;
+            for (Task task : batch) {
+                inbox.add(new Task(task.orderId, task.deadline, retryAt));
+            }
+            return;
+        }
+        // 已取消或已不是待付款状态的订单都不再需要计时
+        for (Task task : batch) {
+            deadlines.remove(task.orderId, task.deadline);
+        }
+        try {
+            stringRedisTemplate.opsForZSet().remove(TIMEOUT_KEY, orderIds.stream().map(String::valueOf).toArray());
+        } catch (Exception e) {
+            // 残留的记录由定时扫描再次处理，订单已不是待付款状态，不会重复取消
+            log.warn("从Redis移除已处理的订单超时记录失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 时间轮中的超时任务
+     */
+    private static final class Task {
+        private final Integer orderId;
+        // 登记时的截止时间，与deadlines中的值不同说明任务已失效
+        private final long deadline;
+        // 实际处理时间，重试时晚于截止时间
+        private final long due;
+
+        private Task(Integer orderId, long deadline, long due) {
+            this.orderId = orderId;
+            this.deadline = deadline;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ptumall.dao.GoodsDao;
+import ptumall.model.Goods;
+import ptumall.service.CategoryTreeService;
+import ptumall.service.RecommendService;
+import ptumall.utils.TransactionUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 推荐商品排行服务实现类
+ * 全站及按分类各维护一份Top-K有序集合（评分降序、销量降序、ID降序），
+ * 销量、评分变化时增量调整位置，跌出前K的商品移出排行并从数据库补齐，并按固定间隔从数据库全量刷新；
+ * 请求数量不超过K时直接从内存返回，超过K或排行尚未加载时回退到数据库查询
+ */
+@Slf4j
+@Service
+public class RecommendServiceImpl implements RecommendService {
+
+    // 排序规则与 GoodsDao.findRecommend 一致，ID作为最后的比较项保证顺序稳定
+    private static final Comparator<Goods> ORDER = Comparator
+            .comparing((Goods g) -> g.getRating() == null ? BigDecimal.ZERO : g.getRating(), Comparator.reverseOrder())
+            .thenComparing(g -> g.getSalesVolume() == null ? 0 : g.getSalesVolume(), Comparator.reverseOrder())
+            .thenComparing(Goods::getId, Comparator.reverseOrder());
+
+    // 补齐排行时遇到并发变化的最大重试次数，仍失败时等待定时刷新
+    private static final int BACKFILL_ATTEMPTS = 3;
+
+    @Autowired
+    private GoodsDao goodsDao;
+
+    @Autowired
+    private CategoryTreeService categoryTreeService;
+
+    @Value("${recommend.goods.enabled:true}")
+    private boolean enabled;
+
+    // 每份排行保留的商品数量（K）
+    @Value("${recommend.goods.max-size:100}")
+    private int maxSize;
+
+    // 最多缓存排行的分类数，超过后其他分类直接查询数据库
+    @Value("${recommend.goods.max-categories:1000}")
+    private int maxCategories;
+
+    // 全站排行，首次刷新完成前为null
+    private volatile Ranking global;
+
+    // 分类排行，首次按分类请求时加载，长时间未访问的在刷新时移除
+    private final Map<Integer, Ranking> categoryRankings = new ConcurrentHashMap<>();
+
+    // 刷新期间发生变化的商品，刷新完成后重新加载
+    private final Set<Integer> changedDuringRefresh = ConcurrentHashMap.newKeySet();
+    private volatile boolean refreshing;
+    private volatile long lastRefreshTime;
+
+    @Override
+    public List<Goods> getRecommend(Integer categoryId, int limit) {
+        if (enabled && limit <= maxSize) {
+            Ranking ranking = categoryId == null ? global : getCategoryRanking(categoryId);
+            if (ranking != null) {
+                List<Goods> top = ranking.top(limit);
+                if (top != null) {
+                    return top;
+                }
+            }
+        }
+        return load(categoryId, limit);
+    }
+
+    @Override
+    public void onSalesChanged(Integer goodsId, int delta) {
+        if (!enabled || goodsId == null || delta == 0) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            if (refreshing) {
+                changedDuringRefresh.add(goodsId);
+            }
+            // 只调整已在排行中的商品，排行之外的商品靠定时刷新纳入
+            for (Ranking ranking : rankings()) {
+                ranking.addSales(goodsId, delta);
+            }
+            backfill();
+        });
+    }
+
+    @Override
+    public void onGoodsChanged(Integer goodsId) {
+        if (!enabled || goodsId == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> reload(goodsId));
+    }
+
+    @Override
+    public void onGoodsRemoved(Integer goodsId) {
+        if (!enabled || goodsId == null) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            if (refreshing) {
+                changedDuringRefresh.add(goodsId);
+            }
+            for (Ranking ranking : rankings()) {
+                ranking.remove(goodsId);
+            }
+            backfill();
+        });
+    }
+
+    /**
+     * 定时全量刷新，启动后立即执行一次；
+     * 用于纳入排行之外销量上涨的商品，并修正增量更新的累计误差
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${recommend.goods.refresh-interval:300000}")
+    @Override
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        long previousRefreshTime = lastRefreshTime;
+        changedDuringRefresh.clear();
+        refreshing = true;
+        try {
+            global = new Ranking(null, maxSize, goodsDao.findRecommend(maxSize + 1));
+            for (Map.Entry<Integer, Ranking> entry : categoryRankings.entrySet()) {
+                // 刷新间隔内没有被访问过的分类排行不再维护
+                if (entry.getValue().lastAccessTime < previousRefreshTime) {
+                    categoryRankings.remove(entry.getKey());
+                } else {
+                    categoryRankings.put(entry.getKey(), buildCategoryRanking(entry.getKey()));
+                }
+            }
+        } catch (Exception e) {
+            log.error("推荐商品排行刷新失败，继续使用旧排行", e);
+            return;
+        } finally {
+            refreshing = false;
+        }
+        lastRefreshTime = start;
+
+        // 补上刷新期间发生的变化
+        for (Integer goodsId : new ArrayList<>(changedDuringRefresh)) {
+            reload(goodsId);
+        }
+        changedDuringRefresh.clear();
+        log.info("推荐商品排行刷新完成：goods={}, categories={}, cost={}ms", global.size(),
+                categoryRankings.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 从数据库重新加载单个商品并调整其在各排行中的位置，下架或已删除的商品移出排行
+     */
+    private void reload(Integer goodsId) {
+        if (refreshing) {
+            changedDuringRefresh.add(goodsId);
+        }
+        Goods goods = goodsDao.findById(goodsId);
+        boolean active = goods != null && goods.getStatus() != null && goods.getStatus() == 1;
+        for (Ranking ranking : rankings()) {
+            if (active) {
+                ranking.upsert(goods);
+            } else {
+                ranking.remove(goodsId);
+            }
+        }
+        backfill();
+    }
+
+    /**
+     * 为移出了商品、不足K个的排行从数据库补齐
+     * 查询期间排行又发生变化时放弃本次结果重新查询，多次失败后由定时刷新补齐，期间超出部分的请求回退到数据库
+     */
+    private void backfill() {
+        for (Ranking ranking : rankings()) {
+            for (int attempt = 0; attempt < BACKFILL_ATTEMPTS && ranking.needsBackfill(); attempt++) {
+                long version = ranking.version();
+                List<Goods> goods;
+                try {
+                    goods = ranking.categoryIds == null ? goodsDao.findRecommend(maxSize + 1)
+                            : goodsDao.findRecommendByCategory(new ArrayList<>(ranking.categoryIds), maxSize + 1);
+                } catch (Exception e) {
+                    log.warn("推荐商品排行补齐失败，等待定时刷新", e);
+                    return;
+                }
+                if (ranking.fill(goods, version)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取分类排行，分类不存在或缓存的分类数已达上限时返回null
+     */
+    private Ranking getCategoryRanking(Integer categoryId) {
+        Ranking ranking = categoryRankings.get(categoryId);
+        if (ranking == null) {
+            // 不为任意传入的分类ID建立排行，避免缓存无限增长
+            if (categoryRankings.size() >= maxCategories || !categoryTreeService.exists(categoryId)) {
+                return null;
+            }
+            ranking = buildCategoryRanking(categoryId);
+            Ranking existing = categoryRankings.putIfAbsent(categoryId, ranking);
+            if (existing != null) {
+                ranking = existing;
+            }
+        }
+        ranking.lastAccessTime = System.currentTimeMillis();
+        return ranking;
+    }
+
+    private Ranking buildCategoryRanking(Integer categoryId) {
+        List<Integer> categoryIds = categoryTreeService.getSubtreeIds(categoryId);
+        List<Goods> goods = categoryIds.isEmpty() ? Collections.emptyList()
+                : goodsDao.findRecommendByCategory(categoryIds, maxSize + 1);
+        return new Ranking(new HashSet<>(categoryIds), maxSize, goods);
+    }
+
+    private List<Goods> load(Integer categoryId, int limit) {
+        if (categoryId == null) {
+            return goodsDao.findRecommend(limit);
+        }
+        List<Integer> categoryIds = categoryTreeService.getSubtreeIds(categoryId);
+        return categoryIds.isEmpty() ? new ArrayList<>() : goodsDao.findRecommendByCategory(categoryIds, limit);
+    }
+
+    private List<Ranking> rankings() {
+        List<Ranking> rankings = new ArrayList<>(categoryRankings.size() + 1);
+        Ranking current = global;
+        if (current != null) {
+            rankings.add(current);
+        }
+        rankings.addAll(categoryRankings.values());
+        return rankings;
+    }
+
+    private static Goods withSales(Goods source, int salesVolume) {
+        Goods goods = new Goods();
+        goods.setId(source.getId());
+        goods.setName(source.getName());
+        goods.setPrice(source.getPrice());
+        goods.setDescription(source.getDescription());
+        goods.setCategoryId(source.getCategoryId());
+        goods.setStock(source.getStock());
+        goods.setStatus(source.getStatus());
+        goods.setImageUrl(source.getImageUrl());
+        goods.setRating(source.getRating());
+        goods.setSalesVolume(salesVolume);
+        goods.setCreateTime(source.getCreateTime());
+        goods.setUpdateTime(source.getUpdateTime());
+        return goods;
+    }
+
+    /**
+     * 一份Top-K排行，写操作加锁，读操作使用写后重建的不可变快照
+     */
+    private static class Ranking {
+        // 所属分类及其子分类，为null表示全站
+        private final Set<Integer> categoryIds;
+        private final int capacity;
+        private final TreeSet<Goods> ordered = new TreeSet<>(ORDER);
+        private final Map<Integer, Goods> byId = new HashMap<>();
+        // 是否包含了范围内的全部上架商品，为true时不足K个也可直接返回
+        private volatile boolean complete;
+        // 每次收到变化加一，补齐时用于判断查询期间是否发生了变化
+        private long version;
+        private volatile List<Goods> snapshot;
+        private volatile long lastAccessTime = System.currentTimeMillis();
+
+        Ranking(Set<Integer> categoryIds, int capacity, List<Goods> goods) {
+            this.categoryIds = categoryIds;
+            this.capacity = capacity;
+            // 加载时多取一条，用于判断范围内是否还有排行之外的商品
+            this.complete = goods.size() <= capacity;
+            for (Goods g : goods) {
+                if (ordered.size() < capacity) {
+                    ordered.add(g);
+                    byId.put(g.getId(), g);
+                }
+            }
+        }
+
+        /**
+         * 取前limit个商品，排行中的商品不足且范围内还有其他商品时返回null
+         */
+        List<Goods> top(int limit) {
+            List<Goods> current = snapshot;
+            if (current == null) {
+                synchronized (this) {
+                    current = snapshot;
+                    if (current == null) {
+                        current = Collections.unmodifiableList(new ArrayList<>(ordered));
+                        snapshot = current;
+                    }
+                }
+            }
+            if (current.size() < limit && !complete) {
+                return null;
+            }
+            return current.size() <= limit ? current : current.subList(0, limit);
+        }
+
+        synchronized int size() {
+            return ordered.size();
+        }
+
+        synchronized long version() {
+            return version;
+        }
+
+        /**
+         * 范围内还有排行之外的商品，但排行不足K个
+         */
+        synchronized boolean needsBackfill() {
+            return !complete && ordered.size() < capacity;
+        }
+
+        /**
+         * 用按排序规则查询的前K+1个商品补齐排行，已在排行中的商品保留当前数据；
+         * 查询后排行发生过变化时返回false，由调用方重新查询
+         */
+        synchronized boolean fill(List<Goods> goods, long expectedVersion) {
+            if (version != expectedVersion) {
+                return false;
+            }
+            for (Goods g : goods) {
+                if (ordered.size() >= capacity) {
+                    break;
+                }
+                if (!byId.containsKey(g.getId())) {
+                    ordered.add(g);
+                    byId.put(g.getId(), g);
+                }
+            }
+            complete = goods.size() <= capacity;
+            snapshot = null;
+            return true;
+        }
+
+        synchronized void addSales(Integer goodsId, int delta) {
+            // 排行之外的商品变化也计入，补齐时查到的可能是变化前的数据
+            version++;
+            Goods old = byId.get(goodsId);
+            if (old == null) {
+                return;
+            }
+            int sales = old.getSalesVolume() == null ? 0 : old.getSalesVolume();
+            put(withSales(old, Math.max(sales + delta, 0)));
+        }
+
+        synchronized void upsert(Goods goods) {
+            version++;
+            if (categoryIds != null && !categoryIds.contains(goods.getCategoryId())) {
+                // 商品不属于（或已移出）该分类
+                remove(goods.getId());
+                return;
+            }
+            put(goods);
+        }
+
+        synchronized void remove(Integer goodsId) {
+            version++;
+            Goods old = byId.remove(goodsId);
+            if (old != null) {
+                ordered.remove(old);
+                snapshot = null;
+            }
+        }
+
+        private void put(Goods goods) {
+            Goods old = byId.remove(goods.getId());
+            if (old != null) {
+                ordered.remove(old);
+                // 排名下降到原第K名之后时，排行之外的商品可能排在它前面，移出排行等待补齐
+                if (!complete && ORDER.compare(goods, old) > 0
+                        && (ordered.isEmpty() || ORDER.compare(goods, ordered.last()) > 0)) {
+                    snapshot = null;
+                    return;
+                }
+            } else if (ordered.size() >= capacity && ORDER.compare(goods, ordered.last()) > 0) {
+                // 排不进前K
+                complete = false;
+                return;
+            }
+            ordered.add(goods);
+            byId.put(goods.getId(), goods);
+            while (ordered.size() > capacity) {
+                Goods evicted = ordered.pollLast();
+                byId.remove(evicted.getId());
+                complete = false;
+            }
+            snapshot = null;
+        }
+    }
+}
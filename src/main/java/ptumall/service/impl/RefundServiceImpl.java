@@ -7,12 +7,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ptumall.dao.OrderDao;
 import ptumall.dao.RefundDao;
-import ptumall.dao.GoodsDao;
 import ptumall.model.Refund;
 import ptumall.model.Orders;
 import ptumall.model.OrderItems;
 import ptumall.service.RefundService;
 import ptumall.service.AlipayService;
+import ptumall.service.OrderStatisticsService;
+import ptumall.service.StockService;
 
 import java.math.BigDecimal;
 import java.util.Date;
@@ -34,10 +35,13 @@ public class RefundServiceImpl implements RefundService {
     private OrderDao orderDao;
     
     @Autowired
-    private GoodsDao goodsDao;
+    private StockService stockService;
     
     @Autowired
     private AlipayService alipayService;
+
+    @Autowired
+    private OrderStatisticsService orderStatisticsService;
     
     @Override
     public Refund applyRefund(Integer orderId, Integer userId, String reason, String description, String images) {
@@ -195,15 +199,15 @@ public class RefundServiceImpl implements RefundService {
             }
             
             // 4.1 更新订单状态为"已退款"
+            orderStatisticsService.onOrderStatusChanged(order, (byte) 5);
             order.setStatus((byte)5); // 5-已退款
             order.setUpdateTime(new Date());
             orderDao.updateById(order);
             
             // 4.2 恢复商品库存
             List<OrderItems> orderItems = orderDao.selectOrderItemsByOrderId(order.getId());
+            stockService.restoreStock(orderItems);
             for (OrderItems item : orderItems) {
-                goodsDao.updateStock(item.getGoodsId(), 
-                        goodsDao.findById(item.getGoodsId()).getStock() + item.getQuantity());
                 logger.info("恢复商品库存: goodsId={}, quantity={}", item.getGoodsId(), item.getQuantity());
             }
             
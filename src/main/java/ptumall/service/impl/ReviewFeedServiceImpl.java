@@ -0,0 +1,211 @@
+package ptumall.service.impl;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ptumall.dao.GoodsReviewDao;
+import ptumall.exception.BusinessException;
+import ptumall.model.GoodsReview;
+import ptumall.service.ReviewFeedService;
+import ptumall.utils.CursorUtils;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.CursorPageResult;
+import ptumall.vo.ResultCode;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 商品评价列表服务实现类
+ * 按(goods_id, 排序值, id)游标分页，每页只扫描当前页的数据。
+ * 每个商品每种排序方式的前cache-size条评价缓存在本地，落在这一范围内的翻页（不限每页数量）直接从缓存截取；
+ * 新增、删除评价和点赞数回写后失效该商品的缓存，其他节点的变化在缓存过期后生效
+ */
+@Service
+public class ReviewFeedServiceImpl implements ReviewFeedService {
+
+    @Autowired
+    private GoodsReviewDao goodsReviewDao;
+
+    // 每个商品每种排序方式缓存的评价条数
+    @Value("${review.feed.cache-size:100}")
+    private int cacheSize;
+
+    // 本地缓存有效期（毫秒）
+    @Value("${review.feed.cache-ttl:30000}")
+    private long cacheTtlMillis;
+
+    // 最多缓存的商品数，超过后先清理过期条目，仍然超过时不再缓存新商品
+    @Value("${review.feed.cache-max-goods:10000}")
+    private int cacheMaxGoods;
+
+    // 失效版本号的分段数
+    private static final int VERSION_STRIPES = 1024;
+
+    // 商品ID -> 排序方式 -> 缓存的评价
+    private final Map<Integer, Map<String, CachedFeed>> cache = new ConcurrentHashMap<>();
+    // 按商品ID分段的失效版本号，商品失效时所在分段加一，加载期间该商品发生失效时不写入缓存
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    @Override
+    public CursorPageResult<GoodsReview> getFeed(Integer goodsId, String sort, String cursor, Integer pageSize) {
+        String order = sort == null || sort.isEmpty() ? SORT_NEWEST : sort;
+        if (!SORT_NEWEST.equals(order) && !SORT_LIKES.equals(order) && !SORT_RATING.equals(order)) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "不支持的排序方式: " + sort);
+        }
+        CursorUtils.Position position = CursorUtils.decode(cursor, cursorSort(order));
+        int size = CursorUtils.normalizePageSize(pageSize);
+
+        CursorPageResult<GoodsReview> cached = fromCache(goodsId, order, position, size);
+        if (cached != null) {
+            return cached;
+        }
+        // 多查一条用于判断是否还有下一页
+        List<GoodsReview> reviews = query(goodsId, order, position, size + 1);
+        return page(reviews, 0, size, order);
+    }
+
+    @Override
+    public void invalidate(Integer goodsId) {
+        TransactionUtils.afterCommit(() -> {
+            versions.incrementAndGet(stripe(goodsId));
+            cache.remove(goodsId);
+        });
+    }
+
+    /**
+     * 从缓存中截取一页，请求的范围超出缓存时返回null
+     */
+    private CursorPageResult<GoodsReview> fromCache(Integer goodsId, String order, CursorUtils.Position position, int size) {
+        if (cacheSize <= 0) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        Map<String, CachedFeed> feeds = cache.get(goodsId);
+        CachedFeed feed = feeds == null ? null : feeds.get(order);
+        if (feed == null || feed.expireTime <= now) {
+            // 只在查询第一页时加载缓存，缓存失效期间的后续翻页直接查询数据库
+            if (position != null) {
+                return null;
+            }
+            feed = load(goodsId, order, now);
+        }
+        List<GoodsReview> reviews = feed.reviews;
+        int start = 0;
+        if (position != null) {
+            // 游标指向的评价不在缓存中时按数据库查询
+            start = -1;
+            for (int i = 0; i < reviews.size(); i++) {
+                GoodsReview review = reviews.get(i);
+                if (review.getId().equals(position.getId()) && sortKey(review, order) == position.getKey()) {
+                    start = i + 1;
+                    break;
+                }
+            }
+            if (start < 0) {
+                return null;
+            }
+        }
+        // 缓存了全部评价，或缓存中还有比本页多一条的数据（用于判断是否有下一页）
+        if (!feed.complete && start + size + 1 > reviews.size()) {
+            return null;
+        }
+        return page(reviews, start, size, order);
+    }
+
+    private CachedFeed load(Integer goodsId, String order, long now) {
+        int stripe = stripe(goodsId);
+        long version = versions.get(stripe);
+        List<GoodsReview> reviews = query(goodsId, order, null, cacheSize + 1);
+        boolean complete = reviews.size() <= cacheSize;
+        if (!complete) {
+            reviews = new ArrayList<>(reviews.subList(0, cacheSize));
+        }
+        CachedFeed feed = new CachedFeed(reviews, complete, now + cacheTtlMillis);
+        if (versions.get(stripe) == version && hasRoom(goodsId, now)) {
+            cache.computeIfAbsent(goodsId, key -> new ConcurrentHashMap<>()).put(order, feed);
+            // 写入期间发生的失效可能没有清除刚写入的条目
+            if (versions.get(stripe) != version) {
+                cache.remove(goodsId);
+            }
+        }
+        return feed;
+    }
+
+    private static int stripe(Integer goodsId) {
+        return Math.floorMod(goodsId, VERSION_STRIPES);
+    }
+
+    private boolean hasRoom(Integer goodsId, long now) {
+        if (cache.size() < cacheMaxGoods || cache.containsKey(goodsId)) {
+            return true;
+        }
+        cache.values().removeIf(feeds -> {
+            feeds.values().removeIf(feed -> feed.expireTime <= now);
+            return feeds.isEmpty();
+        });
+        return cache.size() < cacheMaxGoods;
+    }
+
+    private List<GoodsReview> query(Integer goodsId, String order, CursorUtils.Position position, int limit) {
+        if (position == null) {
+            return goodsReviewDao.findPageByGoodsId(goodsId, order, null, null, null, limit);
+        }
+        Long afterKey = SORT_NEWEST.equals(order) ? null : position.getKey();
+        Date afterTime = SORT_NEWEST.equals(order) ? position.getCreateTime() : null;
+        return goodsReviewDao.findPageByGoodsId(goodsId, order, afterKey, afterTime, position.getId(), limit);
+    }
+
+    /**
+     * 从start开始截取一页，reviews中本页之后还有数据时返回下一页游标
+     */
+    private static CursorPageResult<GoodsReview> page(List<GoodsReview> reviews, int start, int size, String order) {
+        int end = Math.min(start + size, reviews.size());
+        List<GoodsReview> list = new ArrayList<>(reviews.subList(start, end));
+        boolean hasMore = end < reviews.size();
+        String nextCursor = null;
+        if (hasMore) {
+            GoodsReview last = list.get(list.size() - 1);
+            nextCursor = SORT_NEWEST.equals(order)
+                    ? CursorUtils.encode(last.getCreateTime(), last.getId())
+                    : CursorUtils.encode(order, sortKey(last, order), last.getId());
+        }
+        return new CursorPageResult<>(nextCursor, hasMore, size, list);
+    }
+
+    /**
+     * 游标中记录的排序方式，按最新排序与其他游标分页一样使用创建时间游标，兼容未带排序方式的旧游标
+     */
+    private static String cursorSort(String order) {
+        return SORT_NEWEST.equals(order) ? CursorUtils.SORT_TIME : order;
+    }
+
+    private static long sortKey(GoodsReview review, String order) {
+        if (SORT_LIKES.equals(order)) {
+            return review.getLikeCount() == null ? 0 : review.getLikeCount();
+        }
+        if (SORT_RATING.equals(order)) {
+            return review.getRating() == null ? 0 : review.getRating();
+        }
+        // 创建时间为空的评价无法生成游标，编码时报错，这里只用于在缓存中比对位置
+        return review.getCreateTime() == null ? 0 : review.getCreateTime().getTime();
+    }
+
+    private static final class CachedFeed {
+        // 按排序方式排列的前cache-size条评价，不修改
+        private final List<GoodsReview> reviews;
+        // 该商品的评价是否已全部在缓存中
+        private final boolean complete;
+        private final long expireTime;
+
+        private CachedFeed(List<GoodsReview> reviews, boolean complete, long expireTime) {
+            this.reviews = reviews;
+            this.complete = complete;
+            this.expireTime = expireTime;
+        }
+    }
+}
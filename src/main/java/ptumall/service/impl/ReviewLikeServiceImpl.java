@@ -0,0 +1,436 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.GoodsReviewDao;
+import ptumall.dao.ReviewLikeDao;
+import ptumall.model.GoodsReview;
+import ptumall.model.ReviewLike;
+import ptumall.service.ReviewFeedService;
+import ptumall.service.ReviewLikeService;
+import ptumall.utils.TransactionUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 评价点赞服务实现类
+ * 评价点赞数和用户点赞过的评价集合保存在Redis中，每个评价、每个用户各一个Key，访问时续期，
+ * 长期无人访问的过期后再访问时从数据库加载；点赞、取消点赞和查询都由Lua脚本在Redis中原子完成，
+ * 同时记录每个(评价, 用户)的最终点赞状态和点赞数有变化的评价；后台定时取出这些变化，
+ * 批量写入 review_like 表并用 CASE 批量更新 goods_review.like_count。
+ * 同一对(评价, 用户)在一个回写间隔内的多次操作只写最后的状态。
+ * 取出的变化先移入回写中的Key，写库事务提交后才删除；写库失败或节点宕机时由下一次回写原样重放，
+ * 写入的都是最终状态和当前点赞数，重放不会重复计数。
+ * Redis不可用或关闭该功能时按原方式同步写库
+ */
+@Slf4j
+@Service
+public class ReviewLikeServiceImpl implements ReviewLikeService {
+
+    // 评价点赞数，前缀 + 评价ID，不存在时从数据库加载
+    private static final String COUNT_KEY_PREFIX = "review:like:count:";
+    // 旧版本保存所有评价点赞数的Hash，没有过期时间，启动时删除
+    private static final String LEGACY_COUNT_KEY = "review:like:count";
+    // 用户点赞过的评价ID集合，前缀 + 用户ID
+    private static final String USER_KEY_PREFIX = "review:like:user:";
+    // 未写库的点赞状态（评价ID:用户ID -> 1点赞/0取消）
+    private static final String PENDING_KEY = "review:like:pending";
+    // 点赞数有变化、等待写库的评价ID
+    private static final String DIRTY_KEY = "review:like:dirty";
+    // 正在写库的点赞状态和评价ID，写库提交后删除
+    private static final String PROCESSING_KEY = "review:like:processing";
+    private static final String PROCESSING_DIRTY_KEY = "review:like:processing:dirty";
+    private static final String LOCK_KEY = "review:like:lock";
+    // 用户集合中的占位成员，保证没有点赞记录的用户集合也存在
+    private static final String PLACEHOLDER = "0";
+    // 用户集合有效期（秒），每次访问时刷新
+    private static final long USER_TTL_SECONDS = 3 * 24 * 3600;
+    // 评价点赞数有效期（秒），每次点赞、取消点赞时刷新
+    private static final long COUNT_TTL_SECONDS = 3 * 24 * 3600;
+    private static final long LOCK_EXPIRE_SECONDS = 30;
+    // 加载数据后重试脚本的次数
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * 点赞：用户集合未加载返回-1，点赞数未加载返回-2，已点赞返回0，成功返回1
+     */
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "if redis.call('EXISTS', KEYS[2]) == 0 then return -2 end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[4]) " +
+            "if redis.call('SADD', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+            "redis.call('INCR', KEYS[2]) " +
+            "redis.call('HSET', KEYS[3], ARGV[1] .. ':' .. ARGV[2], 1) " +
+            "redis.call('SADD', KEYS[4], ARGV[1]) " +
+            "return 1", Long.class);
+
+    /**
+     * 取消点赞：返回值同点赞，未点赞返回0
+     */
+    private static final DefaultRedisScript<Long> UNLIKE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "if redis.call('EXISTS', KEYS[2]) == 0 then return -2 end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[4]) " +
+            "if redis.call('SREM', KEYS[1], ARGV[1]) == 0 then return 0 end " +
+            "local count = redis.call('DECR', KEYS[2]) " +
+            "if count < 0 then redis.call('INCRBY', KEYS[2], -count) end " +
+            "redis.call('HSET', KEYS[3], ARGV[1] .. ':' .. ARGV[2], 0) " +
+            "redis.call('SADD', KEYS[4], ARGV[1]) " +
+            "return 1", Long.class);
+
+    /**
+     * 查询是否已点赞：用户集合未加载返回-1，已点赞返回1，未点赞返回0
+     */
+    private static final DefaultRedisScript<Long> CHECK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -1 end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "return redis.call('SISMEMBER', KEYS[1], ARGV[1])", Long.class);
+
+    /**
+     * 取出本次要写库的变化：上次回写未确认提交时重放回写中的Key，否则把未写库的点赞状态和有变化的评价
+     * 移入回写中的Key，返回{点赞状态（字段、值交替排列）, 评价ID列表}
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TAKE_PENDING_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[3]) == 0 and redis.call('EXISTS', KEYS[4]) == 0 then " +
+            "  if redis.call('EXISTS', KEYS[1]) == 1 then redis.call('RENAME', KEYS[1], KEYS[3]) end " +
+            "  if redis.call('EXISTS', KEYS[2]) == 1 then redis.call('RENAME', KEYS[2], KEYS[4]) end " +
+            "end " +
+            "return {redis.call('HGETALL', KEYS[3]), redis.call('SMEMBERS', KEYS[4])}", List.class);
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private ReviewLikeDao reviewLikeDao;
+
+    @Autowired
+    private GoodsReviewDao goodsReviewDao;
+
+    @Autowired
+    private ReviewFeedService reviewFeedService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 关闭时每次点赞同步写库
+    @Value("${review.like.enabled:true}")
+    private boolean enabled;
+
+    // 每条批量语句最多包含的记录数
+    @Value("${review.like.batch-size:500}")
+    private int batchSize;
+
+    private final String nodeToken = UUID.randomUUID().toString();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            stringRedisTemplate.delete(LEGACY_COUNT_KEY);
+        } catch (Exception e) {
+            log.warn("删除旧版评价点赞数失败: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public int like(Integer reviewId, Integer userId) {
+        if (!enabled) {
+            return likeDirect(reviewId, userId);
+        }
+        try {
+            return execute(LIKE_SCRIPT, reviewId, userId);
+        } catch (Exception e) {
+            log.error("Redis点赞失败，改为直接写库: reviewId={}, userId={}", reviewId, userId, e);
+            evict(reviewId, userId);
+            return likeDirect(reviewId, userId);
+        }
+    }
+
+    @Override
+    public int unlike(Integer reviewId, Integer userId) {
+        if (!enabled) {
+            return unlikeDirect(reviewId, userId);
+        }
+        try {
+            return execute(UNLIKE_SCRIPT, reviewId, userId);
+        } catch (Exception e) {
+            log.error("Redis取消点赞失败，改为直接写库: reviewId={}, userId={}", reviewId, userId, e);
+            evict(reviewId, userId);
+            return unlikeDirect(reviewId, userId);
+        }
+    }
+
+    @Override
+    public boolean isLiked(Integer reviewId, Integer userId) {
+        if (enabled) {
+            try {
+                String userKey = userKey(userId);
+                for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                    Long result = stringRedisTemplate.execute(CHECK_SCRIPT, Collections.singletonList(userKey),
+                            reviewId.toString(), String.valueOf(USER_TTL_SECONDS));
+                    if (result != null && result >= 0) {
+                        return result == 1;
+                    }
+                    loadUser(userId);
+                }
+            } catch (Exception e) {
+                log.warn("Redis查询点赞状态失败，改为查询数据库: {}", e.getMessage());
+            }
+        }
+        return reviewLikeDao.findByUserIdAndReviewId(userId, reviewId) != null;
+    }
+
+    @Override
+    public void onReviewDeleted(Integer reviewId) {
+        if (!enabled) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> {
+            try {
+                stringRedisTemplate.delete(countKey(reviewId));
+            } catch (Exception e) {
+                log.warn("清除评价点赞数失败: reviewId={}, {}", reviewId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 定时回写
+     */
+    @Scheduled(fixedDelayString = "${review.like.flush-interval:1000}")
+    public void scheduledFlush() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("评价点赞回写失败", e);
+        }
+    }
+
+    /**
+     * 停机时写入剩余的点赞变化
+     */
+    @PreDestroy
+    public void destroy() {
+        scheduledFlush();
+    }
+
+    /**
+     * 加锁后执行，多个节点不会同时回写，保证同一对(评价, 用户)的先后状态按顺序写库
+     */
+    @Override
+    public void flush() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, nodeToken,
+                LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            flushPending();
+        } finally {
+            try {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_KEY), nodeToken);
+            } catch (Exception e) {
+                log.warn("评价点赞回写解锁失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void flushPending() {
+        List<Object> taken = stringRedisTemplate.execute(TAKE_PENDING_SCRIPT,
+                Arrays.asList(PENDING_KEY, DIRTY_KEY, PROCESSING_KEY, PROCESSING_DIRTY_KEY));
+        if (taken == null || taken.size() < 2) {
+            return;
+        }
+        List<Object> pending = (List<Object>) taken.get(0);
+        List<Object> ids = (List<Object>) taken.get(1);
+        if (pending.isEmpty() && ids.isEmpty()) {
+            return;
+        }
+        // 读取这些评价当前的点赞数，取出之后的变化会再次标记评价，下次回写时覆盖；
+        // 评价已删除时点赞数不存在，跳过
+        List<String> countKeys = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            countKeys.add(COUNT_KEY_PREFIX + id);
+        }
+        List<String> counts = countKeys.isEmpty() ? Collections.emptyList()
+                : stringRedisTemplate.opsForValue().multiGet(countKeys);
+
+        List<ReviewLike> inserts = new ArrayList<>();
+        List<ReviewLike> deletes = new ArrayList<>();
+        for (int i = 0; i + 1 < pending.size(); i += 2) {
+            String field = pending.get(i).toString();
+            int separator = field.indexOf(':');
+            ReviewLike like = new ReviewLike();
+            like.setReviewId(Integer.valueOf(field.substring(0, separator)));
+            like.setUserId(Integer.valueOf(field.substring(separator + 1)));
+            if ("1".equals(pending.get(i + 1).toString())) {
+                inserts.add(like);
+            } else {
+                deletes.add(like);
+            }
+        }
+        // 按评价ID排序，多条批量更新语句以相同顺序加锁
+        Map<Integer, Integer> likeCounts = new TreeMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (counts != null && counts.get(i) != null) {
+                likeCounts.put(Integer.valueOf(ids.get(i).toString()), Integer.valueOf(counts.get(i)));
+            }
+        }
+        List<GoodsReview> reviews = new ArrayList<>(likeCounts.size());
+        for (Map.Entry<Integer, Integer> entry : likeCounts.entrySet()) {
+            GoodsReview review = new GoodsReview();
+            review.setId(entry.getKey());
+            review.setLikeCount(entry.getValue());
+            reviews.add(review);
+        }
+
+        try {
+            transactionTemplate.execute(status -> {
+                for (int from = 0; from < deletes.size(); from += batchSize) {
+                    reviewLikeDao.batchDelete(deletes.subList(from, Math.min(from + batchSize, deletes.size())));
+                }
+                for (int from = 0; from < inserts.size(); from += batchSize) {
+                    reviewLikeDao.batchInsertIgnore(inserts.subList(from, Math.min(from + batchSize, inserts.size())));
+                }
+                for (int from = 0; from < reviews.size(); from += batchSize) {
+                    goodsReviewDao.batchUpdateLikeCount(reviews.subList(from, Math.min(from + batchSize, reviews.size())));
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("评价点赞批量写库失败，下次回写时重放: likes={}, reviews={}", pending.size() / 2, ids.size(), e);
+            return;
+        }
+        // 提交后、删除前宕机时下次回写会重放这批变化，写入的是最终状态，结果不变
+        stringRedisTemplate.delete(Arrays.asList(PROCESSING_KEY, PROCESSING_DIRTY_KEY));
+        log.debug("评价点赞回写完成：inserts={}, deletes={}, reviews={}", inserts.size(), deletes.size(), reviews.size());
+        if (!likeCounts.isEmpty()) {
+            // 点赞数变化影响按点赞数排序的评价列表
+            for (Integer goodsId : goodsReviewDao.findGoodsIdsByIds(likeCounts.keySet())) {
+                reviewFeedService.invalidate(goodsId);
+            }
+        }
+    }
+
+    /**
+     * 执行点赞或取消点赞脚本，用户集合或点赞数未加载时从数据库加载后重试
+     */
+    private int execute(DefaultRedisScript<Long> script, Integer reviewId, Integer userId) {
+        List<String> keys = Arrays.asList(userKey(userId), countKey(reviewId), PENDING_KEY, DIRTY_KEY);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            Long result = stringRedisTemplate.execute(script, keys, reviewId.toString(), userId.toString(),
+                    String.valueOf(USER_TTL_SECONDS), String.valueOf(COUNT_TTL_SECONDS));
+            if (result == null) {
+                break;
+            }
+            if (result == -1) {
+                loadUser(userId);
+            } else if (result == -2) {
+                Integer likeCount = goodsReviewDao.findLikeCountById(reviewId);
+                if (likeCount == null) {
+                    return REVIEW_NOT_FOUND;
+                }
+                // 点赞数只在访问时续期，过期前该评价的变化早已写库，加载结果不会遗漏未写库的操作
+                stringRedisTemplate.opsForValue().setIfAbsent(countKey(reviewId), likeCount.toString(),
+                        COUNT_TTL_SECONDS, TimeUnit.SECONDS);
+            } else {
+                return result == 1 ? CHANGED : UNCHANGED;
+            }
+        }
+        throw new IllegalStateException("点赞数据加载后仍不可用");
+    }
+
+    /**
+     * 从数据库加载用户点赞过的评价
+     * 用户集合只在访问时续期，过期前该用户的变化早已写库，加载结果不会遗漏未写库的操作
+     */
+    private void loadUser(Integer userId) {
+        List<Integer> reviewIds = reviewLikeDao.findReviewIdsByUserId(userId);
+        String[] members = new String[reviewIds.size() + 1];
+        members[0] = PLACEHOLDER;
+        for (int i = 0; i < reviewIds.size(); i++) {
+            members[i + 1] = reviewIds.get(i).toString();
+        }
+        String key = userKey(userId);
+        stringRedisTemplate.opsForSet().add(key, members);
+        stringRedisTemplate.expire(key, USER_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 直接写库前尽量清除Redis中的相关数据，Redis恢复后重新从数据库加载
+     */
+    private void evict(Integer reviewId, Integer userId) {
+        try {
+            stringRedisTemplate.delete(userKey(userId));
+            stringRedisTemplate.delete(countKey(reviewId));
+        } catch (Exception e) {
+            log.warn("清除点赞缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private int likeDirect(Integer reviewId, Integer userId) {
+        return transactionTemplate.execute(status -> {
+            if (goodsReviewDao.findLikeCountById(reviewId) == null) {
+                return REVIEW_NOT_FOUND;
+            }
+            if (reviewLikeDao.findByUserIdAndReviewId(userId, reviewId) != null) {
+                return UNCHANGED;
+            }
+            ReviewLike reviewLike = new ReviewLike();
+            reviewLike.setUserId(userId);
+            reviewLike.setReviewId(reviewId);
+            reviewLikeDao.insert(reviewLike);
+            goodsReviewDao.updateLikeCount(reviewId, reviewLikeDao.countByReviewId(reviewId));
+            return CHANGED;
+        });
+    }
+
+    private int unlikeDirect(Integer reviewId, Integer userId) {
+        return transactionTemplate.execute(status -> {
+            if (goodsReviewDao.findLikeCountById(reviewId) == null) {
+                return REVIEW_NOT_FOUND;
+            }
+            if (reviewLikeDao.deleteByUserIdAndReviewId(userId, reviewId) == 0) {
+                return UNCHANGED;
+            }
+            goodsReviewDao.updateLikeCount(reviewId, reviewLikeDao.countByReviewId(reviewId));
+            return CHANGED;
+        });
+    }
+
+    private static String userKey(Integer userId) {
+        return USER_KEY_PREFIX + userId;
+    }
+
+    private static String countKey(Integer reviewId) {
+        return COUNT_KEY_PREFIX + reviewId;
+    }
+}
@@ -0,0 +1,357 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.GoodsDao;
+import ptumall.model.OrderItems;
+import ptumall.service.RecommendService;
+import ptumall.service.SalesVolumeService;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.SalesVolumeStatsVO;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 商品销量服务实现类
+ * 订单事务提交后销量变化先累加到每个商品一个的LongAdder，并发下单分散到不同的计数单元；
+ * 每隔spill-interval把本节点的累计值用一次脚本调用合并到Redis的待回写Hash中，Redis确认后变化即不会因本节点崩溃丢失，
+ * 崩溃时最多丢失一个spill-interval内的变化。
+ * 定时取出Redis中的累计值，按商品ID排序后用 CASE 批量更新写入数据库。
+ * 回写时先把待回写Hash整体移入回写中Hash，数据库提交成功后才删除，写库失败或宕机时由下一次回写（任一节点）重放。
+ * Redis不可用时在独立事务中直接写库
+ */
+@Slf4j
+@Service
+public class SalesVolumeServiceImpl implements SalesVolumeService {
+
+    // 待回写的销量变化（商品ID -> 变化量）
+    private static final String PENDING_KEY = "goods:sales:pending";
+    // 最早一笔未回写变化的时间
+    private static final String PENDING_SINCE_KEY = "goods:sales:pending:since";
+    // 已取出、正在写入数据库的销量变化，提交成功后删除
+    private static final String PROCESSING_KEY = "goods:sales:processing";
+    // 回写中销量变化最早一笔的时间
+    private static final String PROCESSING_SINCE_KEY = "goods:sales:processing:since";
+    // 多个节点共用待回写Hash，回写时加锁
+    private static final String LOCK_KEY = "goods:sales:lock";
+    private static final long LOCK_EXPIRE_SECONDS = 30;
+
+    /**
+     * 累加销量变化，并记录最早一笔变化的时间
+     */
+    private static final DefaultRedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "for i = 2, #ARGV, 2 do redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('SETNX', KEYS[2], ARGV[1]) " +
+            "return 1", Long.class);
+
+    /**
+     * 取出本次要回写的销量变化：上次回写未确认提交时原样返回回写中Hash重放，
+     * 否则把待回写Hash整体移入回写中Hash后返回
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> TAKE_PENDING_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[3]) == 0 then " +
+            "  if redis.call('EXISTS', KEYS[1]) == 0 then return {} end " +
+            "  redis.call('RENAME', KEYS[1], KEYS[3]) " +
+            "  if redis.call('EXISTS', KEYS[2]) == 1 then redis.call('RENAME', KEYS[2], KEYS[4]) end " +
+            "end " +
+            "return redis.call('HGETALL', KEYS[3])", List.class);
+
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end " +
+            "return 0", Long.class);
+
+    @Autowired
+    private GoodsDao goodsDao;
+
+    @Autowired
+    private RecommendService recommendService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 关闭时每笔销量变化直接在下单事务中写库
+    @Value("${sales.buffer.enabled:true}")
+    private boolean enabled;
+
+    // 每条批量更新语句最多包含的商品数
+    @Value("${sales.buffer.batch-size:500}")
+    private int batchSize;
+
+    // 商品ID -> 尚未写入Redis的销量变化，条目不删除，避免与并发累加竞争
+    private final Map<Integer, LongAdder> local = new ConcurrentHashMap<>();
+
+    // 事务提交后直接写库时使用的独立事务
+    private TransactionTemplate directTemplate;
+
+    private final String nodeToken = UUID.randomUUID().toString();
+
+    private volatile Date lastFlushTime;
+    private volatile int lastFlushGoods;
+    private volatile long lastFlushLagMillis;
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedGoods = new AtomicLong();
+    private final AtomicLong flushedQuantity = new AtomicLong();
+    private final AtomicLong flushFailures = new AtomicLong();
+    private final AtomicLong fallbackWrites = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        directTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        directTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public void add(Integer goodsId, int delta) {
+        if (goodsId == null || delta == 0) {
+            return;
+        }
+        recommendService.onSalesChanged(goodsId, delta);
+        if (!enabled) {
+            goodsDao.batchUpdateSalesVolume(Collections.singletonList(item(goodsId, delta)));
+            return;
+        }
+        TransactionUtils.afterCommit(() -> local.computeIfAbsent(goodsId, key -> new LongAdder()).add(delta));
+    }
+
+    /**
+     * 定时把本节点累计的销量变化写入Redis
+     */
+    @Scheduled(fixedDelayString = "${sales.buffer.spill-interval:200}")
+    public void scheduledSpill() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            spill();
+        } catch (Exception e) {
+            log.error("商品销量写入Redis失败", e);
+        }
+    }
+
+    /**
+     * 取出本地累计值写入Redis：先读取总和再减去同样的量，读取期间并发累加的部分留到下次
+     */
+    private synchronized void spill() {
+        Map<Integer, Long> deltas = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : local.entrySet()) {
+            long delta = entry.getValue().sum();
+            if (delta != 0) {
+                entry.getValue().add(-delta);
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        if (!deltas.isEmpty()) {
+            write(deltas);
+        }
+    }
+
+    /**
+     * 把销量变化累加到Redis，Redis不可用时在独立事务中直接写库，仍然失败时放回本地等待下次写入
+     */
+    private void write(Map<Integer, Long> deltas) {
+        List<String> args = new ArrayList<>(deltas.size() * 2 + 1);
+        args.add(String.valueOf(System.currentTimeMillis()));
+        for (Map.Entry<Integer, Long> entry : deltas.entrySet()) {
+            args.add(entry.getKey().toString());
+            args.add(entry.getValue().toString());
+        }
+        try {
+            stringRedisTemplate.execute(ADD_SCRIPT, Arrays.asList(PENDING_KEY, PENDING_SINCE_KEY), args.toArray());
+            return;
+        } catch (Exception e) {
+            log.warn("销量变化写入Redis失败，直接写库: goods={}, {}", deltas.size(), e.getMessage());
+        }
+        List<OrderItems> items = new ArrayList<>(deltas.size());
+        for (Map.Entry<Integer, Long> entry : deltas.entrySet()) {
+            items.add(item(entry.getKey(), entry.getValue().intValue()));
+        }
+        try {
+            // 订单事务已提交，只能在独立事务中写库
+            directTemplate.execute(status -> {
+                for (int from = 0; from < items.size(); from += batchSize) {
+                    goodsDao.batchUpdateSalesVolume(items.subList(from, Math.min(from + batchSize, items.size())));
+                }
+                return null;
+            });
+            fallbackWrites.addAndGet(items.size());
+        } catch (RuntimeException e) {
+            log.error("销量变化直接写库失败，保留在本地等待下次写入: goods={}", items.size(), e);
+            for (Map.Entry<Integer, Long> entry : deltas.entrySet()) {
+                local.computeIfAbsent(entry.getKey(), key -> new LongAdder()).add(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * 定时回写
+     */
+    @Scheduled(fixedDelayString = "${sales.buffer.flush-interval:5000}")
+    public void scheduledFlush() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("商品销量回写失败", e);
+        }
+    }
+
+    /**
+     * 停机时先把本地累计值写入Redis，再尽量写入数据库，未写入的部分保留在Redis中由其他节点或重启后回写
+     */
+    @PreDestroy
+    public void destroy() {
+        scheduledSpill();
+        scheduledFlush();
+    }
+
+    /**
+     * 加锁后执行，多个节点不会同时回写
+     */
+    @Override
+    public void flush() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(LOCK_KEY, nodeToken,
+                LOCK_EXPIRE_SECONDS, TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        try {
+            flushPending();
+        } finally {
+            try {
+                stringRedisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(LOCK_KEY), nodeToken);
+            } catch (Exception e) {
+                log.warn("商品销量回写解锁失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public SalesVolumeStatsVO getStats() {
+        SalesVolumeStatsVO stats = new SalesVolumeStatsVO();
+        stats.setEnabled(enabled);
+        Map<Integer, Long> pending = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : local.entrySet()) {
+            pending.put(entry.getKey(), entry.getValue().sum());
+        }
+        long oldest = Long.MAX_VALUE;
+        for (String key : Arrays.asList(PENDING_KEY, PROCESSING_KEY)) {
+            for (Map.Entry<Object, Object> entry : stringRedisTemplate.opsForHash().entries(key).entrySet()) {
+                pending.merge(Integer.valueOf(entry.getKey().toString()), Long.valueOf(entry.getValue().toString()), Long::sum);
+            }
+        }
+        for (String key : Arrays.asList(PENDING_SINCE_KEY, PROCESSING_SINCE_KEY)) {
+            String since = stringRedisTemplate.opsForValue().get(key);
+            if (since != null) {
+                oldest = Math.min(oldest, Long.parseLong(since));
+            }
+        }
+        int pendingGoods = 0;
+        long pendingQuantity = 0;
+        for (Long delta : pending.values()) {
+            if (delta != 0) {
+                pendingGoods++;
+                pendingQuantity += Math.abs(delta);
+            }
+        }
+        stats.setPendingGoods(pendingGoods);
+        stats.setPendingQuantity(pendingQuantity);
+        stats.setWriteBackLagMillis(oldest == Long.MAX_VALUE ? 0L : System.currentTimeMillis() - oldest);
+        stats.setLastFlushTime(lastFlushTime);
+        stats.setLastFlushGoods(lastFlushGoods);
+        stats.setLastFlushLagMillis(lastFlushLagMillis);
+        stats.setFlushCount(flushCount.get());
+        stats.setFlushedGoods(flushedGoods.get());
+        stats.setFlushedQuantity(flushedQuantity.get());
+        stats.setFlushFailures(flushFailures.get());
+        stats.setFallbackWrites(fallbackWrites.get());
+        return stats;
+    }
+
+    /**
+     * 取出待回写量并在一个事务中分批写入数据库，提交成功后才删除回写中Hash
+     * 调用方需持有锁
+     */
+    private void flushPending() {
+        long now = System.currentTimeMillis();
+        List<?> raw = stringRedisTemplate.execute(TAKE_PENDING_SCRIPT,
+                Arrays.asList(PENDING_KEY, PENDING_SINCE_KEY, PROCESSING_KEY, PROCESSING_SINCE_KEY));
+        if (raw == null || raw.isEmpty()) {
+            return;
+        }
+        String since = stringRedisTemplate.opsForValue().get(PROCESSING_SINCE_KEY);
+
+        // 按商品ID排序，多条批量更新语句以相同顺序加锁
+        Map<Integer, Long> deltas = new TreeMap<>();
+        for (int i = 0; i + 1 < raw.size(); i += 2) {
+            long delta = Long.parseLong(raw.get(i + 1).toString());
+            if (delta != 0) {
+                deltas.put(Integer.valueOf(raw.get(i).toString()), delta);
+            }
+        }
+        List<OrderItems> items = new ArrayList<>(deltas.size());
+        long quantity = 0;
+        for (Map.Entry<Integer, Long> entry : deltas.entrySet()) {
+            items.add(item(entry.getKey(), entry.getValue().intValue()));
+            quantity += Math.abs(entry.getValue());
+        }
+        if (items.isEmpty()) {
+            stringRedisTemplate.delete(Arrays.asList(PROCESSING_KEY, PROCESSING_SINCE_KEY));
+            return;
+        }
+
+        try {
+            transactionTemplate.execute(status -> {
+                for (int from = 0; from < items.size(); from += batchSize) {
+                    goodsDao.batchUpdateSalesVolume(items.subList(from, Math.min(from + batchSize, items.size())));
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            flushFailures.incrementAndGet();
+            log.error("商品销量批量回写失败，下次回写时重放: goods={}", items.size(), e);
+            throw e;
+        }
+        // 提交后、删除前宕机会在下次回写时重复累加这批变化，销量只用于展示和排序
+        stringRedisTemplate.delete(Arrays.asList(PROCESSING_KEY, PROCESSING_SINCE_KEY));
+
+        lastFlushTime = new Date(now);
+        lastFlushGoods = items.size();
+        lastFlushLagMillis = since == null ? 0 : now - Long.parseLong(since);
+        flushCount.incrementAndGet();
+        flushedGoods.addAndGet(items.size());
+        flushedQuantity.addAndGet(quantity);
+    }
+
+    private static OrderItems item(Integer goodsId, int quantity) {
+        OrderItems item = new OrderItems();
+        item.setGoodsId(goodsId);
+        item.setQuantity(quantity);
+        return item;
+    }
+}
@@ -0,0 +1,217 @@
+package ptumall.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ptumall.dao.GoodsDao;
+import ptumall.exception.BusinessException;
+import ptumall.model.OrderItems;
+import ptumall.service.HotStockService;
+import ptumall.service.StockService;
+import ptumall.utils.TransactionUtils;
+import ptumall.vo.ResultCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 库存服务实现类
+ * 库存的扣减和恢复都在数据库中以增量方式完成，不再先查询再写回绝对值，
+ * 避免并发下单时相互覆盖导致超卖；
+ * 启用热点商品模式后，热点商品改为在Redis中为订单预留库存，订单事务提交后才确认为扣减，
+ * 由HotStockService异步回写数据库
+ */
+@Slf4j
+@Service
+public class StockServiceImpl implements StockService {
+
+    @Autowired
+    private GoodsDao goodsDao;
+    
+    @Autowired
+    private HotStockService hotStockService;
+
+    @Override
+    public void deductStock(List<OrderItems> items) {
+        List<OrderItems> merged = mergeByGoodsId(items);
+        if (merged.isEmpty()) {
+            return;
+        }
+        // 订单ID作为Redis预留的标识，节点宕机后对账据此判断订单是否已入库
+        Integer orderId = items.get(0).getOrderId();
+        
+        List<OrderItems> dbItems = new ArrayList<>();
+        List<OrderItems> hotDeducted = new ArrayList<>();
+        try {
+            // 热点商品先在Redis中预留，没有订单ID、Redis中没有库存或不可用时回落到数据库
+            for (OrderItems item : merged) {
+                if (orderId == null || !hotStockService.isHot(item.getGoodsId())) {
+                    dbItems.add(item);
+                    continue;
+                }
+                Boolean deducted = tryDeductHot(orderId, item);
+                if (deducted == null) {
+                    dbItems.add(item);
+                } else if (deducted) {
+                    hotDeducted.add(item);
+                } else {
+                    throw new BusinessException(ResultCode.PARAM_ERROR, "商品[" + item.getGoodsName() + "]库存不足");
+                }
+            }
+            
+            deductFromDatabase(dbItems);
+        } catch (RuntimeException e) {
+            completeHot(orderId, hotDeducted, false);
+            throw e;
+        }
+        if (hotDeducted.isEmpty()) {
+            return;
+        }
+        
+        // 订单事务提交后确认预留，计入待回写扣减量；回滚时归还预留
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    completeHot(orderId, hotDeducted, status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            completeHot(orderId, hotDeducted, true);
+        }
+    }
+
+    @Override
+    public void restoreStock(List<OrderItems> items) {
+        List<OrderItems> merged = mergeByGoodsId(items);
+        if (merged.isEmpty()) {
+            return;
+        }
+        
+        List<OrderItems> dbItems = new ArrayList<>();
+        List<OrderItems> hotItems = new ArrayList<>();
+        for (OrderItems item : merged) {
+            if (hotStockService.isHot(item.getGoodsId())) {
+                hotItems.add(item);
+            } else {
+                dbItems.add(item);
+            }
+        }
+        
+        if (dbItems.size() == 1) {
+            OrderItems item = dbItems.get(0);
+            goodsDao.incrementStock(item.getGoodsId(), item.getQuantity());
+        } else if (!dbItems.isEmpty()) {
+            goodsDao.batchIncrementStock(dbItems);
+        }
+        
+        // 热点商品在事务提交后再归还Redis库存，避免事务回滚后库存被重复释放
+        if (hotItems.isEmpty()) {
+            return;
+        }
+        TransactionUtils.afterCommit(() -> restoreHot(hotItems));
+    }
+    
+    /**
+     * 数据库条件扣减库存
+     * 
+     * @param items 已按商品ID合并排序的订单商品列表
+     */
+    private void deductFromDatabase(List<OrderItems> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        
+        // 单个商品直接条件扣减
+        if (items.size() == 1) {
+            OrderItems item = items.get(0);
+            if (goodsDao.decrementStockIfAvailable(item.getGoodsId(), item.getQuantity()) == 0) {
+                throw new BusinessException(ResultCode.PARAM_ERROR, "商品[" + item.getGoodsName() + "]库存不足");
+            }
+            return;
+        }
+        
+        // 多个商品一条语句批量扣减，受影响行数不足说明有商品库存不足
+        int rows = goodsDao.batchDecrementStockIfAvailable(items);
+        if (rows < items.size()) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "部分商品库存不足，请刷新后重试");
+        }
+    }
+    
+    /**
+     * Redis预留热点商品库存，Redis异常时返回null回落到数据库扣减
+     */
+    private Boolean tryDeductHot(Integer orderId, OrderItems item) {
+        try {
+            return hotStockService.tryDeduct(orderId, item.getGoodsId(), item.getQuantity());
+        } catch (Exception e) {
+            log.error("Redis预扣库存失败，回落到数据库扣减：goodsId={}", item.getGoodsId(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * 订单事务结束后确认或归还Redis中预留的库存，Redis异常时预留保留，超时后由对账按订单是否已入库处理
+     */
+    private void completeHot(Integer orderId, List<OrderItems> items, boolean committed) {
+        for (OrderItems item : items) {
+            try {
+                if (committed) {
+                    hotStockService.confirmDeduct(orderId, item.getGoodsId(), item.getQuantity());
+                } else {
+                    hotStockService.cancelDeduct(orderId, item.getGoodsId(), item.getQuantity());
+                }
+            } catch (Exception e) {
+                log.error("{}Redis预留库存失败，等待对账处理：orderId={}, goodsId={}",
+                        committed ? "确认" : "归还", orderId, item.getGoodsId(), e);
+            }
+        }
+    }
+    
+    /**
+     * 归还热点商品库存，Redis异常时直接恢复数据库库存，由对账任务修正Redis
+     */
+    private void restoreHot(List<OrderItems> items) {
+        for (OrderItems item : items) {
+            try {
+                hotStockService.restore(item.getGoodsId(), item.getQuantity());
+            } catch (Exception e) {
+                log.error("Redis恢复库存失败，直接恢复数据库库存：goodsId={}", item.getGoodsId(), e);
+                goodsDao.incrementStock(item.getGoodsId(), item.getQuantity());
+            }
+        }
+    }
+    
+    /**
+     * 按商品ID合并数量，并按商品ID升序排列，使并发事务以相同顺序加行锁，避免死锁
+     * 
+     * @param items 订单商品列表
+     * @return 合并后的列表
+     */
+    private List<OrderItems> mergeByGoodsId(List<OrderItems> items) {
+        Map<Integer, OrderItems> merged = new TreeMap<>();
+        if (items == null) {
+            return new ArrayList<>();
+        }
+        for (OrderItems item : items) {
+            if (item.getGoodsId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                continue;
+            }
+            OrderItems existing = merged.get(item.getGoodsId());
+            if (existing == null) {
+                OrderItems copy = new OrderItems();
+                copy.setGoodsId(item.getGoodsId());
+                copy.setGoodsName(item.getGoodsName());
+                copy.setQuantity(item.getQuantity());
+                merged.put(item.getGoodsId(), copy);
+            } else {
+                existing.setQuantity(existing.getQuantity() + item.getQuantity());
+            }
+        }
+        return new ArrayList<>(merged.values());
+    }
+}
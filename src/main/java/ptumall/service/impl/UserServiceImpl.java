@@ -6,6 +6,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ptumall.utils.CursorUtils;
 import ptumall.utils.JWTUtils;
 import ptumall.dao.UserDao;
 import ptumall.exception.BusinessException;
@@ -13,6 +14,7 @@ import ptumall.model.User;
 import ptumall.service.EmailService;
 import ptumall.service.UserService;
 import ptumall.service.VerificationCodeService;
+import ptumall.vo.CursorPageResult;
 import ptumall.vo.PageResult;
 import ptumall.vo.ResultCode;
 
@@ -126,6 +128,42 @@ public class UserServiceImpl implements UserService {
         return pageResult;
     }
     
+    @Override
+    public CursorPageResult<User> getUserListByCursor(String cursor, Integer pageSize, String countMode) {
+        CursorUtils.Position position = CursorUtils.decode(cursor);
+        int size = CursorUtils.normalizePageSize(pageSize);
+        
+        // 多查一条用于判断是否还有下一页
+        List<User> userList = userDao.findAllByCursor(
+                position == null ? null : position.getCreateTime(),
+                position == null ? null : position.getId(),
+                size + 1);
+        boolean hasMore = userList.size() > size;
+        if (hasMore) {
+            userList = userList.subList(0, size);
+        }
+        
+        // 隐藏密码
+        for (User user : userList) {
+            user.setPassword(null);
+        }
+        
+        String nextCursor = null;
+        if (hasMore) {
+            User last = userList.get(userList.size() - 1);
+            nextCursor = CursorUtils.encode(last.getCreateTime(), last.getId());
+        }
+        
+        CursorPageResult<User> result = new CursorPageResult<>(nextCursor, hasMore, size, userList);
+        if (CursorUtils.COUNT_EXACT.equals(countMode)) {
+            result.setTotal((long) userDao.count());
+        } else if (CursorUtils.COUNT_APPROX.equals(countMode)) {
+            result.setTotal(userDao.estimateCount());
+            result.setApproximateTotal(true);
+        }
+        return result;
+    }
+    
     @Override
     public PageResult<User> searchUsersByUsername(String username, Integer pageNum, Integer pageSize) {
         PageHelper.startPage(pageNum, pageSize);
@@ -0,0 +1,135 @@
+package ptumall.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * CSV工具类
+ * 按RFC 4180读写CSV：字段以逗号分隔，含逗号、引号或换行的字段用双引号包围，字段内的引号写两次
+ */
+public class CsvUtils {
+
+    private CsvUtils() {
+    }
+
+    /**
+     * 转义单个字段，为null时输出空字段
+     *
+     * @param value 字段值
+     * @return 可直接写入CSV的字段
+     */
+    public static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                quote = true;
+                break;
+            }
+        }
+        return quote ? '"' + value.replace("\"", "\"\"") + '"' : value;
+    }
+
+    /**
+     * 逐条读取CSV记录，每次只在内存中保留一条记录
+     */
+    public static class RecordReader {
+        private final Reader reader;
+        // 预读的字符，-2表示没有
+        private int pushedBack = -2;
+        // 下一个字符所在的行号
+        private long line = 1;
+        // 最近一条记录的起始行号
+        private long recordLine;
+
+        /**
+         * @param reader 输入，应带缓冲；开头的UTF-8 BOM会被忽略
+         */
+        public RecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * 读取下一条记录
+         *
+         * @return 字段列表，输入结束时返回null
+         * @throws IOException 读取失败或引号未闭合
+         */
+        public List<String> read() throws IOException {
+            int c = next();
+            if (line == 1 && recordLine == 0 && c == '\uFEFF') {
+                c = next();
+            }
+            if (c == -1) {
+                return null;
+            }
+            recordLine = line;
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("第" + recordLine + "行起的字段引号未闭合");
+                    }
+                    if (c == '"') {
+                        int following = next();
+                        if (following == '"') {
+                            field.append('"');
+                        } else {
+                            quoted = false;
+                            c = following;
+                            continue;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\r' || c == '\n' || c == -1) {
+                    if (c == '\r') {
+                        int following = next();
+                        if (following != '\n') {
+                            pushedBack = following;
+                        }
+                    }
+                    if (c != -1) {
+                        line++;
+                    }
+                    fields.add(field.toString());
+                    return fields;
+                } else {
+                    field.append((char) c);
+                }
+                c = next();
+            }
+        }
+
+        /**
+         * 最近一次读取的记录的起始行号
+         */
+        public long getRecordLine() {
+            return recordLine;
+        }
+
+        private int next() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            return reader.read();
+        }
+    }
+}
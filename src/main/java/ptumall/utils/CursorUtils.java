@@ -0,0 +1,166 @@
+package ptumall.utils;
+
+import ptumall.exception.BusinessException;
+import ptumall.vo.ResultCode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * 游标分页工具类
+ * 游标由排序方式和最后一条记录的(排序值, id)编码而成，排序值默认为create_time，对调用方不透明
+ */
+public class CursorUtils {
+
+    /**
+     * 不统计总数
+     */
+    public static final String COUNT_NONE = "none";
+
+    /**
+     * 估算总数（读取表统计信息，不扫描数据）
+     */
+    public static final String COUNT_APPROX = "approx";
+
+    /**
+     * 精确统计总数
+     */
+    public static final String COUNT_EXACT = "exact";
+
+    /**
+     * 游标分页最大每页数量
+     */
+    public static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * 按创建时间排序的游标使用的排序方式
+     */
+    public static final String SORT_TIME = "time";
+
+    private CursorUtils() {
+    }
+
+    /**
+     * 编码按创建时间排序的游标
+     *
+     * @param createTime 最后一条记录的创建时间，不能为空
+     * @param id 最后一条记录的ID
+     * @return 游标字符串
+     * @throws BusinessException 创建时间为空
+     */
+    public static String encode(Date createTime, Integer id) {
+        if (createTime == null) {
+            throw new BusinessException(ResultCode.INTERNAL_SERVER_ERROR, "记录的create_time为空，无法生成分页游标: id=" + id);
+        }
+        return encode(SORT_TIME, createTime.getTime(), id);
+    }
+
+    /**
+     * 编码游标，排序方式一并写入游标，解码时与请求的排序方式比对
+     *
+     * @param sort 排序方式，不能包含冒号
+     * @param key 最后一条记录的排序值（按时间排序时为毫秒时间戳）
+     * @param id 最后一条记录的ID
+     * @return 游标字符串
+     */
+    public static String encode(String sort, long key, Integer id) {
+        String raw = sort + ":" + key + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 解码按创建时间排序的游标
+     *
+     * @param cursor 游标字符串，为空表示第一页
+     * @return 游标位置，第一页返回null
+     */
+    public static Position decode(String cursor) {
+        return decode(cursor, SORT_TIME);
+    }
+
+    /**
+     * 解码游标，游标的排序方式与请求的不一致时视为无效
+     *
+     * @param cursor 游标字符串，为空表示第一页
+     * @param sort 请求的排序方式
+     * @return 游标位置，第一页返回null
+     */
+    public static Position decode(String cursor, String sort) {
+        if (cursor == null || cursor.trim().isEmpty()) {
+            return null;
+        }
+        Position position;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", -1);
+            if (parts.length == 2) {
+                // 未带排序方式的旧游标，均按创建时间排序
+                position = new Position(SORT_TIME, Long.parseLong(parts[0]), Integer.valueOf(parts[1]));
+            } else if (parts.length == 3) {
+                position = new Position(parts[0], Long.parseLong(parts[1]), Integer.valueOf(parts[2]));
+            } else {
+                throw new IllegalArgumentException(raw);
+            }
+        } catch (RuntimeException e) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "分页游标无效");
+        }
+        if (!position.getSort().equals(sort)) {
+            throw new BusinessException(ResultCode.PARAM_ERROR, "分页游标与排序方式不匹配");
+        }
+        return position;
+    }
+
+    /**
+     * 规范化每页数量
+     *
+     * @param pageSize 每页数量
+     * @return 介于1和MAX_PAGE_SIZE之间的每页数量
+     */
+    public static int normalizePageSize(Integer pageSize) {
+        if (pageSize == null || pageSize < 1) {
+            return 10;
+        }
+        return Math.min(pageSize, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * 游标位置
+     */
+    public static class Position {
+        private final String sort;
+        private final long key;
+        private final Integer id;
+
+        public Position(String sort, long key, Integer id) {
+            this.sort = sort;
+            this.key = key;
+            this.id = id;
+        }
+
+        /**
+         * 编码游标时的排序方式
+         */
+        public String getSort() {
+            return sort;
+        }
+
+        /**
+         * 排序值，按时间排序时为毫秒时间戳
+         */
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * 按时间排序时的创建时间
+         */
+        public Date getCreateTime() {
+            return new Date(key);
+        }
+
+        public Integer getId() {
+            return id;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ptumall.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 事务工具类
+ */
+public class TransactionUtils {
+
+    private TransactionUtils() {
+    }
+
+    /**
+     * 在当前事务提交后执行操作，没有事务时立即执行
+     * 用于更新缓存、索引等事务外的状态，避免事务回滚后状态不一致。
+     * 在afterCompletion中执行：Spring调用afterCommit前会复制回调列表，在其他回调的afterCommit中注册的afterCommit不会被调用，
+     * afterCompletion则会重新读取回调列表；在afterCompletion中调用时事务同步已清除，直接执行
+     *
+     * @param action 要执行的操作
+     */
+    public static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        action.run();
+                    }
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
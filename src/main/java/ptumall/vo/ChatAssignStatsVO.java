@@ -0,0 +1,39 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 在线交流会话分配统计VO
+ */
+@Data
+@ApiModel("在线交流会话分配统计")
+public class ChatAssignStatsVO {
+
+    @ApiModelProperty(value = "在线管理员数（集群模式下包括其他节点）", example = "3")
+    private Integer onlineAdmins;
+
+    @ApiModelProperty(value = "在线管理员进行中的会话数（管理员ID -> 会话数）")
+    private Map<Long, Integer> adminLoads;
+
+    @ApiModelProperty(value = "待分配的会话数", example = "0")
+    private Integer pendingSessions;
+
+    @ApiModelProperty(value = "已分配的会话数（自动分配和手动接入）", example = "1200")
+    private Long assignedSessions;
+
+    @ApiModelProperty(value = "平均等待分配时间（毫秒，从会话创建到分配）", example = "35.0")
+    private Double averageWaitMillis;
+
+    @ApiModelProperty(value = "最长等待分配时间（毫秒）", example = "1500")
+    private Long maxWaitMillis;
+
+    @ApiModelProperty(value = "写入数据库时发现会话已被其他节点分配而撤销的次数", example = "0")
+    private Long conflicts;
+
+    @ApiModelProperty(value = "管理员离线超时后重新分配的会话数", example = "0")
+    private Long reassignedSessions;
+}
@@ -0,0 +1,25 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+/**
+ * 会话分配通知VO（通过WebSocket推送给管理员）
+ */
+@Data
+@ApiModel("会话分配通知")
+public class ChatAssignVO {
+
+    @ApiModelProperty(value = "通知类型，固定为assigned", example = "assigned")
+    private String type = "assigned";
+
+    @ApiModelProperty(value = "会话ID", example = "4d262e61-ae6e-4272-b1c7-f521b2fe1c07")
+    private String sessionId;
+
+    @ApiModelProperty(value = "客户ID", example = "3")
+    private Long customerId;
+
+    @ApiModelProperty(value = "会话标题", example = "商品配送咨询")
+    private String title;
+}
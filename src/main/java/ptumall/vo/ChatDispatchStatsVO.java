@@ -0,0 +1,43 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+/**
+ * WebSocket消息发送统计VO
+ */
+@Data
+@ApiModel("WebSocket消息发送统计")
+public class ChatDispatchStatsVO {
+    
+    @ApiModelProperty(value = "存在发送队列的会话数", example = "120")
+    private Integer activeQueues;
+    
+    @ApiModelProperty(value = "所有队列中等待发送的消息数", example = "3")
+    private Long queuedMessages;
+    
+    @ApiModelProperty(value = "单个会话发送队列容量", example = "256")
+    private Integer queueCapacity;
+    
+    @ApiModelProperty(value = "队列满时的处理策略", example = "drop")
+    private String overflowPolicy;
+    
+    @ApiModelProperty(value = "发送成功的消息数", example = "10000")
+    private Long sentMessages;
+    
+    @ApiModelProperty(value = "发送失败的消息数", example = "2")
+    private Long failedMessages;
+    
+    @ApiModelProperty(value = "因队列已满被丢弃的消息数", example = "0")
+    private Long droppedMessages;
+    
+    @ApiModelProperty(value = "因队列已满被断开的连接数", example = "0")
+    private Long disconnectedSessions;
+    
+    @ApiModelProperty(value = "平均发送耗时（毫秒，从入队到发送完成）", example = "1.5")
+    private Double averageLatencyMillis;
+    
+    @ApiModelProperty(value = "最大发送耗时（毫秒）", example = "35")
+    private Long maxLatencyMillis;
+}
@@ -0,0 +1,31 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+/**
+ * WebSocket连接心跳统计VO
+ */
+@Data
+@ApiModel("WebSocket连接心跳统计")
+public class ChatHeartbeatStatsVO {
+    
+    @ApiModelProperty(value = "当前连接数", example = "12000")
+    private Integer liveConnections;
+    
+    @ApiModelProperty(value = "无数据多久后发送ping（毫秒）", example = "30000")
+    private Long heartbeatIntervalMillis;
+    
+    @ApiModelProperty(value = "连续多少次ping没有回应后关闭连接", example = "2")
+    private Integer maxMissedHeartbeats;
+    
+    @ApiModelProperty(value = "发送的ping数", example = "50000")
+    private Long pingsSent;
+    
+    @ApiModelProperty(value = "收到的pong数", example = "49800")
+    private Long pongsReceived;
+    
+    @ApiModelProperty(value = "因心跳超时关闭的连接数", example = "35")
+    private Long evictedConnections;
+}
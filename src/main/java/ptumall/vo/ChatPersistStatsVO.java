@@ -0,0 +1,46 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+/**
+ * 聊天消息持久化统计VO
+ */
+@Data
+@ApiModel("聊天消息持久化统计")
+public class ChatPersistStatsVO {
+    
+    @ApiModelProperty(value = "是否启用批量写入", example = "true")
+    private Boolean enabled;
+    
+    @ApiModelProperty(value = "已写入本地日志、尚未写入数据库的消息数", example = "15")
+    private Long pendingMessages;
+    
+    @ApiModelProperty(value = "写入本地日志的消息数", example = "100000")
+    private Long journaledMessages;
+    
+    @ApiModelProperty(value = "批量写入数据库的消息数", example = "99985")
+    private Long flushedMessages;
+    
+    @ApiModelProperty(value = "批量写入次数", example = "2000")
+    private Long flushBatches;
+    
+    @ApiModelProperty(value = "平均每批消息数", example = "50.0")
+    private Double averageBatchSize;
+    
+    @ApiModelProperty(value = "平均每批写入耗时（毫秒）", example = "3.2")
+    private Double averageFlushMillis;
+    
+    @ApiModelProperty(value = "距上次查询统计以来的写入速率（条/秒）", example = "1200.0")
+    private Double flushedPerSecond;
+    
+    @ApiModelProperty(value = "批量写入失败次数（失败后重试）", example = "0")
+    private Long failedFlushes;
+    
+    @ApiModelProperty(value = "直接写入数据库的消息数（未启用、队列已满或本地日志写入失败）", example = "0")
+    private Long directWrites;
+    
+    @ApiModelProperty(value = "启动时从本地日志回放的消息数", example = "0")
+    private Long recoveredMessages;
+}
@@ -0,0 +1,25 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+/**
+ * 未读消息数变化通知VO（通过WebSocket推送）
+ */
+@Data
+@ApiModel("未读消息数变化通知")
+public class ChatUnreadVO {
+    
+    @ApiModelProperty(value = "通知类型，固定为unread", example = "unread")
+    private String type = "unread";
+    
+    @ApiModelProperty(value = "发生变化的会话ID", example = "4d262e61-ae6e-4272-b1c7-f521b2fe1c07")
+    private String sessionId;
+    
+    @ApiModelProperty(value = "该会话的未读消息数", example = "2")
+    private Integer sessionUnread;
+    
+    @ApiModelProperty(value = "未读消息总数", example = "5")
+    private Integer totalUnread;
+}
@@ -0,0 +1,40 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@ApiModel("游标分页结果")
+public class CursorPageResult<T> {
+    
+    @ApiModelProperty(value = "下一页游标，为空表示没有更多数据", example = "MTY4NTU5MDQwMDAwMDoxMjM")
+    private String nextCursor;
+    
+    @ApiModelProperty(value = "是否还有更多数据", example = "true")
+    private boolean hasMore;
+    
+    @ApiModelProperty(value = "每页记录数", example = "10")
+    private int pageSize;
+    
+    @ApiModelProperty(value = "总记录数，countMode为none时为空", example = "100")
+    private Long total;
+    
+    @ApiModelProperty(value = "总记录数是否为估算值", example = "false")
+    private boolean approximateTotal;
+    
+    @ApiModelProperty(value = "数据列表")
+    private List<T> list;
+    
+    public CursorPageResult() {
+    }
+    
+    public CursorPageResult(String nextCursor, boolean hasMore, int pageSize, List<T> list) {
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+        this.pageSize = pageSize;
+        this.list = list;
+    }
+}
@@ -0,0 +1,49 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+/**
+ * 商品详情缓存统计VO
+ */
+@Data
+@ApiModel("商品详情缓存统计")
+public class GoodsCacheStatsVO {
+    
+    @ApiModelProperty(value = "是否启用", example = "true")
+    private Boolean enabled;
+    
+    @ApiModelProperty(value = "本地缓存条目数", example = "1000")
+    private Integer localSize;
+    
+    @ApiModelProperty(value = "本地缓存命中次数", example = "10000")
+    private Long localHits;
+    
+    @ApiModelProperty(value = "Redis缓存命中次数", example = "500")
+    private Long redisHits;
+    
+    @ApiModelProperty(value = "未命中次数（需要查询数据库）", example = "20")
+    private Long misses;
+    
+    @ApiModelProperty(value = "等待其他线程加载的次数", example = "5")
+    private Long coalescedLoads;
+    
+    @ApiModelProperty(value = "空值缓存命中次数（商品不存在）", example = "3")
+    private Long negativeHits;
+    
+    @ApiModelProperty(value = "数据库加载次数", example = "20")
+    private Long loads;
+    
+    @ApiModelProperty(value = "数据库加载平均耗时（毫秒）", example = "2.5")
+    private Double averageLoadMillis;
+    
+    @ApiModelProperty(value = "库存和销量读取次数", example = "300")
+    private Long stockLoads;
+    
+    @ApiModelProperty(value = "失效次数", example = "8")
+    private Long invalidations;
+    
+    @ApiModelProperty(value = "命中率", example = "0.998")
+    private Double hitRate;
+}
@@ -0,0 +1,49 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 商品批量导入任务VO
+ */
+@Data
+@ApiModel("商品批量导入任务")
+public class GoodsImportTaskVO {
+
+    @ApiModelProperty(value = "任务ID", example = "3f2b8c1e9d7a4b6c")
+    private String taskId;
+
+    @ApiModelProperty(value = "上传的文件名", example = "goods.csv")
+    private String fileName;
+
+    @ApiModelProperty(value = "文件格式：csv、jsonl", example = "csv")
+    private String format;
+
+    @ApiModelProperty(value = "任务状态：waiting-排队中，running-导入中，completed-已完成，failed-失败", example = "running")
+    private String status;
+
+    @ApiModelProperty(value = "已读取的行数（不含CSV表头和空行）", example = "25000")
+    private Long processedRows;
+
+    @ApiModelProperty(value = "已写入数据库的商品数", example = "24990")
+    private Long importedRows;
+
+    @ApiModelProperty(value = "校验或写入失败的行数", example = "10")
+    private Long failedRows;
+
+    @ApiModelProperty(value = "错误信息，最多保留goods.import.max-errors条")
+    private List<String> errors;
+
+    @ApiModelProperty(value = "开始导入时间")
+    private Date startTime;
+
+    @ApiModelProperty(value = "结束时间")
+    private Date endTime;
+
+    @ApiModelProperty(value = "已用时间（毫秒）", example = "12000")
+    private Long elapsedMillis;
+}
@@ -0,0 +1,27 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * 商品评分汇总VO
+ */
+@Data
+@ApiModel("商品评分汇总")
+public class GoodsRatingVO {
+    
+    @ApiModelProperty(value = "商品ID", example = "1")
+    private Integer goodsId;
+    
+    @ApiModelProperty(value = "平均评分，没有评价时为0", example = "4.5")
+    private Double averageRating;
+    
+    @ApiModelProperty(value = "评价数", example = "10")
+    private Integer ratingCount;
+    
+    @ApiModelProperty(value = "各星级评价数（星级 -> 评价数）")
+    private Map<Integer, Integer> distribution;
+}
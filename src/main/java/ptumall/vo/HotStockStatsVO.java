@@ -0,0 +1,49 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 热点商品库存运行指标VO
+ */
+@Data
+@ApiModel("热点商品库存运行指标")
+public class HotStockStatsVO {
+    
+    @ApiModelProperty(value = "是否启用", example = "true")
+    private Boolean enabled;
+    
+    @ApiModelProperty(value = "热点商品ID列表")
+    private List<Integer> hotGoodsIds;
+    
+    @ApiModelProperty(value = "待回写的商品数量", example = "2")
+    private Integer pendingGoods;
+    
+    @ApiModelProperty(value = "待回写的库存变化总量", example = "35")
+    private Long pendingQuantity;
+    
+    @ApiModelProperty(value = "订单事务尚未结束的预留库存总量", example = "3")
+    private Long reservedQuantity;
+    
+    @ApiModelProperty(value = "回写延迟（毫秒），即最早一笔未回写扣减距今的时间", example = "420")
+    private Long writeBackLagMillis;
+    
+    @ApiModelProperty(value = "最近一次回写时间")
+    private Date lastFlushTime;
+    
+    @ApiModelProperty(value = "累计回写批次数", example = "100")
+    private Long flushCount;
+    
+    @ApiModelProperty(value = "累计回写的库存变化量", example = "5000")
+    private Long flushedQuantity;
+    
+    @ApiModelProperty(value = "累计回写失败次数", example = "0")
+    private Long flushFailures;
+    
+    @ApiModelProperty(value = "累计对账修正次数", example = "0")
+    private Long reconcileCorrections;
+}
@@ -0,0 +1,34 @@
+package ptumall.vo;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 订单统计时间序列中的一个时间段
+ */
+@Data
+public class OrderStatisticsPointVO {
+
+    /**
+     * 时间段开始时间
+     */
+    private Date time;
+
+    /**
+     * 该时间段创建的订单数
+     */
+    private Long totalOrders;
+
+    /**
+     * 该时间段创建的订单销售额（统计口径与总销售额相同）
+     */
+    private BigDecimal totalSales;
+
+    /**
+     * 各状态订单数（状态码 -> 订单数）
+     */
+    private Map<Integer, Long> statusCounts;
+}
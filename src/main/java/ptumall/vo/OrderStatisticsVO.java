@@ -5,6 +5,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 订单统计数据VO
@@ -23,4 +26,34 @@ public class OrderStatisticsVO {
      * 销售总额
      */
     private BigDecimal totalSales;
-} 
\ No newline at end of file
+    
+    /**
+     * 各状态订单数（状态码 -> 订单数）
+     */
+    private Map<Integer, Long> statusCounts;
+    
+    /**
+     * 各状态订单金额（状态码 -> 金额）
+     */
+    private Map<Integer, BigDecimal> statusAmounts;
+    
+    /**
+     * 时间序列粒度：hour、day，未查询时间序列时为空
+     */
+    private String granularity;
+    
+    /**
+     * 时间序列开始时间
+     */
+    private Date startTime;
+    
+    /**
+     * 时间序列结束时间（不含）
+     */
+    private Date endTime;
+    
+    /**
+     * 按订单创建时间汇总的时间序列，包含没有订单的时间段
+     */
+    private List<OrderStatisticsPointVO> series;
+}
@@ -0,0 +1,51 @@
+package ptumall.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 商品销量回写运行指标VO
+ */
+@Data
+@ApiModel("商品销量回写运行指标")
+public class SalesVolumeStatsVO {
+    
+    @ApiModelProperty(value = "是否启用Redis累计", example = "true")
+    private Boolean enabled;
+    
+    @ApiModelProperty(value = "有待回写销量的商品数量", example = "12")
+    private Integer pendingGoods;
+    
+    @ApiModelProperty(value = "待回写的销量变化总量", example = "40")
+    private Long pendingQuantity;
+    
+    @ApiModelProperty(value = "回写延迟（毫秒），即最早一笔未回写变化距今的时间", example = "1800")
+    private Long writeBackLagMillis;
+    
+    @ApiModelProperty(value = "最近一次回写时间")
+    private Date lastFlushTime;
+    
+    @ApiModelProperty(value = "最近一次回写的商品数量", example = "12")
+    private Integer lastFlushGoods;
+    
+    @ApiModelProperty(value = "最近一次回写时最早一笔变化的等待时间（毫秒）", example = "5000")
+    private Long lastFlushLagMillis;
+    
+    @ApiModelProperty(value = "累计回写批次数", example = "100")
+    private Long flushCount;
+    
+    @ApiModelProperty(value = "累计回写的商品行数", example = "1500")
+    private Long flushedGoods;
+    
+    @ApiModelProperty(value = "累计回写的销量变化量", example = "5000")
+    private Long flushedQuantity;
+    
+    @ApiModelProperty(value = "累计回写失败次数", example = "0")
+    private Long flushFailures;
+    
+    @ApiModelProperty(value = "Redis不可用时直接写入数据库的商品行数", example = "0")
+    private Long fallbackWrites;
+}
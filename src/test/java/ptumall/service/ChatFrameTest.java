@@ -0,0 +1,126 @@
+package ptumall.service;
+
+import org.junit.jupiter.api.Test;
+import ptumall.model.ChatMessageDTO;
+
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 聊天消息帧测试：每条消息只序列化一次，CBOR编码可还原为相同的消息，且比JSON文本更紧凑
+ */
+class ChatFrameTest {
+
+    private static final int RECIPIENTS = 100;
+
+    @Test
+    void payloadIsSerializedOnceForAllRecipients() {
+        CountingMessage message = new CountingMessage();
+        ChatFrame frame = ChatFrame.of(message);
+
+        String first = frame.getText();
+        for (int i = 0; i < RECIPIENTS; i++) {
+            assertSame(first, frame.getText());
+            frame.getBinary();
+        }
+
+        // JSON、CBOR各序列化一次
+        assertEquals(2, message.reads.get());
+    }
+
+    @Test
+    void binaryRoundTripsToSameMessage() throws Exception {
+        ChatMessageDTO message = message();
+
+        ChatMessageDTO decoded = ChatFrame.decode(ChatFrame.of(message).getBinary(), ChatMessageDTO.class);
+
+        assertEquals(message, decoded);
+    }
+
+    @Test
+    void relayedTextConvertsToBinary() throws Exception {
+        ChatMessageDTO message = message();
+        String json = ChatFrame.of(message).getText();
+
+        ChatFrame relayed = ChatFrame.ofText(json);
+
+        assertSame(json, relayed.getText());
+        assertEquals(message, ChatFrame.decode(relayed.getBinary(), ChatMessageDTO.class));
+        assertEquals(message, ChatFrame.decode(relayed.getText(), ChatMessageDTO.class));
+    }
+
+    @Test
+    void binaryBuffersAreIndependentAndReadOnly() {
+        ChatFrame frame = ChatFrame.of(message());
+        ByteBuffer first = frame.getBinary();
+        ByteBuffer second = frame.getBinary();
+
+        first.get(new byte[first.remaining()]);
+
+        assertFalse(first.hasRemaining());
+        assertTrue(second.hasRemaining());
+        assertTrue(second.isReadOnly());
+        assertThrows(ReadOnlyBufferException.class, () -> second.put((byte) 0));
+    }
+
+    @Test
+    void binaryIsSmallerThanText() {
+        ChatFrame frame = ChatFrame.of(message());
+
+        int textBytes = frame.getText().getBytes(StandardCharsets.UTF_8).length;
+        int binaryBytes = frame.getBinary().remaining();
+
+        assertTrue(binaryBytes < textBytes, "CBOR " + binaryBytes + "字节，JSON " + textBytes + "字节");
+    }
+
+    @Test
+    void binaryIsChosenByNegotiatedSubprotocol() {
+        Session cbor = mock(Session.class);
+        when(cbor.getNegotiatedSubprotocol()).thenReturn(ChatFrame.PROTOCOL_CBOR);
+        Session json = mock(Session.class);
+        when(json.getNegotiatedSubprotocol()).thenReturn(ChatFrame.PROTOCOL_JSON);
+        Session legacy = mock(Session.class);
+        when(legacy.getNegotiatedSubprotocol()).thenReturn("");
+
+        assertTrue(ChatFrame.isBinary(cbor));
+        assertFalse(ChatFrame.isBinary(json));
+        assertFalse(ChatFrame.isBinary(legacy));
+    }
+
+    private static ChatMessageDTO message() {
+        ChatMessageDTO message = new ChatMessageDTO();
+        message.setType("CHAT");
+        message.setContent("您好，有什么需要帮助的吗？");
+        message.setSenderId(1L);
+        message.setSenderType("admin");
+        message.setReceiverId(2L);
+        message.setReceiverType("customer");
+        message.setSenderName("客服小王");
+        message.setSessionId("2c9ba0837b794f96017b7951c5e10000");
+        message.setTimestamp(1628149845000L);
+        return message;
+    }
+
+    /**
+     * 记录被序列化次数的消息
+     */
+    public static class CountingMessage {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        public String getContent() {
+            reads.incrementAndGet();
+            return "hello";
+        }
+    }
+}
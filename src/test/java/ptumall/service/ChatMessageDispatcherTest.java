@@ -0,0 +1,253 @@
+package ptumall.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.vo.ChatDispatchStatsVO;
+
+import javax.websocket.CloseReason;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * WebSocket消息异步发送测试：慢客户端不阻塞发送方，队列满时按策略丢弃或断开，同一会话按顺序逐条发送
+ */
+class ChatMessageDispatcherTest {
+
+    private static final int CONNECTIONS = 10000;
+
+    private ChatMessageDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.destroy();
+        }
+    }
+
+    @Test
+    void slowClientOverflowIsDroppedWithoutBlocking() throws Exception {
+        start(4, ChatMessageDispatcher.POLICY_DROP);
+        StalledClient client = new StalledClient("slow");
+
+        assertTrue(ChatMessageDispatcher.dispatch(client.session, frame(0)));
+        assertTrue(waitFor(() -> client.pending.size() == 1));
+        // 第一条消息迟迟未发送完成，后续消息只能入队，超出容量的被丢弃
+        int accepted = 0;
+        for (int i = 1; i <= 10; i++) {
+            if (ChatMessageDispatcher.dispatch(client.session, frame(i))) {
+                accepted++;
+            }
+        }
+
+        assertEquals(4, accepted);
+        ChatDispatchStatsVO stats = ChatMessageDispatcher.stats();
+        assertEquals(6L, stats.getDroppedMessages());
+        assertEquals(4L, stats.getQueuedMessages());
+        verify(client.session, never()).close(any(CloseReason.class));
+
+        // 客户端恢复后剩余消息按入队顺序逐条发送
+        for (int i = 0; i < 5; i++) {
+            assertTrue(waitFor(() -> !client.pending.isEmpty()));
+            client.complete();
+        }
+        assertEquals(frames(0, 1, 2, 3, 4), client.sent);
+        assertEquals(5L, ChatMessageDispatcher.stats().getSentMessages());
+        assertEquals(0L, ChatMessageDispatcher.stats().getQueuedMessages());
+    }
+
+    @Test
+    void overflowDisconnectsOnceUnderDisconnectPolicy() throws Exception {
+        start(2, ChatMessageDispatcher.POLICY_DISCONNECT);
+        StalledClient client = new StalledClient("slow");
+
+        ChatMessageDispatcher.dispatch(client.session, frame(0));
+        assertTrue(waitFor(() -> client.pending.size() == 1));
+        for (int i = 1; i <= 5; i++) {
+            ChatMessageDispatcher.dispatch(client.session, frame(i));
+        }
+
+        assertTrue(waitFor(() -> ChatMessageDispatcher.stats().getDisconnectedSessions() == 1));
+        verify(client.session, timeout(5000).times(1)).close(any(CloseReason.class));
+        assertEquals(3L, ChatMessageDispatcher.stats().getDroppedMessages());
+    }
+
+    @Test
+    void slowClientDoesNotDelayOtherSessions() throws Exception {
+        start(4, ChatMessageDispatcher.POLICY_DROP);
+        StalledClient slow = new StalledClient("slow");
+        StalledClient fast = new StalledClient("fast");
+
+        ChatMessageDispatcher.dispatch(slow.session, frame(0));
+        assertTrue(waitFor(() -> slow.pending.size() == 1));
+        ChatMessageDispatcher.dispatch(fast.session, frame(1));
+
+        assertTrue(waitFor(() -> fast.pending.size() == 1));
+        fast.complete();
+        assertEquals(frames(1), fast.sent);
+        assertTrue(slow.sent.isEmpty());
+    }
+
+    @Test
+    void releaseDropsQueuedMessages() throws Exception {
+        start(4, ChatMessageDispatcher.POLICY_DROP);
+        StalledClient client = new StalledClient("closing");
+        ChatMessageDispatcher.dispatch(client.session, frame(0));
+        assertTrue(waitFor(() -> client.pending.size() == 1));
+        ChatMessageDispatcher.dispatch(client.session, frame(1));
+        ChatMessageDispatcher.dispatch(client.session, frame(2));
+
+        ChatMessageDispatcher.release(client.session);
+
+        assertEquals(0L, ChatMessageDispatcher.stats().getQueuedMessages());
+        assertEquals(0, ChatMessageDispatcher.stats().getActiveQueues());
+    }
+
+    @Test
+    void tenThousandConnectionsAreAllDelivered() throws Exception {
+        start(16, ChatMessageDispatcher.POLICY_DROP);
+        AtomicInteger delivered = new AtomicInteger();
+        RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+        // 模拟网络：发送立即完成
+        doAnswer(invocation -> {
+            delivered.incrementAndGet();
+            invocation.<SendHandler>getArgument(1).onResult(new SendResult());
+            return null;
+        }).when(remote).sendText(anyString(), any(SendHandler.class));
+        List<Session> sessions = new ArrayList<>(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            sessions.add(lightSession("s" + i, remote));
+        }
+
+        ChatFrame broadcast = frame(0);
+        for (int round = 0; round < 3; round++) {
+            for (Session session : sessions) {
+                assertTrue(ChatMessageDispatcher.dispatch(session, broadcast));
+            }
+        }
+
+        assertTrue(waitFor(() -> delivered.get() == 3 * CONNECTIONS));
+        ChatDispatchStatsVO stats = ChatMessageDispatcher.stats();
+        assertEquals(3L * CONNECTIONS, stats.getSentMessages());
+        assertEquals(0L, stats.getDroppedMessages());
+        assertEquals(CONNECTIONS, stats.getActiveQueues());
+        assertEquals(0L, stats.getQueuedMessages());
+    }
+
+    private void start(int queueCapacity, String overflowPolicy) {
+        dispatcher = new ChatMessageDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(dispatcher, "overflowPolicy", overflowPolicy);
+        ReflectionTestUtils.setField(dispatcher, "dispatcherThreads", 4);
+        ReflectionTestUtils.setField(dispatcher, "sendTimeoutMillis", 10000L);
+        dispatcher.init();
+    }
+
+    private static Session session(String id, RemoteEndpoint.Async remote) {
+        Session session = mock(Session.class);
+        Map<String, Object> properties = new ConcurrentHashMap<>();
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getUserProperties()).thenReturn(properties);
+        when(session.getAsyncRemote()).thenReturn(remote);
+        return session;
+    }
+
+    /**
+     * 大量连接的模拟会话，逐个创建Mockito桩过慢，改用动态代理
+     */
+    private static Session lightSession(String id, RemoteEndpoint.Async remote) {
+        Map<String, Object> properties = new ConcurrentHashMap<>();
+        return (Session) Proxy.newProxyInstance(Session.class.getClassLoader(), new Class<?>[]{Session.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "isOpen":
+                            return true;
+                        case "getUserProperties":
+                            return properties;
+                        case "getAsyncRemote":
+                            return remote;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static ChatFrame frame(int index) {
+        return ChatFrame.ofText("{\"content\":\"m" + index + "\"}");
+    }
+
+    private static List<String> frames(int... indexes) {
+        List<String> texts = new ArrayList<>();
+        for (int index : indexes) {
+            texts.add(frame(index).getText());
+        }
+        return texts;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+
+    /**
+     * 发送不会自动完成的客户端，由测试调用complete模拟网络发送完成
+     */
+    private static class StalledClient {
+        private final Session session;
+        private final BlockingQueue<SendHandler> pending = new LinkedBlockingQueue<>();
+        private final List<String> sent = Collections.synchronizedList(new ArrayList<>());
+
+        StalledClient(String id) {
+            RemoteEndpoint.Async remote = mock(RemoteEndpoint.Async.class);
+            doAnswer(invocation -> {
+                String text = invocation.getArgument(0);
+                SendHandler handler = invocation.getArgument(1);
+                pending.add(result -> {
+                    sent.add(text);
+                    handler.onResult(result);
+                });
+                return null;
+            }).when(remote).sendText(anyString(), any(SendHandler.class));
+            session = session(id, remote);
+        }
+
+        void complete() {
+            pending.remove().onResult(new SendResult());
+        }
+    }
+}
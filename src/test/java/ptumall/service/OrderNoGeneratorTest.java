@@ -0,0 +1,124 @@
+package ptumall.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单编号生成器测试
+ */
+class OrderNoGeneratorTest {
+
+    // 取当天中午，时钟回拨和序列借用都不会跨天
+    private static final long BASE_TIME = LocalDate.of(2023, 8, 1).atTime(12, 0)
+            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+    @Test
+    void concurrentNodesNeverCollideAcrossClockRollback() throws Exception {
+        int nodes = 8;
+        int threadsPerNode = 2;
+        int perThread = 20000;
+        long total = (long) nodes * threadsPerNode * perThread;
+        // 所有节点共用的模拟时钟：每100次调用前进1毫秒，过半后回拨3秒
+        AtomicLong calls = new AtomicLong();
+        LongSupplier clock = () -> {
+            long n = calls.incrementAndGet();
+            return BASE_TIME + n / 100 - (n > total / 2 ? 3000 : 0);
+        };
+        List<OrderNoGenerator> generators = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            generators.add(generator(i, clock));
+        }
+
+        Set<String> numbers = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(nodes * threadsPerNode);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (OrderNoGenerator generator : generators) {
+                for (int t = 0; t < threadsPerNode; t++) {
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        String previous = null;
+                        for (int i = 0; i < perThread; i++) {
+                            String no = generator.next();
+                            assertEquals(23, no.length());
+                            // 同一节点同一线程内的编号保持递增
+                            assertTrue(previous == null || no.compareTo(previous) > 0, previous + " -> " + no);
+                            numbers.add(no);
+                            previous = no;
+                        }
+                        return null;
+                    }));
+                }
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(total, numbers.size());
+    }
+
+    @Test
+    void clockRollbackKeepsNumbersIncreasing() {
+        AtomicLong now = new AtomicLong(BASE_TIME);
+        OrderNoGenerator generator = generator(1, now::get);
+
+        String previous = generator.next();
+        for (long offset : new long[]{1, 2, -5000, -4999, 3, 10}) {
+            now.set(BASE_TIME + offset);
+            for (int i = 0; i < 10; i++) {
+                String no = generator.next();
+                assertTrue(no.compareTo(previous) > 0, previous + " -> " + no);
+                previous = no;
+            }
+        }
+    }
+
+    @Test
+    void exhaustedSequenceBorrowsNextMillisecond() {
+        OrderNoGenerator generator = generator(1023, () -> BASE_TIME);
+
+        Set<String> numbers = ConcurrentHashMap.newKeySet();
+        String previous = null;
+        // 时钟停在同一毫秒，超过每毫秒4096个后借用后续毫秒
+        for (int i = 0; i < 10000; i++) {
+            String no = generator.next();
+            assertTrue(previous == null || no.compareTo(previous) > 0, previous + " -> " + no);
+            numbers.add(no);
+            previous = no;
+        }
+        assertEquals(10000, numbers.size());
+    }
+
+    private static OrderNoGenerator generator(long nodeId, LongSupplier clock) {
+        OrderNoGenerator generator = new OrderNoGenerator() {
+            @Override
+            long currentTimeMillis() {
+                return clock.getAsLong();
+            }
+        };
+        ReflectionTestUtils.setField(generator, "configuredNodeId", nodeId);
+        generator.init();
+        return generator;
+    }
+}
@@ -0,0 +1,268 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.dao.ChatMessageMapper;
+import ptumall.dao.ChatSessionMapper;
+import ptumall.model.ChatSession;
+import ptumall.service.ChatMessageWriter;
+import ptumall.service.ChatPresenceService;
+import ptumall.service.ChatUnreadService;
+import ptumall.support.EmbeddedRedis;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 会话分配测试：集群模式下分配给其他节点的管理员，离线超时的管理员的会话重新分配
+ */
+class ChatAssignmentServiceImplTest {
+
+    private static final String SESSION_ID = "session-1";
+
+    private static EmbeddedRedis redis;
+
+    // 模拟数据库中的会话
+    private final Map<String, ChatSession> table = new ConcurrentHashMap<>();
+    // 任一节点上在线的管理员
+    private final Set<Long> onlineAnywhere = ConcurrentHashMap.newKeySet();
+    private final List<ChatAssignmentServiceImpl> nodes = new ArrayList<>();
+    private ChatSessionMapper chatSessionMapper;
+    private ChatMessageMapper chatMessageMapper;
+    private ChatUnreadService chatUnreadService;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        chatSessionMapper = mock(ChatSessionMapper.class);
+        when(chatSessionMapper.findActiveAssigned()).thenAnswer(invocation -> {
+            List<ChatSession> sessions = new ArrayList<>();
+            for (ChatSession session : table.values()) {
+                if (session.getAdminId() != null && session.getStatus() == 0) {
+                    sessions.add(copy(session));
+                }
+            }
+            return sessions;
+        });
+        when(chatSessionMapper.findPendingSessions()).thenAnswer(invocation -> {
+            List<ChatSession> sessions = new ArrayList<>();
+            for (ChatSession session : table.values()) {
+                if (session.getAdminId() == null && session.getStatus() == 0) {
+                    sessions.add(copy(session));
+                }
+            }
+            return sessions;
+        });
+        when(chatSessionMapper.findById(anyString())).thenAnswer(invocation -> {
+            ChatSession session = table.get(invocation.<String>getArgument(0));
+            return session == null ? null : copy(session);
+        });
+        // 与SQL一致：claimAdmin 要求尚未分配，releaseAdmin 要求仍由该管理员接入
+        when(chatSessionMapper.claimAdmin(anyString(), anyLong())).thenAnswer(invocation -> {
+            ChatSession session = table.get(invocation.<String>getArgument(0));
+            synchronized (table) {
+                if (session == null || session.getAdminId() != null || session.getStatus() != 0) {
+                    return 0;
+                }
+                session.setAdminId(invocation.getArgument(1));
+                return 1;
+            }
+        });
+        when(chatSessionMapper.releaseAdmin(anyString(), anyLong())).thenAnswer(invocation -> {
+            ChatSession session = table.get(invocation.<String>getArgument(0));
+            synchronized (table) {
+                if (session == null || !invocation.getArgument(1).equals(session.getAdminId()) || session.getStatus() != 0) {
+                    return 0;
+                }
+                session.setAdminId(null);
+                return 1;
+            }
+        });
+        chatMessageMapper = mock(ChatMessageMapper.class);
+        when(chatMessageMapper.transferToAdmin(anyString(), anyLong())).thenReturn(1);
+        chatUnreadService = mock(ChatUnreadService.class);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (ChatAssignmentServiceImpl node : nodes) {
+            node.destroy();
+        }
+        nodes.clear();
+        table.clear();
+        onlineAnywhere.clear();
+    }
+
+    @Test
+    void sessionOnNodeWithoutAdminIsAssignedToRemoteAdmin() throws Exception {
+        ChatAssignmentServiceImpl nodeA = node(true);
+        ChatAssignmentServiceImpl nodeB = node(true);
+        adminOnline(nodeB, 7L);
+
+        ChatSession session = createSession();
+        nodeA.onSessionCreated(session);
+
+        assertEquals(Long.valueOf(7), nodeA.resolveAdmin(session));
+        assertTrue(waitFor(() -> Long.valueOf(7).equals(table.get(SESSION_ID).getAdminId())));
+    }
+
+    @Test
+    void pendingSessionFromOtherNodeIsPickedUpByReconcile() throws Exception {
+        ChatAssignmentServiceImpl nodeA = node(true);
+        ChatAssignmentServiceImpl nodeB = node(true);
+        // 节点A在没有在线管理员时创建了会话
+        nodeA.onSessionCreated(createSession());
+        adminOnline(nodeB, 7L);
+        // 管理员上线前登记的Redis集合中没有该管理员时，只能由对账纳入
+        redis.stringRedisTemplate().delete("chat:assign:admins");
+
+        nodeB.reconcile();
+
+        assertTrue(waitFor(() -> Long.valueOf(7).equals(table.get(SESSION_ID).getAdminId())));
+    }
+
+    @Test
+    void sessionsOfOfflineAdminAreReassigned() throws Exception {
+        ChatAssignmentServiceImpl node = node(false);
+        adminOnline(node, 1L);
+        ChatSession session = createSession();
+        node.onSessionCreated(session);
+        assertTrue(waitFor(() -> invalidated(1L) && persisted(node)));
+        clearInvocations(chatUnreadService);
+        adminOnline(node, 2L);
+
+        adminOffline(node, 1L);
+        node.reconcile();
+
+        assertTrue(waitFor(() -> Long.valueOf(2).equals(table.get(SESSION_ID).getAdminId())));
+        assertEquals(Long.valueOf(2), node.resolveAdmin(session));
+        // 原管理员的消息转给新管理员，两人的未读计数都重新统计
+        assertTrue(waitFor(() -> invalidated(1L) && invalidated(2L)));
+        verify(chatMessageMapper).transferToAdmin(SESSION_ID, 2L);
+        assertEquals(Long.valueOf(1), node.getStats().getReassignedSessions());
+    }
+
+    @Test
+    void adminBackWithinGraceKeepsSessions() throws Exception {
+        ChatAssignmentServiceImpl node = node(false);
+        ReflectionTestUtils.setField(node, "offlineGraceMillis", 60000L);
+        adminOnline(node, 1L);
+        node.onSessionCreated(createSession());
+        assertTrue(waitFor(() -> Long.valueOf(1).equals(table.get(SESSION_ID).getAdminId()) && persisted(node)));
+        adminOnline(node, 2L);
+
+        adminOffline(node, 1L);
+        node.reconcile();
+        adminOnline(node, 1L);
+        node.reconcile();
+
+        assertEquals(Long.valueOf(1), table.get(SESSION_ID).getAdminId());
+        verify(chatSessionMapper, never()).releaseAdmin(any(), eq(1L));
+    }
+
+    // 分配结果已写入数据库，对账不会跳过该会话
+    private static boolean persisted(ChatAssignmentServiceImpl node) {
+        return ((Set<?>) ReflectionTestUtils.getField(node, "persisting")).isEmpty();
+    }
+
+    private boolean invalidated(Long adminId) {
+        try {
+            verify(chatUnreadService).invalidate(adminId, "admin");
+            return true;
+        } catch (AssertionError e) {
+            return false;
+        }
+    }
+
+    private ChatAssignmentServiceImpl node(boolean cluster) {
+        ChatPresenceService presence = mock(ChatPresenceService.class);
+        when(presence.isOnline(anyLong(), eq("admin"))).thenAnswer(invocation -> onlineAnywhere.contains(invocation.<Long>getArgument(0)));
+        ChatAssignmentServiceImpl node = new ChatAssignmentServiceImpl();
+        ReflectionTestUtils.setField(node, "chatSessionMapper", chatSessionMapper);
+        ReflectionTestUtils.setField(node, "chatMessageMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(node, "chatMessageWriter", mock(ChatMessageWriter.class));
+        ReflectionTestUtils.setField(node, "chatPresenceService", presence);
+        ReflectionTestUtils.setField(node, "chatUnreadService", chatUnreadService);
+        ReflectionTestUtils.setField(node, "stringRedisTemplate", redis.stringRedisTemplate());
+        ReflectionTestUtils.setField(node, "maxSessionsPerAdmin", 0);
+        ReflectionTestUtils.setField(node, "defaultAdminId", 99L);
+        ReflectionTestUtils.setField(node, "offlineGraceMillis", 0L);
+        ReflectionTestUtils.setField(node, "clusterEnabled", cluster);
+        node.init();
+        nodes.add(node);
+        return node;
+    }
+
+    private void adminOnline(ChatAssignmentServiceImpl node, Long adminId) {
+        onlineAnywhere.add(adminId);
+        node.onAdminOnline(adminId);
+    }
+
+    private void adminOffline(ChatAssignmentServiceImpl node, Long adminId) {
+        onlineAnywhere.remove(adminId);
+        node.onAdminOffline(adminId);
+    }
+
+    private ChatSession createSession() {
+        ChatSession session = new ChatSession();
+        session.setId(SESSION_ID);
+        session.setCustomerId(100L);
+        session.setStatus(0);
+        session.setTitle("咨询");
+        session.setCreateTime(new Date());
+        table.put(SESSION_ID, session);
+        return copy(session);
+    }
+
+    private static ChatSession copy(ChatSession source) {
+        ChatSession session = new ChatSession();
+        session.setId(source.getId());
+        session.setCustomerId(source.getCustomerId());
+        session.setAdminId(source.getAdminId());
+        session.setStatus(source.getStatus());
+        session.setTitle(source.getTitle());
+        session.setCreateTime(source.getCreateTime());
+        return session;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,137 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.service.ChatFrame;
+import ptumall.support.EmbeddedRedis;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 在线状态与跨节点转发测试：两个节点共用嵌入式Redis
+ */
+class ChatPresenceServiceImplTest {
+
+    private static final String PRESENCE_KEY = "chat:presence";
+    private static final String USER = "1_customer";
+
+    private static EmbeddedRedis redis;
+
+    private final List<RedisMessageListenerContainer> containers = new ArrayList<>();
+    private StringRedisTemplate stringRedisTemplate;
+    private ChatPresenceServiceImpl nodeA;
+    private ChatPresenceServiceImpl nodeB;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        stringRedisTemplate = redis.stringRedisTemplate();
+        nodeA = node("A");
+        nodeB = node("B");
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (RedisMessageListenerContainer container : containers) {
+            container.stop();
+        }
+        containers.clear();
+    }
+
+    @Test
+    void heartbeatKeepsUserOnNewerNode() {
+        // 用户先连A，再在B上重新连接，A上的旧连接尚未断开
+        nodeA.online(1L, "customer");
+        nodeB.online(1L, "customer");
+
+        nodeA.heartbeat();
+
+        assertEquals("B", stringRedisTemplate.opsForHash().get(PRESENCE_KEY, USER));
+    }
+
+    @Test
+    void heartbeatRestoresLostEntry() {
+        nodeA.online(1L, "customer");
+        stringRedisTemplate.delete(PRESENCE_KEY);
+
+        nodeA.heartbeat();
+
+        assertEquals("A", stringRedisTemplate.opsForHash().get(PRESENCE_KEY, USER));
+    }
+
+    @Test
+    void offlineOnOldNodeKeepsNewerEntry() {
+        nodeA.online(1L, "customer");
+        nodeB.online(1L, "customer");
+
+        nodeA.offline(1L, "customer");
+
+        assertEquals("B", stringRedisTemplate.opsForHash().get(PRESENCE_KEY, USER));
+        assertTrue(nodeA.isOnline(1L, "customer"));
+    }
+
+    @Test
+    void deliverRelaysToReceiverNode() throws Exception {
+        BlockingQueue<String> relayed = new LinkedBlockingQueue<>();
+        RedisMessageListenerContainer listener = redis.listenerContainer();
+        containers.add(listener);
+        listener.addMessageListener((message, pattern) ->
+                relayed.add(new String(message.getBody(), StandardCharsets.UTF_8)), new ChannelTopic("chat:relay:B"));
+        // 节点B自己和测试监听各订阅一次
+        redis.awaitSubscribers("chat:relay:B", 2);
+        nodeB.online(1L, "customer");
+
+        assertTrue(nodeA.deliver(1L, "customer", ChatFrame.ofText("{\"content\":\"hi\"}")));
+
+        assertEquals(USER + "\n{\"content\":\"hi\"}", relayed.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void deliverToStoppedNodeClearsEntry() {
+        nodeB.online(1L, "customer");
+        stringRedisTemplate.delete("chat:node:B");
+
+        assertFalse(nodeA.deliver(1L, "customer", ChatFrame.ofText("{}")));
+        assertNull(stringRedisTemplate.opsForHash().get(PRESENCE_KEY, USER));
+    }
+
+    private ChatPresenceServiceImpl node(String nodeId) {
+        RedisMessageListenerContainer container = redis.listenerContainer();
+        containers.add(container);
+        ChatPresenceServiceImpl presence = new ChatPresenceServiceImpl();
+        ReflectionTestUtils.setField(presence, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(presence, "redisMessageListenerContainer", container);
+        ReflectionTestUtils.setField(presence, "enabled", true);
+        ReflectionTestUtils.setField(presence, "configuredNodeId", nodeId);
+        ReflectionTestUtils.setField(presence, "heartbeatIntervalMillis", 10000L);
+        presence.init();
+        return presence;
+    }
+}
@@ -0,0 +1,139 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.ChatMessageMapper;
+import ptumall.dao.ChatSessionMapper;
+import ptumall.model.ChatMessage;
+import ptumall.model.ChatMessageDTO;
+import ptumall.service.ChatAssignmentService;
+import ptumall.service.ChatMessageWriter;
+import ptumall.service.ChatPresenceService;
+import ptumall.support.EmbeddedRedis;
+import ptumall.support.NoOpTransactionManager;
+import ptumall.vo.CursorPageResult;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 聊天服务测试：在事务中发送消息后，未读数和聊天记录缓存都应更新
+ */
+class ChatServiceImplTest {
+
+    private static final String SESSION_ID = "session-1";
+    private static final long CUSTOMER_ID = 1L;
+    private static final long ADMIN_ID = 2L;
+
+    private static EmbeddedRedis redis;
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+    private ChatServiceImpl chatService;
+    private ChatUnreadServiceImpl chatUnreadService;
+    private ChatHistoryCacheImpl chatHistoryCache;
+    private StringRedisTemplate stringRedisTemplate;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        stringRedisTemplate = redis.stringRedisTemplate();
+
+        ChatMessageMapper chatMessageMapper = mock(ChatMessageMapper.class);
+        when(chatMessageMapper.countUnreadBySession(anyLong(), anyString())).thenReturn(Collections.emptyList());
+        when(chatMessageMapper.findBySessionIdBefore(anyString(), isNull(), anyInt())).thenReturn(Collections.emptyList());
+        ChatMessageWriter chatMessageWriter = mock(ChatMessageWriter.class);
+        ChatPresenceService chatPresenceService = mock(ChatPresenceService.class);
+        when(chatPresenceService.getNodeId()).thenReturn("node-1");
+
+        chatUnreadService = new ChatUnreadServiceImpl();
+        ReflectionTestUtils.setField(chatUnreadService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(chatUnreadService, "chatMessageMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(chatUnreadService, "chatMessageWriter", chatMessageWriter);
+        ReflectionTestUtils.setField(chatUnreadService, "chatPresenceService", chatPresenceService);
+
+        chatHistoryCache = new ChatHistoryCacheImpl();
+        ReflectionTestUtils.setField(chatHistoryCache, "chatMessageMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(chatHistoryCache, "chatMessageWriter", chatMessageWriter);
+        ReflectionTestUtils.setField(chatHistoryCache, "chatPresenceService", chatPresenceService);
+        ReflectionTestUtils.setField(chatHistoryCache, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(chatHistoryCache, "bufferSize", 50);
+        ReflectionTestUtils.setField(chatHistoryCache, "maxSessions", 100);
+        chatHistoryCache.init();
+
+        chatService = new ChatServiceImpl();
+        ReflectionTestUtils.setField(chatService, "chatMessageMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(chatService, "chatSessionMapper", mock(ChatSessionMapper.class));
+        ReflectionTestUtils.setField(chatService, "chatPresenceService", chatPresenceService);
+        ReflectionTestUtils.setField(chatService, "chatMessageWriter", chatMessageWriter);
+        ReflectionTestUtils.setField(chatService, "chatHistoryCache", chatHistoryCache);
+        ReflectionTestUtils.setField(chatService, "chatUnreadService", chatUnreadService);
+        ReflectionTestUtils.setField(chatService, "chatAssignmentService", mock(ChatAssignmentService.class));
+    }
+
+    @Test
+    void sendMessageInTransactionUpdatesUnreadCountAndHistory() {
+        // 先读取一次，计数和聊天记录缓存从（空的）数据库初始化
+        assertEquals(0, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+        assertTrue(chatHistoryCache.getLatest(SESSION_ID, 20).getList().isEmpty());
+
+        ChatMessage sent = transactionTemplate.execute(status -> chatService.sendMessage(message("hello")));
+        assertNotNull(sent);
+
+        assertEquals(1, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+        assertEquals(Integer.valueOf(1), chatUnreadService.getSessionUnreadCounts(ADMIN_ID, "admin").get(SESSION_ID));
+        assertNotNull(stringRedisTemplate.opsForZSet().score("chat:unread:active", "admin:" + ADMIN_ID));
+        CursorPageResult<ChatMessage> page = chatHistoryCache.getLatest(SESSION_ID, 20);
+        assertEquals(1, page.getList().size());
+        assertEquals("hello", page.getList().get(0).getContent());
+    }
+
+    @Test
+    void rolledBackMessageChangesNothing() {
+        assertEquals(0, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+        assertTrue(chatHistoryCache.getLatest(SESSION_ID, 20).getList().isEmpty());
+
+        transactionTemplate.execute(status -> {
+            chatService.sendMessage(message("discarded"));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertEquals(0, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+        assertTrue(chatHistoryCache.getLatest(SESSION_ID, 20).getList().isEmpty());
+    }
+
+    private static ChatMessageDTO message(String content) {
+        ChatMessageDTO dto = new ChatMessageDTO();
+        dto.setContent(content);
+        dto.setSenderId(CUSTOMER_ID);
+        dto.setSenderType("customer");
+        dto.setReceiverId(ADMIN_ID);
+        dto.setReceiverType("admin");
+        dto.setSessionId(SESSION_ID);
+        return dto;
+    }
+}
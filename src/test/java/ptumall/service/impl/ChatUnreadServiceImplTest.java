@@ -0,0 +1,130 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.ChatMessageMapper;
+import ptumall.model.ChatMessage;
+import ptumall.service.ChatMessageWriter;
+import ptumall.service.ChatPresenceService;
+import ptumall.support.EmbeddedRedis;
+import ptumall.support.NoOpTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 未读计数测试：只读取计数的接收者也纳入对账，计数更新在事务提交后生效
+ */
+class ChatUnreadServiceImplTest {
+
+    private static final String SESSION_ID = "session-1";
+    private static final long ADMIN_ID = 2L;
+    private static final String UNREAD_KEY = "chat:unread:admin:" + ADMIN_ID;
+
+    private static EmbeddedRedis redis;
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+    // 模拟数据库中每个会话的未读数
+    private final Map<String, Integer> unreadInDatabase = new HashMap<>();
+    private StringRedisTemplate stringRedisTemplate;
+    private ChatUnreadServiceImpl chatUnreadService;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        stringRedisTemplate = redis.stringRedisTemplate();
+        unreadInDatabase.clear();
+        ChatMessageMapper chatMessageMapper = mock(ChatMessageMapper.class);
+        when(chatMessageMapper.countUnreadBySession(anyLong(), anyString())).thenAnswer(invocation -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : unreadInDatabase.entrySet()) {
+                Map<String, Object> row = new HashMap<>();
+                row.put("sessionId", entry.getKey());
+                row.put("unreadCount", entry.getValue());
+                rows.add(row);
+            }
+            return rows;
+        });
+
+        chatUnreadService = new ChatUnreadServiceImpl();
+        ReflectionTestUtils.setField(chatUnreadService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(chatUnreadService, "chatMessageMapper", chatMessageMapper);
+        ReflectionTestUtils.setField(chatUnreadService, "chatMessageWriter", mock(ChatMessageWriter.class));
+        ReflectionTestUtils.setField(chatUnreadService, "chatPresenceService", mock(ChatPresenceService.class));
+        ReflectionTestUtils.setField(chatUnreadService, "reconcileIntervalMillis", 300000L);
+    }
+
+    @Test
+    void readOnlyReceiverIsReconciled() {
+        unreadInDatabase.put(SESSION_ID, 2);
+        assertEquals(2, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+        assertNotNull(stringRedisTemplate.opsForZSet().score("chat:unread:active", "admin:" + ADMIN_ID));
+
+        // 计数出现偏差，接收者此后只读取计数
+        stringRedisTemplate.opsForHash().put(UNREAD_KEY, SESSION_ID, "5");
+        stringRedisTemplate.opsForHash().put(UNREAD_KEY, "total", "5");
+        chatUnreadService.reconcile();
+
+        assertEquals(2, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+        assertEquals(Integer.valueOf(2), chatUnreadService.getSessionUnreadCounts(ADMIN_ID, "admin").get(SESSION_ID));
+    }
+
+    @Test
+    void readOutsideTransactionAppliesImmediately() {
+        unreadInDatabase.put(SESSION_ID, 2);
+        assertEquals(2, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+
+        chatUnreadService.onMessageRead(message());
+
+        assertEquals(1, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+    }
+
+    @Test
+    void updatesInRolledBackTransactionAreDiscarded() {
+        unreadInDatabase.put(SESSION_ID, 2);
+        assertEquals(2, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+
+        transactionTemplate.execute(status -> {
+            chatUnreadService.onMessageSent(message());
+            chatUnreadService.onSessionRead(SESSION_ID, ADMIN_ID, "admin");
+            // 提交前计数不变
+            assertEquals(2, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        assertEquals(2, chatUnreadService.getUnreadCount(ADMIN_ID, "admin"));
+    }
+
+    private static ChatMessage message() {
+        ChatMessage message = new ChatMessage();
+        message.setSessionId(SESSION_ID);
+        message.setReceiverId(ADMIN_ID);
+        message.setReceiverType("admin");
+        return message;
+    }
+}
@@ -0,0 +1,145 @@
+package ptumall.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.dao.GoodsDao;
+import ptumall.model.Goods;
+import ptumall.service.HotStockService;
+import ptumall.support.EmbeddedRedis;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品详情缓存测试：缓存只保存静态信息，库存和销量单独读取，失效时先删Redis再删本地
+ */
+class GoodsCacheServiceImplTest {
+
+    private static final int GOODS_ID = 1;
+    private static final String CACHE_KEY = "goods:detail:" + GOODS_ID;
+
+    private static EmbeddedRedis redis;
+
+    private GoodsDao goodsDao;
+    private HotStockService hotStockService;
+    private GoodsCacheServiceImpl goodsCacheService;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        goodsDao = mock(GoodsDao.class);
+        // 每次查询返回新对象，和MyBatis一致
+        when(goodsDao.findById(GOODS_ID)).thenAnswer(invocation -> goods("手机", 10, 5));
+        when(goodsDao.selectStockById(GOODS_ID)).thenAnswer(invocation -> stock(10, 5));
+        hotStockService = mock(HotStockService.class);
+        when(hotStockService.getStock(GOODS_ID)).thenReturn(null);
+
+        goodsCacheService = new GoodsCacheServiceImpl();
+        ReflectionTestUtils.setField(goodsCacheService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(goodsCacheService, "hotStockService", hotStockService);
+        ReflectionTestUtils.setField(goodsCacheService, "stringRedisTemplate", redis.stringRedisTemplate());
+        ReflectionTestUtils.setField(goodsCacheService, "redisTemplate", redis.redisTemplate());
+        ReflectionTestUtils.setField(goodsCacheService, "redisMessageListenerContainer", mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(goodsCacheService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(goodsCacheService, "enabled", true);
+        ReflectionTestUtils.setField(goodsCacheService, "localMaxSize", 100);
+        ReflectionTestUtils.setField(goodsCacheService, "localTtlMillis", 60000L);
+        ReflectionTestUtils.setField(goodsCacheService, "redisTtlSeconds", 600L);
+        ReflectionTestUtils.setField(goodsCacheService, "nullTtlSeconds", 60L);
+        ReflectionTestUtils.setField(goodsCacheService, "stockTtlMillis", 50L);
+        goodsCacheService.init();
+    }
+
+    @Test
+    void cachedCopyHasNoStockOrSales() {
+        Goods goods = goodsCacheService.getGoods(GOODS_ID);
+
+        assertEquals("手机", goods.getName());
+        assertEquals(10, goods.getStock());
+        assertEquals(5, goods.getSalesVolume());
+        String cached = redis.stringRedisTemplate().opsForValue().get(CACHE_KEY);
+        assertNotNull(cached);
+        assertFalse(cached.contains("\"stock\":10"), cached);
+        assertFalse(cached.contains("\"salesVolume\":5"), cached);
+    }
+
+    @Test
+    void stockChangesShowWithoutReloadingDetail() throws Exception {
+        goodsCacheService.getGoods(GOODS_ID);
+        when(goodsDao.selectStockById(GOODS_ID)).thenAnswer(invocation -> stock(7, 8));
+        Thread.sleep(60);
+
+        Goods goods = goodsCacheService.getGoods(GOODS_ID);
+
+        assertEquals(7, goods.getStock());
+        assertEquals(8, goods.getSalesVolume());
+        verify(goodsDao, times(1)).findById(GOODS_ID);
+    }
+
+    @Test
+    void hotGoodsStockComesFromRedis() {
+        when(hotStockService.getStock(GOODS_ID)).thenReturn(3);
+
+        Goods goods = goodsCacheService.getGoods(GOODS_ID);
+
+        assertEquals(3, goods.getStock());
+        assertEquals(5, goods.getSalesVolume());
+    }
+
+    @Test
+    void returnedGoodsIsNotShared() {
+        goodsCacheService.getGoods(GOODS_ID).setName("已修改");
+
+        assertEquals("手机", goodsCacheService.getGoods(GOODS_ID).getName());
+    }
+
+    @Test
+    void invalidateRemovesBothTiers() {
+        goodsCacheService.getGoods(GOODS_ID);
+        when(goodsDao.findById(GOODS_ID)).thenAnswer(invocation -> goods("平板", 10, 5));
+
+        goodsCacheService.invalidate(GOODS_ID);
+
+        assertNull(redis.stringRedisTemplate().opsForValue().get(CACHE_KEY));
+        assertEquals("平板", goodsCacheService.getGoods(GOODS_ID).getName());
+        verify(goodsDao, times(2)).findById(GOODS_ID);
+    }
+
+    private static Goods goods(String name, int stock, int salesVolume) {
+        Goods goods = stock(stock, salesVolume);
+        goods.setName(name);
+        goods.setPrice(new BigDecimal("99.00"));
+        return goods;
+    }
+
+    private static Goods stock(int stock, int salesVolume) {
+        Goods goods = new Goods();
+        goods.setId(GOODS_ID);
+        goods.setStock(stock);
+        goods.setSalesVolume(salesVolume);
+        return goods;
+    }
+}
@@ -0,0 +1,250 @@
+package ptumall.service.impl;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.GoodsDao;
+import ptumall.model.Goods;
+import ptumall.service.CategoryTreeService;
+import ptumall.service.GoodsImportService;
+import ptumall.service.GoodsSearchService;
+import ptumall.service.RecommendService;
+import ptumall.support.NoOpTransactionManager;
+import ptumall.vo.GoodsImportTaskVO;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品批量导入导出测试：导入逐行解析、按批写入，一批失败只回滚该批；导出通过游标逐条写出
+ */
+class GoodsImportServiceImplTest {
+
+    private static final String CSV_HEADER = "name,price,category_id,stock,status,description\n";
+
+    // 当前批中已执行、尚未发送的插入
+    private final List<Goods> pending = new ArrayList<>();
+    // 模拟数据库中已提交的商品，以及每批发送的条数
+    private final List<Goods> table = new ArrayList<>();
+    private final List<Integer> batches = new ArrayList<>();
+    // 第几批（从1开始）发送时失败，0表示不失败
+    private int failingBatch;
+    private GoodsDao goodsDao;
+    private GoodsSearchService goodsSearchService;
+    private ExecutorService executor;
+    private GoodsImportServiceImpl goodsImportService;
+
+    @BeforeEach
+    void setUp() {
+        GoodsDao batchGoodsDao = mock(GoodsDao.class);
+        when(batchGoodsDao.insert(any())).thenAnswer(invocation -> {
+            pending.add(invocation.getArgument(0));
+            return 1;
+        });
+        // 与BATCH执行器一致：flushStatements时一次性发送，失败时该批均未写入
+        SqlSessionTemplate batchSqlSession = mock(SqlSessionTemplate.class);
+        when(batchSqlSession.flushStatements()).thenAnswer(invocation -> {
+            batches.add(pending.size());
+            List<Goods> sent = new ArrayList<>(pending);
+            pending.clear();
+            if (batches.size() == failingBatch) {
+                throw new IllegalStateException("Duplicate entry");
+            }
+            table.addAll(sent);
+            return new ArrayList<>();
+        });
+        CategoryTreeService categoryTreeService = mock(CategoryTreeService.class);
+        when(categoryTreeService.exists(anyInt())).thenAnswer(invocation -> invocation.<Integer>getArgument(0) <= 2);
+        goodsDao = mock(GoodsDao.class);
+        goodsSearchService = mock(GoodsSearchService.class);
+        executor = Executors.newSingleThreadExecutor();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+
+        // BATCH执行器依赖真实的SqlSessionFactory，这里直接替换init中创建的对象
+        goodsImportService = new GoodsImportServiceImpl();
+        ReflectionTestUtils.setField(goodsImportService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(goodsImportService, "exportTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(goodsImportService, "batchSqlSession", batchSqlSession);
+        ReflectionTestUtils.setField(goodsImportService, "batchGoodsDao", batchGoodsDao);
+        ReflectionTestUtils.setField(goodsImportService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(goodsImportService, "categoryTreeService", categoryTreeService);
+        ReflectionTestUtils.setField(goodsImportService, "goodsSearchService", goodsSearchService);
+        ReflectionTestUtils.setField(goodsImportService, "recommendService", mock(RecommendService.class));
+        ReflectionTestUtils.setField(goodsImportService, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(goodsImportService, "goodsReader", new ObjectMapper().readerFor(Goods.class)
+                .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES));
+        ReflectionTestUtils.setField(goodsImportService, "executor", executor);
+        ReflectionTestUtils.setField(goodsImportService, "batchSize", 1000);
+        ReflectionTestUtils.setField(goodsImportService, "maxErrors", 100);
+        ReflectionTestUtils.setField(goodsImportService, "exportTimeoutSeconds", 300);
+    }
+
+    @AfterEach
+    void tearDown() {
+        goodsImportService.destroy();
+    }
+
+    @Test
+    void csvIsInsertedInConfiguredChunks() throws Exception {
+        StringBuilder csv = new StringBuilder(CSV_HEADER);
+        for (int i = 1; i <= 2500; i++) {
+            csv.append("商品").append(i).append(",9.90,1,10,1,\"描述, 第").append(i).append("个\"\n");
+        }
+
+        GoodsImportTaskVO task = importFile("goods.csv", csv.toString());
+
+        assertEquals("completed", task.getStatus());
+        assertEquals(Long.valueOf(2500), task.getProcessedRows());
+        assertEquals(Long.valueOf(2500), task.getImportedRows());
+        assertEquals(Arrays.asList(1000, 1000, 500), batches);
+        assertEquals("描述, 第2500个", table.get(2499).getDescription());
+        assertEquals(new BigDecimal("9.90"), table.get(0).getPrice());
+        verify(goodsSearchService, times(1)).rebuild();
+    }
+
+    @Test
+    void invalidRowsAreReportedWithoutBreakingTheBatch() throws Exception {
+        String csv = CSV_HEADER
+                + "好商品,1.00,1,5,0,\n"
+                + ",1.00,1,5,0,\n"
+                + "坏价格,abc,1,5,0,\n"
+                + "无分类,1.00,9,5,0,\n"
+                + "\n"
+                + "负库存,1.00,2,-1,0,\n"
+                + "好商品2,2.00,2,,,\n";
+
+        GoodsImportTaskVO task = importFile("goods.csv", csv);
+
+        assertEquals("completed", task.getStatus());
+        assertEquals(Long.valueOf(2), task.getImportedRows());
+        assertEquals(Long.valueOf(4), task.getFailedRows());
+        assertEquals(Arrays.asList("第3行: 商品名称不能为空", "第4行: 价格、分类ID、库存或状态不是有效的数字",
+                "第5行: 分类不存在: 9", "第7行: 库存不能为负数"), task.getErrors());
+        assertEquals(Arrays.asList(2), batches);
+        // 未填写的库存和状态与addGoods的默认值一致，导入的都是下架商品时不重建索引
+        assertEquals(Integer.valueOf(0), table.get(1).getStock());
+        assertEquals(Byte.valueOf((byte) 0), table.get(1).getStatus());
+        verify(goodsSearchService, never()).rebuild();
+    }
+
+    @Test
+    void failedChunkIsRolledBackAlone() throws Exception {
+        failingBatch = 2;
+        StringBuilder csv = new StringBuilder(CSV_HEADER);
+        for (int i = 1; i <= 2500; i++) {
+            csv.append("商品").append(i).append(",1,1,1,0,\n");
+        }
+
+        GoodsImportTaskVO task = importFile("goods.csv", csv.toString());
+
+        assertEquals("completed", task.getStatus());
+        assertEquals(Long.valueOf(1500), task.getImportedRows());
+        assertEquals(Long.valueOf(1000), task.getFailedRows());
+        assertEquals(1500, table.size());
+        assertTrue(task.getErrors().get(0).startsWith("第1002-2001行写入失败，已回滚该批1000个商品"));
+    }
+
+    @Test
+    void jsonLinesAreImported() throws Exception {
+        String jsonl = "{\"name\":\"商品1\",\"price\":1.5,\"categoryId\":1,\"status\":1,\"unknown\":true}\n"
+                + "\n"
+                + "{not json}\n"
+                + "{\"name\":\"商品2\",\"price\":2,\"categoryId\":2,\"rating\":5,\"salesVolume\":99}\n";
+
+        GoodsImportTaskVO task = importFile("goods.jsonl", jsonl);
+
+        assertEquals(Long.valueOf(2), task.getImportedRows());
+        assertEquals(1, task.getErrors().size());
+        assertTrue(task.getErrors().get(0).startsWith("第3行: JSON格式错误"));
+        // 评分和销量不从文件导入
+        assertEquals(Integer.valueOf(0), table.get(1).getSalesVolume());
+        assertEquals(new BigDecimal("0.0"), table.get(1).getRating());
+    }
+
+    @Test
+    void largeImportKeepsChunksBounded() throws Exception {
+        ReflectionTestUtils.setField(goodsImportService, "batchSize", 500);
+        StringBuilder csv = new StringBuilder(CSV_HEADER);
+        for (int i = 1; i <= 100000; i++) {
+            csv.append("商品").append(i).append(",1,1,1,0,\n");
+        }
+
+        GoodsImportTaskVO task = importFile("goods.csv", csv.toString());
+
+        assertEquals(Long.valueOf(100000), task.getImportedRows());
+        assertEquals(200, batches.size());
+        for (Integer size : batches) {
+            assertEquals(Integer.valueOf(500), size);
+        }
+    }
+
+    @Test
+    void exportStreamsRowsFromCursor() throws Exception {
+        List<Goods> rows = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Goods goods = new Goods();
+            goods.setId(i);
+            goods.setName(i == 2 ? "带\"引号\",的商品" : "商品" + i);
+            goods.setPrice(new BigDecimal("1.00"));
+            goods.setCategoryId(1);
+            goods.setStock(5);
+            goods.setStatus((byte) 1);
+            rows.add(goods);
+        }
+        @SuppressWarnings("unchecked")
+        Cursor<Goods> cursor = mock(Cursor.class);
+        when(cursor.iterator()).thenReturn(rows.iterator());
+        when(goodsDao.streamForExport(1)).thenReturn(cursor);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = goodsImportService.exportGoods(GoodsImportService.FORMAT_CSV, 1, out);
+
+        assertEquals(3, count);
+        String[] lines = out.toString(StandardCharsets.UTF_8.name()).split("\r\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("id,name,price"));
+        assertTrue(lines[2].startsWith("2,\"带\"\"引号\"\",的商品\",1.00,"));
+        verify(cursor).close();
+    }
+
+    private GoodsImportTaskVO importFile(String fileName, String content) throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", fileName, "text/plain", content.getBytes(StandardCharsets.UTF_8));
+        String taskId = goodsImportService.submitImport(file, null).getTaskId();
+        assertTrue(waitFor(() -> goodsImportService.getImportTask(taskId).getEndTime() != null));
+        return goodsImportService.getImportTask(taskId);
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
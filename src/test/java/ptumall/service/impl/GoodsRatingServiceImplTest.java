@@ -0,0 +1,109 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.GoodsRatingDao;
+import ptumall.model.GoodsRating;
+import ptumall.service.GoodsCacheService;
+import ptumall.service.RecommendService;
+import ptumall.support.NoOpTransactionManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品评分缓存测试：缓存有上限，提交前读到的旧值不会在失效后被放回缓存
+ */
+class GoodsRatingServiceImplTest {
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+    // 模拟数据库中的评分汇总
+    private final Map<Integer, GoodsRating> table = new ConcurrentHashMap<>();
+    private GoodsRatingDao goodsRatingDao;
+    private GoodsRatingServiceImpl goodsRatingService;
+    // 查询期间执行的操作，模拟读取与评价事务提交交错
+    private Runnable duringQuery;
+
+    @BeforeEach
+    void setUp() {
+        duringQuery = null;
+        goodsRatingDao = mock(GoodsRatingDao.class);
+        when(goodsRatingDao.findByGoodsId(anyInt())).thenAnswer(invocation -> {
+            GoodsRating rating = table.get(invocation.<Integer>getArgument(0));
+            GoodsRating snapshot = rating == null ? null : rating(rating.getRatingCount(), rating.getRatingSum());
+            if (duringQuery != null) {
+                Runnable action = duringQuery;
+                duringQuery = null;
+                action.run();
+            }
+            return snapshot;
+        });
+        when(goodsRatingDao.addRating(anyInt(), anyInt())).thenAnswer(invocation -> {
+            int rating = invocation.getArgument(1);
+            table.merge(invocation.getArgument(0), rating(1, rating),
+                    (old, added) -> rating(old.getRatingCount() + 1, old.getRatingSum() + rating));
+            return 1;
+        });
+
+        goodsRatingService = new GoodsRatingServiceImpl();
+        ReflectionTestUtils.setField(goodsRatingService, "goodsRatingDao", goodsRatingDao);
+        ReflectionTestUtils.setField(goodsRatingService, "goodsCacheService", mock(GoodsCacheService.class));
+        ReflectionTestUtils.setField(goodsRatingService, "recommendService", mock(RecommendService.class));
+        ReflectionTestUtils.setField(goodsRatingService, "cacheTtlMillis", 60000L);
+        ReflectionTestUtils.setField(goodsRatingService, "cacheMaxSize", 2);
+        goodsRatingService.init();
+    }
+
+    @Test
+    void staleReadDuringCommitIsNotCached() {
+        table.put(1, rating(1, 5));
+        // 读取到旧值后、放入缓存前，新评价的事务提交
+        duringQuery = () -> transactionTemplate.execute(status -> {
+            goodsRatingService.onReviewAdded(1, 1);
+            return null;
+        });
+
+        assertEquals(1, goodsRatingService.getRating(1).getRatingCount());
+        assertEquals(2, goodsRatingService.getRating(1).getRatingCount());
+        assertEquals(3.0, goodsRatingService.getRating(1).getAverageRating());
+    }
+
+    @Test
+    void cacheEvictsLeastRecentlyUsed() {
+        goodsRatingService.getRating(1);
+        goodsRatingService.getRating(2);
+        goodsRatingService.getRating(1);
+        goodsRatingService.getRating(3);
+
+        goodsRatingService.getRating(1);
+        goodsRatingService.getRating(2);
+
+        verify(goodsRatingDao, times(1)).findByGoodsId(1);
+        verify(goodsRatingDao, times(2)).findByGoodsId(2);
+        @SuppressWarnings("unchecked")
+        Map<Integer, ?> cache = (Map<Integer, ?>) ReflectionTestUtils.getField(goodsRatingService, "cache");
+        assertTrue(cache.size() <= 2);
+    }
+
+    private static GoodsRating rating(int count, int sum) {
+        GoodsRating rating = new GoodsRating();
+        rating.setRatingCount(count);
+        rating.setRatingSum(sum);
+        rating.setStar1(0);
+        rating.setStar2(0);
+        rating.setStar3(0);
+        rating.setStar4(0);
+        rating.setStar5(0);
+        return rating;
+    }
+}
@@ -0,0 +1,225 @@
+package ptumall.service.impl;
+
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.dao.GoodsDao;
+import ptumall.model.Goods;
+import ptumall.support.EmbeddedRedis;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品搜索索引测试：名称和描述都不区分大小写，商品变化通过发布订阅同步到其他节点，
+ * 十万商品规模下的结果与全表LIKE扫描一致
+ */
+class GoodsSearchServiceImplTest {
+
+    private static final int SYNTHETIC_GOODS = 100000;
+    private static final String[] BRANDS = {"Apple", "华为", "小米", "Sony", "联想", "OPPO", "vivo", "三星"};
+    private static final String[] KINDS = {"手机", "蓝牙耳机", "平板电脑", "智能手表", "笔记本电脑", "充电器"};
+
+    private static EmbeddedRedis redis;
+
+    // 模拟数据库中的商品
+    private final Map<Integer, Goods> table = new ConcurrentHashMap<>();
+    private final List<RedisMessageListenerContainer> containers = new ArrayList<>();
+    private GoodsDao goodsDao;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        table.put(1, goods(1, "Apple iPhone 15", "旗舰手机"));
+        table.put(2, goods(2, "华为手机", "支持NFC和无线充电"));
+        table.put(3, goods(3, "蓝牙耳机", "降噪"));
+
+        goodsDao = mock(GoodsDao.class);
+        doAnswer(invocation -> {
+            ResultHandler<Goods> handler = invocation.getArgument(0);
+            DefaultResultContext<Goods> context = new DefaultResultContext<>();
+            for (Goods goods : table.values()) {
+                context.nextResultObject(goods);
+                handler.handleResult(context);
+            }
+            return null;
+        }).when(goodsDao).scanActiveGoods(any());
+        when(goodsDao.findById(any())).thenAnswer(invocation -> table.get(invocation.<Integer>getArgument(0)));
+        // 与SQL中的 INSTR(LOWER(description), LOWER(keyword)) 一致
+        when(goodsDao.filterIdsByDescription(anyList(), anyString())).thenAnswer(invocation -> {
+            List<Integer> ids = invocation.getArgument(0);
+            String keyword = invocation.<String>getArgument(1).toLowerCase(Locale.ROOT);
+            List<Integer> matched = new ArrayList<>();
+            for (Integer id : ids) {
+                String description = table.get(id).getDescription();
+                if (description != null && description.toLowerCase(Locale.ROOT).contains(keyword)) {
+                    matched.add(id);
+                }
+            }
+            return matched;
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (RedisMessageListenerContainer container : containers) {
+            container.stop();
+        }
+        containers.clear();
+    }
+
+    @Test
+    void nameMatchIgnoresCase() {
+        GoodsSearchServiceImpl search = node();
+
+        assertEquals(Collections.singletonList(1), search.search(null, "IPHONE", null, null));
+        assertEquals(Collections.singletonList(1), search.search(null, " apple ", null, null));
+    }
+
+    @Test
+    void descriptionMatchIgnoresCase() {
+        GoodsSearchServiceImpl search = node();
+
+        assertEquals(Collections.singletonList(2), search.search(null, "nfc", null, null));
+        verify(goodsDao).filterIdsByDescription(eq(Collections.singletonList(2)), eq("nfc"));
+    }
+
+    @Test
+    void singleCharacterKeywordFallsBackToSql() {
+        GoodsSearchServiceImpl search = node();
+
+        assertNull(search.search(null, "机", null, null));
+    }
+
+    @Test
+    void changeOnOneNodeIsReindexedOnOthers() throws Exception {
+        GoodsSearchServiceImpl nodeA = node();
+        GoodsSearchServiceImpl nodeB = node();
+        redis.awaitSubscribers("goods:search:reindex", 2);
+
+        table.put(3, goods(3, "Sony WH-1000XM5 耳机", "降噪"));
+        nodeA.onGoodsChanged(3);
+
+        assertEquals(Collections.singletonList(3), nodeA.search(null, "sony", null, null));
+        assertTrue(waitFor(() -> Collections.singletonList(3).equals(nodeB.search(null, "sony", null, null))));
+
+        table.remove(2);
+        nodeA.onGoodsRemoved(2);
+        assertTrue(waitFor(() -> nodeB.search(null, "华为", null, null).isEmpty()));
+    }
+
+    @Test
+    void syntheticCatalogMatchesFullScan() {
+        table.clear();
+        Random random = new Random(42);
+        for (int id = 1; id <= SYNTHETIC_GOODS; id++) {
+            String name = BRANDS[random.nextInt(BRANDS.length)] + " " + KINDS[random.nextInt(KINDS.length)]
+                    + " X" + random.nextInt(1000);
+            String description = random.nextInt(50) == 0 ? "支持NFC和无线充电" : "官方正品";
+            Goods goods = goods(id, name, description);
+            goods.setCategoryId(1 + random.nextInt(20));
+            goods.setPrice(BigDecimal.valueOf(random.nextInt(100000), 2));
+            table.put(id, goods);
+        }
+        GoodsSearchServiceImpl search = node();
+
+        for (String keyword : new String[]{"sony 蓝牙", "X123", "智能手表 x99", "nfc", "无线充电", "不存在的商品"}) {
+            List<Integer> expected = scan(Arrays.asList(3, 4), keyword);
+            assertEquals(expected, search.search(Arrays.asList(3, 4), keyword, "price", "asc"), keyword);
+        }
+    }
+
+    /**
+     * 与原SQL一致：名称或描述包含关键词（不区分大小写），按价格升序、ID降序
+     */
+    private List<Integer> scan(List<Integer> categoryIds, String keyword) {
+        String normalized = keyword.trim().toLowerCase(Locale.ROOT);
+        List<Goods> matched = new ArrayList<>();
+        for (Goods goods : table.values()) {
+            if (categoryIds.contains(goods.getCategoryId())
+                    && (goods.getName().toLowerCase(Locale.ROOT).contains(normalized)
+                    || goods.getDescription().toLowerCase(Locale.ROOT).contains(normalized))) {
+                matched.add(goods);
+            }
+        }
+        matched.sort(Comparator.comparing(Goods::getPrice).thenComparing(Goods::getId, Comparator.reverseOrder()));
+        List<Integer> ids = new ArrayList<>();
+        for (Goods goods : matched) {
+            ids.add(goods.getId());
+        }
+        return ids;
+    }
+
+    private GoodsSearchServiceImpl node() {
+        RedisMessageListenerContainer container = redis.listenerContainer();
+        containers.add(container);
+        GoodsSearchServiceImpl search = new GoodsSearchServiceImpl();
+        ReflectionTestUtils.setField(search, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(search, "stringRedisTemplate", redis.stringRedisTemplate());
+        ReflectionTestUtils.setField(search, "redisMessageListenerContainer", container);
+        ReflectionTestUtils.setField(search, "enabled", true);
+        search.init();
+        search.rebuild();
+        return search;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private static Goods goods(int id, String name, String description) {
+        Goods goods = new Goods();
+        goods.setId(id);
+        goods.setName(name);
+        goods.setDescription(description);
+        goods.setCategoryId(1);
+        goods.setPrice(new BigDecimal("100.00"));
+        goods.setStatus((byte) 1);
+        goods.setCreateTime(new Date());
+        goods.setUpdateTime(new Date());
+        return goods;
+    }
+}
@@ -0,0 +1,217 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.FlushBatchDao;
+import ptumall.dao.GoodsDao;
+import ptumall.dao.OrderDao;
+import ptumall.model.Goods;
+import ptumall.model.OrderItems;
+import ptumall.model.Orders;
+import ptumall.support.EmbeddedRedis;
+import ptumall.support.NoOpTransactionManager;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 热点商品库存测试：预留在订单事务提交后才计入待回写，宕机遗留的预留由对账处理，回写批次重放时不重复扣减
+ */
+class HotStockServiceImplTest {
+
+    private static final int GOODS_ID = 1;
+    private static final int DB_STOCK = 10;
+
+    private static EmbeddedRedis redis;
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+    private RedisTemplate<String, Object> redisTemplate;
+    private GoodsDao goodsDao;
+    private OrderDao orderDao;
+    private FlushBatchDao flushBatchDao;
+    private HotStockServiceImpl hotStockService;
+    private StockServiceImpl stockService;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        redisTemplate = redis.redisTemplate();
+        goodsDao = mock(GoodsDao.class);
+        Goods goods = new Goods();
+        goods.setId(GOODS_ID);
+        goods.setStock(DB_STOCK);
+        when(goodsDao.selectById(GOODS_ID)).thenReturn(goods);
+        // 回写时同步修改数据库库存，对账按修改后的库存校准Redis
+        when(goodsDao.batchApplyStockDelta(any())).thenAnswer(invocation -> {
+            List<OrderItems> deltas = invocation.getArgument(0);
+            for (OrderItems delta : deltas) {
+                goods.setStock(goods.getStock() + delta.getQuantity());
+            }
+            return deltas.size();
+        });
+        orderDao = mock(OrderDao.class);
+        flushBatchDao = mock(FlushBatchDao.class);
+        when(flushBatchDao.insertIfAbsent(anyString(), anyString())).thenReturn(1);
+
+        hotStockService = new HotStockServiceImpl();
+        ReflectionTestUtils.setField(hotStockService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(hotStockService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(hotStockService, "orderDao", orderDao);
+        ReflectionTestUtils.setField(hotStockService, "flushBatchDao", flushBatchDao);
+        ReflectionTestUtils.setField(hotStockService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(hotStockService, "redisMessageListenerContainer", mock(RedisMessageListenerContainer.class));
+        ReflectionTestUtils.setField(hotStockService, "enabled", true);
+        ReflectionTestUtils.setField(hotStockService, "reservationTimeoutMillis", 300000L);
+        hotStockService.init();
+        hotStockService.markHot(GOODS_ID);
+
+        stockService = new StockServiceImpl();
+        ReflectionTestUtils.setField(stockService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(stockService, "hotStockService", hotStockService);
+    }
+
+    @Test
+    void deductionIsPendingOnlyAfterCommit() {
+        transactionTemplate.execute(status -> {
+            stockService.deductStock(items(100, 3));
+            assertEquals(7, redisStock());
+            assertNull(pending());
+            return null;
+        });
+        assertEquals(7, redisStock());
+        assertEquals(3, pending().intValue());
+        assertEquals(0, reserved());
+    }
+
+    @Test
+    void rollbackReturnsReservedStock() {
+        transactionTemplate.execute(status -> {
+            stockService.deductStock(items(100, 3));
+            status.setRollbackOnly();
+            return null;
+        });
+        assertEquals(DB_STOCK, redisStock());
+        assertNull(pending());
+        assertEquals(0, reserved());
+    }
+
+    @Test
+    void reservationLeftByCrashedNodeIsReleasedWhenOrderMissing() {
+        // 预留后节点宕机，订单事务没有提交
+        hotStockService.tryDeduct(101, GOODS_ID, 4);
+        assertEquals(6, redisStock());
+
+        ReflectionTestUtils.setField(hotStockService, "reservationTimeoutMillis", 0L);
+        hotStockService.reconcile();
+
+        assertEquals(DB_STOCK, redisStock());
+        assertNull(pending());
+        assertEquals(0, reserved());
+        verify(goodsDao, never()).batchApplyStockDelta(any());
+
+        // 事务最终仍然回滚时不会重复归还
+        hotStockService.cancelDeduct(101, GOODS_ID, 4);
+        assertEquals(DB_STOCK, redisStock());
+    }
+
+    @Test
+    void reservationLeftByCrashedNodeIsConfirmedWhenOrderCommitted() {
+        // 订单已提交，节点在确认预留前宕机
+        hotStockService.tryDeduct(102, GOODS_ID, 4);
+        when(orderDao.selectById(102)).thenReturn(new Orders());
+
+        ReflectionTestUtils.setField(hotStockService, "reservationTimeoutMillis", 0L);
+        hotStockService.reconcile();
+
+        assertEquals(6, redisStock());
+        ArgumentCaptor<List<OrderItems>> captor = deltaCaptor();
+        verify(goodsDao).batchApplyStockDelta(captor.capture());
+        assertEquals(-4, captor.getValue().get(0).getQuantity().intValue());
+
+        // 迟到的确认不会重复扣减
+        hotStockService.confirmDeduct(102, GOODS_ID, 4);
+        assertEquals(6, redisStock());
+        assertNull(pending());
+    }
+
+    @Test
+    void replayedFlushIsAppliedOnce() {
+        transactionTemplate.execute(status -> {
+            stockService.deductStock(items(100, 3));
+            return null;
+        });
+
+        // 第一次写库失败，回写中的批次保留
+        doThrow(new IllegalStateException("db down")).when(goodsDao).batchApplyStockDelta(any());
+        assertThrows(IllegalStateException.class, () -> hotStockService.flush());
+        ArgumentCaptor<String> firstBatch = ArgumentCaptor.forClass(String.class);
+        verify(flushBatchDao).insertIfAbsent(firstBatch.capture(), eq("stock:hot"));
+
+        // 重放时沿用同一批次ID；批次已登记（上次实际已提交）时跳过写库并清除回写中数据
+        when(flushBatchDao.insertIfAbsent(anyString(), anyString())).thenReturn(0);
+        assertEquals(0, hotStockService.flush());
+        ArgumentCaptor<String> batches = ArgumentCaptor.forClass(String.class);
+        verify(flushBatchDao, times(2)).insertIfAbsent(batches.capture(), eq("stock:hot"));
+        assertEquals(firstBatch.getValue(), batches.getAllValues().get(1));
+        verify(goodsDao, times(1)).batchApplyStockDelta(any());
+        assertEquals(Boolean.FALSE, redisTemplate.hasKey("stock:hot:processing"));
+        assertEquals(0, hotStockService.flush());
+    }
+
+    private int redisStock() {
+        return ((Number) redisTemplate.opsForValue().get("stock:hot:" + GOODS_ID)).intValue();
+    }
+
+    private Number pending() {
+        return (Number) redisTemplate.opsForHash().get("stock:hot:pending", String.valueOf(GOODS_ID));
+    }
+
+    private int reserved() {
+        Object value = redisTemplate.opsForHash().get("stock:hot:reserved", String.valueOf(GOODS_ID));
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    private static List<OrderItems> items(int orderId, int quantity) {
+        OrderItems item = new OrderItems();
+        item.setOrderId(orderId);
+        item.setGoodsId(GOODS_ID);
+        item.setGoodsName("goods");
+        item.setQuantity(quantity);
+        return Collections.singletonList(item);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<OrderItems>> deltaCaptor() {
+        return ArgumentCaptor.forClass((Class<List<OrderItems>>) (Class<?>) List.class);
+    }
+}
@@ -0,0 +1,306 @@
+package ptumall.service.impl;
+
+import com.github.pagehelper.PageHelper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.dao.CartDao;
+import ptumall.dao.GoodsDao;
+import ptumall.dao.OrderDao;
+import ptumall.dao.UserAddressDao;
+import ptumall.exception.BusinessException;
+import ptumall.model.Cart;
+import ptumall.model.Goods;
+import ptumall.model.OrderItems;
+import ptumall.model.Orders;
+import ptumall.model.UserAddress;
+import ptumall.service.HotStockService;
+import ptumall.service.OrderNoGenerator;
+import ptumall.service.OrderStatisticsService;
+import ptumall.service.OrderTimeoutService;
+import ptumall.service.SalesVolumeService;
+import ptumall.vo.CreateOrderParam;
+import ptumall.vo.PageResult;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyByte;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单服务测试：并发的同一状态流转只有一方成功，统计事件只发一次；
+ * 购物车下单、订单列表分页的数据库语句数不随商品数、每页条数增长
+ */
+class OrderServiceImplTest {
+
+    private static final int ORDER_ID = 1;
+    private static final int USER_ID = 10;
+    private static final int ADDRESS_ID = 5;
+    // 购物车下单的数据库语句：地址、购物车、商品加锁查询、订单、订单商品、扣减库存、清空购物车
+    private static final int CHECKOUT_STATEMENTS = 7;
+
+    // 模拟数据库中的订单状态
+    private final AtomicInteger status = new AtomicInteger();
+    private OrderDao orderDao;
+    private OrderStatisticsService orderStatisticsService;
+    private CartDao cartDao;
+    private GoodsDao goodsDao;
+    private UserAddressDao userAddressDao;
+    private SalesVolumeService salesVolumeService;
+    private OrderServiceImpl orderService;
+
+    @BeforeEach
+    void setUp() {
+        orderDao = mock(OrderDao.class);
+        // 与SQL一致：WHERE status = #{expectStatus}
+        when(orderDao.updateStatusIfMatch(eq(ORDER_ID), anyByte(), anyByte())).thenAnswer(invocation -> {
+            byte expect = invocation.getArgument(1);
+            byte next = invocation.getArgument(2);
+            return status.compareAndSet(expect, next) ? 1 : 0;
+        });
+        orderStatisticsService = mock(OrderStatisticsService.class);
+        cartDao = mock(CartDao.class);
+        goodsDao = mock(GoodsDao.class);
+        userAddressDao = mock(UserAddressDao.class);
+        salesVolumeService = mock(SalesVolumeService.class);
+        HotStockService hotStockService = mock(HotStockService.class);
+
+        StockServiceImpl stockService = new StockServiceImpl();
+        ReflectionTestUtils.setField(stockService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(stockService, "hotStockService", hotStockService);
+
+        orderService = new OrderServiceImpl();
+        ReflectionTestUtils.setField(orderService, "orderDao", orderDao);
+        ReflectionTestUtils.setField(orderService, "orderStatisticsService", orderStatisticsService);
+        ReflectionTestUtils.setField(orderService, "cartDao", cartDao);
+        ReflectionTestUtils.setField(orderService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(orderService, "userAddressDao", userAddressDao);
+        ReflectionTestUtils.setField(orderService, "stockService", stockService);
+        ReflectionTestUtils.setField(orderService, "hotStockService", hotStockService);
+        ReflectionTestUtils.setField(orderService, "salesVolumeService", salesVolumeService);
+        ReflectionTestUtils.setField(orderService, "orderNoGenerator", mock(OrderNoGenerator.class));
+        ReflectionTestUtils.setField(orderService, "orderTimeoutService", mock(OrderTimeoutService.class));
+    }
+
+    @Test
+    void concurrentShipEmitsOneEvent() {
+        status.set(1);
+        // 两个请求都在对方更新前读到了订单
+        when(orderDao.selectById(ORDER_ID)).thenReturn(order());
+
+        assertTrue(orderService.shipOrder(ORDER_ID));
+        assertThrows(BusinessException.class, () -> orderService.shipOrder(ORDER_ID));
+
+        verify(orderStatisticsService, times(1)).onOrderStatusChanged(any(), eq((byte) 2));
+        verify(orderDao, times(1)).updateById(any());
+    }
+
+    @Test
+    void concurrentConfirmEmitsOneEvent() {
+        status.set(2);
+        // 两个请求都在对方更新前读到了订单
+        when(orderDao.selectById(ORDER_ID)).thenReturn(order());
+
+        assertTrue(orderService.confirmReceipt(USER_ID, ORDER_ID));
+        assertThrows(BusinessException.class, () -> orderService.confirmReceipt(USER_ID, ORDER_ID));
+
+        verify(orderStatisticsService, times(1)).onOrderStatusChanged(any(), eq((byte) 3));
+    }
+
+    @Test
+    void cartCheckoutStatementsDoNotGrowWithCartSize() {
+        for (int size : new int[]{1, 10, 50}) {
+            List<Integer> cartIds = prepareCart(size);
+            CreateOrderParam param = new CreateOrderParam();
+            param.setAddressId(ADDRESS_ID);
+            param.setCartItemIds(cartIds);
+
+            Orders order = orderService.createOrder(USER_ID, param);
+
+            assertEquals(size, order.getOrderItems().size());
+            assertEquals(new BigDecimal(10 * size), order.getTotalAmount());
+            assertEquals(CHECKOUT_STATEMENTS, statements(), "购物车商品数：" + size);
+            verify(goodsDao, never()).selectById(any());
+            verify(goodsDao, times(1)).selectByIdsForUpdate(anyList());
+            verify(cartDao, times(1)).deleteByIds(cartIds);
+            // 销量只在内存中累计，不在下单事务中写库
+            verify(salesVolumeService, times(size)).add(anyInt(), eq(1));
+        }
+    }
+
+    @Test
+    void cartCheckoutFailsWhenBatchDeductionIsShort() {
+        prepareCart(10);
+        // 与SQL一致：库存不足的商品不更新，受影响行数少于商品数
+        when(goodsDao.batchDecrementStockIfAvailable(anyList())).thenAnswer(invocation ->
+                invocation.<List<OrderItems>>getArgument(0).size() - 1);
+        CreateOrderParam param = new CreateOrderParam();
+        param.setAddressId(ADDRESS_ID);
+        param.setCartItemIds(cartIdsOf(10));
+
+        assertThrows(BusinessException.class, () -> orderService.createOrder(USER_ID, param));
+
+        verify(cartDao, never()).deleteByIds(anyList());
+        verify(salesVolumeService, never()).add(anyInt(), anyInt());
+    }
+
+    @Test
+    void orderPageQueriesDoNotGrowWithPageSize() {
+        for (int size : new int[]{10, 50, 200}) {
+            List<Orders> orders = prepareOrderPage(size);
+            when(orderDao.selectAll()).thenReturn(orders);
+
+            PageResult<Orders> page;
+            try {
+                page = orderService.getAllOrderList(1, size);
+            } finally {
+                PageHelper.clearPage();
+            }
+
+            assertPage(page, size);
+            // 订单、订单商品、收货地址各一次
+            assertEquals(3, statements(), "每页条数：" + size);
+            verify(orderDao, never()).selectOrderItemsByOrderId(any());
+            verify(userAddressDao, never()).selectById(any());
+        }
+    }
+
+    @Test
+    void userOrderPageSharesBatchedAssembly() {
+        List<Orders> orders = prepareOrderPage(50);
+        when(orderDao.selectByUserId(USER_ID)).thenReturn(orders);
+
+        PageResult<Orders> page;
+        try {
+            page = orderService.getOrderList(USER_ID, 1, 50);
+        } finally {
+            PageHelper.clearPage();
+        }
+
+        assertPage(page, 50);
+        assertEquals(3, statements());
+    }
+
+    /**
+     * 准备一页订单，每个订单两件商品、各自的收货地址，并清空之前的调用记录
+     */
+    private List<Orders> prepareOrderPage(int size) {
+        List<Orders> orders = new ArrayList<>();
+        List<OrderItems> items = new ArrayList<>();
+        List<UserAddress> addresses = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            Orders order = new Orders();
+            order.setId(i);
+            order.setUserId(USER_ID);
+            order.setAddressId(i);
+            orders.add(order);
+            for (int j = 0; j < 2; j++) {
+                OrderItems item = new OrderItems();
+                item.setOrderId(i);
+                item.setGoodsId(j + 1);
+                items.add(item);
+            }
+            UserAddress address = new UserAddress();
+            address.setId(i);
+            address.setUserId(USER_ID);
+            addresses.add(address);
+        }
+
+        reset(orderDao, cartDao, goodsDao, userAddressDao);
+        when(orderDao.selectOrderItemsByOrderIds(anyList())).thenReturn(items);
+        when(userAddressDao.selectByIds(anyList())).thenReturn(addresses);
+        return orders;
+    }
+
+    private static void assertPage(PageResult<Orders> page, int size) {
+        assertEquals(size, page.getList().size());
+        for (Orders order : page.getList()) {
+            assertEquals(2, order.getOrderItems().size());
+            assertNotNull(order.getAddress());
+            assertEquals(order.getAddressId(), order.getAddress().getId());
+        }
+    }
+
+    /**
+     * 准备指定商品数的购物车，每件商品单价10元、购买1件，并清空之前的调用记录
+     */
+    private List<Integer> prepareCart(int size) {
+        List<Cart> carts = new ArrayList<>();
+        List<Goods> goodsList = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            Cart cart = new Cart();
+            cart.setId(i);
+            cart.setUserId(USER_ID);
+            cart.setGoodsId(i);
+            cart.setQuantity(1);
+            carts.add(cart);
+
+            Goods goods = new Goods();
+            goods.setId(i);
+            goods.setName("商品" + i);
+            goods.setPrice(BigDecimal.TEN);
+            goods.setStock(100);
+            goods.setStatus((byte) 1);
+            goodsList.add(goods);
+        }
+        UserAddress address = new UserAddress();
+        address.setId(ADDRESS_ID);
+        address.setUserId(USER_ID);
+
+        reset(orderDao, cartDao, goodsDao, userAddressDao, salesVolumeService);
+        when(userAddressDao.selectById(ADDRESS_ID)).thenReturn(address);
+        when(cartDao.selectByIds(anyList())).thenReturn(carts);
+        when(goodsDao.selectByIdsForUpdate(anyList())).thenReturn(goodsList);
+        when(orderDao.insert(any())).thenAnswer(invocation -> {
+            invocation.<Orders>getArgument(0).setId(ORDER_ID);
+            return 1;
+        });
+        // 与SQL一致：库存充足时每件商品更新一行
+        when(goodsDao.decrementStockIfAvailable(anyInt(), anyInt())).thenReturn(1);
+        when(goodsDao.batchDecrementStockIfAvailable(anyList())).thenAnswer(invocation ->
+                invocation.<List<OrderItems>>getArgument(0).size());
+        return cartIdsOf(size);
+    }
+
+    private static List<Integer> cartIdsOf(int size) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= size; i++) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    // 发往数据库的语句数
+    private int statements() {
+        int count = 0;
+        for (Object dao : new Object[]{orderDao, cartDao, goodsDao, userAddressDao}) {
+            count += mockingDetails(dao).getInvocations().size();
+        }
+        return count;
+    }
+
+    private Orders order() {
+        Orders order = new Orders();
+        order.setId(ORDER_ID);
+        order.setUserId(USER_ID);
+        order.setStatus((byte) status.get());
+        return order;
+    }
+}
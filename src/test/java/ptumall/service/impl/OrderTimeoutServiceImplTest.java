@@ -0,0 +1,155 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.dao.OrderDao;
+import ptumall.model.Orders;
+import ptumall.service.OrderService;
+import ptumall.support.EmbeddedRedis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 订单超时取消测试：截止时间没有写入Redis的待付款订单由定时扫描按数据库补上
+ */
+class OrderTimeoutServiceImplTest {
+
+    private static final long TIMEOUT = 1000;
+
+    private static EmbeddedRedis redis;
+
+    // 模拟数据库中的待付款订单
+    private final List<Orders> unpaid = new ArrayList<>();
+    private final Set<Integer> cancelled = ConcurrentHashMap.newKeySet();
+    private OrderDao orderDao;
+    private OrderTimeoutServiceImpl timeoutService;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        orderDao = mock(OrderDao.class);
+        when(orderDao.selectUnpaid()).thenReturn(Collections.emptyList());
+        // 与SQL一致：按 (create_time, id) 升序翻页
+        when(orderDao.selectOverdueUnpaid(any(), any(), any(), anyInt())).thenAnswer(invocation -> {
+            Date before = invocation.getArgument(0);
+            Date afterCreateTime = invocation.getArgument(1);
+            Integer afterId = invocation.getArgument(2);
+            int limit = invocation.getArgument(3);
+            List<Orders> page = new ArrayList<>();
+            for (Orders order : unpaid) {
+                if (cancelled.contains(order.getId()) || !order.getCreateTime().before(before)) {
+                    continue;
+                }
+                if (afterId != null && (order.getCreateTime().before(afterCreateTime)
+                        || order.getCreateTime().equals(afterCreateTime) && order.getId() <= afterId)) {
+                    continue;
+                }
+                page.add(order);
+                if (page.size() == limit) {
+                    break;
+                }
+            }
+            return page;
+        });
+        OrderService orderService = mock(OrderService.class);
+        when(orderService.cancelTimeoutOrders(anyList())).thenAnswer(invocation -> {
+            List<Integer> ids = invocation.getArgument(0);
+            cancelled.addAll(ids);
+            return ids;
+        });
+
+        timeoutService = new OrderTimeoutServiceImpl();
+        ReflectionTestUtils.setField(timeoutService, "stringRedisTemplate", redis.stringRedisTemplate());
+        ReflectionTestUtils.setField(timeoutService, "orderDao", orderDao);
+        ReflectionTestUtils.setField(timeoutService, "orderService", orderService);
+        ReflectionTestUtils.setField(timeoutService, "enabled", true);
+        ReflectionTestUtils.setField(timeoutService, "unpaidTimeoutMillis", TIMEOUT);
+        ReflectionTestUtils.setField(timeoutService, "batchSize", 2);
+        ReflectionTestUtils.setField(timeoutService, "tickMillis", 20L);
+        ReflectionTestUtils.setField(timeoutService, "sweepGraceMillis", 0L);
+        timeoutService.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        timeoutService.destroy();
+    }
+
+    @Test
+    void sweepCancelsOverdueOrdersMissingFromRedis() throws Exception {
+        long now = System.currentTimeMillis();
+        // 同一创建时间的多个订单跨越批次边界
+        Date created = new Date(now - TIMEOUT * 5);
+        for (int id = 1; id <= 5; id++) {
+            unpaid.add(order(id, created));
+        }
+        // 还未超时的订单不处理
+        unpaid.add(order(6, new Date(now)));
+
+        timeoutService.sweep();
+
+        assertTrue(waitFor(() -> cancelled.size() == 5));
+        assertEquals(5, cancelled.size());
+        assertFalse(cancelled.contains(6));
+    }
+
+    @Test
+    void sweepSkipsOrdersAlreadyScheduled() throws Exception {
+        long now = System.currentTimeMillis();
+        unpaid.add(order(1, new Date(now - TIMEOUT * 5)));
+        // 本节点登记过的订单按原截止时间处理，扫描不重复放入时间轮
+        timeoutService.schedule(1);
+
+        timeoutService.sweep();
+        Thread.sleep(200);
+
+        assertTrue(cancelled.isEmpty());
+        assertTrue(waitFor(() -> cancelled.contains(1)));
+    }
+
+    private static Orders order(int id, Date createTime) {
+        Orders order = new Orders();
+        order.setId(id);
+        order.setCreateTime(createTime);
+        return order;
+    }
+
+    private static boolean waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(50);
+        }
+        return false;
+    }
+}
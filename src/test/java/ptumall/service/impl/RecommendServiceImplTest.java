@@ -0,0 +1,131 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.dao.GoodsDao;
+import ptumall.model.Goods;
+import ptumall.service.CategoryTreeService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 推荐商品排行测试：内存排行与数据库排序一致，跌出前K的商品由数据库补齐
+ */
+class RecommendServiceImplTest {
+
+    // 与SQL一致：ORDER BY rating DESC, sales_volume DESC, id DESC
+    private static final Comparator<Goods> SQL_ORDER = Comparator
+            .comparing(Goods::getRating, Comparator.reverseOrder())
+            .thenComparing(Goods::getSalesVolume, Comparator.reverseOrder())
+            .thenComparing(Goods::getId, Comparator.reverseOrder());
+
+    // 模拟数据库中的上架商品
+    private final Map<Integer, Goods> table = new ConcurrentHashMap<>();
+    private RecommendServiceImpl recommendService;
+
+    @BeforeEach
+    void setUp() {
+        GoodsDao goodsDao = mock(GoodsDao.class);
+        when(goodsDao.findRecommend(anyInt())).thenAnswer(invocation -> {
+            List<Goods> sorted = new ArrayList<>();
+            for (Goods goods : table.values()) {
+                sorted.add(copy(goods));
+            }
+            sorted.sort(SQL_ORDER);
+            int limit = invocation.getArgument(0);
+            return new ArrayList<>(sorted.subList(0, Math.min(limit, sorted.size())));
+        });
+        when(goodsDao.findById(any())).thenAnswer(invocation -> {
+            Goods goods = table.get(invocation.<Integer>getArgument(0));
+            return goods == null ? null : copy(goods);
+        });
+
+        recommendService = new RecommendServiceImpl();
+        ReflectionTestUtils.setField(recommendService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(recommendService, "categoryTreeService", mock(CategoryTreeService.class));
+        ReflectionTestUtils.setField(recommendService, "enabled", true);
+        ReflectionTestUtils.setField(recommendService, "maxSize", 2);
+        ReflectionTestUtils.setField(recommendService, "maxCategories", 10);
+    }
+
+    @Test
+    void tiesAreOrderedLikeDatabase() {
+        put(1, 10);
+        put(2, 10);
+        put(3, 10);
+        recommendService.refresh();
+
+        assertEquals(Arrays.asList(3, 2), ids(recommendService.getRecommend(null, 2)));
+    }
+
+    @Test
+    void goodsDroppingOutOfTopIsReplacedFromDatabase() {
+        put(1, 10);
+        put(2, 8);
+        put(3, 6);
+        recommendService.refresh();
+
+        // 退款使商品1的销量降到排行之外的商品3之下
+        table.get(1).setSalesVolume(5);
+        recommendService.onSalesChanged(1, -5);
+
+        assertEquals(Arrays.asList(2, 3), ids(recommendService.getRecommend(null, 2)));
+    }
+
+    @Test
+    void goodsDroppingWithinTopStaysInRanking() {
+        put(1, 10);
+        put(2, 8);
+        put(3, 6);
+        recommendService.refresh();
+
+        table.get(2).setSalesVolume(7);
+        recommendService.onSalesChanged(2, -1);
+
+        assertEquals(Arrays.asList(1, 2), ids(recommendService.getRecommend(null, 2)));
+        assertEquals(Integer.valueOf(7), recommendService.getRecommend(null, 2).get(1).getSalesVolume());
+    }
+
+    private void put(int id, int salesVolume) {
+        Goods goods = new Goods();
+        goods.setId(id);
+        goods.setName("商品" + id);
+        goods.setCategoryId(1);
+        goods.setStatus((byte) 1);
+        goods.setRating(new BigDecimal("4.5"));
+        goods.setSalesVolume(salesVolume);
+        table.put(id, goods);
+    }
+
+    private static Goods copy(Goods source) {
+        Goods goods = new Goods();
+        goods.setId(source.getId());
+        goods.setName(source.getName());
+        goods.setCategoryId(source.getCategoryId());
+        goods.setStatus(source.getStatus());
+        goods.setRating(source.getRating());
+        goods.setSalesVolume(source.getSalesVolume());
+        return goods;
+    }
+
+    private static List<Integer> ids(List<Goods> goods) {
+        List<Integer> ids = new ArrayList<>();
+        for (Goods g : goods) {
+            ids.add(g.getId());
+        }
+        return ids;
+    }
+}
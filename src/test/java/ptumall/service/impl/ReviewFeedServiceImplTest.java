@@ -0,0 +1,134 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.dao.GoodsReviewDao;
+import ptumall.model.GoodsReview;
+import ptumall.service.ReviewFeedService;
+import ptumall.vo.CursorPageResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品评价列表测试：最新排序兼容旧游标，缓存失效按商品区分
+ */
+class ReviewFeedServiceImplTest {
+
+    private static final long BASE_TIME = 1700000000000L;
+
+    // 模拟数据库中的评价，已按 (create_time, id) 倒序排列
+    private final List<GoodsReview> reviews = new ArrayList<>();
+    private GoodsReviewDao goodsReviewDao;
+    private ReviewFeedServiceImpl reviewFeedService;
+    // 查询期间执行的操作，模拟加载过程中其他请求失效缓存
+    private Runnable duringQuery;
+
+    @BeforeEach
+    void setUp() {
+        for (int id = 5; id >= 1; id--) {
+            reviews.add(review(id, new Date(BASE_TIME + id * 1000L)));
+        }
+        duringQuery = null;
+        goodsReviewDao = mock(GoodsReviewDao.class);
+        // 与SQL一致：按最新排序时取 (create_time, id) 小于游标位置的评价
+        when(goodsReviewDao.findPageByGoodsId(any(), eq(ReviewFeedService.SORT_NEWEST), any(), any(), any(), anyInt()))
+                .thenAnswer(invocation -> {
+                    if (duringQuery != null) {
+                        duringQuery.run();
+                    }
+                    Date afterTime = invocation.getArgument(3);
+                    Integer afterId = invocation.getArgument(4);
+                    int limit = invocation.getArgument(5);
+                    List<GoodsReview> page = new ArrayList<>();
+                    for (GoodsReview review : reviews) {
+                        if (afterId != null && (review.getCreateTime().after(afterTime)
+                                || review.getCreateTime().equals(afterTime) && review.getId() >= afterId)) {
+                            continue;
+                        }
+                        page.add(review);
+                        if (page.size() == limit) {
+                            break;
+                        }
+                    }
+                    return page;
+                });
+
+        reviewFeedService = new ReviewFeedServiceImpl();
+        ReflectionTestUtils.setField(reviewFeedService, "goodsReviewDao", goodsReviewDao);
+        ReflectionTestUtils.setField(reviewFeedService, "cacheSize", 100);
+        ReflectionTestUtils.setField(reviewFeedService, "cacheTtlMillis", 60000L);
+        ReflectionTestUtils.setField(reviewFeedService, "cacheMaxGoods", 100);
+    }
+
+    @Test
+    void newestCursorRoundTrips() {
+        CursorPageResult<GoodsReview> first = reviewFeedService.getFeed(1, null, null, 2);
+        assertTrue(first.isHasMore());
+
+        CursorPageResult<GoodsReview> second = reviewFeedService.getFeed(1, ReviewFeedService.SORT_NEWEST, first.getNextCursor(), 2);
+
+        assertEquals(3, second.getList().get(0).getId());
+        assertEquals(2, second.getList().get(1).getId());
+    }
+
+    @Test
+    void legacyCursorWithoutSortIsAcceptedForNewest() {
+        // 未带排序方式的旧游标：创建时间:ID
+        String legacy = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(((BASE_TIME + 4000L) + ":4").getBytes(StandardCharsets.UTF_8));
+
+        CursorPageResult<GoodsReview> page = reviewFeedService.getFeed(1, ReviewFeedService.SORT_NEWEST, legacy, 10);
+
+        assertEquals(3, page.getList().size());
+        assertEquals(3, page.getList().get(0).getId());
+        assertFalse(page.isHasMore());
+    }
+
+    @Test
+    void invalidatingOtherGoodsDoesNotBlockCaching() {
+        duringQuery = () -> reviewFeedService.invalidate(2);
+        reviewFeedService.getFeed(1, null, null, 2);
+        duringQuery = null;
+
+        reviewFeedService.getFeed(1, null, null, 2);
+
+        verify(goodsReviewDao, times(1)).findPageByGoodsId(eq(1), any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void invalidatingSameGoodsDuringLoadSkipsCaching() {
+        duringQuery = () -> reviewFeedService.invalidate(1);
+        reviewFeedService.getFeed(1, null, null, 2);
+        duringQuery = null;
+
+        reviewFeedService.getFeed(1, null, null, 2);
+
+        verify(goodsReviewDao, times(2)).findPageByGoodsId(eq(1), any(), any(), any(), any(), anyInt());
+    }
+
+    private static GoodsReview review(int id, Date createTime) {
+        GoodsReview review = new GoodsReview();
+        review.setId(id);
+        review.setGoodsId(1);
+        review.setRating((byte) 5);
+        review.setLikeCount(0);
+        review.setCreateTime(createTime);
+        return review;
+    }
+}
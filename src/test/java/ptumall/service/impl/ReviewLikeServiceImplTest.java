@@ -0,0 +1,127 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.GoodsReviewDao;
+import ptumall.dao.ReviewLikeDao;
+import ptumall.model.GoodsReview;
+import ptumall.service.ReviewFeedService;
+import ptumall.service.ReviewLikeService;
+import ptumall.support.EmbeddedRedis;
+import ptumall.support.NoOpTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 评价点赞测试：点赞数每个评价一个Key并设置过期时间，回写时写入当前点赞数
+ */
+class ReviewLikeServiceImplTest {
+
+    private static EmbeddedRedis redis;
+
+    // 模拟数据库中评价的点赞数
+    private final Map<Integer, Integer> likeCounts = new ConcurrentHashMap<>();
+    private StringRedisTemplate stringRedisTemplate;
+    private GoodsReviewDao goodsReviewDao;
+    private ReviewFeedService reviewFeedService;
+    private ReviewLikeServiceImpl reviewLikeService;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        stringRedisTemplate = redis.stringRedisTemplate();
+        likeCounts.clear();
+        likeCounts.put(1, 5);
+        ReviewLikeDao reviewLikeDao = mock(ReviewLikeDao.class);
+        when(reviewLikeDao.findReviewIdsByUserId(any())).thenReturn(new ArrayList<>());
+        goodsReviewDao = mock(GoodsReviewDao.class);
+        when(goodsReviewDao.findLikeCountById(any())).thenAnswer(invocation -> likeCounts.get(invocation.<Integer>getArgument(0)));
+        when(goodsReviewDao.batchUpdateLikeCount(anyList())).thenAnswer(invocation -> {
+            List<GoodsReview> reviews = invocation.getArgument(0);
+            for (GoodsReview review : reviews) {
+                likeCounts.put(review.getId(), review.getLikeCount());
+            }
+            return reviews.size();
+        });
+        when(goodsReviewDao.findGoodsIdsByIds(any())).thenReturn(Collections.singletonList(100));
+        reviewFeedService = mock(ReviewFeedService.class);
+
+        reviewLikeService = new ReviewLikeServiceImpl();
+        ReflectionTestUtils.setField(reviewLikeService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(reviewLikeService, "reviewLikeDao", reviewLikeDao);
+        ReflectionTestUtils.setField(reviewLikeService, "goodsReviewDao", goodsReviewDao);
+        ReflectionTestUtils.setField(reviewLikeService, "reviewFeedService", reviewFeedService);
+        ReflectionTestUtils.setField(reviewLikeService, "transactionTemplate", new TransactionTemplate(new NoOpTransactionManager()));
+        ReflectionTestUtils.setField(reviewLikeService, "enabled", true);
+        ReflectionTestUtils.setField(reviewLikeService, "batchSize", 500);
+    }
+
+    @Test
+    void likeCountKeyExpires() {
+        stringRedisTemplate.opsForHash().put("review:like:count", "1", "5");
+        reviewLikeService.init();
+
+        assertEquals(ReviewLikeService.CHANGED, reviewLikeService.like(1, 10));
+
+        assertEquals("6", stringRedisTemplate.opsForValue().get("review:like:count:1"));
+        Long ttl = stringRedisTemplate.getExpire("review:like:count:1");
+        assertTrue(ttl != null && ttl > 0);
+        // 旧版本没有过期时间的Hash已删除
+        assertFalse(stringRedisTemplate.hasKey("review:like:count"));
+    }
+
+    @Test
+    void flushWritesCurrentCounts() {
+        reviewLikeService.like(1, 10);
+        reviewLikeService.like(1, 11);
+        reviewLikeService.unlike(1, 10);
+        assertEquals(Integer.valueOf(5), likeCounts.get(1));
+
+        reviewLikeService.flush();
+
+        assertEquals(Integer.valueOf(6), likeCounts.get(1));
+        verify(reviewFeedService).invalidate(100);
+        assertTrue(reviewLikeService.isLiked(1, 11));
+        assertFalse(reviewLikeService.isLiked(1, 10));
+    }
+
+    @Test
+    void deletedReviewIsSkippedOnFlush() {
+        reviewLikeService.like(1, 10);
+        reviewLikeService.onReviewDeleted(1);
+
+        reviewLikeService.flush();
+
+        assertFalse(stringRedisTemplate.hasKey("review:like:count:1"));
+        verify(goodsReviewDao, never()).batchUpdateLikeCount(anyList());
+    }
+}
@@ -0,0 +1,134 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.dao.GoodsDao;
+import ptumall.model.OrderItems;
+import ptumall.service.RecommendService;
+import ptumall.support.EmbeddedRedis;
+import ptumall.support.NoOpTransactionManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品销量测试：变化先在本地累计，定时合并写入Redis，再批量回写数据库
+ */
+class SalesVolumeServiceImplTest {
+
+    private static final String PENDING_KEY = "goods:sales:pending";
+
+    private static EmbeddedRedis redis;
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+    // 模拟数据库中的销量
+    private final Map<Integer, Integer> salesVolume = new ConcurrentHashMap<>();
+    private StringRedisTemplate stringRedisTemplate;
+    private SalesVolumeServiceImpl salesVolumeService;
+
+    @BeforeAll
+    static void startRedis() {
+        redis = new EmbeddedRedis();
+    }
+
+    @AfterAll
+    static void stopRedis() {
+        redis.stop();
+    }
+
+    @BeforeEach
+    void setUp() {
+        redis.flushAll();
+        stringRedisTemplate = redis.stringRedisTemplate();
+        salesVolume.clear();
+        GoodsDao goodsDao = mock(GoodsDao.class);
+        when(goodsDao.batchUpdateSalesVolume(anyList())).thenAnswer(invocation -> {
+            List<OrderItems> items = invocation.getArgument(0);
+            for (OrderItems item : items) {
+                salesVolume.merge(item.getGoodsId(), item.getQuantity(), Integer::sum);
+            }
+            return items.size();
+        });
+
+        salesVolumeService = new SalesVolumeServiceImpl();
+        ReflectionTestUtils.setField(salesVolumeService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(salesVolumeService, "recommendService", mock(RecommendService.class));
+        ReflectionTestUtils.setField(salesVolumeService, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(salesVolumeService, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(salesVolumeService, "enabled", true);
+        ReflectionTestUtils.setField(salesVolumeService, "batchSize", 2);
+        salesVolumeService.init();
+    }
+
+    @Test
+    void concurrentChangesAreMergedIntoOneSpill() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            int goodsId = i % 3 + 1;
+            executor.execute(() -> salesVolumeService.add(goodsId, 1));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        // 写入Redis之前只在本地累计
+        assertNull(stringRedisTemplate.opsForHash().get(PENDING_KEY, "1"));
+        assertEquals(1000L, salesVolumeService.getStats().getPendingQuantity());
+
+        salesVolumeService.scheduledSpill();
+
+        assertEquals("334", stringRedisTemplate.opsForHash().get(PENDING_KEY, "1"));
+        assertEquals("333", stringRedisTemplate.opsForHash().get(PENDING_KEY, "2"));
+        assertEquals("333", stringRedisTemplate.opsForHash().get(PENDING_KEY, "3"));
+
+        salesVolumeService.flush();
+
+        assertEquals(Integer.valueOf(334), salesVolume.get(1));
+        assertEquals(Integer.valueOf(333), salesVolume.get(3));
+        assertEquals(0L, salesVolumeService.getStats().getPendingQuantity());
+    }
+
+    @Test
+    void rolledBackChangesAreNotCounted() {
+        transactionTemplate.execute(status -> {
+            salesVolumeService.add(1, 2);
+            status.setRollbackOnly();
+            return null;
+        });
+        transactionTemplate.execute(status -> {
+            salesVolumeService.add(1, 3);
+            return null;
+        });
+
+        salesVolumeService.scheduledSpill();
+        salesVolumeService.flush();
+
+        assertEquals(Integer.valueOf(3), salesVolume.get(1));
+    }
+
+    @Test
+    void cancellationOffsetsSale() {
+        salesVolumeService.add(1, 5);
+        salesVolumeService.add(1, -5);
+        salesVolumeService.add(2, 1);
+
+        salesVolumeService.destroy();
+
+        assertNull(salesVolume.get(1));
+        assertEquals(Integer.valueOf(1), salesVolume.get(2));
+    }
+}
@@ -0,0 +1,152 @@
+package ptumall.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ptumall.dao.GoodsDao;
+import ptumall.exception.BusinessException;
+import ptumall.model.OrderItems;
+import ptumall.service.HotStockService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 库存服务测试：并发抢购同一商品不超卖，批量扣减任一商品不足时整体失败
+ */
+class StockServiceImplTest {
+
+    private static final int GOODS_ID = 1;
+    private static final int BUYERS = 200;
+
+    // 模拟数据库中的商品库存
+    private final Map<Integer, Integer> stock = new ConcurrentHashMap<>();
+    private GoodsDao goodsDao;
+    private StockServiceImpl stockService;
+
+    @BeforeEach
+    void setUp() {
+        goodsDao = mock(GoodsDao.class);
+        // 与SQL一致：UPDATE ... SET stock = stock - #{quantity} WHERE id = #{id} AND stock >= #{quantity}
+        when(goodsDao.decrementStockIfAvailable(anyInt(), anyInt())).thenAnswer(invocation ->
+                decrement(invocation.getArgument(0), invocation.getArgument(1)));
+        when(goodsDao.batchDecrementStockIfAvailable(anyList())).thenAnswer(invocation -> {
+            int rows = 0;
+            for (OrderItems item : invocation.<List<OrderItems>>getArgument(0)) {
+                rows += decrement(item.getGoodsId(), item.getQuantity());
+            }
+            return rows;
+        });
+        when(goodsDao.incrementStock(anyInt(), anyInt())).thenAnswer(invocation -> {
+            stock.merge(invocation.getArgument(0), invocation.getArgument(1), Integer::sum);
+            return 1;
+        });
+
+        stockService = new StockServiceImpl();
+        ReflectionTestUtils.setField(stockService, "goodsDao", goodsDao);
+        ReflectionTestUtils.setField(stockService, "hotStockService", mock(HotStockService.class));
+    }
+
+    @Test
+    void concurrentBuyersNeverOversell() throws Exception {
+        stock.put(GOODS_ID, 50);
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger soldOut = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(BUYERS);
+        for (int i = 0; i < BUYERS; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                    stockService.deductStock(Arrays.asList(item(GOODS_ID, 1)));
+                    succeeded.incrementAndGet();
+                } catch (BusinessException e) {
+                    soldOut.incrementAndGet();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(50, succeeded.get());
+        assertEquals(BUYERS - 50, soldOut.get());
+        assertEquals(Integer.valueOf(0), stock.get(GOODS_ID));
+    }
+
+    @Test
+    void batchDeductionFailsWhenAnyGoodsIsShort() {
+        stock.put(1, 5);
+        stock.put(2, 1);
+
+        assertThrows(BusinessException.class, () -> stockService.deductStock(Arrays.asList(item(2, 2), item(1, 1))));
+    }
+
+    @Test
+    void sameGoodsIsMergedAndDeductedInIdOrder() {
+        stock.put(1, 5);
+        stock.put(2, 5);
+        List<OrderItems> captured = new ArrayList<>();
+        when(goodsDao.batchDecrementStockIfAvailable(anyList())).thenAnswer(invocation -> {
+            captured.addAll(invocation.getArgument(0));
+            return captured.size();
+        });
+
+        stockService.deductStock(Arrays.asList(item(2, 1), item(1, 1), item(2, 2)));
+
+        assertEquals(2, captured.size());
+        assertEquals(Integer.valueOf(1), captured.get(0).getGoodsId());
+        assertEquals(Integer.valueOf(2), captured.get(1).getGoodsId());
+        assertEquals(Integer.valueOf(3), captured.get(1).getQuantity());
+        verify(goodsDao, never()).decrementStockIfAvailable(anyInt(), anyInt());
+    }
+
+    @Test
+    void restoreAddsBackToStock() {
+        stock.put(GOODS_ID, 0);
+
+        stockService.restoreStock(Arrays.asList(item(GOODS_ID, 3)));
+
+        assertEquals(Integer.valueOf(3), stock.get(GOODS_ID));
+    }
+
+    private int decrement(Integer goodsId, Integer quantity) {
+        int[] rows = new int[1];
+        stock.computeIfPresent(goodsId, (id, current) -> {
+            if (current < quantity) {
+                return current;
+            }
+            rows[0] = 1;
+            return current - quantity;
+        });
+        return rows[0];
+    }
+
+    private static OrderItems item(Integer goodsId, Integer quantity) {
+        OrderItems item = new OrderItems();
+        item.setGoodsId(goodsId);
+        item.setGoodsName("商品" + goodsId);
+        item.setQuantity(quantity);
+        return item;
+    }
+}
@@ -0,0 +1,62 @@
+package ptumall.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionTemplate;
+import ptumall.support.NoOpTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 事务工具类测试
+ */
+class TransactionUtilsTest {
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new NoOpTransactionManager());
+
+    @Test
+    void runsImmediatelyWithoutTransaction() {
+        List<String> calls = new ArrayList<>();
+        TransactionUtils.afterCommit(() -> calls.add("run"));
+        assertEquals(Arrays.asList("run"), calls);
+    }
+
+    @Test
+    void runsAfterCommitOnly() {
+        List<String> calls = new ArrayList<>();
+        transactionTemplate.execute(status -> {
+            TransactionUtils.afterCommit(() -> calls.add("commit"));
+            assertTrue(calls.isEmpty());
+            return null;
+        });
+        assertEquals(Arrays.asList("commit"), calls);
+
+        calls.clear();
+        transactionTemplate.execute(status -> {
+            TransactionUtils.afterCommit(() -> calls.add("rollback"));
+            status.setRollbackOnly();
+            return null;
+        });
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    void nestedRegistrationInsideCallbackStillRuns() {
+        List<String> calls = new ArrayList<>();
+        transactionTemplate.execute(status -> {
+            TransactionUtils.afterCommit(() -> {
+                calls.add("outer");
+                TransactionUtils.afterCommit(() -> {
+                    calls.add("inner");
+                    TransactionUtils.afterCommit(() -> calls.add("innermost"));
+                });
+            });
+            return null;
+        });
+        assertEquals(Arrays.asList("outer", "inner", "innermost"), calls);
+    }
+}